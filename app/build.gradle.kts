@@ -115,6 +115,13 @@ android {
         )
     }
 
+    testOptions {
+        unitTests.all {
+            // Microbenchmarks of unit tests are skipped unless enabled with -Pbenchmark
+            it.systemProperty("tieba.benchmark", providers.gradleProperty("benchmark").isPresent)
+        }
+    }
+
     lint {
         disable.addAll(listOf("LocalContextGetResourceValueCall", "UseKtx"))
         checkReleaseBuilds = false
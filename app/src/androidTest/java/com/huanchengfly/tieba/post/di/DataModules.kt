@@ -11,10 +11,15 @@ import com.huanchengfly.tieba.post.models.database.dao.BlockDao
 import com.huanchengfly.tieba.post.models.database.dao.DraftDao
 import com.huanchengfly.tieba.post.models.database.dao.ForumHistoryDao
 import com.huanchengfly.tieba.post.models.database.dao.LikedForumDao
+import com.huanchengfly.tieba.post.models.database.dao.LocalSearchDao
+import com.huanchengfly.tieba.post.models.database.dao.NotificationMessageDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchPostDao
+import com.huanchengfly.tieba.post.models.database.dao.SignProgressDao
 import com.huanchengfly.tieba.post.models.database.dao.ThreadHistoryDao
+import com.huanchengfly.tieba.post.models.database.dao.ThreadSnapshotDao
 import com.huanchengfly.tieba.post.models.database.dao.TimestampDao
+import com.huanchengfly.tieba.post.models.database.dao.TransactionRunner
 import com.huanchengfly.tieba.post.models.database.dao.UserProfileDao
 import com.huanchengfly.tieba.post.repository.source.network.HomeNetworkDataSource
 import com.huanchengfly.tieba.post.repository.source.network.HomeNetworkFakeDataSource
@@ -100,18 +105,33 @@ object FakeDatabaseModule {
     @Provides
     fun likedForumDao(database: TbLiteDatabase): LikedForumDao = database.likedForumDao()
 
+    @Provides
+    fun provideLocalSearchDao(database: TbLiteDatabase): LocalSearchDao = database.localSearchDao()
+
+    @Provides
+    fun provideNotificationMessageDao(database: TbLiteDatabase): NotificationMessageDao = database.notificationMessageDao()
+
     @Provides
     fun searchDao(database: TbLiteDatabase): SearchDao = database.searchDao()
 
     @Provides
     fun searchPostDao(database: TbLiteDatabase): SearchPostDao = database.searchPostDao()
 
+    @Provides
+    fun provideSignProgressDao(database: TbLiteDatabase): SignProgressDao = database.signProgressDao()
+
     @Provides
     fun provideThreadHistoryDao(database: TbLiteDatabase): ThreadHistoryDao = database.threadHistoryDao()
 
+    @Provides
+    fun provideThreadSnapshotDao(database: TbLiteDatabase): ThreadSnapshotDao = database.threadSnapshotDao()
+
     @Provides
     fun provideTimestampDao(database: TbLiteDatabase): TimestampDao = database.timestampDao()
 
+    @Provides
+    fun provideTransactionRunner(database: TbLiteDatabase): TransactionRunner = database.transactionRunnerDao()
+
     @Provides
     fun provideUserProfileDao(database: TbLiteDatabase): UserProfileDao = database.userProfileDao()
 }
@@ -3,6 +3,7 @@ package com.huanchengfly.tieba.post.models.database
 import androidx.room.Room
 import androidx.room.migration.Migration
 import androidx.room.testing.MigrationTestHelper
+import androidx.sqlite.db.SupportSQLiteDatabase
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.platform.app.InstrumentationRegistry
 import org.junit.Assert.assertEquals
@@ -81,6 +82,11 @@ private const val SchemaV1CreateUser = """
     )
 """
 
+private const val InsertAccount = """
+    INSERT INTO `account` (uid, name, bduss, tbs, portrait, sToken, cookie, sex, fans, posts, threads, concerned, tbAge, age, birthday_show, birthday_time, last_update)
+    VALUES (1, 'MyAccount', '', '', '', '', '', 1, '20', '999', '999', '999', '10', 0, 0, 0, 1769000000000)
+"""
+
 @Suppress("PrivatePropertyName")
 @RunWith(AndroidJUnit4::class)
 class MigrationTest {
@@ -172,6 +178,93 @@ class MigrationTest {
         cursor.close()
     }
 
+    @Test
+    @Throws(IOException::class)
+    fun migrate4To5_addSignProgressTable() {
+        helper.createDatabase(TEST_DB, 4).apply {
+            execSQL(InsertAccount)
+            close()
+        }
+
+        val db = helper.runMigrationsAndValidate(TEST_DB, version = 5, validateDroppedTables = true)
+        assertSameAsLatest(db, "sign_progress")
+        db.execSQL("INSERT INTO sign_progress (uid, forum_id, state, time) VALUES (1, 2001, 1, 1769000000000)")
+
+        // Checkpoints are removed with the account
+        db.execSQL("PRAGMA foreign_keys = ON")
+        db.execSQL("DELETE FROM account WHERE uid = 1")
+        val cursor = db.query("SELECT * FROM sign_progress")
+        assertEquals("Expected checkpoints of deleted account to be removed", 0, cursor.count)
+        cursor.close()
+    }
+
+    @Test
+    @Throws(IOException::class)
+    fun migrate5To6_addThreadSnapshotTable() {
+        helper.createDatabase(TEST_DB, 5).close()
+
+        val db = helper.runMigrationsAndValidate(TEST_DB, version = 6, validateDroppedTables = true)
+        assertSameAsLatest(db, "thread_snapshot")
+        db.execSQL("""
+            INSERT INTO thread_snapshot (uid, thread_id, see_lz, sort_type, page, min_post_id, max_post_id, pids, data, last_read)
+            VALUES (0, 1001, 0, 0, 1, 2001, 2030, '2001,2030', X'0A00', 1769000000000)
+        """.trimIndent())
+
+        val cursor = db.query("SELECT data FROM thread_snapshot WHERE thread_id = 1001")
+        assertTrue("Expected a row for thread_id=1001", cursor.moveToFirst())
+        assertEquals(2, cursor.getBlob(0).size)
+        cursor.close()
+    }
+
+    @Test
+    @Throws(IOException::class)
+    fun migrate6To7_addNotificationMessageTable() {
+        helper.createDatabase(TEST_DB, 6).apply {
+            execSQL(InsertAccount)
+            close()
+        }
+
+        val db = helper.runMigrationsAndValidate(TEST_DB, version = 7, validateDroppedTables = true)
+        assertSameAsLatest(db, "notification_message")
+        db.execSQL("""
+            INSERT INTO notification_message (uid, type, post_id, replyer_id, time, data)
+            VALUES (1, 0, 150000000000, 1000, 1769000000, '{}')
+        """.trimIndent())
+
+        // Inbox is removed with the account
+        db.execSQL("PRAGMA foreign_keys = ON")
+        db.execSQL("DELETE FROM account WHERE uid = 1")
+        val cursor = db.query("SELECT * FROM notification_message")
+        assertEquals("Expected messages of deleted account to be removed", 0, cursor.count)
+        cursor.close()
+    }
+
+    @Test
+    @Throws(IOException::class)
+    fun migrate7To8_addFtsTables() {
+        helper.createDatabase(TEST_DB, 7).apply {
+            execSQL("""
+                INSERT INTO thread_history (id, avatar, name, forum, title, is_see_lz, pid, timestamp)
+                VALUES (1001, '', 'TestUser', NULL, 'Kotlin 协程', 0, 0, 1769000000000)
+            """.trimIndent())
+            execSQL("INSERT INTO draft (threadId, postId, subpostId, content) VALUES (1001, 0, 0, 'Hello 贴吧')")
+            close()
+        }
+
+        val db = helper.runMigrationsAndValidate(TEST_DB, version = 8, validateDroppedTables = true)
+
+        // Existing rows are indexed with segmented text
+        var cursor = db.query("SELECT rowid FROM thread_history_fts WHERE thread_history_fts MATCH '\"协 程\" kotlin'")
+        assertTrue("Expected history to be indexed after migration", cursor.moveToFirst())
+        assertEquals(1001L, cursor.getLong(0))
+        cursor.close()
+
+        cursor = db.query("SELECT thread_id FROM draft_fts WHERE draft_fts MATCH '\"贴 吧\" hello'")
+        assertTrue("Expected draft to be indexed after migration", cursor.moveToFirst())
+        assertEquals(1001L, cursor.getLong(0))
+        cursor.close()
+    }
+
     @Test
     @Throws(IOException::class)
     fun migrateAll() {
@@ -190,4 +283,34 @@ class MigrationTest {
             openHelper.writableDatabase.close()
         }
     }
+
+    /**
+     * Assert [table] of the migrated [db] is created exactly like the compiled entity. The table is
+     * unchanged since it was added, so a mistake in the exported schema can't hide behind an auto
+     * migration generated from it.
+     */
+    private fun assertSameAsLatest(db: SupportSQLiteDatabase, table: String) {
+        val latest = Room.inMemoryDatabaseBuilder(
+            InstrumentationRegistry.getInstrumentation().targetContext,
+            TbLiteDatabase::class.java
+        ).build()
+        try {
+            assertEquals(
+                "Expected $table to match the latest schema",
+                schemaOf(latest.openHelper.writableDatabase, table),
+                schemaOf(db, table)
+            )
+        } finally {
+            latest.close()
+        }
+    }
+
+    private fun schemaOf(db: SupportSQLiteDatabase, table: String): List<String?> {
+        return db.query("SELECT sql FROM sqlite_master WHERE tbl_name = ? ORDER BY name", arrayOf(table)).use { cursor ->
+            List(cursor.count) {
+                cursor.moveToPosition(it)
+                cursor.getString(0)
+            }
+        }
+    }
 }
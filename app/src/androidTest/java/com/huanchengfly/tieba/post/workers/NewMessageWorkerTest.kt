@@ -12,6 +12,7 @@ import com.huanchengfly.tieba.post.api.models.MsgBean
 import com.huanchengfly.tieba.post.coroutines.runTest
 import com.huanchengfly.tieba.post.models.database.TbLiteDatabase
 import com.huanchengfly.tieba.post.repository.HomeRepository
+import com.huanchengfly.tieba.post.repository.NotificationRepository
 import com.huanchengfly.tieba.post.repository.source.TestData
 import com.huanchengfly.tieba.post.repository.source.network.HomeNetworkDataSource
 import com.huanchengfly.tieba.post.repository.source.network.HomeNetworkFakeDataSource
@@ -27,9 +28,12 @@ import org.junit.Test
 import org.junit.runner.RunWith
 import javax.inject.Inject
 
-private class NewMessageWorkerFactory(val homeRepository: HomeRepository) : WorkerFactory() {
+private class NewMessageWorkerFactory(
+    val homeRepository: HomeRepository,
+    val notificationRepository: NotificationRepository
+) : WorkerFactory() {
     override fun createWorker(appContext: Context, workerClassName: String, workerParameters: WorkerParameters): ListenableWorker? {
-        return NewMessageWorker(appContext, workerParameters, homeRepository)
+        return NewMessageWorker(appContext, workerParameters, homeRepository, notificationRepository)
     }
 }
 
@@ -44,6 +48,7 @@ class NewMessageWorkerTest {
     @Inject lateinit var tbLiteDatabase: TbLiteDatabase
     @Inject lateinit var settingsRepo: SettingsRepository
     @Inject lateinit var homeRepository: HomeRepository
+    @Inject lateinit var notificationRepository: NotificationRepository
     @Inject lateinit var _networkDataSource: HomeNetworkDataSource
     val networkDataSource: HomeNetworkFakeDataSource
         get() = _networkDataSource as HomeNetworkFakeDataSource
@@ -54,7 +59,7 @@ class NewMessageWorkerTest {
     fun setUp() {
         hiltRule.inject()
         tbLiteDatabase.clearAllTables()
-        workerFactory = NewMessageWorkerFactory(homeRepository)
+        workerFactory = NewMessageWorkerFactory(homeRepository, notificationRepository)
         // Simulate user login
         TestData.insertAccount(database = tbLiteDatabase, settingsRepository = settingsRepo)
     }
@@ -16,6 +16,7 @@ import androidx.compose.runtime.ExperimentalComposeRuntimeApi
 import androidx.hilt.work.HiltWorkerFactory
 import androidx.work.Configuration
 import com.huanchengfly.tieba.post.activities.CrashActivity
+import com.huanchengfly.tieba.post.components.AppStartup
 import com.huanchengfly.tieba.post.components.ConfigInitializer
 import com.huanchengfly.tieba.post.di.RepositoryEntryPoint
 import com.huanchengfly.tieba.post.repository.user.SettingsRepository
@@ -46,6 +47,13 @@ class App : Application(), Configuration.Provider {
 
     @Inject lateinit var workerFactory: HiltWorkerFactory
 
+    /**
+     * Startup initializers running in background, await the required one before use.
+     *
+     * @see [AppStartup.CONFIG]
+     * */
+    val startup = AppStartup(AppBackgroundScope)
+
     override val workManagerConfiguration: Configuration
         get() = Configuration.Builder()
             .setWorkerFactory(workerFactory)
@@ -77,14 +85,16 @@ class App : Application(), Configuration.Provider {
         if (processName?.endsWith("error_handler") == true) return
 
         setupUncaughtExceptionHandler(this)
-        configInit.init()
+        // Must be set before ConfigInitializer loads WebView
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
             if (processName != null && packageName != processName) { //判断不等于默认进程名称
                 WebView.setDataDirectorySuffix(processName)
             }
         }
+        // Blocks on DataStore, WebView provider and OAID service, awaited by the first request
+        startup.task(AppStartup.CONFIG) { configInit.init() }
+        startup.task(AppStartup.EMOTICON) { EmoticonManager.init(this).join() }
         AppCompatDelegate.setDefaultNightMode(AppCompatDelegate.MODE_NIGHT_FOLLOW_SYSTEM)
-        EmoticonManager.init(this)
         Composer.setDiagnosticStackTraceEnabled(BuildConfig.DEBUG)
     }
 
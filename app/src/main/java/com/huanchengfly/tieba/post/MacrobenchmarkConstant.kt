@@ -20,6 +20,29 @@ object MacrobenchmarkConstant {
 
     const val TRACE_FEED_CARD = "FeedCardTrace"
 
+    // Async trace sections of every HTTP call, see NetworkMetrics
+    const val TRACE_HTTP_DNS = "HttpDns"
+
+    const val TRACE_HTTP_CONNECT = "HttpConnect"
+
+    const val TRACE_HTTP_TLS = "HttpTls"
+
+    const val TRACE_HTTP_TTFB = "HttpTtfb"
+
+    const val TRACE_HTTP_BODY = "HttpBody"
+
+    // Async trace sections of startup initializers, see AppStartup
+    const val TRACE_STARTUP_CONFIG = "StartupConfig"
+
+    const val TRACE_STARTUP_EMOTICON = "StartupEmoticon"
+
+    // Trace sections of the MVI pipeline, suffixed with ViewModel name, see TraceInstrumentation
+    const val TRACE_VM_REDUCE = "VmReduce"
+
+    const val TRACE_VM_STATE = "VmState"
+
+    const val TRACE_VM_DROPPED = "VmDropped"
+
     /**
      * Applies [TAG_COLUMN] to allow modified column to be found in tests.
      *
@@ -19,6 +19,8 @@ object Error {
     const val ERROR_UPDATE_NOT_ENABLE = 100
     const val ERROR_ACCOUNT_BLOCKED = 220012
     const val ERROR_POST_NOMORE = 350006
+    const val ERROR_SIGN_ALREADY = 160002
+    const val ERROR_SIGN_TOO_FAST = 340011
 }
 
 object Header {
@@ -57,6 +59,16 @@ object Header {
     const val CLIENT_USER_TOKEN = "client_user_token"
     const val CLIENT_LOG_ID = "client_logid"
     const val X_BD_DATA_TYPE = "x_bd_data_type"
+
+    /**
+     * Response header set by ProtobufCacheInterceptor, status of the local protobuf cache
+     * */
+    const val TB_CACHE = "tb_cache"
+
+    /**
+     * Response header set by ProtobufCacheInterceptor on stale responses, key of the revalidation
+     * */
+    const val TB_CACHE_KEY = "tb_cache_key"
 }
 
 
@@ -0,0 +1,149 @@
+package com.huanchengfly.tieba.post.api
+
+import com.huanchengfly.tieba.post.App
+import com.huanchengfly.tieba.post.api.models.OAID
+import com.huanchengfly.tieba.post.components.AppStartup
+import com.huanchengfly.tieba.post.models.database.Account
+import com.huanchengfly.tieba.post.toJson
+import com.huanchengfly.tieba.post.utils.AccountUtil
+import com.huanchengfly.tieba.post.utils.CacheUtil.base64Encode
+import com.huanchengfly.tieba.post.utils.ClientUtils
+import com.huanchengfly.tieba.post.utils.CuidUtils
+import com.huanchengfly.tieba.post.utils.DateTimeUtils
+import com.huanchengfly.tieba.post.utils.DeviceUtils
+import com.huanchengfly.tieba.post.utils.MobileInfoUtil
+import com.huanchengfly.tieba.post.utils.UIDUtil
+import java.text.SimpleDateFormat
+import java.util.Calendar
+import java.util.Locale
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Immutable snapshot of device and session parameters shared by all requests.
+ *
+ * These values are expensive to compute: hashing CUIDs, reading cpu frequencies, serializing OAID,
+ * blocking account lookup. They're computed once and rebuilt only after [invalidate] (account
+ * switched, OAID arrived, client config synced) or a day change.
+ *
+ * @param version version of this snapshot, changed on every [invalidate]
+ * @param expireAt start of the next day, [eventDay] is outdated since then
+ * */
+class ParamSnapshot private constructor(
+    val version: Int,
+    val expireAt: Long,
+    val bduss: String?,
+    val sToken: String?,
+    val uid: String?,
+    val zid: String?,
+    val clientId: String?,
+    val baiduId: String?,
+    val sampleId: String?,
+    val activeTimestamp: Long,
+    val cuid: String,
+    val finalCuid: String,
+    val aid: String,
+    val androidId: String,
+    val imei: String,
+    val deviceScore: String,
+    val encodedOAID: String,
+    val oaid: String,
+    val eventDay: String,
+) {
+    /**
+     * [androidId] in Base64
+     * */
+    val encodedAndroidId: String = base64Encode(androidId)
+
+    companion object {
+
+        private val version = AtomicInteger()
+
+        @Volatile
+        private var snapshot: ParamSnapshot? = null
+
+        /**
+         * Current account handed over by [invalidate] before it's published to
+         * [AccountUtil.currentAccount]
+         * */
+        @Volatile
+        private var account: Account? = null
+
+        // Device parameters never change, compute them only once
+        private val deviceScore: String by lazy { "${DeviceUtils.getDeviceScore()}" }
+
+        private val newCuid: String by lazy { CuidUtils.getNewCuid() }
+
+        private val finalCuid: String by lazy { UIDUtil.finalCUID }
+
+        private val aid: String by lazy { UIDUtil.getAid() }
+
+        fun current(): ParamSnapshot {
+            val cached = snapshot
+            if (cached != null && cached.version == version.get() && System.currentTimeMillis() < cached.expireAt) {
+                return cached
+            }
+            return synchronized(this) {
+                val current = snapshot
+                if (current != null && current.version == version.get() && System.currentTimeMillis() < current.expireAt) {
+                    current
+                } else {
+                    create(version.get()).also { snapshot = it }
+                }
+            }
+        }
+
+        /**
+         * Version of the next [current] snapshot, changed on every [invalidate]
+         * */
+        val currentVersion: Int
+            get() = version.get()
+
+        /**
+         * Rebuild the snapshot on next [current]
+         * */
+        fun invalidate() {
+            version.incrementAndGet()
+        }
+
+        /**
+         * Rebuild the snapshot with switched [account] on next [current], called before the account
+         * is published so no request can see the new account with parameters of the previous one.
+         * */
+        fun invalidate(account: Account?) {
+            this.account = account
+            invalidate()
+        }
+
+        private fun create(version: Int): ParamSnapshot {
+            // Client config is initialized in background on startup
+            App.INSTANCE.startup.awaitBlocking(AppStartup.CONFIG)
+            // Wait for the first account, later ones are handed over by invalidate(account)
+            AccountUtil.getLoginInfo()
+            val account = account
+            val calendar = Calendar.getInstance()
+            val eventDay = SimpleDateFormat("yyyyMdd", Locale.getDefault()).format(calendar.time)
+            val expireAt = DateTimeUtils.todayTimeMill(calendar.apply { add(Calendar.DAY_OF_MONTH, 1) })
+            return ParamSnapshot(
+                version = version,
+                expireAt = expireAt,
+                bduss = account?.bduss,
+                sToken = account?.sToken,
+                uid = account?.uid?.toString(),
+                zid = account?.zid,
+                clientId = ClientUtils.clientId,
+                baiduId = ClientUtils.baiduId,
+                sampleId = ClientUtils.sampleId,
+                activeTimestamp = ClientUtils.activeTimestamp,
+                cuid = newCuid,
+                finalCuid = finalCuid,
+                aid = aid,
+                androidId = UIDUtil.getAndroidId("000"),
+                imei = MobileInfoUtil.getIMEI(App.INSTANCE),
+                deviceScore = deviceScore,
+                encodedOAID = App.Config.encodedOAID,
+                oaid = OAID().toJson(),
+                eventDay = eventDay
+            )
+        }
+    }
+}
@@ -1,27 +1,15 @@
 package com.huanchengfly.tieba.post.api
 
-import android.content.Context
 import android.os.Build
 import com.huanchengfly.tieba.post.App
-import com.huanchengfly.tieba.post.api.models.OAID
 import com.huanchengfly.tieba.post.api.models.protos.AppPosInfo
 import com.huanchengfly.tieba.post.api.models.protos.CommonRequest
 import com.huanchengfly.tieba.post.api.models.protos.frsPage.AdParam
 import com.huanchengfly.tieba.post.api.retrofit.RetrofitTiebaApi
 import com.huanchengfly.tieba.post.api.retrofit.body.MyMultipartBody
-import com.huanchengfly.tieba.post.toJson
 import com.huanchengfly.tieba.post.utils.AccountUtil
-import com.huanchengfly.tieba.post.utils.CacheUtil.base64Encode
-import com.huanchengfly.tieba.post.utils.ClientUtils
-import com.huanchengfly.tieba.post.utils.CuidUtils
-import com.huanchengfly.tieba.post.utils.DeviceUtils
-import com.huanchengfly.tieba.post.utils.MobileInfoUtil
-import com.huanchengfly.tieba.post.utils.UIDUtil
 import com.squareup.wire.Message
 import okhttp3.RequestBody.Companion.toRequestBody
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.Locale
 
 const val BOUNDARY = "--------7da3d81520810*"
 
@@ -67,61 +55,103 @@ fun buildAppPosInfo(): AppPosInfo {
     )
 }
 
+/**
+ * [CommonRequest] templates built from [snapshot], indexed by [ClientVersion.ordinal]
+ * */
+private class CommonRequestTemplates(val snapshot: ParamSnapshot) {
+    val requests = arrayOfNulls<CommonRequest>(ClientVersion.entries.size)
+}
+
+@Volatile
+private var commonRequestTemplates: CommonRequestTemplates? = null
+
+private fun commonRequestTemplate(clientVersion: ClientVersion): CommonRequest {
+    val snapshot = ParamSnapshot.current()
+    val templates = commonRequestTemplates?.takeIf { it.snapshot === snapshot }
+        ?: CommonRequestTemplates(snapshot).also { commonRequestTemplates = it }
+    // Racing writers produce identical templates, no need to lock
+    return templates.requests[clientVersion.ordinal]
+        ?: createCommonRequest(snapshot, clientVersion).also { templates.requests[clientVersion.ordinal] = it }
+}
+
+/**
+ * Build [CommonRequest] from the cached template of current [ParamSnapshot], only timestamp,
+ * screen info and the given overrides are filled on each call.
+ * */
 fun buildCommonRequest(
-    context: Context = App.INSTANCE,
     clientVersion: ClientVersion = ClientVersion.TIEBA_V11,
     bduss: String? = null,
     stoken: String? = null,
     tbs: String? = null,
-): CommonRequest = when (clientVersion) {
+): CommonRequest {
+    val template = commonRequestTemplate(clientVersion)
+    return when (clientVersion) {
+        ClientVersion.TIEBA_V11 -> template.copy(
+            BDUSS = bduss ?: template.BDUSS,
+            _timestamp = System.currentTimeMillis(),
+            stoken = stoken ?: template.stoken
+        )
+
+        ClientVersion.TIEBA_V12 -> template.copy(
+            _timestamp = System.currentTimeMillis(),
+            scr_dip = App.ScreenInfo.DENSITY.toDouble(),
+            scr_h = getScreenHeight(),
+            scr_w = getScreenWidth()
+        )
+
+        ClientVersion.TIEBA_V12_POST -> template.copy(
+            _timestamp = System.currentTimeMillis(),
+            scr_dip = App.ScreenInfo.DENSITY.toDouble(),
+            scr_h = getScreenHeight(),
+            scr_w = getScreenWidth(),
+            tbs = tbs
+        )
+    }
+}
+
+private fun createCommonRequest(params: ParamSnapshot, clientVersion: ClientVersion): CommonRequest = when (clientVersion) {
     ClientVersion.TIEBA_V11 -> {
         CommonRequest(
-            BDUSS = bduss ?: AccountUtil.getBduss(),
-            _client_id = ClientUtils.clientId ?: RetrofitTiebaApi.randomClientId,
+            BDUSS = params.bduss,
+            _client_id = params.clientId ?: RetrofitTiebaApi.randomClientId,
             _client_type = 2,
             _client_version = clientVersion.version,
             _os_version = "${Build.VERSION.SDK_INT}",
-            _phone_imei = MobileInfoUtil.getIMEI(context),
-            _timestamp = System.currentTimeMillis(),
+            _phone_imei = params.imei,
             brand = Build.BRAND,
-            c3_aid = UIDUtil.getAid(),
-            cuid = CuidUtils.getNewCuid(),
-            cuid_galaxy2 = CuidUtils.getNewCuid(),
+            c3_aid = params.aid,
+            cuid = params.cuid,
+            cuid_galaxy2 = params.cuid,
             cuid_gid = "",
             from = "1024324o",
             is_teenager = 0,
             lego_lib_version = "3.0.0",
             model = Build.MODEL,
             net_type = 1,
-            oaid = OAID().toJson(),
+            oaid = params.oaid,
             pversion = "1.0.3",
-            sample_id = ClientUtils.sampleId,
-            stoken = stoken ?: AccountUtil.getSToken(),
+            sample_id = params.sampleId,
+            stoken = params.sToken,
         )
     }
 
     ClientVersion.TIEBA_V12 -> {
         CommonRequest(
-            BDUSS = AccountUtil.getBduss(),
-            _client_id = ClientUtils.clientId ?: RetrofitTiebaApi.randomClientId,
+            BDUSS = params.bduss,
+            _client_id = params.clientId ?: RetrofitTiebaApi.randomClientId,
             _client_type = 2,
             _client_version = clientVersion.version,
             _os_version = "${Build.VERSION.SDK_INT}",
-            _phone_imei = MobileInfoUtil.getIMEI(context),
-            _timestamp = System.currentTimeMillis(),
-            active_timestamp = ClientUtils.activeTimestamp,
-            android_id = base64Encode(UIDUtil.getAndroidId("000")),
+            _phone_imei = params.imei,
+            active_timestamp = params.activeTimestamp,
+            android_id = params.encodedAndroidId,
             brand = Build.BRAND,
-            c3_aid = UIDUtil.getAid(),
+            c3_aid = params.aid,
             cmode = 1,
-            cuid = CuidUtils.getNewCuid(),
-            cuid_galaxy2 = CuidUtils.getNewCuid(),
+            cuid = params.cuid,
+            cuid_galaxy2 = params.cuid,
             cuid_gid = "",
-            event_day = SimpleDateFormat("yyyyMdd", Locale.getDefault()).format(
-                Date(
-                    System.currentTimeMillis()
-                )
-            ),
+            event_day = params.eventDay,
             extra = "",
             first_install_time = App.Config.appFirstInstallTime,
             framework_ver = "3340042",
@@ -135,44 +165,36 @@ fun buildCommonRequest(
             personalized_rec_switch = 1,
             pversion = "1.0.3",
             q_type = 0,
-            sample_id = ClientUtils.sampleId,
-            scr_dip = App.ScreenInfo.DENSITY.toDouble(),
-            scr_h = getScreenHeight(),
-            scr_w = getScreenWidth(),
+            sample_id = params.sampleId,
             sdk_ver = "2.34.0",
             start_scheme = "",
             start_type = 1,
-            stoken = AccountUtil.getSToken(),
+            stoken = params.sToken,
             swan_game_ver = "1038000",
             user_agent = getUserAgent("tieba/${clientVersion.version}"),
-            z_id = AccountUtil.getAccountInfo { zid }
+            z_id = params.zid
         )
     }
 
     ClientVersion.TIEBA_V12_POST -> {
         CommonRequest(
-            BDUSS = AccountUtil.getBduss(),
-            _client_id = ClientUtils.clientId ?: RetrofitTiebaApi.randomClientId,
+            BDUSS = params.bduss,
+            _client_id = params.clientId ?: RetrofitTiebaApi.randomClientId,
             _client_type = 2,
             _client_version = clientVersion.version,
             _os_version = "${Build.VERSION.SDK_INT}", // TODO
-            _phone_imei = MobileInfoUtil.getIMEI(context),
-            _timestamp = System.currentTimeMillis(),
-            active_timestamp = ClientUtils.activeTimestamp,
-            android_id = UIDUtil.getAndroidId("000"),
+            _phone_imei = params.imei,
+            active_timestamp = params.activeTimestamp,
+            android_id = params.androidId,
             applist = "",
             brand = Build.BRAND,
-            c3_aid = UIDUtil.getAid(),
+            c3_aid = params.aid,
             cmode = 1,
-            cuid = CuidUtils.getNewCuid(),
-            cuid_galaxy2 = CuidUtils.getNewCuid(),
+            cuid = params.cuid,
+            cuid_galaxy2 = params.cuid,
             cuid_gid = "",
-            device_score = "${DeviceUtils.getDeviceScore()}",
-            event_day = SimpleDateFormat("yyyyMdd", Locale.getDefault()).format(
-                Date(
-                    System.currentTimeMillis()
-                )
-            ),
+            device_score = params.deviceScore,
+            event_day = params.eventDay,
             extra = "",
             first_install_time = App.Config.appFirstInstallTime,
             framework_ver = "3340042",
@@ -182,22 +204,18 @@ fun buildCommonRequest(
             lego_lib_version = "3.0.0",
             model = Build.MODEL,
             net_type = 1,
-            oaid = App.Config.encodedOAID,
+            oaid = params.encodedOAID,
             personalized_rec_switch = 1,
             pversion = "1.0.3",
             q_type = 0,
-            sample_id = ClientUtils.sampleId,
-            scr_dip = App.ScreenInfo.DENSITY.toDouble(),
-            scr_h = getScreenHeight(),
-            scr_w = getScreenWidth(),
+            sample_id = params.sampleId,
             sdk_ver = "2.34.0",
             start_scheme = "",
             start_type = 1,
-            stoken = AccountUtil.getSToken(),
+            stoken = params.sToken,
             swan_game_ver = "1038000",
-            tbs = tbs,
             user_agent = getUserAgent("tieba/${clientVersion.version}"),
-            z_id = AccountUtil.getAccountInfo { zid }
+            z_id = params.zid
         )
     }
 }
\ No newline at end of file
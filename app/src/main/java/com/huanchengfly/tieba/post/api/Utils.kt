@@ -4,12 +4,20 @@ package com.huanchengfly.tieba.post.api
 
 import com.huanchengfly.tieba.post.App
 import com.huanchengfly.tieba.post.App.ScreenInfo
+import com.huanchengfly.tieba.post.components.AppStartup
 
 
 private val defaultUserAgent: String =
     "Mozilla/5.0 (Linux; Android 10; K) AppleWebKit/537.36 (KHTML, like Gecko) Version/4.0 Chrome/135.0.0.0 Mobile Safari/537.36"
 
+/**
+ * User agent of the system WebView, waits for [AppStartup.CONFIG] to read it.
+ *
+ * @param appendString appended after the user agent, separated with a space
+ * */
 fun getUserAgent(appendString: String? = null): String {
+    // Default user agent of WebView is read in background on startup
+    App.INSTANCE.startup.awaitBlocking(AppStartup.CONFIG)
     val append = " ${appendString?.trim()}".takeIf { !appendString.isNullOrEmpty() }.orEmpty()
     return "${App.Config.userAgent ?: defaultUserAgent}$append"
 }
@@ -1287,13 +1287,15 @@ interface ITiebaApi {
      * @param loadType 加载类型（1 - 下拉刷新 2 - 加载更多）
      * @param sortType 排序
      * @param goodClassifyId 精品贴分类
+     * @param forceRefresh 跳过本地缓存
      */
     fun frsPage(
         forumName: String,
         page: Int,
         loadType: Int,
         sortType: Int,
-        goodClassifyId: Int? = null
+        goodClassifyId: Int? = null,
+        forceRefresh: Boolean = false
     ): Flow<FrsPageResponse>
 
     /**
@@ -1344,9 +1346,11 @@ interface ITiebaApi {
      * 用户信息（Flow）
      *
      * @param uid 用户 ID
+     * @param forceRefresh 跳过本地缓存
      */
     fun userProfileFlow(
-        uid: Long
+        uid: Long,
+        forceRefresh: Boolean = false
     ): Flow<ProfileResponse>
 
     /**
@@ -1362,6 +1366,7 @@ interface ITiebaApi {
      * @param stType 来源类型（？）
      * @param mark 是否收藏
      * @param lastPostId 最后一条回复 ID
+     * @param forceRefresh 跳过本地缓存
      */
     fun pbPageFlow(
         threadId: Long,
@@ -1374,6 +1379,7 @@ interface ITiebaApi {
         stType: String = "",
         mark: Int = 0,
         lastPostId: Long? = null,
+        forceRefresh: Boolean = false,
     ): Flow<PbPageResponse>
 
     /**
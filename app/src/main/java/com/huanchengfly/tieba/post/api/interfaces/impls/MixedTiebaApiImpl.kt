@@ -117,6 +117,7 @@ import com.huanchengfly.tieba.post.api.models.web.ForumHome
 import com.huanchengfly.tieba.post.api.models.web.HotMessageListBean
 import com.huanchengfly.tieba.post.api.retrofit.ApiResult
 import com.huanchengfly.tieba.post.api.retrofit.RetrofitTiebaApi
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCacheInterceptor
 import com.huanchengfly.tieba.post.api.retrofit.body.MyMultipartBody
 import com.huanchengfly.tieba.post.api.urlEncode
 import com.huanchengfly.tieba.post.models.DislikeBean
@@ -1033,7 +1034,8 @@ object MixedTiebaApiImpl : ITiebaApi {
         page: Int,
         loadType: Int,
         sortType: Int,
-        goodClassifyId: Int?
+        goodClassifyId: Int?,
+        forceRefresh: Boolean
     ): Flow<FrsPageResponse> {
         return RetrofitTiebaApi.OFFICIAL_PROTOBUF_TIEBA_V12_API.frsPageFlow(
             buildProtobufRequestBody(
@@ -1072,7 +1074,8 @@ object MixedTiebaApiImpl : ITiebaApi {
                 ),
                 clientVersion = ClientVersion.TIEBA_V12
             ),
-            forumName = forumName.urlEncode()
+            forumName = forumName.urlEncode(),
+            cacheControl = ProtobufCacheInterceptor.NO_CACHE.takeIf { forceRefresh }
         )
     }
 
@@ -1170,7 +1173,7 @@ object MixedTiebaApiImpl : ITiebaApi {
             )
     }
 
-    override fun userProfileFlow(uid: Long): Flow<ProfileResponse> {
+    override fun userProfileFlow(uid: Long, forceRefresh: Boolean): Flow<ProfileResponse> {
         val selfUid = AccountUtil.getUid()?.toLongOrNull()
         val isSelf = selfUid == uid
         return RetrofitTiebaApi.OFFICIAL_PROTOBUF_TIEBA_V12_API.profileFlow(
@@ -1195,7 +1198,8 @@ object MixedTiebaApiImpl : ITiebaApi {
                     )
                 ),
                 clientVersion = ClientVersion.TIEBA_V12
-            )
+            ),
+            cacheControl = ProtobufCacheInterceptor.NO_CACHE.takeIf { forceRefresh }
         )
     }
 
@@ -1210,6 +1214,7 @@ object MixedTiebaApiImpl : ITiebaApi {
         stType: String,
         mark: Int,
         lastPostId: Long?,
+        forceRefresh: Boolean,
     ): Flow<PbPageResponse> {
         return RetrofitTiebaApi.OFFICIAL_PROTOBUF_TIEBA_V12_API.pbPageFlow(
             buildProtobufRequestBody(
@@ -1264,7 +1269,8 @@ object MixedTiebaApiImpl : ITiebaApi {
                     )
                 ),
                 clientVersion = ClientVersion.TIEBA_V12
-            )
+            ),
+            cacheControl = ProtobufCacheInterceptor.NO_CACHE.takeIf { forceRefresh }
         )
     }
 
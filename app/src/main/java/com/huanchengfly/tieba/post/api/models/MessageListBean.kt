@@ -1,106 +1,124 @@
 package com.huanchengfly.tieba.post.api.models
 
-import com.google.gson.annotations.JsonAdapter
-import com.google.gson.annotations.SerializedName
-import com.huanchengfly.tieba.post.api.adapters.MessageListAdapter
-import com.huanchengfly.tieba.post.api.adapters.PortraitAdapter
 import com.huanchengfly.tieba.post.models.BaseBean
-
-class MessageListBean : BaseBean() {
-    @SerializedName("error_code")
-    val errorCode: String? = null
-    val time: Long = 0
-
-    @JsonAdapter(MessageListAdapter::class)
-    @SerializedName("reply_list")
-    val replyList: List<MessageInfoBean>? = null
-
-    @JsonAdapter(MessageListAdapter::class)
-    @SerializedName("at_list")
-    val atList: List<MessageInfoBean>? = null
-    val page: PageInfoBean? = null
-    val message: MessageBean? = null
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.builtins.ListSerializer
+import kotlinx.serialization.json.JsonArray
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.JsonTransformingSerializer
+
+@Serializable
+class MessageListBean(
+    @SerialName("error_code")
+    val errorCode: String? = null,
+    val time: Long = 0,
+
+    @Serializable(with = MessageInfoListSerializer::class)
+    @SerialName("reply_list")
+    val replyList: List<MessageInfoBean>? = null,
+
+    @Serializable(with = MessageInfoListSerializer::class)
+    @SerialName("at_list")
+    val atList: List<MessageInfoBean>? = null,
+    val page: PageInfoBean? = null,
+    val message: MessageBean? = null,
+) : BaseBean() {
 
     fun getErrorCode(): Int = Integer.valueOf(errorCode!!)
 
+    @Serializable
     data class UserInfoBean(
         val id: String? = null,
         val name: String? = null,
 
-        @SerializedName("name_show")
+        @SerialName("name_show")
         val nameShow: String? = null,
 
-        @JsonAdapter(PortraitAdapter::class)
         val portrait: String? = null,
     )
 
+    @Serializable
     data class ReplyerInfoBean(
         val id: String? = null,
         val name: String? = null,
-        @SerializedName("name_show")
+        @SerialName("name_show")
         val nameShow: String? = null,
-        @JsonAdapter(PortraitAdapter::class)
         val portrait: String? = null,
-        @SerializedName("is_friend")
+        @SerialName("is_friend")
         val isFriend: String? = null,
-        @SerializedName("is_fans")
+        @SerialName("is_fans")
         val isFans: String? = null,
     )
 
+    @Serializable
     data class MessageInfoBean(
-        @SerializedName("is_floor")
+        @SerialName("is_floor")
         val isFloor: String? = null,
         val title: String? = null,
         val content: String? = null,
 
-        @SerializedName("quote_content")
+        @SerialName("quote_content")
         //有时候会引用的回复楼，有时候引用的楼中楼
         val quoteContent: String? = null,
         val replyer: ReplyerInfoBean? = null,
 
-        @SerializedName("quote_user")
+        @SerialName("quote_user")
         val quoteUser: UserInfoBean? = null,
 
-        @SerializedName("thread_id")
+        @SerialName("thread_id")
         val threadId: String? = null,
 
-        @SerializedName("post_id")
+        @SerialName("post_id")
         val postId: String? = null,
         val time: String? = null,
 
-        @SerializedName("fname")
+        @SerialName("fname")
         val forumName: String? = null,
 
-        @SerializedName("quote_pid")
+        @SerialName("quote_pid")
         val quotePid: String? = null,
 
-        @SerializedName("thread_type")
+        @SerialName("thread_type")
         val threadType: String? = null,
         val unread: String? = null,
     )
 
-    class MessageBean {
-        @SerializedName("replyme")
-        val replyMe: String? = null
-
-        @SerializedName("atme")
-        val atMe: String? = null
-        val fans: String? = null
-        val recycle: String? = null
+    @Serializable
+    class MessageBean(
+        @SerialName("replyme")
+        val replyMe: String? = null,
 
-        @SerializedName("storethread")
-        val storeThread: String? = null
+        @SerialName("atme")
+        val atMe: String? = null,
+        val fans: String? = null,
+        val recycle: String? = null,
 
-    }
+        @SerialName("storethread")
+        val storeThread: String? = null,
+    )
 
-    class PageInfoBean {
-        @SerializedName("current_page")
-        val currentPage: String? = null
+    @Serializable
+    class PageInfoBean(
+        @SerialName("current_page")
+        val currentPage: String? = null,
 
-        @SerializedName("has_more")
-        val hasMore: String? = null
+        @SerialName("has_more")
+        val hasMore: String? = null,
 
-        @SerializedName("has_prev")
-        val hasPrev: String? = null
+        @SerialName("has_prev")
+        val hasPrev: String? = null,
+    )
+}
+
+/**
+ * Baidu returns empty string instead of empty array when there is no message
+ * */
+private object MessageInfoListSerializer : JsonTransformingSerializer<List<MessageListBean.MessageInfoBean>>(
+    ListSerializer(MessageListBean.MessageInfoBean.serializer())
+) {
+    override fun transformDeserialize(element: JsonElement): JsonElement {
+        return if (element is JsonPrimitive) JsonArray(emptyList()) else element
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package com.huanchengfly.tieba.post.api.retrofit
+
+import androidx.tracing.Trace
+import com.huanchengfly.tieba.post.MacrobenchmarkConstant
+import okhttp3.Call
+import okhttp3.EventListener
+import okhttp3.Handshake
+import okhttp3.Protocol
+import java.io.IOException
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Records DNS, connect, TLS, TTFB and body timings of every call per endpoint.
+ *
+ * Each phase is also emitted as an async trace section, see [MacrobenchmarkConstant.TRACE_HTTP_DNS].
+ * */
+object NetworkMetrics : EventListener.Factory {
+
+    enum class Phase(val traceName: String) {
+        DNS(MacrobenchmarkConstant.TRACE_HTTP_DNS),
+        CONNECT(MacrobenchmarkConstant.TRACE_HTTP_CONNECT),
+        TLS(MacrobenchmarkConstant.TRACE_HTTP_TLS),
+        TTFB(MacrobenchmarkConstant.TRACE_HTTP_TTFB),
+        BODY(MacrobenchmarkConstant.TRACE_HTTP_BODY);
+    }
+
+    /**
+     * Immutable metrics of an endpoint, all durations are in milliseconds.
+     * */
+    class EndpointSnapshot(
+        val endpoint: String,
+        val calls: Int,
+        val failures: Int,
+        val connections: Int,
+        val averages: Map<Phase, Long>,
+        val max: Map<Phase, Long>,
+    )
+
+    private class EndpointMetrics {
+        private val sum = LongArray(Phase.entries.size)
+        private val count = IntArray(Phase.entries.size)
+        private val max = LongArray(Phase.entries.size)
+        private var calls = 0
+        private var failures = 0
+        private var connections = 0
+
+        @Synchronized
+        fun record(durations: LongArray, failed: Boolean) {
+            calls++
+            if (failed) failures++
+            // Connect phase is skipped when a pooled connection is reused
+            if (durations[Phase.CONNECT.ordinal] >= 0) connections++
+            for (i in durations.indices) {
+                val duration = durations[i]
+                if (duration < 0) continue
+                sum[i] += duration
+                count[i]++
+                if (duration > max[i]) max[i] = duration
+            }
+        }
+
+        @Synchronized
+        fun snapshot(endpoint: String) = EndpointSnapshot(
+            endpoint = endpoint,
+            calls = calls,
+            failures = failures,
+            connections = connections,
+            averages = Phase.entries.associateWith { if (count[it.ordinal] == 0) 0 else sum[it.ordinal] / count[it.ordinal] / NANOS_PER_MS },
+            max = Phase.entries.associateWith { max[it.ordinal] / NANOS_PER_MS }
+        )
+    }
+
+    private const val NANOS_PER_MS = 1_000_000L
+
+    private val sectionId = AtomicInteger()
+
+    private val endpoints = ConcurrentHashMap<String, EndpointMetrics>()
+
+    override fun create(call: Call): EventListener = CallMetricsListener()
+
+    /**
+     * @return metrics of all endpoints, sorted by call count
+     * */
+    fun snapshot(): List<EndpointSnapshot> = endpoints
+        .map { (endpoint, metrics) -> metrics.snapshot(endpoint) }
+        .sortedByDescending { it.calls }
+
+    fun reset() = endpoints.clear()
+
+    /**
+     * @param cookie unique cookie of the async trace section
+     * */
+    private class Section(val phase: Phase, val cookie: Int, val startNanos: Long)
+
+    /**
+     * Events of one call may come from several threads: fast fallback races connect attempts to
+     * different addresses concurrently, so every open section is tracked under [lock].
+     * */
+    private class CallMetricsListener : EventListener() {
+        private val lock = Any()
+        // Open sections keyed by phase, connect attempts are keyed by their address
+        private val open = HashMap<Any, Section>(Phase.entries.size)
+        private val durations = LongArray(Phase.entries.size) { -1L }
+
+        private fun begin(phase: Phase, key: Any = phase) {
+            val section = Section(phase, cookie = sectionId.incrementAndGet(), startNanos = System.nanoTime())
+            val replaced = synchronized(lock) { open.put(key, section) }
+            replaced?.let { Trace.endAsyncSection(it.phase.traceName, it.cookie) }
+            Trace.beginAsyncSection(phase.traceName, section.cookie)
+        }
+
+        /**
+         * @param succeed record duration of this section, failed attempts only close the trace section
+         * @return false if no such section is open
+         * */
+        private fun end(key: Any, succeed: Boolean = true): Boolean {
+            val endNanos = System.nanoTime()
+            val section = synchronized(lock) {
+                open.remove(key)?.also {
+                    if (succeed) durations[it.phase.ordinal] = endNanos - it.startNanos
+                }
+            } ?: return false
+            Trace.endAsyncSection(section.phase.traceName, section.cookie)
+            return true
+        }
+
+        private fun isOpen(key: Any): Boolean = synchronized(lock) { open.containsKey(key) }
+
+        override fun dnsStart(call: Call, domainName: String) = begin(Phase.DNS)
+
+        override fun dnsEnd(call: Call, domainName: String, inetAddressList: List<InetAddress>) {
+            end(Phase.DNS)
+        }
+
+        override fun connectStart(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy) {
+            begin(Phase.CONNECT, key = inetSocketAddress)
+        }
+
+        override fun secureConnectStart(call: Call) = begin(Phase.TLS)
+
+        override fun secureConnectEnd(call: Call, handshake: Handshake?) {
+            end(Phase.TLS)
+        }
+
+        override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+            end(inetSocketAddress)
+        }
+
+        override fun connectFailed(
+            call: Call,
+            inetSocketAddress: InetSocketAddress,
+            proxy: Proxy,
+            protocol: Protocol?,
+            ioe: IOException
+        ) {
+            // TCP of this address is done already if its section is closed, so the handshake failed
+            if (!end(inetSocketAddress, succeed = false)) {
+                end(Phase.TLS, succeed = false)
+            }
+        }
+
+        override fun requestHeadersStart(call: Call) {
+            // Retried or redirected requests restart TTFB
+            if (!isOpen(Phase.TTFB)) begin(Phase.TTFB)
+        }
+
+        override fun responseHeadersStart(call: Call) {
+            end(Phase.TTFB)
+        }
+
+        override fun responseBodyStart(call: Call) = begin(Phase.BODY)
+
+        override fun responseBodyEnd(call: Call, byteCount: Long) {
+            end(Phase.BODY)
+        }
+
+        override fun callEnd(call: Call) = record(call, failed = false)
+
+        override fun callFailed(call: Call, ioe: IOException) = record(call, failed = true)
+
+        private fun record(call: Call, failed: Boolean) {
+            val (unfinished, finished) = synchronized(lock) {
+                val unfinished = open.values.toList()
+                open.clear()
+                unfinished to durations.copyOf()
+            }
+            // Close sections left open by failures
+            unfinished.forEach { Trace.endAsyncSection(it.phase.traceName, it.cookie) }
+
+            val url = call.request().url
+            val endpoint = url.host + url.encodedPath
+            endpoints.getOrPut(endpoint) { EndpointMetrics() }.record(finished, failed)
+        }
+    }
+}
@@ -5,11 +5,12 @@ import com.huanchengfly.tieba.post.App
 import com.huanchengfly.tieba.post.api.ClientVersion
 import com.huanchengfly.tieba.post.api.Header
 import com.huanchengfly.tieba.post.api.Param
+import com.huanchengfly.tieba.post.api.ParamSnapshot
 import com.huanchengfly.tieba.post.api.getCookie
 import com.huanchengfly.tieba.post.api.getUserAgent
-import com.huanchengfly.tieba.post.api.models.OAID
 import com.huanchengfly.tieba.post.api.retrofit.adapter.DeferredCallAdapterFactory
 import com.huanchengfly.tieba.post.api.retrofit.adapter.FlowCallAdapterFactory
+import com.huanchengfly.tieba.post.api.retrofit.cache.ProtobufHttpCache
 import com.huanchengfly.tieba.post.api.retrofit.converter.gson.GsonConverterFactory
 import com.huanchengfly.tieba.post.api.retrofit.converter.kotlinx.serialization.asConverterFactory
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.AddWebCookieInterceptor
@@ -20,6 +21,8 @@ import com.huanchengfly.tieba.post.api.retrofit.interceptors.CookieInterceptor
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.DropInterceptor
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.FailureResponseInterceptor
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.ForceLoginInterceptor
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCacheInterceptor
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCachePolicy
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtoFailureResponseInterceptor
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.SortAndSignInterceptor
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.StParamInterceptor
@@ -30,23 +33,12 @@ import com.huanchengfly.tieba.post.api.retrofit.interfaces.OfficialProtobufTieba
 import com.huanchengfly.tieba.post.api.retrofit.interfaces.OfficialTiebaApi
 import com.huanchengfly.tieba.post.api.retrofit.interfaces.SofireApi
 import com.huanchengfly.tieba.post.api.retrofit.interfaces.WebTiebaApi
-import com.huanchengfly.tieba.post.toJson
-import com.huanchengfly.tieba.post.utils.AccountUtil
-import com.huanchengfly.tieba.post.utils.CacheUtil.base64Encode
-import com.huanchengfly.tieba.post.utils.ClientUtils
-import com.huanchengfly.tieba.post.utils.CuidUtils
-import com.huanchengfly.tieba.post.utils.DeviceUtils
-import com.huanchengfly.tieba.post.utils.MobileInfoUtil
-import com.huanchengfly.tieba.post.utils.UIDUtil
+import com.huanchengfly.tieba.post.utils.GsonUtil
 import kotlinx.serialization.json.Json
-import okhttp3.ConnectionPool
 import okhttp3.Interceptor
-import okhttp3.OkHttpClient
 import retrofit2.Retrofit
 import retrofit2.converter.wire.WireConverterFactory
-import java.text.SimpleDateFormat
-import java.util.Date
-import java.util.Locale
+import java.io.File
 import java.util.concurrent.TimeUnit
 import kotlin.math.roundToInt
 
@@ -59,16 +51,18 @@ object RetrofitTiebaApi {
     private val initTime = System.currentTimeMillis()
     internal val randomClientId = "wappc_${initTime}_${(Math.random() * 1000).roundToInt()}"
     private val stParamInterceptor = StParamInterceptor()
-    private val connectionPool = ConnectionPool(32, 5, TimeUnit.MINUTES)
+
+    private val params: ParamSnapshot
+        get() = ParamSnapshot.current()
 
     private val defaultCommonParamInterceptor = CommonParamInterceptor(
-        Param.BDUSS to { AccountUtil.getBduss() },
-        Param.CLIENT_ID to { ClientUtils.clientId },
+        Param.BDUSS to { params.bduss },
+        Param.CLIENT_ID to { params.clientId },
         Param.CLIENT_TYPE to { "2" },
         Param.OS_VERSION to { Build.VERSION.SDK_INT.toString() },
         Param.MODEL to { Build.MODEL },
         Param.NET_TYPE to { "1" },
-        Param.PHONE_IMEI to { MobileInfoUtil.getIMEI(App.INSTANCE) },
+        Param.PHONE_IMEI to { params.imei },
         Param.TIMESTAMP to { System.currentTimeMillis().toString() }
     )
 
@@ -77,19 +71,36 @@ object RetrofitTiebaApi {
             Header.COOKIE to { "ka=open" },
             Header.PRAGMA to { "no-cache" }
         )
-    private val gsonConverterFactory = GsonConverterFactory.create()
+    private val gsonConverterFactory = GsonConverterFactory.create(GsonUtil.getGson())
     private val sortAndSignInterceptor = SortAndSignInterceptor("tiebaclient!!!")
 
+    private const val PROTOBUF_CACHE_SIZE = 20L * 1024 * 1024
+
+    /**
+     * Response cache shared by all protobuf APIs, see [ProtobufCachePolicy.DEFAULT]
+     * */
+    val protobufCache: ProtobufHttpCache by lazy {
+        ProtobufHttpCache(
+            file = File(App.INSTANCE.cacheDir, "ProtobufHttp.cache"),
+            maxSize = PROTOBUF_CACHE_SIZE,
+            compactionScope = App.AppBackgroundScope
+        )
+    }
+
+    private val protobufCacheInterceptor = ProtobufCacheInterceptor(ProtobufCachePolicy.DEFAULT) {
+        protobufCache
+    }
+
     val NEW_TIEBA_API: NewTiebaApi by lazy {
         createJsonApi<NewTiebaApi>(
             "http://c.tieba.baidu.com/",
             defaultCommonHeaderInterceptor,
             CommonHeaderInterceptor(
                 Header.USER_AGENT to { "bdtb for Android 8.2.2" },
-                Header.CUID to { UIDUtil.finalCUID }
+                Header.CUID to { params.finalCuid }
             ),
             defaultCommonParamInterceptor + CommonParamInterceptor(
-                Param.CUID to { UIDUtil.finalCUID },
+                Param.CUID to { params.finalCuid },
                 Param.FROM to { "baidu_appstore" },
                 Param.CLIENT_VERSION to { "8.2.2" }
             ),
@@ -101,11 +112,11 @@ object RetrofitTiebaApi {
         createJsonApi<WebTiebaApi>("https://tieba.baidu.com/",
             CommonHeaderInterceptor(
                 Header.USER_AGENT to { getUserAgent("tieba/11.10.8.6 skin/default") },
-                Header.CUID to { CuidUtils.getNewCuid() },
-                Header.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Header.CUID to { params.cuid },
+                Header.CUID_GALAXY2 to { params.cuid },
                 Header.CUID_GID to { "" },
-                Header.CUID_GALAXY3 to { UIDUtil.getAid() },
-                Header.CLIENT_USER_TOKEN to { AccountUtil.getUid() },
+                Header.CUID_GALAXY3 to { params.aid },
+                Header.CLIENT_USER_TOKEN to { params.uid },
                 Header.CHARSET to { "UTF-8" },
                 Header.HOST to { "tieba.baidu.com" },
             ),
@@ -128,27 +139,27 @@ object RetrofitTiebaApi {
                 "Sec-Fetch-Dest" to { "empty" },
                 Header.COOKIE to {
                     getCookie(
-                        "CUID" to { CuidUtils.getNewCuid() },
+                        "CUID" to { params.cuid },
                         "TBBRAND" to { Build.MODEL },
-                        "cuid_galaxy2" to { CuidUtils.getNewCuid() },
+                        "cuid_galaxy2" to { params.cuid },
                         "SP_FW_VER" to { "3.340.42" },
                         "SG_FW_VER" to { "1.38.0" },
-                        "BDUSS" to { AccountUtil.getBduss() },
-                        "STOKEN" to { AccountUtil.getSToken() },
-                        "BAIDU_WISE_UID" to { ClientUtils.clientId },
+                        "BDUSS" to { params.bduss },
+                        "STOKEN" to { params.sToken },
+                        "BAIDU_WISE_UID" to { params.clientId },
                         "USER_JUMP" to { "-1" },
-                        "BDUSS_BFESS" to { AccountUtil.getBduss() },
-                        "BAIDUID" to { ClientUtils.baiduId },
-                        "BAIDUID_BFESS" to { ClientUtils.baiduId },
+                        "BDUSS_BFESS" to { params.bduss },
+                        "BAIDUID" to { params.baiduId },
+                        "BAIDUID_BFESS" to { params.baiduId },
                         "mo_originid" to { "2" },
-                        "BAIDUZID" to { AccountUtil.getAccountInfo { zid } },
+                        "BAIDUZID" to { params.zid },
                     )
                 }
             ),
             AddWebCookieInterceptor,
             CommonParamInterceptor(
-                Param.BDUSS to { AccountUtil.getBduss() },
-                Param.STOKEN to { AccountUtil.getSToken() },
+                Param.BDUSS to { params.bduss },
+                Param.STOKEN to { params.sToken },
             )
         )
     }
@@ -159,13 +170,13 @@ object RetrofitTiebaApi {
             defaultCommonHeaderInterceptor,
             CommonHeaderInterceptor(
                 Header.USER_AGENT to { "bdtb for Android 7.2.0.0" },
-                Header.CUID to { UIDUtil.finalCUID },
-                Header.CUID_GALAXY2 to { UIDUtil.finalCUID },
+                Header.CUID to { params.finalCuid },
+                Header.CUID_GALAXY2 to { params.finalCuid },
                 "client_logid" to { "$initTime" }
             ),
             defaultCommonParamInterceptor + CommonParamInterceptor(
-                Param.CUID to { UIDUtil.finalCUID },
-                Param.CUID_GALAXY2 to { UIDUtil.finalCUID },
+                Param.CUID to { params.finalCuid },
+                Param.CUID_GALAXY2 to { params.finalCuid },
                 Param.FROM to { "1021636m" },
                 Param.CLIENT_VERSION to { "7.2.0.0" },
                 Param.SUBAPP_TYPE to { "mini" }
@@ -179,31 +190,25 @@ object RetrofitTiebaApi {
             "http://c.tieba.baidu.com/",
             CommonHeaderInterceptor(
                 Header.USER_AGENT to { "bdtb for Android 12.41.7.1" },
-                Header.COOKIE to { "CUID=${CuidUtils.getNewCuid()};ka=open;TBBRAND=${Build.MODEL};BAIDUID=${ClientUtils.baiduId};" },
-                Header.CUID to { CuidUtils.getNewCuid() },
-                Header.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Header.COOKIE to { "CUID=${params.cuid};ka=open;TBBRAND=${Build.MODEL};BAIDUID=${params.baiduId};" },
+                Header.CUID to { params.cuid },
+                Header.CUID_GALAXY2 to { params.cuid },
                 Header.CUID_GID to { "" },
-                Header.CUID_GALAXY3 to { UIDUtil.getAid() },
+                Header.CUID_GALAXY3 to { params.aid },
                 Header.CLIENT_TYPE to { "2" },
                 Header.CHARSET to { "UTF-8" },
                 "client_logid" to { "$initTime" }
             ),
             defaultCommonParamInterceptor + CommonParamInterceptor(
-                Param.ACTIVE_TIMESTAMP to { ClientUtils.activeTimestamp.toString() },
-                Param.ANDROID_ID to { base64Encode(UIDUtil.getAndroidId("000")) },
-                Param.BAIDU_ID to { ClientUtils.baiduId },
+                Param.ACTIVE_TIMESTAMP to { params.activeTimestamp.toString() },
+                Param.ANDROID_ID to { params.encodedAndroidId },
+                Param.BAIDU_ID to { params.baiduId },
                 Param.BRAND to { Build.BRAND },
                 Param.CMODE to { "1" },
-                Param.CUID to { CuidUtils.getNewCuid() },
-                Param.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Param.CUID to { params.cuid },
+                Param.CUID_GALAXY2 to { params.cuid },
                 Param.CUID_GID to { "" },
-                Param.EVENT_DAY to {
-                    SimpleDateFormat("yyyyMdd", Locale.getDefault()).format(
-                        Date(
-                            System.currentTimeMillis()
-                        )
-                    )
-                },
+                Param.EVENT_DAY to { params.eventDay },
                 Param.EXTRA to { "" },
                 Param.FIRST_INSTALL_TIME to { App.Config.appFirstInstallTime.toString() },
                 Param.FRAMEWORK_VER to { "3340042" },
@@ -211,14 +216,14 @@ object RetrofitTiebaApi {
                 Param.IS_TEENAGER to { "0" },
                 Param.LAST_UPDATE_TIME to { App.Config.appLastUpdateTime.toString() },
                 Param.MAC to { "02:00:00:00:00:00" },
-                Param.SAMPLE_ID to { ClientUtils.sampleId },
+                Param.SAMPLE_ID to { params.sampleId },
                 Param.SDK_VER to { "2.34.0" },
                 Param.START_SCHEME to { "" },
                 Param.START_TYPE to { "1" },
                 Param.SWAN_GAME_VER to { "1038000" },
                 Param.CLIENT_VERSION to { "12.41.7.1" },
-                Param.CUID_GALAXY3 to { UIDUtil.getAid() },
-                Param.OAID to { OAID().toJson() },
+                Param.CUID_GALAXY3 to { params.aid },
+                Param.OAID to { params.oaid },
             ),
             stParamInterceptor,
         )
@@ -230,23 +235,23 @@ object RetrofitTiebaApi {
             CommonHeaderInterceptor(
                 Header.CHARSET to { "UTF-8" },
                 Header.CLIENT_TYPE to { "2" },
-                Header.CLIENT_USER_TOKEN to { AccountUtil.getUid() },
-                Header.COOKIE to { "CUID=${CuidUtils.getNewCuid()};ka=open;TBBRAND=${Build.MODEL};" },
-                Header.CUID to { CuidUtils.getNewCuid() },
-                Header.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Header.CLIENT_USER_TOKEN to { params.uid },
+                Header.COOKIE to { "CUID=${params.cuid};ka=open;TBBRAND=${Build.MODEL};" },
+                Header.CUID to { params.cuid },
+                Header.CUID_GALAXY2 to { params.cuid },
                 Header.CUID_GID to { "" },
-                Header.CUID_GALAXY3 to { UIDUtil.getAid() },
+                Header.CUID_GALAXY3 to { params.aid },
                 Header.USER_AGENT to { "bdtb for Android ${ClientVersion.TIEBA_V11.version}" },
                 Header.X_BD_DATA_TYPE to { "protobuf" },
             ),
             defaultCommonParamInterceptor - Param.OS_VERSION + CommonParamInterceptor(
-                Param.CUID to { CuidUtils.getNewCuid() },
-                Param.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Param.CUID to { params.cuid },
+                Param.CUID_GALAXY2 to { params.cuid },
                 Param.CUID_GID to { "" },
                 Param.FROM to { "tieba" },
                 Param.CLIENT_VERSION to { ClientVersion.TIEBA_V11.version },
-                Param.CUID_GALAXY3 to { UIDUtil.getAid() },
-                Param.OAID to { OAID().toJson() },
+                Param.CUID_GALAXY3 to { params.aid },
+                Param.OAID to { params.oaid },
             ),
             stParamInterceptor,
         )
@@ -258,18 +263,18 @@ object RetrofitTiebaApi {
             CommonHeaderInterceptor(
                 Header.CHARSET to { "UTF-8" },
                 Header.CLIENT_TYPE to { "2" },
-                Header.CLIENT_USER_TOKEN to { AccountUtil.getUid() },
+                Header.CLIENT_USER_TOKEN to { params.uid },
                 Header.COOKIE to {
                     getCookie(
                         "ka" to { "open" },
-                        "CUID" to { CuidUtils.getNewCuid() },
+                        "CUID" to { params.cuid },
                         "TBBRAND" to { Build.MODEL }
                     )
                 },
-                Header.CUID to { CuidUtils.getNewCuid() },
-                Header.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Header.CUID to { params.cuid },
+                Header.CUID_GALAXY2 to { params.cuid },
                 Header.CUID_GID to { "" },
-                Header.CUID_GALAXY3 to { UIDUtil.getAid() },
+                Header.CUID_GALAXY3 to { params.aid },
                 Header.USER_AGENT to { getUserAgent("tieba/${ClientVersion.TIEBA_V12.version}") },
                 Header.X_BD_DATA_TYPE to { "protobuf" },
             ),
@@ -283,41 +288,35 @@ object RetrofitTiebaApi {
             CommonHeaderInterceptor(
                 Header.CHARSET to { "UTF-8" },
 //                Header.CLIENT_TYPE to { "2" },
-                Header.CLIENT_USER_TOKEN to { AccountUtil.getUid() },
+                Header.CLIENT_USER_TOKEN to { params.uid },
                 Header.COOKIE to {
                     getCookie(
-                        "BAIDUZID" to { AccountUtil.getAccountInfo { zid } },
+                        "BAIDUZID" to { params.zid },
                         "ka" to { "open" },
-                        "CUID" to { CuidUtils.getNewCuid() },
+                        "CUID" to { params.cuid },
                         "TBBRAND" to { Build.MODEL }
                     )
                 },
-                Header.CUID to { CuidUtils.getNewCuid() },
-                Header.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Header.CUID to { params.cuid },
+                Header.CUID_GALAXY2 to { params.cuid },
                 Header.CUID_GID to { "" },
-                Header.CUID_GALAXY3 to { UIDUtil.getAid() },
+                Header.CUID_GALAXY3 to { params.aid },
                 Header.USER_AGENT to { getUserAgent("tieba/${ClientVersion.TIEBA_V12_POST.version}") },
                 Header.X_BD_DATA_TYPE to { "protobuf" },
             ),
             defaultCommonParamInterceptor - Param.OS_VERSION + CommonParamInterceptor(
                 Param.CLIENT_VERSION to { ClientVersion.TIEBA_V12_POST.version },
-                Param.ACTIVE_TIMESTAMP to { ClientUtils.activeTimestamp.toString() },
-                Param.ANDROID_ID to { base64Encode(UIDUtil.getAndroidId("000")) },
-                Param.BAIDU_ID to { ClientUtils.baiduId },
+                Param.ACTIVE_TIMESTAMP to { params.activeTimestamp.toString() },
+                Param.ANDROID_ID to { params.encodedAndroidId },
+                Param.BAIDU_ID to { params.baiduId },
                 Param.BRAND to { Build.BRAND },
-                Param.CUID_GALAXY3 to { UIDUtil.getAid() },
+                Param.CUID_GALAXY3 to { params.aid },
                 Param.CMODE to { "1" },
-                Param.CUID to { CuidUtils.getNewCuid() },
-                Param.CUID_GALAXY2 to { CuidUtils.getNewCuid() },
+                Param.CUID to { params.cuid },
+                Param.CUID_GALAXY2 to { params.cuid },
                 Param.CUID_GID to { "" },
-                Param.DEVICE_SCORE to { "${DeviceUtils.getDeviceScore()}" },
-                Param.EVENT_DAY to {
-                    SimpleDateFormat("yyyyMdd", Locale.getDefault()).format(
-                        Date(
-                            System.currentTimeMillis()
-                        )
-                    )
-                },
+                Param.DEVICE_SCORE to { params.deviceScore },
+                Param.EVENT_DAY to { params.eventDay },
                 Param.EXTRA to { "" },
                 Param.FIRST_INSTALL_TIME to { App.Config.appFirstInstallTime.toString() },
                 Param.FRAMEWORK_VER to { "3340042" },
@@ -326,14 +325,14 @@ object RetrofitTiebaApi {
                 Param.LAST_UPDATE_TIME to { App.Config.appLastUpdateTime.toString() },
                 Param.MAC to { "02:00:00:00:00:00" },
                 "naws_game_ver" to { "1038000" },
-                Param.OAID to { OAID().toJson() },
+                Param.OAID to { params.oaid },
                 "personalized_rec_switch" to { "1" },
-                Param.SAMPLE_ID to { ClientUtils.sampleId },
+                Param.SAMPLE_ID to { params.sampleId },
                 Param.SDK_VER to { "2.34.0" },
                 Param.START_SCHEME to { "" },
                 Param.START_TYPE to { "1" },
-                Param.STOKEN to { AccountUtil.getSToken() },
-                Param.Z_ID to { AccountUtil.getAccountInfo { zid }.orEmpty() },
+                Param.STOKEN to { params.sToken },
+                Param.Z_ID to { params.zid.orEmpty() },
             ),
             stParamInterceptor,
         )
@@ -353,10 +352,7 @@ object RetrofitTiebaApi {
             .addConverterFactory(NullOnEmptyConverterFactory())
             .addConverterFactory(json.asConverterFactory())
             .addConverterFactory(gsonConverterFactory)
-            .client(OkHttpClient.Builder().apply {
-//                addInterceptor()
-                connectionPool(connectionPool)
-            }.build())
+            .client(TbHttpClient.rootClient)
             .build()
             .create(SofireApi::class.java)
     }
@@ -371,7 +367,7 @@ object RetrofitTiebaApi {
         .addConverterFactory(NullOnEmptyConverterFactory())
         .addConverterFactory(json.asConverterFactory())
         .addConverterFactory(gsonConverterFactory)
-        .client(OkHttpClient.Builder().apply {
+        .client(TbHttpClient.rootClient.newBuilder().apply {
             readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
             connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
             writeTimeout(WRITE_TIMEOUT, TimeUnit.SECONDS)
@@ -383,7 +379,6 @@ object RetrofitTiebaApi {
             addInterceptor(ForceLoginInterceptor)
             addInterceptor(sortAndSignInterceptor)
             addInterceptor(ConnectivityInterceptor)
-            connectionPool(connectionPool)
         }.build())
         .build()
         .create(T::class.java)
@@ -397,10 +392,11 @@ object RetrofitTiebaApi {
         .addCallAdapterFactory(FlowCallAdapterFactory.create())
         .addConverterFactory(NullOnEmptyConverterFactory())
         .addConverterFactory(WireConverterFactory.create())
-        .client(OkHttpClient.Builder().apply {
+        .client(TbHttpClient.rootClient.newBuilder().apply {
             readTimeout(READ_TIMEOUT, TimeUnit.SECONDS)
             connectTimeout(CONNECT_TIMEOUT, TimeUnit.SECONDS)
             writeTimeout(WRITE_TIMEOUT, TimeUnit.SECONDS)
+            addInterceptor(protobufCacheInterceptor)
             interceptors.forEach {
                 addInterceptor(it)
             }
@@ -410,7 +406,6 @@ object RetrofitTiebaApi {
             addInterceptor(CookieInterceptor)
             addInterceptor(sortAndSignInterceptor)
             addInterceptor(ConnectivityInterceptor)
-            connectionPool(connectionPool)
         }.build())
         .build()
         .create(T::class.java)
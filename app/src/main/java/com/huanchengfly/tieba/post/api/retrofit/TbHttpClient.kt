@@ -0,0 +1,72 @@
+package com.huanchengfly.tieba.post.api.retrofit
+
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.Dns
+import okhttp3.OkHttpClient
+import java.net.InetAddress
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Root [OkHttpClient] of the whole app.
+ *
+ * Every client (Retrofit APIs, Glide) must be derived from [rootClient] with
+ * [OkHttpClient.newBuilder], so they share one [Dispatcher], [ConnectionPool] and DNS cache.
+ * */
+object TbHttpClient {
+
+    /**
+     * Max concurrent requests per host, raised from the default 5 since nearly every request goes to
+     * a few tieba hosts.
+     * */
+    private const val MAX_REQUESTS_PER_HOST = 8
+
+    private const val MAX_REQUESTS = 64
+
+    private val DNS_CACHE_TTL = TimeUnit.MINUTES.toMillis(10)
+
+    val connectionPool = ConnectionPool(32, 5, TimeUnit.MINUTES)
+
+    val dispatcher = Dispatcher().apply {
+        maxRequests = MAX_REQUESTS
+        maxRequestsPerHost = MAX_REQUESTS_PER_HOST
+    }
+
+    private val dns = CachingDns(delegate = Dns.SYSTEM, ttlMillis = DNS_CACHE_TTL)
+
+    @JvmStatic
+    val rootClient: OkHttpClient = OkHttpClient.Builder()
+        .dispatcher(dispatcher)
+        .connectionPool(connectionPool)
+        .dns(dns)
+        .eventListenerFactory(NetworkMetrics)
+        .build()
+
+    /**
+     * Drops cached DNS results, addresses resolved on the previous network may be unreachable now.
+     * */
+    fun onNetworkChanged() = dns.clear()
+
+    /**
+     * Caches resolved addresses in memory for [ttlMillis], failures are not cached.
+     * */
+    private class CachingDns(private val delegate: Dns, private val ttlMillis: Long) : Dns {
+
+        private class Entry(val addresses: List<InetAddress>, val expireAt: Long)
+
+        private val cache = ConcurrentHashMap<String, Entry>()
+
+        override fun lookup(hostname: String): List<InetAddress> {
+            val now = System.currentTimeMillis()
+            val cached = cache[hostname]
+            if (cached != null && cached.expireAt > now) return cached.addresses
+
+            return delegate.lookup(hostname).also {
+                cache[hostname] = Entry(it, expireAt = now + ttlMillis)
+            }
+        }
+
+        fun clear() = cache.clear()
+    }
+}
@@ -1,6 +1,10 @@
 package com.huanchengfly.tieba.post.api.retrofit.adapter
 
+import com.huanchengfly.tieba.post.api.Header
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCacheInterceptor
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.FlowCollector
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.suspendCancellableCoroutine
 import retrofit2.Call
@@ -12,25 +16,52 @@ import java.lang.reflect.Type
 import kotlin.coroutines.resume
 import kotlin.coroutines.resumeWithException
 
+private suspend fun <T> Call<T>.awaitResponse(): Response<T> = suspendCancellableCoroutine { continuation ->
+    enqueue(object : Callback<T> {
+        override fun onFailure(call: Call<T>, t: Throwable) {
+            continuation.resumeWithException(t)
+        }
+
+        override fun onResponse(call: Call<T>, response: Response<T>) {
+            continuation.resume(response)
+        }
+    })
+    continuation.invokeOnCancellation { cancel() }
+}
+
+private val Response<*>.isStale: Boolean
+    get() = raw().header(Header.TB_CACHE) == ProtobufCacheInterceptor.CACHE_STALE
+
+/**
+ * Emits the response of [call], then the revalidated response if it was served stale from
+ * [ProtobufCacheInterceptor]. Failure of revalidation is ignored as stale response is emitted.
+ * */
+private suspend fun <T> FlowCollector<Response<T>>.emitWithRevalidation(call: Call<T>) {
+    val response = call.awaitResponse()
+    emit(response)
+    if (!response.isStale) return
+
+    // Suspend until the background revalidation finished, then read it from cache
+    val key = response.raw().header(Header.TB_CACHE_KEY) ?: return
+    if (!ProtobufCacheInterceptor.awaitRevalidation(key)) return
+    val revalidated = try {
+        call.clone().awaitResponse()
+    } catch (e: CancellationException) {
+        throw e
+    } catch (e: Throwable) {
+        null
+    }
+    if (revalidated != null && revalidated.isSuccessful && !revalidated.isStale) {
+        emit(revalidated)
+    }
+}
+
 class ResponseCallAdapter<T>(
     private val responseType: Type
 ) : CallAdapter<T, Flow<Response<T>>> {
     override fun adapt(call: Call<T>): Flow<Response<T>> {
         return flow {
-            emit(
-                suspendCancellableCoroutine { continuation ->
-                    call.enqueue(object : Callback<T> {
-                        override fun onFailure(call: Call<T>, t: Throwable) {
-                            continuation.resumeWithException(t)
-                        }
-
-                        override fun onResponse(call: Call<T>, response: Response<T>) {
-                            continuation.resume(response)
-                        }
-                    })
-                    continuation.invokeOnCancellation { call.cancel() }
-                }
-            )
+            emitWithRevalidation(call)
         }
     }
 
@@ -41,26 +72,16 @@ class ResponseCallAdapter<T>(
 class BodyCallAdapter<T>(private val responseType: Type) : CallAdapter<T, Flow<T>> {
     override fun adapt(call: Call<T>): Flow<T> {
         return flow {
-            emit(
-                suspendCancellableCoroutine { continuation ->
-                    call.enqueue(object : Callback<T> {
-                        override fun onFailure(call: Call<T>, t: Throwable) {
-                            continuation.resumeWithException(t)
-                        }
-
-                        override fun onResponse(call: Call<T>, response: Response<T>) {
-                            if (response.isSuccessful) {
-                                continuation.resume(response.body()!!)
-                            } else {
-                                continuation.resumeWithException(HttpException(response))
-                            }
-                        }
-                    })
-                    continuation.invokeOnCancellation { call.cancel() }
+            val collector = this
+            FlowCollector<Response<T>> { response ->
+                if (response.isSuccessful) {
+                    collector.emit(response.body()!!)
+                } else {
+                    throw HttpException(response)
                 }
-            )
+            }.emitWithRevalidation(call)
         }
     }
 
     override fun responseType() = responseType
-}
\ No newline at end of file
+}
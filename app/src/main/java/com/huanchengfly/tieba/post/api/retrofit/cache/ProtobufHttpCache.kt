@@ -0,0 +1,123 @@
+package com.huanchengfly.tieba.post.api.retrofit.cache
+
+import android.util.Log
+import androidx.annotation.WorkerThread
+import com.huanchengfly.tieba.post.api.models.protos.localCache.CachedResponse
+import com.huanchengfly.tieba.post.utils.ProtobufCacheStore
+import kotlinx.coroutines.CoroutineScope
+import okio.ByteString.Companion.toByteString
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Disk cache of protobuf responses keyed by endpoint path and request fingerprint.
+ *
+ * Entries live in one [ProtobufCacheStore] segment and expire once they are too old to be served.
+ * When the live size exceeds [maxSize], expired entries are dropped first, then the least recently
+ * used ones.
+ *
+ * A fingerprint may start with a scope followed by `#`, e.g. thread ID of a thread page, so
+ * entries of one scope can be dropped by [evict].
+ *
+ * @param file segment file of this cache
+ * @param maxSize max size of all entries in bytes
+ * @param compactionScope scope to run background compaction of the segment
+ * @param clock time source of [Entry.storedAt]
+ * */
+class ProtobufHttpCache(
+    file: File,
+    private val maxSize: Long,
+    compactionScope: CoroutineScope?,
+    private val clock: () -> Long = System::currentTimeMillis,
+) {
+
+    class Entry(val storedAt: Long, val contentType: String?, val body: ByteArray)
+
+    /**
+     * Snapshot of cache counters.
+     * */
+    class Stats(val hits: Long, val staleHits: Long, val misses: Long, val count: Int, val size: Long)
+
+    private val store = ProtobufCacheStore(file, compactionScope, clock)
+
+    private val hits = AtomicLong()
+    private val staleHits = AtomicLong()
+    private val misses = AtomicLong()
+
+    /**
+     * @return cached response of [path], **null** if not exists or expired
+     * */
+    @WorkerThread
+    fun get(path: String, fingerprint: String): Entry? {
+        val cached = try {
+            store.get(key(path, fingerprint), CachedResponse.ADAPTER)
+        } catch (e: IOException) {
+            Log.w(TAG, "onGet: Unable to read $path: ${e.message}.")
+            null
+        } ?: return null
+
+        return Entry(cached.storedAt, cached.contentType.ifEmpty { null }, cached.body.toByteArray())
+    }
+
+    /**
+     * @param expireAfter the entry is dropped after this duration in millis
+     * @return true if cached
+     * */
+    @WorkerThread
+    fun put(path: String, fingerprint: String, expireAfter: Long, contentType: String?, body: ByteArray): Boolean {
+        val value = CachedResponse(storedAt = clock(), contentType = contentType.orEmpty(), body = body.toByteString())
+        return try {
+            store.put(key(path, fingerprint), CachedResponse.ADAPTER, value, expireAfter)
+            trimToSize()
+            true
+        } catch (e: IOException) {
+            Log.w(TAG, "onPut: Unable to write $path: ${e.message}.")
+            false
+        }
+    }
+
+    @WorkerThread
+    fun remove(path: String, fingerprint: String) {
+        try {
+            store.remove(key(path, fingerprint))
+        } catch (e: IOException) {
+            Log.w(TAG, "onRemove: Unable to remove $path: ${e.message}.")
+        }
+    }
+
+    /**
+     * Remove cached responses of endpoint [path] in [scope], e.g. after a mutation made them
+     * outdated.
+     * */
+    @WorkerThread
+    fun evict(path: String, scope: String) {
+        val prefix = key(path, fingerprint = "$scope#")
+        try {
+            store.removeIf { it.startsWith(prefix) }
+        } catch (e: IOException) {
+            Log.w(TAG, "onEvict: Unable to evict $scope of $path: ${e.message}.")
+        }
+    }
+
+    fun recordHit(stale: Boolean) = if (stale) staleHits.incrementAndGet() else hits.incrementAndGet()
+
+    fun recordMiss() = misses.incrementAndGet()
+
+    fun stats(): Stats {
+        return Stats(hits.get(), staleHits.get(), misses.get(), store.keys().size, store.liveSize().toLong())
+    }
+
+    private fun trimToSize() {
+        if (store.liveSize() <= maxSize) return
+        store.removeExpired()
+        // Still too large, all entries are fresh. Drop the least recently used ones.
+        store.trimToSize(maxSize.coerceAtMost(Int.MAX_VALUE.toLong()).toInt())
+    }
+
+    companion object {
+        private const val TAG = "ProtobufHttpCache"
+
+        private fun key(path: String, fingerprint: String) = "$path#$fingerprint"
+    }
+}
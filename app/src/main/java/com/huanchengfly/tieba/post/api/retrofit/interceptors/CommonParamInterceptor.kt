@@ -1,19 +1,29 @@
 package com.huanchengfly.tieba.post.api.retrofit.interceptors
 
+import androidx.tracing.trace
 import com.huanchengfly.tieba.post.api.Header
 import com.huanchengfly.tieba.post.api.Method
+import com.huanchengfly.tieba.post.api.Param
 import com.huanchengfly.tieba.post.api.ParamExpression
+import com.huanchengfly.tieba.post.api.ParamSnapshot
 import com.huanchengfly.tieba.post.api.addAllEncoded
 import com.huanchengfly.tieba.post.api.addAllParts
-import com.huanchengfly.tieba.post.api.contains
 import com.huanchengfly.tieba.post.api.containsEncodedName
-import com.huanchengfly.tieba.post.api.forEachNonNull
+import com.huanchengfly.tieba.post.api.name
 import com.huanchengfly.tieba.post.api.newBuilder
 import com.huanchengfly.tieba.post.api.retrofit.body.MyMultipartBody
 import okhttp3.FormBody
+import okhttp3.HttpUrl.Companion.toHttpUrl
 import okhttp3.Interceptor
+import okhttp3.Request
 import okhttp3.Response
 
+/**
+ * Adds common parameters to Query, FormBody or MultipartBody.
+ *
+ * Parameter expressions are evaluated once per [ParamSnapshot] and kept pre-encoded for every
+ * body type, only [DYNAMIC_PARAMS] like timestamp are evaluated on each request.
+ * */
 class CommonParamInterceptor(private val additionParams: List<ParamExpression>) : Interceptor {
     constructor(vararg additionParams: ParamExpression) : this(additionParams.toList())
 
@@ -25,8 +35,68 @@ class CommonParamInterceptor(private val additionParams: List<ParamExpression>)
         return CommonParamInterceptor(additionParams.filter { it.first != name })
     }
 
+    /**
+     * Parameters evaluated against [snapshot], **null** value for dynamic or absent parameters.
+     * */
+    private inner class EncodedParams(val snapshot: ParamSnapshot) {
+        val names: Array<String> = Array(additionParams.size) { additionParams[it].first }
+
+        val values: Array<String?> = Array(additionParams.size) {
+            if (names[it] in DYNAMIC_PARAMS) null else additionParams[it].second()
+        }
+
+        val formValues: Array<String?> by lazy {
+            val formBody = FormBody.Builder().apply {
+                values.forEachIndexed { i, value -> if (value != null) add(names[i], value) }
+            }.build()
+            var next = 0
+            Array(values.size) { i -> if (values[i] != null) formBody.encodedValue(next++) else null }
+        }
+
+        val queryValues: Array<String?> by lazy {
+            val url = "http://localhost/".toHttpUrl().newBuilder().apply {
+                values.forEachIndexed { i, value -> if (value != null) addQueryParameter(names[i], value) }
+            }.build()
+            var next = 0
+            val encodedQuery = url.encodedQuery?.split('&').orEmpty()
+            Array(values.size) { i ->
+                if (values[i] != null) encodedQuery[next++].substringAfter('=') else null
+            }
+        }
+
+        val parts: Array<MyMultipartBody.Part?> by lazy {
+            Array(values.size) { i -> values[i]?.let { MyMultipartBody.Part.createFormData(names[i], it) } }
+        }
+
+        /**
+         * Evaluate parameters, pre-encoded values are passed if present
+         * */
+        inline fun forEach(exclude: Collection<String>, action: (i: Int, name: String, value: String) -> Unit) {
+            for (i in names.indices) {
+                val name = names[i]
+                if (name in exclude) continue
+                val value = values[i] ?: if (name in DYNAMIC_PARAMS) additionParams[i].second() else null
+                if (value != null) action(i, name, value)
+            }
+        }
+    }
+
+    @Volatile
+    private var encodedParams: EncodedParams? = null
+
+    private fun encodedParams(): EncodedParams {
+        val snapshot = ParamSnapshot.current()
+        val cached = encodedParams
+        if (cached != null && cached.snapshot === snapshot) return cached
+        return EncodedParams(snapshot).also { encodedParams = it }
+    }
+
     override fun intercept(chain: Interceptor.Chain): Response {
-        val request = chain.request()
+        val request = trace("CommonParamInterceptor") { addCommonParams(chain.request()) }
+        return chain.proceed(request)
+    }
+
+    private fun addCommonParams(request: Request): Request {
         var headers = request.headers
         var httpUrl = request.url
         var body = request.body
@@ -39,22 +109,26 @@ class CommonParamInterceptor(private val additionParams: List<ParamExpression>)
             headers = headers.newBuilder().removeAll(Header.FORCE_PARAM).build()
         }
 
-        val noCommonParams = mutableListOf<String>()
+        var noCommonParams: List<String> = emptyList()
         val noCommonParamsHeader = headers[Header.NO_COMMON_PARAMS]
         if (noCommonParamsHeader != null) {
-            noCommonParams.addAll(noCommonParamsHeader.split(","))
+            noCommonParams = noCommonParamsHeader.split(",")
             headers = headers.newBuilder().removeAll(Header.NO_COMMON_PARAMS).build()
         }
 
+        val params = encodedParams()
         when {
             //如果是 GET 则添加到 Query
             request.method == Method.GET || forceQuery -> {
                 httpUrl = request.url.newBuilder().apply {
-                    additionParams.forEachNonNull { name, value ->
-                        if (request.url.queryParameter(name) == null &&
-                            !noCommonParams.contains(name)
-                        ) {
-                            addQueryParameter(name, value)
+                    params.forEach(exclude = noCommonParams) { i, name, value ->
+                        if (request.url.queryParameter(name) == null) {
+                            val encodedValue = params.queryValues[i]
+                            if (encodedValue != null) {
+                                addEncodedQueryParameter(name, encodedValue)
+                            } else {
+                                addQueryParameter(name, value)
+                            }
                         }
                     }
                 }.build()
@@ -63,22 +137,19 @@ class CommonParamInterceptor(private val additionParams: List<ParamExpression>)
             //如果 Body 不存在或者为空则创建一个 FormBody
             body == null || body.contentLength() == 0L -> {
                 body = FormBody.Builder().apply {
-                    additionParams.forEachNonNull { name, value ->
-                        if (!noCommonParams.contains(name)) {
-                            add(name, value)
-                        }
+                    params.forEach(exclude = noCommonParams) { i, name, value ->
+                        addFormParam(name, value, params.formValues[i])
                     }
                 }.build()
             }
 
             //如果 Body 为 FormBody 则里面可能已经存在内容
             body is FormBody -> {
-                body = FormBody.Builder().addAllEncoded(body).apply {
-                    additionParams.forEachNonNull { name, value ->
-                        if (!(request.body as FormBody).containsEncodedName(name) &&
-                            !noCommonParams.contains(name)
-                        ) {
-                            add(name, value)
+                val oldBody = body
+                body = FormBody.Builder().addAllEncoded(oldBody).apply {
+                    params.forEach(exclude = noCommonParams) { i, name, value ->
+                        if (!oldBody.containsEncodedName(name)) {
+                            addFormParam(name, value, params.formValues[i])
                         }
                     }
                 }.build()
@@ -86,13 +157,13 @@ class CommonParamInterceptor(private val additionParams: List<ParamExpression>)
 
             body is MyMultipartBody -> {
                 val oldBody = body
+                val partNames = oldBody.parts.mapTo(HashSet()) { it.name() }
                 body = oldBody.newBuilder()
                     .addAllParts(oldBody).apply {
-                        additionParams.forEachNonNull { name, value ->
-                            if (!oldBody.contains(name) &&
-                                !noCommonParams.contains(name)
-                            ) {
-                                addFormDataPart(name, value)
+                        params.forEach(exclude = noCommonParams) { i, name, value ->
+                            if (name !in partNames) {
+                                val part = params.parts[i]
+                                if (part != null) addPart(part) else addFormDataPart(name, value)
                             }
                         }
                     }.build()
@@ -102,12 +173,22 @@ class CommonParamInterceptor(private val additionParams: List<ParamExpression>)
             else -> {}
         }
 
-        return chain.proceed(
-            request.newBuilder()
-                .headers(headers)
-                .url(httpUrl)
-                .method(request.method, body)
-                .build()
-        )
+        return request.newBuilder()
+            .headers(headers)
+            .url(httpUrl)
+            .method(request.method, body)
+            .build()
+    }
+
+    companion object {
+
+        /**
+         * Parameters changes on every request, never cached
+         * */
+        private val DYNAMIC_PARAMS = setOf(Param.TIMESTAMP)
+
+        private fun FormBody.Builder.addFormParam(name: String, value: String, encodedValue: String?) {
+            if (encodedValue != null) addEncoded(name, encodedValue) else add(name, value)
+        }
     }
 }
@@ -1,13 +1,32 @@
 package com.huanchengfly.tieba.post.api.retrofit.interceptors
 
+import com.google.gson.Strictness
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
 import com.huanchengfly.tieba.post.api.models.CommonResponse
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaApiException
-import com.huanchengfly.tieba.post.utils.GsonUtil
 import okhttp3.Interceptor
 import okhttp3.Response
+import java.io.Reader
 
+/**
+ * Throws [TiebaApiException] if the JSON response carries an error.
+ *
+ * Top level names of a peek of the body are streamed until the error code is found, other values
+ * are skipped without building any object. Peeked bytes stay in the buffer of the body and are
+ * parsed once by the converter.
+ * */
 object FailureResponseInterceptor : Interceptor {
-    private val gson = GsonUtil.getGson()
+
+    /**
+     * Names of error code, same as [CommonResponse.errorCode]
+     * */
+    private val ERROR_CODE_NAMES = arrayOf("error_code", "errno", "no")
+
+    /**
+     * Names of error message, same as [CommonResponse.errorMsg]
+     * */
+    private val ERROR_MSG_NAMES = arrayOf("error_msg", "errmsg", "error")
 
     override fun intercept(chain: Interceptor.Chain): Response {
         val response = chain.proceed(chain.request())
@@ -22,22 +41,70 @@ object FailureResponseInterceptor : Interceptor {
             contentType.charset(Charsets.UTF_8)!!
         }
 
-        val inputStreamReader = body.source().also {
-            it.request(Long.MAX_VALUE)
-        }.buffer.clone().inputStream().reader(charset)
-
-        val commonResponse = inputStreamReader.use {
-            runCatching {
-                gson.fromJson<CommonResponse>(
-                    gson.newJsonReader(inputStreamReader),
-                    CommonResponse::class.java
-                )
-            }.getOrNull()
+        val commonResponse = body.source().peek().inputStream().reader(charset).use {
+            //如果返回内容解析失败, 说明它不是一个合法的 json, 交给 Converter 处理
+            runCatching { readError(it) }.getOrNull()
         } ?: return response
 
-        if (commonResponse.errorCode != null && commonResponse.errorCode != 0) {
-            throw TiebaApiException(commonResponse)
+        throw TiebaApiException(commonResponse)
+    }
+
+    /**
+     * Stream top level fields of a JSON response for the error, stops once a zero error code is
+     * found.
+     *
+     * @return error response, **null** if the response succeed or has no error code
+     * */
+    internal fun readError(reader: Reader): CommonResponse? {
+        val jsonReader = JsonReader(reader).apply { strictness = Strictness.LENIENT }
+        var errorCode: Int? = null
+        var errorMsg: String? = null
+        jsonReader.beginObject()
+        while (jsonReader.hasNext()) {
+            when (jsonReader.nextName()) {
+                in ERROR_CODE_NAMES -> {
+                    errorCode = jsonReader.nextIntOrNull()
+                    if (errorCode == 0) return null
+                }
+
+                in ERROR_MSG_NAMES -> errorMsg = jsonReader.nextErrorMsg()
+
+                else -> jsonReader.skipValue()
+            }
+        }
+        return errorCode?.let { CommonResponse(it, errorMsg.orEmpty()) }
+    }
+
+    private fun JsonReader.nextIntOrNull(): Int? {
+        return if (peek() == JsonToken.NULL) {
+            nextNull()
+            null
+        } else {
+            nextInt()
+        }
+    }
+
+    /**
+     * Read error message like [com.huanchengfly.tieba.post.api.adapters.ErrorMsgAdapter]
+     * */
+    private fun JsonReader.nextErrorMsg(): String? = when (peek()) {
+        JsonToken.BEGIN_OBJECT -> {
+            var errMsg: String? = null
+            beginObject()
+            while (hasNext()) {
+                if (nextName() == "errmsg") errMsg = nextString() else skipValue()
+            }
+            endObject()
+            errMsg
+        }
+
+        JsonToken.STRING, JsonToken.NUMBER -> nextString()
+
+        JsonToken.BOOLEAN -> nextBoolean().toString()
+
+        else -> {
+            skipValue()
+            null
         }
-        return response
     }
-}
\ No newline at end of file
+}
@@ -4,35 +4,58 @@ import com.huanchengfly.tieba.post.api.Error
 import com.huanchengfly.tieba.post.api.models.CommonResponse
 import com.huanchengfly.tieba.post.api.models.protos.ProtoCommonResponse
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaApiException
+import com.squareup.wire.ProtoReader
 import okhttp3.Interceptor
 import okhttp3.Response
+import okio.BufferedSource
+import com.huanchengfly.tieba.post.api.models.protos.Error as ProtoError
 
+/**
+ * Throws [TiebaApiException] if the protobuf response carries an error.
+ *
+ * Only the top level tags are scanned on a peek of the body until the error field is found, other
+ * fields are skipped without decoding. Peeked bytes stay in the buffer of the body and are decoded
+ * once by the converter.
+ * */
 object ProtoFailureResponseInterceptor : Interceptor {
+
+    /**
+     * Field tag of error in every response message, see [ProtoCommonResponse]
+     * */
+    private const val TAG_ERROR = 1
+
     override fun intercept(chain: Interceptor.Chain): Response {
         val response = chain.proceed(chain.request())
         val body = response.body
         if (!response.isSuccessful || body == null || body.contentLength() == 0L) return response
 
-        val inputStream = body.source().also {
-            it.request(Long.MAX_VALUE)
-        }.buffer.clone().inputStream()
-
-        val protoCommonResponse = try {
-            ProtoCommonResponse.ADAPTER.decode(inputStream)
+        val error = try {
+            readError(body.source().peek())
         } catch (exception: Exception) {
             exception.printStackTrace()
             //如果返回内容解析失败, 说明它不是一个合法的 json
             //如果在拦截器抛出 MalformedJsonException 会导致 Retrofit 的异步请求一直卡着直到超时
             return response
-        } finally {
-            inputStream.close()
         }
 
-        protoCommonResponse.error?.run {
+        error?.run {
             if (error_code != 0 && error_code != Error.ERROR_ACCOUNT_BLOCKED/* 账号封禁错误由DataSource 处理 */) {
                 throw TiebaApiException(CommonResponse(error_code, error_msg))
             }
         }
         return response
     }
-}
\ No newline at end of file
+
+    /**
+     * Scan top level fields of a protobuf response for the error field, stops once it's found.
+     *
+     * @return decoded error, **null** if the response has no error field
+     * */
+    internal fun readError(source: BufferedSource): ProtoError? {
+        val reader = ProtoReader(source)
+        reader.forEachTag { tag ->
+            if (tag == TAG_ERROR) return ProtoError.ADAPTER.decode(reader) else reader.skip()
+        }
+        return null
+    }
+}
@@ -0,0 +1,290 @@
+package com.huanchengfly.tieba.post.api.retrofit.interceptors
+
+import android.util.Log
+import com.huanchengfly.tieba.post.api.Header
+import com.huanchengfly.tieba.post.api.Method
+import com.huanchengfly.tieba.post.api.name
+import com.huanchengfly.tieba.post.api.retrofit.body.MyMultipartBody
+import com.huanchengfly.tieba.post.api.retrofit.cache.ProtobufHttpCache
+import com.huanchengfly.tieba.post.utils.AccountUtil
+import com.huanchengfly.tieba.post.utils.MD5Util
+import com.squareup.wire.ProtoAdapter
+import com.squareup.wire.ProtoReader
+import com.squareup.wire.ProtoWriter
+import kotlinx.coroutines.CompletableDeferred
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Interceptor
+import okhttp3.MediaType.Companion.toMediaTypeOrNull
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import okio.Buffer
+import okio.ByteString
+import okio.buffer
+import okio.source
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Cache policy of a protobuf endpoint.
+ *
+ * @param path encoded path of the endpoint
+ * @param commonTag field tag of [com.huanchengfly.tieba.post.api.models.protos.CommonRequest] in
+ *   the request data, it changes on every request so it's excluded from the cache key
+ * @param scopeTag field tag in the request data that scopes the cached responses, e.g. thread ID.
+ *   Responses of one scope are evicted together by [ProtobufHttpCache.evict]
+ * @param maxAge cached response is served without revalidation within this duration
+ * @param staleWhileRevalidate stale response is served while revalidating in background within
+ *   this duration after [maxAge]
+ * */
+class ProtobufCachePolicy(
+    val path: String,
+    val commonTag: Int,
+    val maxAge: Long,
+    val staleWhileRevalidate: Long,
+    val scopeTag: Int? = null,
+) {
+    companion object {
+        val FRS_PAGE = ProtobufCachePolicy(
+            path = "/c/f/frs/page",
+            commonTag = 39,
+            maxAge = TimeUnit.SECONDS.toMillis(30),
+            staleWhileRevalidate = TimeUnit.MINUTES.toMillis(5),
+            scopeTag = 1 // kw
+        )
+
+        val PB_PAGE = ProtobufCachePolicy(
+            path = "/c/f/pb/page",
+            commonTag = 25,
+            maxAge = TimeUnit.SECONDS.toMillis(60),
+            staleWhileRevalidate = TimeUnit.MINUTES.toMillis(5),
+            scopeTag = 4 // kz
+        )
+
+        val PROFILE = ProtobufCachePolicy(
+            path = "/c/u/user/profile",
+            commonTag = 9,
+            maxAge = TimeUnit.SECONDS.toMillis(60),
+            staleWhileRevalidate = TimeUnit.MINUTES.toMillis(10)
+        )
+
+        val DEFAULT = listOf(FRS_PAGE, PB_PAGE, PROFILE)
+    }
+}
+
+/**
+ * Stale-while-revalidate cache of protobuf endpoints.
+ *
+ * Protobuf requests are multipart POST, so responses are keyed by the fingerprint of the request
+ * data with [com.huanchengfly.tieba.post.api.models.protos.CommonRequest] stripped. A stale
+ * response is served immediately with [Header.TB_CACHE] set to [CACHE_STALE], while a clone of
+ * the call refreshes the cache in background. Callers could observe the refreshed response by
+ * cloning the call after [awaitRevalidation] of [Header.TB_CACHE_KEY], nothing blocks on the
+ * dispatcher threads.
+ *
+ * Requests with `Cache-Control: no-cache` always go to the network. Must be the first interceptor,
+ * so cached responses skip the whole chain.
+ * */
+class ProtobufCacheInterceptor(
+    private val policies: List<ProtobufCachePolicy>,
+    cacheProvider: () -> ProtobufHttpCache,
+) : Interceptor {
+
+    private val cache by lazy(cacheProvider)
+
+    /**
+     * Background calls started by revalidation
+     * */
+    private val revalidateCalls: MutableSet<Call> = ConcurrentHashMap.newKeySet()
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val body = request.body
+        val policy = policies.firstOrNull { it.path == request.url.encodedPath }
+        if (policy == null || body !is MyMultipartBody || request.method != Method.POST) {
+            return chain.proceed(request)
+        }
+        val key = fingerprint(request, body, policy) ?: return chain.proceed(request)
+
+        if (chain.call() in revalidateCalls || request.header(Header.CACHE_CONTROL)?.contains(NO_CACHE) == true) {
+            return fetch(chain, key, policy)
+        }
+
+        val cached = cache.get(policy.path, key)
+        val age = if (cached != null) System.currentTimeMillis() - cached.storedAt else Long.MAX_VALUE
+        when {
+            age < 0 -> cache.remove(policy.path, key) // Clock changed
+
+            age < policy.maxAge -> {
+                cache.recordHit(stale = false)
+                return cached!!.toResponse(request, status = CACHE_HIT)
+            }
+
+            age < policy.maxAge + policy.staleWhileRevalidate -> {
+                cache.recordHit(stale = true)
+                revalidate(chain, key)
+                return cached!!.toResponse(request, status = CACHE_STALE)
+                    .newBuilder()
+                    .header(Header.TB_CACHE_KEY, key)
+                    .build()
+            }
+        }
+
+        cache.recordMiss()
+        return fetch(chain, key, policy)
+    }
+
+    private fun fetch(chain: Interceptor.Chain, key: String, policy: ProtobufCachePolicy): Response {
+        val response = chain.proceed(chain.request())
+        if (!response.isSuccessful) return response
+
+        val contentType = response.body.contentType()
+        val bytes = response.body.bytes()
+        val cached = bytes.isNotEmpty() && isSuccessResponse(bytes) && cache.put(
+            path = policy.path,
+            fingerprint = key,
+            expireAfter = policy.maxAge + policy.staleWhileRevalidate,
+            contentType = contentType?.toString(),
+            body = bytes
+        )
+        if (chain.call() in revalidateCalls) {
+            revalidations.remove(key)?.complete(cached)
+        }
+        return response.newBuilder()
+            .header(Header.TB_CACHE, CACHE_MISS)
+            .body(bytes.toResponseBody(contentType))
+            .build()
+    }
+
+    private fun revalidate(chain: Interceptor.Chain, key: String) {
+        val revalidation = CompletableDeferred<Boolean>()
+        if (revalidations.putIfAbsent(key, revalidation) != null) return
+
+        val call = chain.call().clone()
+        revalidateCalls.add(call)
+        call.enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                Log.w(TAG, "onRevalidate: ${call.request().url.encodedPath} failed: ${e.message}.")
+                finish(call)
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                response.close()
+                finish(call)
+            }
+
+            private fun finish(call: Call) {
+                revalidateCalls.remove(call)
+                // No-op if the response was cached, see fetch
+                revalidations.remove(key, revalidation)
+                revalidation.complete(false)
+            }
+        })
+    }
+
+    private fun ProtobufHttpCache.Entry.toResponse(request: Request, status: String): Response {
+        val now = System.currentTimeMillis()
+        return Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+            .header(Header.TB_CACHE, status)
+            .body(body.toResponseBody(contentType?.toMediaTypeOrNull()))
+            .sentRequestAtMillis(now)
+            .receivedResponseAtMillis(now)
+            .build()
+    }
+
+    companion object {
+        private const val TAG = "ProtobufCacheInterceptor"
+
+        const val CACHE_HIT = "hit"
+        const val CACHE_STALE = "stale"
+        const val CACHE_MISS = "miss"
+
+        const val NO_CACHE = "no-cache"
+
+        /**
+         * Ongoing revalidations by cache key, completes with true once the response is cached
+         * */
+        private val revalidations = ConcurrentHashMap<String, CompletableDeferred<Boolean>>()
+
+        /**
+         * Suspends until the ongoing revalidation of [key] finished.
+         *
+         * @param key value of [Header.TB_CACHE_KEY] of the stale response
+         * @return true if revalidated or nothing to wait, false if the revalidation failed
+         * */
+        suspend fun awaitRevalidation(key: String): Boolean = revalidations[key]?.await() ?: true
+
+        /**
+         * Field tag of request data in protobuf request messages
+         * */
+        private const val TAG_REQUEST_DATA = 1
+
+        private fun isSuccessResponse(bytes: ByteArray): Boolean = try {
+            val source = bytes.inputStream().source().buffer()
+            (ProtoFailureResponseInterceptor.readError(source)?.error_code ?: 0) == 0
+        } catch (e: IOException) {
+            false
+        }
+
+        /**
+         * @return MD5 of url, current user and request data without common request, prefixed by
+         *   the scope of [ProtobufCachePolicy.scopeTag]. **null** if the request data is not
+         *   decodable.
+         * */
+        internal fun fingerprint(request: Request, body: MyMultipartBody, policy: ProtobufCachePolicy): String? {
+            val data = body.parts.firstOrNull { it.name() == "data" } ?: return null
+            val payload = Buffer().also { data.body.writeTo(it) }
+            val stripped = Buffer()
+            var scope = ""
+            try {
+                val reader = ProtoReader(payload)
+                val writer = ProtoWriter(stripped)
+                reader.forEachTag { tag ->
+                    if (tag == TAG_REQUEST_DATA) {
+                        scope = reader.copyFields(writer, skipTag = policy.commonTag, scopeTag = policy.scopeTag)
+                    } else {
+                        reader.skip()
+                    }
+                }
+            } catch (e: IOException) {
+                return null
+            }
+
+            val digest = MessageDigest.getInstance("MD5")
+            digest.update(request.url.toString().encodeToByteArray())
+            digest.update(0)
+            digest.update(AccountUtil.getUid().orEmpty().encodeToByteArray())
+            digest.update(0)
+            digest.update(stripped.readByteArray())
+            val hash = MD5Util.toHexString(digest.digest())
+            return if (policy.scopeTag != null) "$scope#$hash" else hash
+        }
+
+        /**
+         * @return value of [scopeTag], empty if absent
+         * */
+        private fun ProtoReader.copyFields(writer: ProtoWriter, skipTag: Int, scopeTag: Int?): String {
+            var scope = ""
+            forEachTag { tag ->
+                if (tag == skipTag) {
+                    skip()
+                } else {
+                    @Suppress("UNCHECKED_CAST")
+                    val adapter = peekFieldEncoding()!!.rawProtoAdapter() as ProtoAdapter<Any>
+                    val value = adapter.decode(this)
+                    if (tag == scopeTag) scope = if (value is ByteString) value.utf8() else value.toString()
+                    adapter.encodeWithTag(writer, tag, value)
+                }
+            }
+            return scope
+        }
+    }
+}
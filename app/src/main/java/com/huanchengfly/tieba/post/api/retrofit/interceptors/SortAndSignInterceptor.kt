@@ -2,19 +2,31 @@ package com.huanchengfly.tieba.post.api.retrofit.interceptors
 
 import com.huanchengfly.tieba.post.api.*
 import com.huanchengfly.tieba.post.api.retrofit.body.MyMultipartBody
-import com.huanchengfly.tieba.post.toMD5
+import com.huanchengfly.tieba.post.utils.MD5Util
 import okhttp3.FormBody
+import okhttp3.HttpUrl
 import okhttp3.Interceptor
 import okhttp3.Response
+import okio.Buffer
+import okio.BufferedSink
+import okio.Sink
+import okio.Timeout
+import okio.buffer
+import java.security.MessageDigest
 
 /**
  * 排序参数并添加签名
  * 必须保证在进入此拦截器前, 公共参数已被添加
  * 此拦截器将自动识别 appKey 在 Query 还是在 FormBody 并添加 sign 到相应位置
  *
+ * 签名时只对参数下标排序, 参数直接写入可复用的 [MessageDigest], 不再拼接中间字符串
+ *
  * @param appSecret 密钥
  */
 class SortAndSignInterceptor(private val appSecret: String) : Interceptor {
+
+    private val signer = ThreadLocal.withInitial { Md5Sink() }
+
     override fun intercept(chain: Interceptor.Chain): Response {
         var request = chain.request()
         val url = request.url
@@ -22,20 +34,12 @@ class SortAndSignInterceptor(private val appSecret: String) : Interceptor {
 
         request = when {
             url.queryParameter("BDUSS") != null && url.queryParameter(Param.SIGN) == null -> {
-                val sortedQuery = url.query!!.split('&').sorted().joinToString(separator = "")
                 val sortedEncodedQuery =
                     url.encodedQuery!!.split('&').sorted().joinToString(separator = "&")
                 request.newBuilder()
                     .url(
                         url.newBuilder()
-                            .encodedQuery(
-                                "$sortedEncodedQuery&${Param.SIGN}=${
-                                    calculateSign(
-                                        sortedQuery,
-                                        appSecret
-                                    )
-                                }"
-                            )
+                            .encodedQuery("$sortedEncodedQuery&${Param.SIGN}=${signQuery(url)}")
                             .build()
                     ).build()
             }
@@ -44,38 +48,14 @@ class SortAndSignInterceptor(private val appSecret: String) : Interceptor {
             body is FormBody &&
                     body.containsEncodedName(Param.CLIENT_VERSION) &&
                     !body.containsEncodedName(Param.SIGN) -> {
-                val sortedEncodedRaw = body.sortedEncodedRaw()
-                val formBody = FormBody.Builder().apply {
-                    sortedEncodedRaw.split('&').forEach {
-                        val (name, value) = it.split('=')
-                        addEncoded(name, value)
-                    }
-                    addEncoded(Param.SIGN, calculateSign(body.sortedRaw(false), appSecret))
-                }.build()
                 request.newBuilder()
-                    .method(request.method, formBody)
+                    .method(request.method, signFormBody(body))
                     .build()
             }
 
             body is MyMultipartBody && body.contains(Param.CLIENT_VERSION) && !body.contains(Param.SIGN) -> {
-                val builder = body.newBuilder()
-                val fileParts = mutableListOf<MyMultipartBody.Part>()
-                body.parts.forEach {
-                    if (it.fileName() != null) {
-                        fileParts.add(it)
-                    }
-                }
-                body.parts.filterNot { it in fileParts }.sortedBy { it.name() }
-                    .forEach { builder.addPart(it) }
-                var newBody = builder.build()
-                val sortedRaw = newBody.parts.filter { it.fileName() == null }
-                    .joinToString("") { "${it.name()}=${it.readString()}" }
-                builder.addFormDataPart(Param.SIGN, calculateSign(sortedRaw, appSecret))
-                if (fileParts.isNotEmpty()) fileParts.sortedBy { it.fileName() }
-                    .forEach { builder.addPart(it) }
-                newBody = builder.build()
                 request.newBuilder()
-                    .method(request.method, newBody)
+                    .method(request.method, signMultipartBody(body))
                     .build()
             }
 
@@ -88,6 +68,167 @@ class SortAndSignInterceptor(private val appSecret: String) : Interceptor {
         return chain.proceed(request)
     }
 
-    internal fun calculateSign(sortedQuery: String, appSecret: String) =
-        (sortedQuery + appSecret).toMD5()
-}
\ No newline at end of file
+    internal fun signQuery(url: HttpUrl): String {
+        val size = url.querySize
+        val names = Array(size) { url.queryParameterName(it) }
+        val values = Array(size) { url.queryParameterValue(it) }
+        val order = sortedIndices(names, values)
+
+        return signer.get()!!.sign {
+            order.forEach { writeParam(names[it], values[it]) }
+            writeUtf8(appSecret)
+        }
+    }
+
+    internal fun signFormBody(body: FormBody): FormBody {
+        val size = body.size
+        val encodedNames = Array(size) { body.encodedName(it) }
+        val encodedValues = Array(size) { body.encodedValue(it) }
+        val names = Array(size) { body.name(it) }
+        val values = Array(size) { body.value(it) }
+
+        val sign = signer.get()!!.sign {
+            sortedIndices(names, values).forEach { writeParam(names[it], values[it]) }
+            writeUtf8(appSecret)
+        }
+
+        return FormBody.Builder().apply {
+            sortedIndices(encodedNames, encodedValues).forEach { addEncoded(encodedNames[it], encodedValues[it]) }
+            addEncoded(Param.SIGN, sign)
+        }.build()
+    }
+
+    internal fun signMultipartBody(body: MyMultipartBody): MyMultipartBody {
+        val formParts = ArrayList<MyMultipartBody.Part>(body.size)
+        val formNames = ArrayList<String?>(body.size)
+        val fileParts = ArrayList<Pair<String, MyMultipartBody.Part>>(1)
+        body.parts.forEach {
+            val disposition = it.contentDisposition()
+            val fileName = disposition["filename"]
+            if (fileName != null) {
+                fileParts.add(fileName to it)
+            } else {
+                formParts.add(it)
+                formNames.add(disposition["name"])
+            }
+        }
+
+        // Stable sort by name, null name first
+        val order = IntArray(formParts.size) { it }
+        insertionSort(order) { a, b -> compareValues(formNames[a], formNames[b]) }
+
+        // Hash part body directly, without reading it into String
+        val sign = signer.get()!!.sign {
+            order.forEach {
+                writeUtf8(formNames[it].toString())
+                writeByte('='.code)
+                formParts[it].body.writeTo(this)
+            }
+            writeUtf8(appSecret)
+        }
+
+        return body.newBuilder().apply {
+            order.forEach { addPart(formParts[it]) }
+            addFormDataPart(Param.SIGN, sign)
+            fileParts.sortedBy { it.first }.forEach { addPart(it.second) }
+        }.build()
+    }
+
+    internal fun calculateSign(sortedQuery: String, appSecret: String) = signer.get()!!.sign {
+        writeUtf8(sortedQuery)
+        writeUtf8(appSecret)
+    }
+
+    /**
+     * [Sink] that feeds written bytes straight into a reusable MD5 [MessageDigest].
+     * */
+    private class Md5Sink : Sink {
+        private val digest = MessageDigest.getInstance("MD5")
+        private val cursor = Buffer.UnsafeCursor()
+        private val bufferedSink: BufferedSink = this.buffer()
+
+        override fun write(source: Buffer, byteCount: Long) {
+            var remaining = byteCount
+            source.readUnsafe(cursor).use {
+                var read = it.seek(0L)
+                while (remaining > 0 && read != -1) {
+                    val length = minOf(read.toLong(), remaining).toInt()
+                    digest.update(it.data!!, it.start, length)
+                    remaining -= length
+                    read = it.next()
+                }
+            }
+            source.skip(byteCount)
+        }
+
+        inline fun sign(block: BufferedSink.() -> Unit): String {
+            digest.reset()
+            try {
+                bufferedSink.block()
+                bufferedSink.flush()
+                return MD5Util.toHexString(digest.digest())
+            } finally {
+                // Bytes left by a failed block would leak into the next sign of this thread
+                bufferedSink.buffer.clear()
+            }
+        }
+
+        override fun flush() = Unit
+
+        override fun timeout(): Timeout = Timeout.NONE
+
+        override fun close() = Unit
+    }
+
+    companion object {
+
+        private fun BufferedSink.writeParam(name: String, value: String?) {
+            writeUtf8(name)
+            if (value != null) {
+                writeByte('='.code)
+                writeUtf8(value)
+            }
+        }
+
+        private fun charAt(name: String, value: String?, index: Int): Char = when {
+            index < name.length -> name[index]
+            index == name.length -> '='
+            else -> value!![index - name.length - 1]
+        }
+
+        /**
+         * Compares `name=value` pairs like [String.compareTo] without concatenating them.
+         * */
+        private fun compareParam(name1: String, value1: String?, name2: String, value2: String?): Int {
+            val length1 = if (value1 == null) name1.length else name1.length + 1 + value1.length
+            val length2 = if (value2 == null) name2.length else name2.length + 1 + value2.length
+            for (i in 0 until minOf(length1, length2)) {
+                val c1 = charAt(name1, value1, i)
+                val c2 = charAt(name2, value2, i)
+                if (c1 != c2) return c1 - c2
+            }
+            return length1 - length2
+        }
+
+        private fun sortedIndices(names: Array<String>, values: Array<out String?>): IntArray {
+            val indices = IntArray(names.size) { it }
+            insertionSort(indices) { a, b -> compareParam(names[a], values[a], names[b], values[b]) }
+            return indices
+        }
+
+        /**
+         * Stable in-place sort, parameters are few so this beats allocating a boxed list.
+         * */
+        private inline fun insertionSort(array: IntArray, comparator: (Int, Int) -> Int) {
+            for (i in 1 until array.size) {
+                val key = array[i]
+                var j = i - 1
+                while (j >= 0 && comparator(array[j], key) > 0) {
+                    array[j + 1] = array[j]
+                    j--
+                }
+                array[j + 1] = key
+            }
+        }
+    }
+}
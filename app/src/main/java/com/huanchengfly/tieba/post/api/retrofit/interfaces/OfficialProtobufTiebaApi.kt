@@ -62,6 +62,7 @@ interface OfficialProtobufTiebaApi {
     fun frsPageFlow(
         @Body body: MyMultipartBody,
         @Header("forum_name") forumName: String? = null,
+        @Header("Cache-Control") cacheControl: String? = null,
     ): Flow<FrsPageResponse>
 
     @POST("/c/f/frs/threadlist?cmd=301002")
@@ -72,11 +73,13 @@ interface OfficialProtobufTiebaApi {
     @POST("/c/u/user/profile?cmd=303012&format=protobuf")
     fun profileFlow(
         @Body body: MyMultipartBody,
+        @Header("Cache-Control") cacheControl: String? = null,
     ): Flow<ProfileResponse>
 
     @POST("/c/f/pb/page?cmd=302001&format=protobuf")
     fun pbPageFlow(
         @Body body: MyMultipartBody,
+        @Header("Cache-Control") cacheControl: String? = null,
     ): Flow<PbPageResponse>
 
     @POST("/c/f/pb/floor?cmd=302002&format=protobuf")
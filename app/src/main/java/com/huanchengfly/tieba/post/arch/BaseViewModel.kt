@@ -4,6 +4,7 @@ import android.util.Log
 import androidx.compose.runtime.Stable
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.huanchengfly.tieba.post.BuildConfig
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableSharedFlow
@@ -42,20 +43,33 @@ abstract class BaseViewModel<
 
     protected abstract fun createPartialChangeProducer(): PartialChangeProducer<Intent, PC, State>
 
+    private val tag by lazy { ViewModelInstrumentation.Tag(javaClass.simpleName) }
+
     val uiState by lazy { // lazy initialization for hilt injection
         createPartialChangeProducer().toPartialChangeFlow(_intentFlow)
         .onEach {
-            Log.d(this::class.simpleName, "partialChange $it")
+            // Stringify partial change carrying whole pages in debug build only
+            if (BuildConfig.DEBUG) Log.d(tag.name, "partialChange $it")
             val event = dispatchEvent(it)
             if (event != null) {
-                Log.d(this::class.simpleName, "event $event")
+                if (BuildConfig.DEBUG) Log.d(tag.name, "event $event")
                 _internalUiEventFlow.emit(event)
             }
         }
         .scan(initialState) { oldState, partialChange ->
-            partialChange.reduce(oldState)
+            val instrumentation = ViewModelInstrumentation.current
+            instrumentation.onReduceStart(tag)
+            val start = System.nanoTime()
+            try {
+                partialChange.reduce(oldState)
+            } finally {
+                instrumentation.onReduceEnd(tag, System.nanoTime() - start)
+            }
+        }
+        .distinctUntilChanged { old, new ->
+            (old == new).also { if (it) ViewModelInstrumentation.current.onStateDropped(tag) }
         }
-        .distinctUntilChanged()
+        .onEach { ViewModelInstrumentation.current.onStateEmitted(tag) }
         .flowOn(Dispatchers.IO)
         .stateIn(viewModelScope, SharingStarted.Eagerly, initialState)
     }
@@ -63,7 +77,7 @@ abstract class BaseViewModel<
     protected open fun dispatchEvent(partialChange: PC): UiEvent? = null
 
     fun send(intent: Intent) {
-        Log.d(this::class.simpleName, "send $intent")
+        if (BuildConfig.DEBUG) Log.d(tag.name, "send $intent")
         viewModelScope.launch {
             _intentFlow.emit(intent)
         }
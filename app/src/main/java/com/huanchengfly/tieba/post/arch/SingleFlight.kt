@@ -0,0 +1,100 @@
+package com.huanchengfly.tieba.post.arch
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.isActive
+
+/**
+ * Merges identical in-flight calls into one, like [ControlledRunner.joinPreviousOrRun] but keyed.
+ *
+ * The first caller of a key starts the call in [scope], callers of the same key arrive before it
+ * completes share its result or exception. The call is only cancelled once all of its callers are
+ * cancelled, so a leaving screen won't fail the others.
+ *
+ * Only use for idempotent reads, a mutation must never be merged.
+ *
+ * @param scope scope of the shared calls, should be supervised
+ * @param partition session of the caller, e.g. current account. Calls of different sessions are
+ * never merged even with the same key
+ */
+class SingleFlight(
+    private val scope: CoroutineScope,
+    private val partition: () -> Any? = { null },
+) {
+
+    /**
+     * Merge statistics of an endpoint.
+     *
+     * @param calls number of calls requested
+     * @param saved number of calls merged into an in-flight call
+     */
+    class Stats(val endpoint: String, val calls: Int, val saved: Int)
+
+    private class Call(val deferred: Deferred<Any?>) {
+        var waiters = 1
+    }
+
+    private class Counter {
+        var calls = 0
+        var saved = 0
+    }
+
+    private val lock = Any()
+
+    private val inFlight = HashMap<String, Call>()
+
+    private val counters = HashMap<String, Counter>()
+
+    /**
+     * Run [block], or join the in-flight call of the same [endpoint] and [params].
+     *
+     * @param endpoint name of the API, used as the statistic group
+     * @param params canonical request parameters, compared by [toString]
+     */
+    suspend fun <T> run(endpoint: String, vararg params: Any?, block: suspend () -> T): T {
+        val key = params.joinToString(separator = "/", prefix = "${partition()}:$endpoint?")
+        val call = synchronized(lock) {
+            val counter = counters.getOrPut(endpoint) { Counter() }
+            counter.calls++
+            val active = inFlight[key]
+            if (active != null) {
+                counter.saved++
+                active.waiters++
+                active
+            } else {
+                val deferred = scope.async(start = CoroutineStart.LAZY) { block() }
+                Call(deferred).also { newCall ->
+                    inFlight[key] = newCall
+                    deferred.invokeOnCompletion {
+                        synchronized(lock) { inFlight.remove(key, newCall) }
+                    }
+                    deferred.start()
+                }
+            }
+        }
+
+        try {
+            @Suppress("UNCHECKED_CAST")
+            return call.deferred.await() as T
+        } catch (e: CancellationException) {
+            // Cancel the shared call once the last caller left
+            if (!currentCoroutineContext().isActive) {
+                val orphan = synchronized(lock) {
+                    (--call.waiters == 0).also { if (it) inFlight.remove(key, call) }
+                }
+                if (orphan) call.deferred.cancel()
+            }
+            throw e
+        }
+    }
+
+    fun stats(): List<Stats> = synchronized(lock) {
+        counters.map { (endpoint, counter) -> Stats(endpoint, counter.calls, counter.saved) }
+    }
+
+    fun reset() = synchronized(lock) { counters.clear() }
+}
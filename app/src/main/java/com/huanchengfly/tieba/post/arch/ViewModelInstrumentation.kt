@@ -0,0 +1,81 @@
+package com.huanchengfly.tieba.post.arch
+
+import androidx.tracing.Trace
+import com.huanchengfly.tieba.post.MacrobenchmarkConstant
+
+/**
+ * Hook of the MVI pipeline of [BaseViewModel]: intent -> partial change -> reduce -> state.
+ *
+ * Called on the pipeline of every ViewModel, implementations must be cheap and thread-safe. The
+ * default [TraceInstrumentation] records the pipeline as trace sections and counters.
+ *
+ * @see ViewModelInstrumentation.current
+ * */
+interface ViewModelInstrumentation {
+
+    /**
+     * Identity of a ViewModel, trace names are built once per ViewModel instead of per event.
+     * */
+    class Tag(val name: String) {
+        val reduceSection = "${MacrobenchmarkConstant.TRACE_VM_REDUCE}:$name"
+        val stateSection = "${MacrobenchmarkConstant.TRACE_VM_STATE}:$name"
+        val droppedSection = "${MacrobenchmarkConstant.TRACE_VM_DROPPED}:$name"
+
+        /**
+         * Emitted and dropped states of this ViewModel, only accessed on its own pipeline
+         * */
+        var emitted = 0L
+        var dropped = 0L
+    }
+
+    fun onReduceStart(tag: Tag) {}
+
+    /**
+     * @param durationNanos time spent on [PartialChange.reduce]
+     * */
+    fun onReduceEnd(tag: Tag, durationNanos: Long) {}
+
+    /**
+     * New state passed distinctUntilChanged and is emitted to UI
+     * */
+    fun onStateEmitted(tag: Tag) {}
+
+    /**
+     * Reduced state equals to the previous one and is dropped by distinctUntilChanged
+     * */
+    fun onStateDropped(tag: Tag) {}
+
+    companion object {
+        @Volatile
+        var current: ViewModelInstrumentation = TraceInstrumentation
+    }
+}
+
+/**
+ * Records reduce as trace section, emitted and dropped states as instant sections and counters.
+ *
+ * Sections are named like `VmReduce:ThreadViewModel`, match them with `VmReduce:%` in
+ * Macrobenchmark.
+ * */
+object TraceInstrumentation : ViewModelInstrumentation {
+
+    override fun onReduceStart(tag: ViewModelInstrumentation.Tag) = Trace.beginSection(tag.reduceSection)
+
+    override fun onReduceEnd(tag: ViewModelInstrumentation.Tag, durationNanos: Long) = Trace.endSection()
+
+    override fun onStateEmitted(tag: ViewModelInstrumentation.Tag) {
+        tag.emitted++
+        if (!Trace.isEnabled()) return
+        Trace.beginSection(tag.stateSection)
+        Trace.setCounter(tag.stateSection, tag.emitted.toInt())
+        Trace.endSection()
+    }
+
+    override fun onStateDropped(tag: ViewModelInstrumentation.Tag) {
+        tag.dropped++
+        if (!Trace.isEnabled()) return
+        Trace.beginSection(tag.droppedSection)
+        Trace.setCounter(tag.droppedSection, tag.dropped.toInt())
+        Trace.endSection()
+    }
+}
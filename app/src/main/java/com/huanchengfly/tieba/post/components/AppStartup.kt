@@ -0,0 +1,94 @@
+package com.huanchengfly.tieba.post.components
+
+import androidx.tracing.Trace
+import com.huanchengfly.tieba.post.MacrobenchmarkConstant
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.EmptyCoroutineContext
+
+/**
+ * Dependency ordered graph of startup initializers.
+ *
+ * Every task starts once all of its dependencies completed, independent tasks run in parallel
+ * on [scope]. Tasks only required by later components (e.g. the first network call) are awaited
+ * lazily with [await] or [awaitBlocking] instead of blocking Application.onCreate.
+ *
+ * Each task is emitted as an async trace section named after it, see
+ * [MacrobenchmarkConstant.TRACE_STARTUP_CONFIG].
+ *
+ * Failure of a task is rethrown in [scope], crashing the app like a failed synchronous init.
+ * */
+class AppStartup(private val scope: CoroutineScope) {
+
+    private val tasks = ConcurrentHashMap<String, CompletableDeferred<Unit>>()
+
+    private val cookies = AtomicInteger()
+
+    /**
+     * Declare a startup task, it starts immediately after all [dependencies] completed.
+     *
+     * @param name unique name of this task, also used as the trace section name
+     * @param dependencies names of the tasks to wait for, must be declared before this task
+     * @param context additional context to run [block] in, e.g. a different dispatcher
+     * */
+    fun task(
+        name: String,
+        vararg dependencies: String,
+        context: CoroutineContext = EmptyCoroutineContext,
+        block: suspend () -> Unit
+    ) {
+        val required = dependencies.map {
+            tasks[it] ?: throw IllegalStateException("Dependency $it of $name is not declared")
+        }
+        val result = CompletableDeferred<Unit>()
+        check(tasks.putIfAbsent(name, result) == null) { "Duplicated startup task: $name" }
+
+        scope.launch(context) {
+            try {
+                required.awaitAll()
+                val cookie = cookies.incrementAndGet()
+                Trace.beginAsyncSection(name, cookie)
+                try {
+                    block()
+                } finally {
+                    Trace.endAsyncSection(name, cookie)
+                }
+                result.complete(Unit)
+            } catch (e: Throwable) {
+                result.completeExceptionally(e)
+                throw e
+            }
+        }
+    }
+
+    /**
+     * Suspends until the task [name] completed, returns immediately if the task was never
+     * declared in this process.
+     * */
+    suspend fun await(name: String) {
+        tasks[name]?.await()
+    }
+
+    /**
+     * Blocking variant of [await] for callers can't suspend, avoid calling on main thread.
+     * */
+    fun awaitBlocking(name: String) {
+        val task = tasks[name] ?: return
+        // Completed, skip the event loop of runBlocking
+        if (task.isCompleted && !task.isCancelled) return
+        runBlocking { task.await() }
+    }
+
+    companion object {
+
+        const val CONFIG = MacrobenchmarkConstant.TRACE_STARTUP_CONFIG
+
+        const val EMOTICON = MacrobenchmarkConstant.TRACE_STARTUP_EMOTICON
+    }
+}
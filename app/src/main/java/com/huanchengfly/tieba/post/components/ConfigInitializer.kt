@@ -7,6 +7,7 @@ import android.os.Build
 import android.webkit.WebSettings
 import com.github.gzuliyujiang.oaid.DeviceID
 import com.huanchengfly.tieba.post.App
+import com.huanchengfly.tieba.post.api.ParamSnapshot
 import com.huanchengfly.tieba.post.repository.user.SettingsRepository
 import com.huanchengfly.tieba.post.utils.ClientUtils
 import com.huanchengfly.tieba.post.utils.packageInfo
@@ -24,6 +25,7 @@ class ConfigInitializer @Inject constructor(
 
     val clientSettings = settingsRepository.clientConfig
 
+    @Synchronized
     fun init(reload: Boolean = false) = with(App.Config) {
         ClientUtils.clientConfigSettings = clientSettings
         if (reload || !inited) {
@@ -49,6 +51,7 @@ class ConfigInitializer @Inject constructor(
             ) {
                 ClientUtils.init(clientSettings, configSnapshot = config)
             }
+            ParamSnapshot.invalidate()
             inited = true
         }
     }
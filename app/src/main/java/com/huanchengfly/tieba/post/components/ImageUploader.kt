@@ -1,10 +1,10 @@
 package com.huanchengfly.tieba.post.components
 
 import android.content.Context
-import android.graphics.Bitmap
 import android.graphics.Bitmap.CompressFormat
 import android.graphics.BitmapFactory
 import android.net.Uri
+import androidx.annotation.VisibleForTesting
 import com.huanchengfly.tieba.post.api.BOUNDARY
 import com.huanchengfly.tieba.post.api.booleanToString
 import com.huanchengfly.tieba.post.api.models.UploadPictureResultBean
@@ -15,21 +15,45 @@ import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
 import com.huanchengfly.tieba.post.ui.models.settings.WaterType
 import com.huanchengfly.tieba.post.utils.FileUtil.deleteQuietly
 import com.huanchengfly.tieba.post.utils.FileUtil.writeAll
-import com.huanchengfly.tieba.post.utils.ImageUtil
 import com.huanchengfly.tieba.post.utils.ImageUtil.toFile
 import com.huanchengfly.tieba.post.utils.MD5Util
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.ExperimentalCoroutinesApi
-import kotlinx.coroutines.flow.asFlow
-import kotlinx.coroutines.flow.flatMapConcat
-import kotlinx.coroutines.flow.last
-import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
-import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okio.BufferedSink
+import okio.source
 import java.io.File
 import java.io.FileNotFoundException
+import java.io.IOException
 import java.io.RandomAccessFile
+import java.nio.channels.Channels
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.max
+import kotlin.math.min
 
+/**
+ * Uploads images in chunks.
+ *
+ * Images are prepared one by one (decoding is memory heavy), their chunks are uploaded concurrently
+ * with at most [MAX_PARALLEL_CHUNKS] requests in flight. Chunks of one image are uploaded in order,
+ * uploaded chunks are recorded by resourceId (MD5 of the image and [chunkSize]), so uploading the
+ * same image again after a network drop resumes from the failed chunk.
+ *
+ * @see progress
+ * */
 class ImageUploader(
     private val forumName: String,
     private val chunkSize: Int = DEFAULT_CHUNK_SIZE
@@ -39,8 +63,54 @@ class ImageUploader(
 
         const val IMAGE_MAX_SIZE = 5242880
         const val ORIGIN_IMAGE_MAX_SIZE = 10485760
+
+        /**
+         * Long edges to downscale the image to, the next one is tried if still too large
+         * */
+        private val IMAGE_MAX_EDGES = intArrayOf(2560, 1080)
+
+        private const val IMAGE_QUALITY = 95
+
+        private const val MAX_PARALLEL_CHUNKS = 3
+
+        private const val MAX_CHUNK_RETRIES = 2
+
+        private const val CHUNK_RETRY_DELAY = 1000L
+
+        /**
+         * Number of uploaded chunks by resourceId, kept until the image is fully uploaded
+         * */
+        private val uploadedChunks = ConcurrentHashMap<String, Int>()
+
+        /**
+         * Calculate the largest power of 2 sample size that keeps the long edge not smaller than
+         * [maxEdge].
+         * */
+        @VisibleForTesting
+        internal fun calculateInSampleSize(width: Int, height: Int, maxEdge: Int): Int {
+            val longEdge = max(width, height)
+            var sampleSize = 1
+            while (longEdge / (sampleSize * 2) >= maxEdge) {
+                sampleSize *= 2
+            }
+            return sampleSize
+        }
     }
 
+    private class PreparedImage(val file: File, val width: Int, val height: Int)
+
+    private val chunkPermits = Semaphore(MAX_PARALLEL_CHUNKS)
+
+    private val decodeLock = Mutex()
+
+    private val _progress = MutableStateFlow<List<Float>>(emptyList())
+
+    /**
+     * Upload progress of each image, from 0 to 1
+     * */
+    val progress: StateFlow<List<Float>>
+        get() = _progress
+
     suspend fun upload(
         context: Context,
         images: List<Uri>,
@@ -50,126 +120,174 @@ class ImageUploader(
         require(images.isNotEmpty())
         val contentResolver = context.contentResolver
         val tempDir = File(context.cacheDir, "upload_tmp_${images.hashCode()}")
+        _progress.value = List(images.size) { 0f }
         return try {
-            images.mapIndexed { i, uri ->
-                val image = File(tempDir, "img_$i").writeAll(contentResolver, uri)
-                uploadSinglePicture(image, watermarkType, isOriginImage)
+            coroutineScope {
+                images.mapIndexed { i, uri ->
+                    async {
+                        val image = decodeLock.withLock {
+                            withContext(Dispatchers.IO) {
+                                val origin = File(tempDir, "img_$i").writeAll(contentResolver, uri)
+                                prepareImage(origin, File(tempDir, "compressed_$i"), isOriginImage)
+                            }
+                        }
+                        uploadSinglePicture(image, watermarkType, isOriginImage) { progress ->
+                            _progress.update { it.toMutableList().apply { set(i, progress) } }
+                        }
+                    }
+                }
+                .awaitAll()
             }
-        } catch (e: Throwable) {
-            throw e
         } finally {
             runCatching { tempDir.deleteRecursively() } // Cleanup quietly
         }
     }
 
-    private suspend fun compressImage(
-        originFile: File,
-        isOriginImage: Boolean
-    ): File {
-        return withContext(Dispatchers.IO) {
-            val fileLength = originFile.length()
-            val maxSize = if (isOriginImage) ORIGIN_IMAGE_MAX_SIZE else IMAGE_MAX_SIZE
-            if (isOriginImage && fileLength <= maxSize) {
-                return@withContext originFile
-            } else {
-                val tempFile = File.createTempFile("temp", ".tmp")
-                val bitmap = BitmapFactory.decodeFile(originFile.path)
-                val firstCompressResult = ImageUtil.compressImage(bitmap, quality = 95)
-                tempFile.writeBytes(firstCompressResult)
-                if (firstCompressResult.size > maxSize) {
-                    // 压缩尺寸至 1080P
-                    val width = bitmap.width
-                    val height = bitmap.height
-                    val scale = if (width > height) {
-                        1080f / width
-                    } else {
-                        1080f / height
-                    }
-                    if (scale < 1) {
-                        val newWidth = (width * scale).toInt()
-                        val newHeight = (height * scale).toInt()
-                        Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true)
-                            .toFile(tempFile, quality = 95, format = CompressFormat.JPEG)
-                    }
+    /**
+     * Origin images within the max size are uploaded as is, others are downscaled while decoding
+     * and compressed into [output]. The full resolution bitmap is never decoded.
+     * */
+    @Throws(IOException::class)
+    private fun prepareImage(origin: File, output: File, isOriginImage: Boolean): PreparedImage {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        BitmapFactory.decodeFile(origin.path, bounds)
+        val width = bounds.outWidth
+        val height = bounds.outHeight
+        check(width > 0 && height > 0) { "图片宽高不正确" }
+
+        val maxSize = if (isOriginImage) ORIGIN_IMAGE_MAX_SIZE else IMAGE_MAX_SIZE
+        if (isOriginImage && origin.length() <= maxSize) {
+            return PreparedImage(origin, width, height)
+        }
+
+        var prepared = PreparedImage(origin, width, height)
+        for (maxEdge in IMAGE_MAX_EDGES) {
+            val sampleSize = calculateInSampleSize(width, height, maxEdge)
+            val sampledEdge = max(width, height) / sampleSize
+            val options = BitmapFactory.Options().apply {
+                inSampleSize = sampleSize
+                if (sampledEdge > maxEdge) {
+                    // Scale the rest while decoding
+                    inScaled = true
+                    inDensity = sampledEdge
+                    inTargetDensity = maxEdge
                 }
-                return@withContext tempFile
             }
+            val bitmap = BitmapFactory.decodeFile(origin.path, options)
+                ?: throw IOException("Unable to decode ${origin.name}")
+            try {
+                bitmap.toFile(output, quality = IMAGE_QUALITY, format = CompressFormat.JPEG)
+                prepared = PreparedImage(output, bitmap.width, bitmap.height)
+            } finally {
+                bitmap.recycle()
+            }
+            if (output.length() <= maxSize) break
         }
+        return prepared
     }
 
     @Throws(UploadPictureFailedException::class, FileNotFoundException::class)
-    @OptIn(ExperimentalCoroutinesApi::class)
     private suspend fun uploadSinglePicture(
-        image: File,
+        image: PreparedImage,
         @WaterType watermarkType: Int,
-        isOriginImage: Boolean = false,
+        isOriginImage: Boolean,
+        onProgress: (Float) -> Unit,
     ): UploadPictureResultBean {
-        val option = BitmapFactory.Options().apply {
-            inJustDecodeBounds = true
-        }
-        withContext(Dispatchers.IO) { BitmapFactory.decodeFile(image.path, option) }
-        val width = option.outWidth
-        val height = option.outHeight
-        check(width > 0 && height > 0) { "图片宽高不正确" }
-        val file = compressImage(originFile = image, isOriginImage)
+        val file = image.file
         val fileLength = file.length()
         val maxSize = if (isOriginImage) ORIGIN_IMAGE_MAX_SIZE else IMAGE_MAX_SIZE
         check(fileLength <= maxSize) { "图片大小超过限制" }
         val fileMd5 = withContext(Dispatchers.IO) { MD5Util.toMd5(file) }
-        val isMultipleChunkSize = fileLength % chunkSize == 0L
-        val totalChunkNum = fileLength / chunkSize + if (isMultipleChunkSize) 0 else 1
-        val requestBodies = (0 until totalChunkNum).map { chunk ->
-            val isFinish = chunk == totalChunkNum - 1
-            val curChunkSize = if (isFinish) {
-                if (isMultipleChunkSize) {
-                    chunkSize
-                } else {
-                    fileLength % chunkSize
-                }
-            } else {
-                chunkSize
-            }.toInt()
-            val chunkBytes = ByteArray(curChunkSize)
-            withContext(Dispatchers.IO) {
-                RandomAccessFile(file, "r").use {
-                    it.seek(chunk * chunkSize.toLong())
-                    it.read(chunkBytes)
+        val resourceId = "$fileMd5$chunkSize"
+        val totalChunkNum = ((fileLength + chunkSize - 1) / chunkSize).toInt()
+
+        // Resume from the failed chunk of last upload
+        var chunk = uploadedChunks[resourceId] ?: 0
+        onProgress(chunk.toFloat() / totalChunkNum)
+        var result: UploadPictureResultBean? = null
+        try {
+            while (chunk < totalChunkNum) {
+                val isFinish = chunk == totalChunkNum - 1
+                val offset = chunk.toLong() * chunkSize
+                val body = buildMultipartBody(BOUNDARY) {
+                    setType(MyMultipartBody.FORM)
+                    addFormDataPart("alt", "json")
+                    addFormDataPart("chunkNo", "${chunk + 1}")
+                    if (forumName.isNotEmpty()) addFormDataPart("forum_name", forumName)
+                    addFormDataPart("groupId", "1")
+                    addFormDataPart("height", "${image.height}")
+                    addFormDataPart("isFinish", isFinish.booleanToString())
+                    addFormDataPart("is_bjh", "0")
+                    addFormDataPart("pic_water_type", watermarkType.toString())
+                    addFormDataPart("resourceId", resourceId)
+                    addFormDataPart("saveOrigin", isOriginImage.booleanToString())
+                    addFormDataPart("size", "$fileLength")
+                    if (forumName.isNotEmpty()) addFormDataPart("small_flow_fname", forumName)
+                    addFormDataPart("width", "${image.width}")
+                    addFormDataPart(
+                        "chunk",
+                        "file",
+                        FileChunkBody(file, offset, min(chunkSize.toLong(), fileLength - offset))
+                    )
                 }
+                result = uploadChunk(body)
+                chunk++
+                uploadedChunks[resourceId] = chunk
+                onProgress(chunk.toFloat() / totalChunkNum)
             }
-            buildMultipartBody(BOUNDARY) {
-                setType(MyMultipartBody.FORM)
-                addFormDataPart("alt", "json")
-                addFormDataPart("chunkNo", "${chunk + 1}")
-                if (forumName.isNotEmpty()) addFormDataPart("forum_name", forumName)
-                addFormDataPart("groupId", "1")
-                addFormDataPart("height", "$height")
-                addFormDataPart("isFinish", isFinish.booleanToString())
-                addFormDataPart("is_bjh", "0")
-                addFormDataPart("pic_water_type", watermarkType.toString())
-                addFormDataPart("resourceId", "$fileMd5$chunkSize")
-                addFormDataPart("saveOrigin", isOriginImage.booleanToString())
-                addFormDataPart("size", "$fileLength")
-                if (forumName.isNotEmpty()) addFormDataPart("small_flow_fname", forumName)
-                addFormDataPart("width", "$width")
-                addFormDataPart("chunk", "file", chunkBytes.toRequestBody())
-            }
+            uploadedChunks.remove(resourceId)
+        } finally {
+            withContext(Dispatchers.IO) { file.deleteQuietly() }
         }
-        return requestBodies.asFlow()
-            .flatMapConcat { RetrofitTiebaApi.OFFICIAL_TIEBA_API.uploadPicture(it) }
-            .onCompletion {
-                withContext(Dispatchers.IO) { file.deleteQuietly() }
-            }
-            .last()
-            .also { resultBean ->
-                val errorCode = resultBean.errorCode.toIntOrNull() ?: -1
-                if (errorCode != 0) {
-                    throw UploadPictureFailedException(errorCode, resultBean.errorMsg)
+        return result!!
+    }
+
+    /**
+     * Upload one chunk, retry on network errors.
+     * */
+    private suspend fun uploadChunk(body: RequestBody): UploadPictureResultBean {
+        var retries = 0
+        while (true) {
+            val resultBean = try {
+                chunkPermits.withPermit {
+                    RetrofitTiebaApi.OFFICIAL_TIEBA_API.uploadPicture(body).first()
                 }
+            } catch (e: IOException) {
+                if (e is TiebaException || retries >= MAX_CHUNK_RETRIES) throw e
+                delay(CHUNK_RETRY_DELAY * ++retries)
+                continue
+            }
+            val errorCode = resultBean.errorCode.toIntOrNull() ?: -1
+            if (errorCode != 0) {
+                throw UploadPictureFailedException(errorCode, resultBean.errorMsg)
             }
+            return resultBean
+        }
+    }
+}
+
+/**
+ * Streams a slice of [file] without reading it into memory.
+ * */
+internal class FileChunkBody(
+    private val file: File,
+    private val offset: Long,
+    private val length: Long
+) : RequestBody() {
+
+    override fun contentType(): MediaType? = null
+
+    override fun contentLength(): Long = length
+
+    override fun writeTo(sink: BufferedSink) {
+        RandomAccessFile(file, "r").use { raf ->
+            raf.seek(offset)
+            Channels.newInputStream(raf.channel).source().use { sink.write(it, length) }
+        }
     }
 }
 
 class UploadPictureFailedException(
     override val code: Int = -1,
     override val message: String = "上传图片失败",
-) : TiebaException(message)
\ No newline at end of file
+) : TiebaException(message)
@@ -3,6 +3,7 @@ package com.huanchengfly.tieba.post.components
 import android.content.Context
 import android.net.Uri
 import android.os.Environment
+import android.util.Log
 import androidx.annotation.VisibleForTesting
 import androidx.annotation.WorkerThread
 import androidx.media3.common.util.UnstableApi
@@ -15,19 +16,36 @@ import androidx.media3.datasource.cache.Cache
 import androidx.media3.datasource.cache.CacheDataSink
 import androidx.media3.datasource.cache.CacheDataSource
 import androidx.media3.datasource.cache.CacheKeyFactory
-import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor
+import androidx.media3.datasource.cache.ContentMetadataMutations
 import androidx.media3.datasource.cache.SimpleCache
 import com.huanchengfly.tieba.post.api.ClientVersion
 import com.huanchengfly.tieba.post.api.getUserAgent
 import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 const val BD_VIDEO_HOST = "tb-video.bdstatic.com"
 
 @UnstableApi
 object MediaCache {
 
+    private const val TAG = "MediaCache"
+
     private const val LOCAL_CACHE_DIRECTORY = "media"
 
+    private const val MIN_CACHE_SIZE = 64L * 1024 * 1024 // 64 MiB
+    private const val MAX_CACHE_SIZE = 512L * 1024 * 1024 // 512 MiB
+
+    /**
+     * Ratio of free storage used by the cache, clamped by [MIN_CACHE_SIZE] and [MAX_CACHE_SIZE]
+     * */
+    private const val CACHE_SIZE_RATIO = 0.05
+
+    /**
+     * Bytes of the first few seconds of a video at common bitrates, see [VideoPrefetcher]
+     * */
+    const val PREFETCH_BYTES = 1024L * 1024 // 1 MiB
+
     private val Context.mediaCacheDir: File
         get() = if (!Environment.isExternalStorageRemovable()) {
             File(externalCacheDir, LOCAL_CACHE_DIRECTORY)
@@ -38,13 +56,21 @@ object MediaCache {
     @Volatile
     private var mCache: Cache? = null
 
+    private var mEvictor: WatchedAwareCacheEvictor? = null
+
+    val metrics = Metrics()
+
     private fun getCache(context: Context): Cache {
         return mCache ?: synchronized(this) {
-            mCache ?: SimpleCache(
-                context.mediaCacheDir,
-                LeastRecentlyUsedCacheEvictor(100 * 1024 * 1024), // 100 MiB
-                StandaloneDatabaseProvider(context)
-            ).also { mCache = it }
+            mCache ?: run {
+                val cacheDir = context.mediaCacheDir.apply { mkdirs() }
+                val cacheSize = (cacheDir.usableSpace * CACHE_SIZE_RATIO).toLong()
+                    .coerceIn(MIN_CACHE_SIZE, MAX_CACHE_SIZE)
+                val evictor = WatchedAwareCacheEvictor(cacheSize)
+                mEvictor = evictor
+                SimpleCache(cacheDir, evictor, StandaloneDatabaseProvider(context))
+            }
+            .also { mCache = it }
         }
     }
 
@@ -87,11 +113,80 @@ object MediaCache {
         dataSpec.uri.getBdVideoMD5() ?: CacheKeyFactory.DEFAULT.buildCacheKey(dataSpec)
     }
 
+    private fun getCacheKey(url: String): String {
+        return BdVideoCacheKeyFactory.buildCacheKey(DataSpec(Uri.parse(url)))
+    }
+
+    /**
+     * @return true if the first [PREFETCH_BYTES] of video [url] is cached
+     * */
+    @WorkerThread
+    fun isStartCached(context: Context, url: String): Boolean {
+        return getCache(context).isCached(getCacheKey(url), 0, PREFETCH_BYTES)
+    }
+
+    /**
+     * Mark the video [url] as fully watched, it will be evicted before other videos.
+     * */
+    @WorkerThread
+    fun markWatched(context: Context, url: String) {
+        val cache = getCache(context)
+        val key = getCacheKey(url)
+        synchronized(cache) {
+            val mutations = ContentMetadataMutations()
+                .set(WatchedAwareCacheEvictor.METADATA_WATCHED, 1L)
+            try {
+                cache.applyContentMetadataMutations(key, mutations)
+            } catch (e: Cache.CacheException) {
+                Log.w(TAG, "markWatched: $key", e)
+            }
+            mEvictor?.markWatched(key)
+        }
+    }
+
     @WorkerThread
     fun release() {
-        mCache?.let {
-            it.release()
-            mCache = null
+        synchronized(this) {
+            mCache?.let {
+                it.release()
+                mCache = null
+                mEvictor = null
+            }
+        }
+    }
+
+    /**
+     * Playback counters of this session.
+     *
+     * @property playbacks number of network videos rendered their first frame
+     * @property hits playbacks started with the first [PREFETCH_BYTES] cached
+     * @property firstFrameMillis total time to first frame of all playbacks
+     * @property prefetched number of prefetches finished
+     * @property prefetchedBytes bytes downloaded by prefetches
+     * */
+    class Metrics {
+        val playbacks = AtomicInteger()
+        val hits = AtomicInteger()
+        val firstFrameMillis = AtomicLong()
+        val prefetched = AtomicInteger()
+        val prefetchedBytes = AtomicLong()
+
+        val hitRate: Float
+            get() = playbacks.get().let { if (it > 0) hits.get().toFloat() / it else 0f }
+
+        val averageFirstFrameMillis: Long
+            get() = playbacks.get().let { if (it > 0) firstFrameMillis.get() / it else 0L }
+
+        fun onFirstFrame(elapsedMillis: Long, startCached: Boolean) {
+            playbacks.incrementAndGet()
+            if (startCached) hits.incrementAndGet()
+            firstFrameMillis.addAndGet(elapsedMillis)
+        }
+
+        override fun toString(): String {
+            return "MediaCache(playbacks=$playbacks, hits=$hits, hitRate=${"%.2f".format(hitRate)}, " +
+                    "firstFrame=${averageFirstFrameMillis}ms, prefetched=$prefetched, " +
+                    "prefetchedBytes=${prefetchedBytes}B)"
         }
     }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import android.util.Log
 import androidx.lifecycle.DefaultLifecycleObserver
 import androidx.lifecycle.LifecycleOwner
 import com.huanchengfly.tieba.post.App
+import com.huanchengfly.tieba.post.api.retrofit.TbHttpClient
 import com.huanchengfly.tieba.post.arch.unsafeLazy
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -56,6 +57,8 @@ object NetworkObserver: ConnectivityManager.NetworkCallback(), DefaultLifecycleO
     }
 
     private fun onAvailabilitiesChanged(network: Network?, available: Boolean) {
+        // Switching between networks may not change the connected state
+        TbHttpClient.onNetworkChanged()
         val oldState = _isNetworkConnected.getAndUpdate { available }
         if (oldState != available) {
             Log.e(TAG, "onAvailabilitiesChanged: Network ID: $network, from: $oldState to $available.")
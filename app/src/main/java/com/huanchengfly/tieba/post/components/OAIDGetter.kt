@@ -2,6 +2,7 @@ package com.huanchengfly.tieba.post.components
 
 import com.github.gzuliyujiang.oaid.IGetter
 import com.huanchengfly.tieba.post.App
+import com.huanchengfly.tieba.post.api.ParamSnapshot
 import com.huanchengfly.tieba.post.utils.helios.Base32
 
 object OAIDGetter : IGetter {
@@ -12,11 +13,13 @@ object OAIDGetter : IGetter {
         App.Config.encodedOAID = Base32.encode(result.encodeToByteArray())
         App.Config.statusCode = 0
         App.Config.isTrackLimited = false
+        ParamSnapshot.invalidate()
     }
 
     override fun onOAIDGetError(error: Exception?) {
         App.Config.inited = true
         App.Config.statusCode = -100
         App.Config.isTrackLimited = true
+        ParamSnapshot.invalidate()
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.huanchengfly.tieba.post.components
+
+import android.content.Context
+import android.util.Log
+import androidx.annotation.MainThread
+import androidx.core.net.toUri
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.cache.CacheWriter
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.IOException
+import java.io.InterruptedIOException
+
+/**
+ * Caches the first [MediaCache.PREFETCH_BYTES] of videos entering the viewport, so tapping a video
+ * starts playing from cache.
+ *
+ * Only works on unmetered network, prefetches are cancelled once they leave the viewport.
+ *
+ * @see MediaCache.metrics
+ * */
+@UnstableApi
+@MainThread
+class VideoPrefetcher(private val context: Context, private val scope: CoroutineScope) {
+
+    private val prefetches = HashMap<String, Job>()
+
+    /**
+     * Videos prefetched or played, never prefetch them again
+     * */
+    private val finished = HashSet<String>()
+
+    /**
+     * Update videos in the viewport.
+     *
+     * @param visible url of videos in the viewport
+     * */
+    fun update(visible: Collection<String>) {
+        val iterator = prefetches.iterator()
+        while (iterator.hasNext()) {
+            val (url, job) = iterator.next()
+            if (url in visible) continue
+            iterator.remove()
+            job.cancel()
+        }
+
+        if (!NetworkObserver.isNetworkUnmetered.value) return
+
+        visible.forEach { url ->
+            if (url in finished || url in prefetches) return@forEach
+            prefetches[url] = scope.launch {
+                prefetch(url)
+                prefetches.remove(url)
+                finished.add(url)
+            }
+        }
+    }
+
+    /**
+     * Cancel all prefetches
+     * */
+    fun clear() {
+        prefetches.values.forEach(Job::cancel)
+        prefetches.clear()
+        finished.clear()
+    }
+
+    private suspend fun prefetch(url: String) = withContext(PREFETCH_DISPATCHER) {
+        if (MediaCache.isStartCached(context, url)) return@withContext
+
+        val job = currentCoroutineContext().job
+        val dataSource = MediaCache.Factory(context).createDataSource()
+        val dataSpec = DataSpec.Builder()
+            .setUri(url.toUri())
+            .setLength(MediaCache.PREFETCH_BYTES)
+            .build()
+        lateinit var writer: CacheWriter
+        var bytes = 0L
+        writer = CacheWriter(dataSource, dataSpec, null) { _, _, newBytesCached ->
+            bytes += newBytesCached
+            // CacheWriter blocks, check cancellation after each read
+            if (!job.isActive) writer.cancel()
+        }
+        try {
+            writer.cache()
+            MediaCache.metrics.prefetched.incrementAndGet()
+        } catch (_: InterruptedIOException) {
+            // Cancelled
+        } catch (e: IOException) {
+            Log.w(TAG, "onPrefetch: $url, ${e.message}")
+        } finally {
+            MediaCache.metrics.prefetchedBytes.addAndGet(bytes)
+        }
+    }
+
+    companion object {
+        private const val TAG = "VideoPrefetcher"
+
+        private const val MAX_PARALLEL_PREFETCHES = 2
+
+        private val PREFETCH_DISPATCHER = Dispatchers.IO.limitedParallelism(MAX_PARALLEL_PREFETCHES)
+    }
+}
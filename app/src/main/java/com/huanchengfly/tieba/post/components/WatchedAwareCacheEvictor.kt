@@ -0,0 +1,99 @@
+package com.huanchengfly.tieba.post.components
+
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheEvictor
+import androidx.media3.datasource.cache.CacheSpan
+import java.util.TreeSet
+
+/**
+ * Evicts least recently used spans first, spans of fully watched videos are treated as
+ * [WATCHED_AGE] older than they are, as they are unlikely to be played again.
+ *
+ * Watched state is kept in the content metadata of cache, see [markWatched].
+ *
+ * Same as [androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor], all callbacks are
+ * invoked with the lock of [Cache] held.
+ * */
+@UnstableApi
+class WatchedAwareCacheEvictor(private val maxBytes: Long) : CacheEvictor {
+
+    /**
+     * Watched state by cache key, loaded on span added
+     * */
+    private val watched = HashMap<String, Boolean>()
+
+    private val spans = TreeSet<CacheSpan>(
+        compareBy<CacheSpan> { it.score() }
+            .thenBy { it.key }
+            .thenBy { it.position }
+    )
+
+    var currentSize: Long = 0
+        private set
+
+    private fun CacheSpan.score(): Long {
+        return if (watched[key] == true) lastTouchTimestamp - WATCHED_AGE else lastTouchTimestamp
+    }
+
+    override fun requiresCacheSpanTouches(): Boolean = true
+
+    override fun onCacheInitialized() = Unit
+
+    override fun onStartFile(cache: Cache, key: String, position: Long, length: Long) {
+        if (length != C.LENGTH_UNSET.toLong()) {
+            evictCache(cache, length)
+        }
+    }
+
+    override fun onSpanAdded(cache: Cache, span: CacheSpan) {
+        watched.getOrPut(span.key) {
+            cache.getContentMetadata(span.key).get(METADATA_WATCHED, 0L) != 0L
+        }
+        spans.add(span)
+        currentSize += span.length
+        evictCache(cache, 0)
+    }
+
+    override fun onSpanRemoved(cache: Cache, span: CacheSpan) {
+        if (spans.remove(span)) {
+            currentSize -= span.length
+        }
+        if (spans.none { it.key == span.key }) {
+            watched.remove(span.key)
+        }
+    }
+
+    override fun onSpanTouched(cache: Cache, oldSpan: CacheSpan, newSpan: CacheSpan) {
+        onSpanRemoved(cache, oldSpan)
+        onSpanAdded(cache, newSpan)
+    }
+
+    /**
+     * Mark the video [key] as fully watched, must be called with the lock of cache held.
+     * */
+    fun markWatched(key: String) {
+        if (watched[key] == true) return
+        // Re-sort spans of this video with the new score
+        val keySpans = spans.filter { it.key == key }
+        keySpans.forEach(spans::remove)
+        watched[key] = true
+        spans.addAll(keySpans)
+    }
+
+    private fun evictCache(cache: Cache, requiredSpace: Long) {
+        while (currentSize + requiredSpace > maxBytes && spans.isNotEmpty()) {
+            cache.removeSpan(spans.first())
+        }
+    }
+
+    companion object {
+        const val METADATA_WATCHED = "tb_watched"
+
+        /**
+         * Penalty of watched videos, a watched video is evicted before videos touched within a day
+         * */
+        const val WATCHED_AGE = 24 * 60 * 60 * 1000L
+    }
+}
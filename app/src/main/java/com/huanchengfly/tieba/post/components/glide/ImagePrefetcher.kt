@@ -0,0 +1,168 @@
+package com.huanchengfly.tieba.post.components.glide
+
+import androidx.annotation.MainThread
+import com.bumptech.glide.Priority
+import com.bumptech.glide.RequestManager
+import com.bumptech.glide.load.DataSource
+import com.bumptech.glide.load.engine.GlideException
+import com.bumptech.glide.load.model.GlideUrl
+import com.bumptech.glide.request.FutureTarget
+import com.bumptech.glide.request.RequestListener
+import com.bumptech.glide.request.target.Target
+import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Downloads images ahead of scrolling into Glide's disk cache.
+ *
+ * Prefetches run at [Priority.LOW] so Glide always schedules on-screen loads first, and are
+ * cancelled once they leave the prefetch window. Images are keyed by [GlideUrl.getCacheKey], pass
+ * the same model of on-screen loads (e.g. [ThumbnailUrl]) to share the cached source.
+ *
+ * @see metrics
+ * */
+@MainThread
+class ImagePrefetcher(private val requestManager: RequestManager) {
+
+    private class Prefetch {
+        lateinit var target: FutureTarget<File>
+
+        /**
+         * Downloaded bytes, -1 if not finished yet. Written on Glide's worker thread
+         * */
+        @Volatile
+        var bytes: Long = -1
+    }
+
+    private val prefetches = HashMap<String, Prefetch>()
+
+    /**
+     * Cache keys of images already shown, never prefetch them again
+     * */
+    private val shown = HashSet<String>()
+
+    /**
+     * Update the prefetch window.
+     *
+     * @param window images to prefetch, images out of the window are cancelled
+     * @param visible images on screen now
+     * */
+    fun update(window: Collection<GlideUrl>, visible: Collection<GlideUrl>) {
+        visible.forEach { model ->
+            val key = model.cacheKey
+            if (!shown.add(key)) return@forEach
+
+            val prefetch = prefetches.remove(key)
+            when {
+                prefetch == null -> metrics.misses.incrementAndGet()
+
+                prefetch.bytes >= 0 -> metrics.hits.incrementAndGet()
+
+                // Still downloading, let it finish for the on-screen load
+                else -> metrics.late.incrementAndGet()
+            }
+        }
+
+        val windowKeys = window.mapTo(HashSet()) { it.cacheKey }
+        val iterator = prefetches.iterator()
+        while (iterator.hasNext()) {
+            val (key, prefetch) = iterator.next()
+            if (key in windowKeys) continue
+            iterator.remove()
+            drop(prefetch)
+        }
+
+        window.forEach { model ->
+            val key = model.cacheKey
+            if (key in shown || key in prefetches) return@forEach
+            prefetches[key] = prefetch(model)
+        }
+    }
+
+    /**
+     * Cancel all prefetches
+     * */
+    fun clear() {
+        prefetches.values.forEach(::drop)
+        prefetches.clear()
+        shown.clear()
+    }
+
+    private fun prefetch(model: GlideUrl): Prefetch {
+        metrics.requested.incrementAndGet()
+        val prefetch = Prefetch()
+        prefetch.target = requestManager
+            .downloadOnly()
+            .load(model)
+            .priority(Priority.LOW)
+            .listener(object : RequestListener<File> {
+                override fun onLoadFailed(
+                    e: GlideException?,
+                    model: Any?,
+                    target: Target<File>,
+                    isFirstResource: Boolean
+                ): Boolean = false
+
+                override fun onResourceReady(
+                    resource: File,
+                    model: Any,
+                    target: Target<File>?,
+                    dataSource: DataSource,
+                    isFirstResource: Boolean
+                ): Boolean {
+                    prefetch.bytes = resource.length()
+                    return false
+                }
+            })
+            .submit()
+        return prefetch
+    }
+
+    private fun drop(prefetch: Prefetch) {
+        if (prefetch.bytes >= 0) {
+            metrics.wastedBytes.addAndGet(prefetch.bytes)
+        } else {
+            metrics.cancelled.incrementAndGet()
+            requestManager.clear(prefetch.target)
+        }
+    }
+
+    /**
+     * Counters of all prefetches in this process.
+     *
+     * @property requested number of prefetches started
+     * @property hits images shown after their prefetch finished
+     * @property late images shown while their prefetch was still running
+     * @property misses images shown without prefetch
+     * @property cancelled prefetches cancelled before finished
+     * @property wastedBytes bytes of finished prefetches dropped without being shown
+     * */
+    class Metrics {
+        val requested = AtomicInteger()
+        val hits = AtomicInteger()
+        val late = AtomicInteger()
+        val misses = AtomicInteger()
+        val cancelled = AtomicInteger()
+        val wastedBytes = AtomicLong()
+
+        /**
+         * Ratio of shown images already prefetched
+         * */
+        val hitRate: Float
+            get() {
+                val shown = hits.get() + late.get() + misses.get()
+                return if (shown > 0) hits.get().toFloat() / shown else 0f
+            }
+
+        override fun toString(): String {
+            return "ImagePrefetch(requested=$requested, hits=$hits, late=$late, misses=$misses, " +
+                    "cancelled=$cancelled, wasted=${wastedBytes}B, hitRate=${"%.2f".format(hitRate)})"
+        }
+    }
+
+    companion object {
+
+        val metrics = Metrics()
+    }
+}
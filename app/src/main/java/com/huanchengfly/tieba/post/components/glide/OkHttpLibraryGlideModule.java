@@ -10,6 +10,7 @@ import com.bumptech.glide.annotation.GlideModule;
 import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.module.AppGlideModule;
+import com.huanchengfly.tieba.post.api.retrofit.TbHttpClient;
 
 import java.io.InputStream;
 
@@ -19,8 +20,8 @@ import okhttp3.OkHttpClient;
 public class OkHttpLibraryGlideModule extends AppGlideModule {
     @Override
     public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
-        //添加拦截器到Glide
-        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        //添加拦截器到Glide, 与 API 共用连接池, 调度器及 DNS 缓存
+        OkHttpClient.Builder builder = TbHttpClient.getRootClient().newBuilder();
         builder.addInterceptor(new ProgressInterceptor());
         OkHttpClient okHttpClient = builder.build();
 
@@ -0,0 +1,94 @@
+package com.huanchengfly.tieba.post.components.glide
+
+import android.graphics.Bitmap
+import android.os.Build
+import com.bumptech.glide.RequestBuilder
+import com.bumptech.glide.load.engine.DiskCacheStrategy
+import com.bumptech.glide.load.model.GlideUrl
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+
+/**
+ * Glide model of downsampled thumbnails.
+ *
+ * Tieba serves one picture in several sizes (srcPic, bigPic, cdnSrc...), all named after its picId.
+ * Keyed by [picId] and [variant] instead of URL, so HotPage, ForumPage and ThreadPage share one
+ * source and one downsampled thumbnail per size bucket, while a small variant is never served as the
+ * source of a larger one.
+ *
+ * @param picId picture ID, see [com.huanchengfly.tieba.post.utils.ImageUtil.getPicId]
+ *
+ * @see thumbnail
+ * */
+class ThumbnailUrl(url: String, val picId: String) : GlideUrl(url) {
+
+    init {
+        require(picId.isNotEmpty()) { "Empty picId of $url" }
+    }
+
+    /**
+     * Size variant of the picture, the URL path without file name and signature, e.g. `forum/w=580`.
+     * */
+    val variant: String = url.toHttpUrlOrNull()
+        ?.pathSegments
+        ?.dropLast(1)
+        ?.filterNot { it.startsWith(SIGN_SEGMENT_PREFIX) }
+        ?.joinToString("/")
+        .orEmpty()
+
+    override fun getCacheKey(): String = "$CACHE_KEY_PREFIX$variant/$picId"
+
+    companion object {
+        private const val CACHE_KEY_PREFIX = "thumbnail/"
+
+        private const val SIGN_SEGMENT_PREFIX = "sign="
+
+        /**
+         * Target sizes of thumbnails in pixels, thumbnails are decoded to the smallest bucket that
+         * covers the view.
+         * */
+        private val SIZE_BUCKETS = intArrayOf(360, 540, 720, 1080, 1440)
+
+        private const val ENCODE_QUALITY = 80
+
+        /**
+         * @return bucket size of a view in [sizePx]
+         * */
+        fun bucketOf(sizePx: Int): Int {
+            return SIZE_BUCKETS.firstOrNull { it >= sizePx } ?: SIZE_BUCKETS.last()
+        }
+
+        @Suppress("DEPRECATION")
+        private val ENCODE_FORMAT by lazy {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                Bitmap.CompressFormat.WEBP_LOSSY
+            } else {
+                Bitmap.CompressFormat.WEBP
+            }
+        }
+
+        /**
+         * Decode [ThumbnailUrl] into the bucket of [sizePx] and keep the downsampled result on disk.
+         *
+         * No transformation is applied, the view scales the thumbnail itself. So the resource cache
+         * key only depends on picId, variant, bucket and [strategy], and the bitmap can be decoded as
+         * a hardware bitmap.
+         *
+         * @param strategy [DownsampleStrategy.CENTER_OUTSIDE] for cropping views, the shorter side
+         * still covers the bucket. [DownsampleStrategy.CENTER_INSIDE] for fitting views.
+         * */
+        fun <T> RequestBuilder<T>.thumbnail(
+            sizePx: Int,
+            strategy: DownsampleStrategy = DownsampleStrategy.CENTER_OUTSIDE
+        ): RequestBuilder<T> {
+            val bucket = bucketOf(sizePx)
+            return override(bucket)
+                .downsample(strategy)
+                .dontTransform()
+                // Source for prefetches and other buckets, downsampled for fast decoding
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .encodeFormat(ENCODE_FORMAT)
+                .encodeQuality(ENCODE_QUALITY)
+        }
+    }
+}
@@ -9,9 +9,13 @@ import com.huanchengfly.tieba.post.models.database.dao.BlockDao
 import com.huanchengfly.tieba.post.models.database.dao.DraftDao
 import com.huanchengfly.tieba.post.models.database.dao.ForumHistoryDao
 import com.huanchengfly.tieba.post.models.database.dao.LikedForumDao
+import com.huanchengfly.tieba.post.models.database.dao.LocalSearchDao
+import com.huanchengfly.tieba.post.models.database.dao.NotificationMessageDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchPostDao
+import com.huanchengfly.tieba.post.models.database.dao.SignProgressDao
 import com.huanchengfly.tieba.post.models.database.dao.ThreadHistoryDao
+import com.huanchengfly.tieba.post.models.database.dao.ThreadSnapshotDao
 import com.huanchengfly.tieba.post.models.database.dao.TimestampDao
 import com.huanchengfly.tieba.post.models.database.dao.TransactionRunner
 import com.huanchengfly.tieba.post.models.database.dao.UserProfileDao
@@ -89,15 +93,27 @@ object DatabaseModule {
     @Provides
     fun likedForumDao(database: TbLiteDatabase): LikedForumDao = database.likedForumDao()
 
+    @Provides
+    fun provideLocalSearchDao(database: TbLiteDatabase): LocalSearchDao = database.localSearchDao()
+
+    @Provides
+    fun provideNotificationMessageDao(database: TbLiteDatabase): NotificationMessageDao = database.notificationMessageDao()
+
     @Provides
     fun searchDao(database: TbLiteDatabase): SearchDao = database.searchDao()
 
     @Provides
     fun searchPostDao(database: TbLiteDatabase): SearchPostDao = database.searchPostDao()
 
+    @Provides
+    fun provideSignProgressDao(database: TbLiteDatabase): SignProgressDao = database.signProgressDao()
+
     @Provides
     fun provideThreadHistoryDao(database: TbLiteDatabase): ThreadHistoryDao = database.threadHistoryDao()
 
+    @Provides
+    fun provideThreadSnapshotDao(database: TbLiteDatabase): ThreadSnapshotDao = database.threadSnapshotDao()
+
     @Provides
     fun provideTimestampDao(database: TbLiteDatabase): TimestampDao = database.timestampDao()
 
@@ -0,0 +1,25 @@
+package com.huanchengfly.tieba.post.models.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+
+/**
+ * Full-text index of [Draft] for local search, content is segmented by FtsUtil.
+ *
+ * @param threadId thread ID of the draft
+ * @param postId post ID of the draft
+ * @param subpostId sub post ID of the draft
+ * @param content segmented content of the draft
+ */
+@Fts4(notIndexed = ["thread_id", "post_id", "subpost_id"])
+@Entity(tableName = "draft_fts")
+class DraftFts(
+    @ColumnInfo(name = "thread_id")
+    val threadId: Long,
+    @ColumnInfo(name = "post_id")
+    val postId: Long,
+    @ColumnInfo(name = "subpost_id")
+    val subpostId: Long,
+    val content: String
+)
@@ -0,0 +1,42 @@
+package com.huanchengfly.tieba.post.models.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.ForeignKey
+import androidx.room.Index
+
+/**
+ * Message of the notifications inbox, lets NotificationsListPage render from disk before syncing.
+ *
+ * @param uid user id
+ * @param type notifications type, see NotificationsType
+ * @param postId post ID of the message
+ * @param replyerId user ID of the replyer
+ * @param time epoch seconds of the message returned by server
+ * @param data encoded JSON of MessageListBean.MessageInfoBean
+ */
+@Entity(
+    tableName = "notification_message",
+    primaryKeys = ["uid", "type", "post_id", "replyer_id"],
+    indices = [
+        Index(value = ["uid", "type", "time"])
+    ],
+    foreignKeys = [
+        ForeignKey(
+            entity = Account::class,
+            parentColumns = ["uid"],
+            childColumns = ["uid"],
+            onDelete = ForeignKey.CASCADE
+        )
+    ]
+)
+class NotificationMessage(
+    val uid: Long,
+    val type: Int,
+    @ColumnInfo(name = "post_id")
+    val postId: Long,
+    @ColumnInfo(name = "replyer_id")
+    val replyerId: Long,
+    val time: Long,
+    val data: String
+)
@@ -0,0 +1,46 @@
+package com.huanchengfly.tieba.post.models.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.ForeignKey
+import androidx.room.Index
+
+/**
+ * Represent a checkpoint of forum signing, lets a restarted OKSign worker resume where it stopped.
+ *
+ * @param uid user id
+ * @param forumId id of the forum
+ * @param state [STATE_SIGNED] or [STATE_FAILED]
+ * @param time start time of the signing day, checkpoints of past days are ignored
+ */
+@Entity(
+    tableName = "sign_progress",
+    primaryKeys = ["uid", "forum_id"],
+    indices = [
+        Index(value = ["uid"])
+    ],
+    foreignKeys = [
+        ForeignKey(
+            entity = Account::class,
+            parentColumns = ["uid"],
+            childColumns = ["uid"],
+            onDelete = ForeignKey.CASCADE
+        )
+    ]
+)
+class SignProgress(
+    val uid: Long,
+    @ColumnInfo(name = "forum_id")
+    val forumId: Long,
+    val state: Int,
+    val time: Long
+) {
+    companion object {
+        const val STATE_SIGNED = 1
+
+        /**
+         * Failed with a non-retryable error, e.g. forum closed
+         * */
+        const val STATE_FAILED = 2
+    }
+}
@@ -7,19 +7,27 @@ import androidx.room.ExperimentalRoomApi
 import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.migration.AutoMigrationSpec
+import androidx.sqlite.SQLITE_DATA_INTEGER
+import androidx.sqlite.SQLITE_DATA_NULL
 import androidx.sqlite.SQLiteConnection
+import androidx.sqlite.SQLiteStatement
 import com.huanchengfly.tieba.post.models.database.dao.AccountDao
 import com.huanchengfly.tieba.post.models.database.dao.BlockDao
 import com.huanchengfly.tieba.post.models.database.dao.DraftDao
 import com.huanchengfly.tieba.post.models.database.dao.ForumHistoryDao
 import com.huanchengfly.tieba.post.models.database.dao.LikedForumDao
+import com.huanchengfly.tieba.post.models.database.dao.LocalSearchDao
+import com.huanchengfly.tieba.post.models.database.dao.NotificationMessageDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchPostDao
+import com.huanchengfly.tieba.post.models.database.dao.SignProgressDao
 import com.huanchengfly.tieba.post.models.database.dao.ThreadHistoryDao
+import com.huanchengfly.tieba.post.models.database.dao.ThreadSnapshotDao
 import com.huanchengfly.tieba.post.models.database.dao.TimestampDao
 import com.huanchengfly.tieba.post.models.database.dao.UserProfileDao
 import com.huanchengfly.tieba.post.models.database.TbLiteDatabase.Companion.Migrations
 import com.huanchengfly.tieba.post.models.database.dao.TransactionRunnerDao
+import com.huanchengfly.tieba.post.utils.FtsUtil
 import java.util.concurrent.TimeUnit
 
 @Database(
@@ -29,20 +37,29 @@ import java.util.concurrent.TimeUnit
         BlockKeyword::class,
         BlockUser::class,
         Draft::class,
+        DraftFts::class,
         ForumHistory::class,
         LocalLikedForum::class,
+        NotificationMessage::class,
         SearchHistory::class,
         SearchPostHistory::class,
+        SignProgress::class,
         ThreadHistory::class,
+        ThreadHistoryFts::class,
+        ThreadSnapshot::class,
         TopForum::class,
         Timestamp::class,
         UserProfile::class,
     ],
-    version = 4,
+    version = 8,
     autoMigrations = [
         AutoMigration(from = 1, to = 2, spec = Migrations.Migration_1_2::class),
         AutoMigration(from = 2, to = 3, spec = Migrations.Migration_2_3::class),
         AutoMigration(from = 3, to = 4, spec = Migrations.Migration_3_4::class),
+        AutoMigration(from = 4, to = 5, spec = Migrations.Migration_4_5::class),
+        AutoMigration(from = 5, to = 6, spec = Migrations.Migration_5_6::class),
+        AutoMigration(from = 6, to = 7, spec = Migrations.Migration_6_7::class),
+        AutoMigration(from = 7, to = 8, spec = Migrations.Migration_7_8::class),
     ]
 )
 abstract class TbLiteDatabase : RoomDatabase() {
@@ -57,12 +74,20 @@ abstract class TbLiteDatabase : RoomDatabase() {
 
     abstract fun likedForumDao(): LikedForumDao
 
+    abstract fun localSearchDao(): LocalSearchDao
+
+    abstract fun notificationMessageDao(): NotificationMessageDao
+
     abstract fun searchDao(): SearchDao
 
     abstract fun searchPostDao(): SearchPostDao
 
+    abstract fun signProgressDao(): SignProgressDao
+
     abstract fun threadHistoryDao(): ThreadHistoryDao
 
+    abstract fun threadSnapshotDao(): ThreadSnapshotDao
+
     abstract fun timestampDao(): TimestampDao
 
     abstract fun transactionRunnerDao(): TransactionRunnerDao
@@ -119,6 +144,84 @@ abstract class TbLiteDatabase : RoomDatabase() {
                 override fun onPostMigrate(connection: SQLiteConnection) {
                 }
             }
+
+            /**
+             * [SignProgress] new Entity, resumable OKSign checkpoints
+             *
+             * @since 4.0.0-beta.4.5
+             */
+            class Migration_4_5 : AutoMigrationSpec {
+                override fun onPostMigrate(connection: SQLiteConnection) {
+                }
+            }
+
+            /**
+             * [ThreadSnapshot] new Entity, offline thread pages
+             *
+             * @since 4.0.0-beta.4.5
+             */
+            class Migration_5_6 : AutoMigrationSpec {
+                override fun onPostMigrate(connection: SQLiteConnection) {
+                }
+            }
+
+            /**
+             * [NotificationMessage] new Entity, local inbox of replies and mentions
+             *
+             * @since 4.0.0-beta.4.5
+             */
+            class Migration_6_7 : AutoMigrationSpec {
+                override fun onPostMigrate(connection: SQLiteConnection) {
+                }
+            }
+
+            /**
+             * [ThreadHistoryFts] new Entity
+             * [DraftFts] new Entity
+             *
+             * Existing [ThreadHistory] and [Draft] rows are indexed after migrating.
+             *
+             * @since 4.0.0-beta.4.5
+             */
+            class Migration_7_8 : AutoMigrationSpec {
+                override fun onPostMigrate(connection: SQLiteConnection) {
+                    // Index existing history and drafts, first post of history is indexed on next visit
+                    connection.copySegmented(
+                        select = "SELECT id, title, forum FROM thread_history",
+                        insert = "INSERT INTO thread_history_fts(rowid, title, forum, content, raw_content) VALUES (?, ?, ?, '', '')"
+                    )
+                    connection.copySegmented(
+                        select = "SELECT threadId, postId, subpostId, content FROM draft",
+                        insert = "INSERT INTO draft_fts(thread_id, post_id, subpost_id, content) VALUES (?, ?, ?, ?)"
+                    )
+                }
+
+                /**
+                 * Copy rows of [select] to [insert], integer columns are copied and text columns are segmented.
+                 * */
+                private fun SQLiteConnection.copySegmented(select: String, insert: String) {
+                    prepare(insert).use { insertStatement ->
+                        prepare(select).use { selectStatement ->
+                            while (selectStatement.step()) {
+                                for (i in 0 until selectStatement.getColumnCount()) {
+                                    insertStatement.bindColumn(index = i + 1, selectStatement, column = i)
+                                }
+                                insertStatement.step()
+                                insertStatement.reset()
+                                insertStatement.clearBindings()
+                            }
+                        }
+                    }
+                }
+
+                private fun SQLiteStatement.bindColumn(index: Int, source: SQLiteStatement, column: Int) {
+                    when (source.getColumnType(column)) {
+                        SQLITE_DATA_INTEGER -> bindLong(index, source.getLong(column))
+                        SQLITE_DATA_NULL -> bindText(index, "")
+                        else -> bindText(index, FtsUtil.segment(source.getText(column)))
+                    }
+                }
+            }
         }
     }
 }
\ No newline at end of file
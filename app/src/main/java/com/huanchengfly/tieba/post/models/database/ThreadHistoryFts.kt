@@ -0,0 +1,28 @@
+package com.huanchengfly.tieba.post.models.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.PrimaryKey
+
+/**
+ * Full-text index of [ThreadHistory] for local search, text columns are segmented by FtsUtil.
+ *
+ * @param threadId thread ID, also the rowid
+ * @param title segmented thread title
+ * @param forum segmented forum name
+ * @param content segmented plain text of the first post
+ * @param rawContent plain text of the first post used as snippet, not indexed
+ */
+@Fts4(notIndexed = ["raw_content"])
+@Entity(tableName = "thread_history_fts")
+class ThreadHistoryFts(
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    val threadId: Long,
+    val title: String,
+    val forum: String,
+    val content: String,
+    @ColumnInfo(name = "raw_content")
+    val rawContent: String
+)
@@ -0,0 +1,45 @@
+package com.huanchengfly.tieba.post.models.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * Offline snapshot of a thread page, lets ThreadPage render a page read before without network.
+ *
+ * @param uid user id of the account that loaded this page, 0 if not logged in
+ * @param threadId thread ID
+ * @param seeLz see lz mode
+ * @param sortType sort type of the page, see ThreadSortType
+ * @param page current page number returned by server
+ * @param minPostId smallest post id of this page, used to locate a page by post id
+ * @param maxPostId largest post id of this page
+ * @param pids ThreadInfo.pids of this page, changes when posts were added or removed
+ * @param data encoded PbPageResponseData
+ * @param lastRead last time this thread was read
+ */
+@Entity(
+    tableName = "thread_snapshot",
+    primaryKeys = ["uid", "thread_id", "see_lz", "sort_type", "page"],
+    indices = [
+        Index(value = ["last_read"])
+    ]
+)
+class ThreadSnapshot(
+    val uid: Long,
+    @ColumnInfo(name = "thread_id")
+    val threadId: Long,
+    @ColumnInfo(name = "see_lz")
+    val seeLz: Boolean,
+    @ColumnInfo(name = "sort_type")
+    val sortType: Int,
+    val page: Int,
+    @ColumnInfo(name = "min_post_id")
+    val minPostId: Long,
+    @ColumnInfo(name = "max_post_id")
+    val maxPostId: Long,
+    val pids: String,
+    val data: ByteArray,
+    @ColumnInfo(name = "last_read")
+    val lastRead: Long
+)
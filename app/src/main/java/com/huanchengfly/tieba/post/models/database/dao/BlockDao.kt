@@ -124,6 +124,14 @@ interface BlockDao {
     @Query("SELECT * FROM block_user WHERE uid = :uid")
     suspend fun getUser(uid: Long): BlockUser?
 
+    /**
+     * Select user blocking rules by list of uid.
+     *
+     * @param uidList list of user id
+     */
+    @Query("SELECT * FROM block_user WHERE uid in (:uidList)")
+    suspend fun getUsers(uidList: List<Long>): List<BlockUser>
+
     /**
      * Insert or update a forum blocking rule into the database. If a rule already exists, update it.
      *
@@ -165,6 +173,12 @@ interface BlockDao {
     @Query("SELECT name FROM block_forum WHERE name = :forumName")
     suspend fun getForum(forumName: String): String?
 
+    /**
+     * Select forum blocking rules by list of name.
+     */
+    @Query("SELECT name FROM block_forum WHERE name in (:forumNames)")
+    suspend fun getForumsByName(forumNames: List<String>): List<String>
+
     @Query("SELECT name FROM block_forum")
     suspend fun getForums(): List<String>
 
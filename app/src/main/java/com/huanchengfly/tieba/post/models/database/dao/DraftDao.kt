@@ -5,6 +5,8 @@ import androidx.room.Insert
 import androidx.room.Query
 import androidx.room.Transaction
 import com.huanchengfly.tieba.post.models.database.Draft
+import com.huanchengfly.tieba.post.models.database.DraftFts
+import com.huanchengfly.tieba.post.utils.FtsUtil
 
 /**
  * Data Access Object for the draft table.
@@ -18,15 +20,30 @@ interface DraftDao {
     @Insert
     suspend fun insert(draft: Draft)
 
+    @Insert
+    suspend fun insertIndex(index: DraftFts)
+
     /**
      * Insert or update a draft in the database. If a draft already exists, replace it.
+     * The draft is also indexed for local search.
      *
      * @param draft the draft to be inserted or updated.
      */
     @Transaction
     suspend fun upsert(draft: Draft) {
-        deleteByIds(threadId = draft.threadId, postId = draft.postId, subpostId = draft.subpostId)
+        delete(threadId = draft.threadId, postId = draft.postId, subpostId = draft.subpostId)
         insert(draft)
+        val content = FtsUtil.segment(draft.content.orEmpty())
+        insertIndex(DraftFts(draft.threadId, draft.postId, draft.subpostId, content))
+    }
+
+    /**
+     * Delete a draft and its search index by unique ids.
+     */
+    @Transaction
+    suspend fun delete(threadId: Long, postId: Long, subpostId: Long) {
+        deleteByIds(threadId, postId, subpostId)
+        deleteIndexByIds(threadId, postId, subpostId)
     }
 
     @Query("DELETE FROM draft")
@@ -40,6 +57,9 @@ interface DraftDao {
     @Query("DELETE FROM draft WHERE threadId = :threadId AND postId = :postId AND subpostId = :subpostId")
     suspend fun deleteByIds(threadId: Long, postId: Long, subpostId: Long): Int
 
+    @Query("DELETE FROM draft_fts WHERE thread_id = :threadId AND post_id = :postId AND subpost_id = :subpostId")
+    suspend fun deleteIndexByIds(threadId: Long, postId: Long, subpostId: Long): Int
+
     @Query("SELECT content FROM draft WHERE threadId = :threadId AND postId = :postId AND subpostId = :subpostId")
     suspend fun getByIds(threadId: Long, postId: Long, subpostId: Long): List<String>
 }
\ No newline at end of file
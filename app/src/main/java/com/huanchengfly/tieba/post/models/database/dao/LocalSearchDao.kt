@@ -0,0 +1,101 @@
+package com.huanchengfly.tieba.post.models.database.dao
+
+import androidx.room.ColumnInfo
+import androidx.room.Dao
+import androidx.room.Embedded
+import androidx.room.Insert
+import androidx.room.Query
+import androidx.room.Transaction
+import com.huanchengfly.tieba.post.models.database.Draft
+import com.huanchengfly.tieba.post.models.database.ThreadHistory
+import com.huanchengfly.tieba.post.models.database.ThreadHistoryFts
+
+/**
+ * Thread history matched by local search.
+ *
+ * @param content plain text of the first post
+ * @param matchInfo result of `matchinfo(thread_history_fts, 'pcx')`
+ * */
+class ThreadHistoryMatch(
+    @Embedded
+    val history: ThreadHistory,
+    val content: String,
+    @ColumnInfo(name = "match_info")
+    val matchInfo: ByteArray
+)
+
+/**
+ * Draft matched by local search.
+ *
+ * @param title title of the thread, null if the thread is not in history
+ * @param matchInfo result of `matchinfo(draft_fts, 'pcx')`
+ * */
+class DraftMatch(
+    @Embedded
+    val draft: Draft,
+    val title: String?,
+    @ColumnInfo(name = "match_info")
+    val matchInfo: ByteArray
+)
+
+/**
+ * Data Access Object for the full-text search tables.
+ *
+ * Index of drafts is maintained by [DraftDao].
+ */
+@Dao
+interface LocalSearchDao {
+
+    @Insert
+    suspend fun insertThread(index: ThreadHistoryFts)
+
+    @Query("DELETE FROM thread_history_fts WHERE rowid = :threadId")
+    suspend fun deleteThread(threadId: Long): Int
+
+    @Query("DELETE FROM thread_history_fts WHERE rowid IN (:idList)")
+    suspend fun deleteThreadByIdList(idList: List<Long>): Int
+
+    @Query("DELETE FROM thread_history_fts")
+    suspend fun deleteAllThreads()
+
+    /**
+     * Insert or replace the index of a thread history.
+     */
+    @Transaction
+    suspend fun upsertThread(index: ThreadHistoryFts) {
+        deleteThread(threadId = index.threadId)
+        insertThread(index)
+    }
+
+    /**
+     * Search thread history, the most recently visited [limit] matches are returned. Results are not
+     * ranked by relevance.
+     *
+     * @param query MATCH query built by FtsUtil
+     */
+    @Query("""
+        SELECT thread_history.*, thread_history_fts.raw_content AS content,
+            matchinfo(thread_history_fts, 'pcx') AS match_info
+        FROM thread_history_fts JOIN thread_history ON thread_history.id = thread_history_fts.rowid
+        WHERE thread_history_fts MATCH :query
+        ORDER BY thread_history.timestamp DESC LIMIT :limit
+    """)
+    suspend fun searchThreadHistory(query: String, limit: Int): List<ThreadHistoryMatch>
+
+    /**
+     * Search drafts, the most recently saved [limit] matches are returned. Results are not ranked by
+     * relevance.
+     *
+     * @param query MATCH query built by FtsUtil
+     */
+    @Query("""
+        SELECT draft.*, thread_history.title AS title, matchinfo(draft_fts, 'pcx') AS match_info
+        FROM draft_fts
+        JOIN draft ON draft.threadId = draft_fts.thread_id AND draft.postId = draft_fts.post_id
+            AND draft.subpostId = draft_fts.subpost_id
+        LEFT JOIN thread_history ON thread_history.id = draft.threadId
+        WHERE draft_fts MATCH :query
+        ORDER BY draft_fts.rowid DESC LIMIT :limit
+    """)
+    suspend fun searchDraft(query: String, limit: Int): List<DraftMatch>
+}
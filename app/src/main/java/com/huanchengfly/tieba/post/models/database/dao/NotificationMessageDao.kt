@@ -0,0 +1,38 @@
+package com.huanchengfly.tieba.post.models.database.dao
+
+import androidx.paging.PagingSource
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Upsert
+import com.huanchengfly.tieba.post.models.database.NotificationMessage
+
+/**
+ * Data Access Object for the notification message table.
+ */
+@Dao
+interface NotificationMessageDao {
+
+    @Upsert
+    suspend fun upsertAll(messages: List<NotificationMessage>)
+
+    /**
+     * Messages of a user's inbox, newest first.
+     */
+    @Query("""
+        SELECT * FROM notification_message WHERE uid = :uid AND type = :type
+        ORDER BY time DESC, post_id DESC
+    """)
+    fun pagingSource(uid: Long, type: Int): PagingSource<Int, NotificationMessage>
+
+    @Query("""
+        SELECT * FROM notification_message WHERE uid = :uid AND type = :type
+        ORDER BY time DESC, post_id DESC LIMIT 1
+    """)
+    suspend fun getNewest(uid: Long, type: Int): NotificationMessage?
+
+    @Query("SELECT COUNT(*) FROM notification_message WHERE uid = :uid AND type = :type")
+    suspend fun count(uid: Long, type: Int): Int
+
+    @Query("DELETE FROM notification_message WHERE uid = :uid AND type = :type")
+    suspend fun deleteByType(uid: Long, type: Int): Int
+}
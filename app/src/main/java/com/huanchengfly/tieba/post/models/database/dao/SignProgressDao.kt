@@ -0,0 +1,36 @@
+package com.huanchengfly.tieba.post.models.database.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Upsert
+import com.huanchengfly.tieba.post.models.database.SignProgress
+
+/**
+ * Data Access Object for the sign progress table.
+ */
+@Dao
+interface SignProgressDao {
+
+    @Upsert
+    suspend fun upsert(progress: SignProgress)
+
+    /**
+     * Select checkpoints of a user.
+     *
+     * @param uid user id
+     * @param since start time of the signing day
+     */
+    @Query("SELECT * FROM sign_progress WHERE uid = :uid AND time >= :since")
+    suspend fun getProgress(uid: Long, since: Long): List<SignProgress>
+
+    /**
+     * Delete all checkpoints of a user, called when a signing run is completed.
+     *
+     * @param uid user id
+     */
+    @Query("DELETE FROM sign_progress WHERE uid = :uid")
+    suspend fun deleteAllByUid(uid: Long): Int
+
+    @Query("DELETE FROM sign_progress WHERE time < :time")
+    suspend fun deleteBefore(time: Long): Int
+}
@@ -0,0 +1,76 @@
+package com.huanchengfly.tieba.post.models.database.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Upsert
+import com.huanchengfly.tieba.post.models.database.ThreadSnapshot
+
+/**
+ * Data Access Object for the thread snapshot table.
+ */
+@Dao
+interface ThreadSnapshotDao {
+
+    @Upsert
+    suspend fun upsert(snapshot: ThreadSnapshot)
+
+    @Query("""
+        SELECT * FROM thread_snapshot
+        WHERE uid = :uid AND thread_id = :threadId AND see_lz = :seeLz AND sort_type = :sortType AND page = :page
+    """)
+    suspend fun getByPage(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int, page: Int): ThreadSnapshot?
+
+    /**
+     * Select the latest read page contains the post.
+     */
+    @Query("""
+        SELECT * FROM thread_snapshot
+        WHERE uid = :uid AND thread_id = :threadId AND see_lz = :seeLz AND sort_type = :sortType
+            AND :postId BETWEEN min_post_id AND max_post_id
+        ORDER BY last_read DESC LIMIT 1
+    """)
+    suspend fun getByPostId(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int, postId: Long): ThreadSnapshot?
+
+    /**
+     * Select the page with the largest page number.
+     */
+    @Query("""
+        SELECT * FROM thread_snapshot
+        WHERE uid = :uid AND thread_id = :threadId AND see_lz = :seeLz AND sort_type = :sortType
+        ORDER BY page DESC LIMIT 1
+    """)
+    suspend fun getLastPage(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int): ThreadSnapshot?
+
+    @Query("UPDATE thread_snapshot SET last_read = :time WHERE thread_id = :threadId")
+    suspend fun touch(threadId: Long, time: Long)
+
+    /**
+     * Delete other pages of the same thread and mode, called when the posts of a page changed.
+     */
+    @Query("""
+        DELETE FROM thread_snapshot
+        WHERE uid = :uid AND thread_id = :threadId AND see_lz = :seeLz AND sort_type = :sortType AND page != :page
+    """)
+    suspend fun deleteOtherPages(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int, page: Int): Int
+
+    @Query("DELETE FROM thread_snapshot WHERE thread_id = :threadId")
+    suspend fun deleteByThreadId(threadId: Long): Int
+
+    @Query("DELETE FROM thread_snapshot")
+    suspend fun deleteAll()
+
+    @Query("SELECT IFNULL(SUM(LENGTH(data)), 0) FROM thread_snapshot")
+    suspend fun totalSize(): Long
+
+    /**
+     * Delete all pages of the least recently read thread.
+     *
+     * @return the number of pages deleted
+     */
+    @Query("""
+        DELETE FROM thread_snapshot WHERE thread_id = (
+            SELECT thread_id FROM thread_snapshot GROUP BY thread_id ORDER BY MAX(last_read) LIMIT 1
+        )
+    """)
+    suspend fun deleteLeastRecentlyRead(): Int
+}
@@ -75,5 +75,15 @@ interface TimestampDao {
          * Data Type: New message count. Separated from the account table.
          * */
         const val TYPE_NEW_MESSAGE_COUNT = 32
+
+        /**
+         * Data Type: Next remote page of the reply inbox, 0 if all pages are stored.
+         * */
+        const val TYPE_REPLY_ME_NEXT_PAGE = 64
+
+        /**
+         * Data Type: Next remote page of the at inbox, 0 if all pages are stored.
+         * */
+        const val TYPE_AT_ME_NEXT_PAGE = 128
     }
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import com.huanchengfly.tieba.post.api.models.AddThreadBean
 import com.huanchengfly.tieba.post.api.models.protos.addPost.AddPostResponse
 import com.huanchengfly.tieba.post.arch.GlobalEvent
 import com.huanchengfly.tieba.post.arch.emitGlobalEvent
+import com.huanchengfly.tieba.post.repository.source.network.ThreadNetworkDataSource
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.onEach
@@ -65,6 +66,7 @@ object AddPostRepository {
             .onEach {
                 val newPostId = checkNotNull(it.data_?.pid?.toLongOrNull())
                 GlobalScope.launch {
+                    ThreadNetworkDataSource.evictPageCache(threadId)
                     if (postId != null) {
                         emitGlobalEvent(
                             GlobalEvent.ReplySuccess(
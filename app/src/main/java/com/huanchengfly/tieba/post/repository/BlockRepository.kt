@@ -1,19 +1,21 @@
 package com.huanchengfly.tieba.post.repository
 
-import androidx.annotation.VisibleForTesting
-import androidx.core.util.Predicate
+import androidx.collection.LongObjectMap
+import androidx.collection.MutableLongObjectMap
 import com.huanchengfly.tieba.post.arch.shareInBackground
 import com.huanchengfly.tieba.post.models.database.BlockForum
 import com.huanchengfly.tieba.post.models.database.BlockKeyword
 import com.huanchengfly.tieba.post.models.database.BlockUser
 import com.huanchengfly.tieba.post.models.database.dao.BlockDao
-import com.huanchengfly.tieba.post.models.database.dao.TypedKeyword
+import com.huanchengfly.tieba.post.utils.BlockRuleMatcher
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.SharingStarted
+import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.first
-import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.flowOn
 import kotlinx.coroutines.withContext
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -27,17 +29,14 @@ class BlockRepository @Inject constructor(
 ) {
 
     /**
-     * Blacklisted predicates.
+     * Compiled keyword rules, rebuilt whenever blacklist or whitelist changes.
      * */
-    val blacklist: SharedFlow<List<Predicate<String>>> = localDataSource.observeTypedKeywords(whitelisted = false)
-        .map(::mapToPredicates)
-        .shareInBackground(started = SharingStarted.Lazily)
-
-    /**
-     * Whitelisted predicates. Note that whitelist has the highest priority.
-     * */
-    val whitelist: SharedFlow<List<Predicate<String>>> = localDataSource.observeTypedKeywords(whitelisted = true)
-        .map(::mapToPredicates)
+    val matcher: SharedFlow<BlockRuleMatcher> = combine(
+        localDataSource.observeTypedKeywords(whitelisted = false),
+        localDataSource.observeTypedKeywords(whitelisted = true),
+        transform = BlockRuleMatcher::compile
+    )
+        .flowOn(Dispatchers.Default)
         .shareInBackground(started = SharingStarted.Lazily)
 
     suspend fun upsertForum(forum: BlockForum) = withContext(NonCancellable) {
@@ -93,7 +92,7 @@ class BlockRepository @Inject constructor(
         return if (userRule != null) {
             !userRule.whitelisted
         } else {
-            isBlocked(blacklist = blacklist.first(), whitelist = whitelist.first(), contents = contents)
+            matcher.first().isBlocked(*contents)
         }
     }
 
@@ -105,53 +104,57 @@ class BlockRepository @Inject constructor(
         }
     }
 
-    companion object {
-
-        private class KeywordPredicate(val keyword: String): Predicate<String> {
-            override fun test(t: String?): Boolean {
-                return !t.isNullOrEmpty() && t.contains(keyword, ignoreCase = true)
-            }
-
-            override fun toString(): String = keyword
+    /**
+     * Resolves blocking rules of a whole page at once. User and forum rules are fetched with one
+     * query each, keyword rules are taken from the current [matcher] snapshot.
+     *
+     * @param uids user id of every item on this page, duplicates are allowed
+     * @param forumNames forum name of every item on this page, or empty to skip forum rules
+     *
+     * @return a [BlockChecker] that no longer touches the database
+     */
+    suspend fun newChecker(uids: Collection<Long>, forumNames: Collection<String> = emptyList()): BlockChecker {
+        val distinctUids = uids.distinct()
+        val userRules = MutableLongObjectMap<Boolean>(distinctUids.size)
+        distinctUids.chunked(MAX_QUERY_ARGS).forEach { chunk ->
+            localDataSource.getUsers(chunk).forEach { userRules[it.uid] = it.whitelisted }
         }
 
-        private class RegexPredicate(pattern: String): Predicate<String> {
-            private val regex = pattern.toRegex()
-
-            override fun test(t: String?): Boolean {
-                return !t.isNullOrEmpty() && regex.containsMatchIn(input = t)
-            }
-
-            override fun toString(): String = regex.pattern
+        val blockedForums = if (forumNames.isNotEmpty()) {
+            forumNames.distinct().chunked(MAX_QUERY_ARGS).flatMapTo(HashSet()) { localDataSource.getForumsByName(it) }
+        } else {
+            emptySet()
         }
+        return BlockChecker(userRules, blockedForums, matcher.first())
+    }
 
-        // Convert Keywords to Predicates
-        private fun mapToPredicates(rules: List<TypedKeyword>): List<Predicate<String>> {
-            return rules.map {
-                if (it.isRegex) RegexPredicate(pattern = it.keyword) else KeywordPredicate(keyword = it.keyword)
-            }
-        }
+    companion object {
+        // SQLite host parameter limit on older devices is 999
+        private const val MAX_QUERY_ARGS = 900
+    }
+}
 
-        @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
-        fun Array<out String>.anyMatches(predicates: List<Predicate<String>>): Boolean {
-            if (isEmpty() || predicates.isEmpty()) return false
+/**
+ * Blocking rules resolved for a page of items, checks are done in memory without suspending.
+ *
+ * @see BlockRepository.newChecker
+ */
+class BlockChecker internal constructor(
+    private val userRules: LongObjectMap<Boolean>,
+    private val blockedForums: Set<String>,
+    private val matcher: BlockRuleMatcher
+) {
 
-            forEach { content ->
-                if (predicates.any { it.test(content) }) {
-                    return true
-                }
-            }
-            return false
-        }
+    /**
+     * @return is user or contents blocked
+     */
+    fun isBlocked(uid: Long, vararg contents: String): Boolean {
+        val whitelisted = userRules[uid]
+        // user rule matched, skip keywords check
+        return if (whitelisted != null) !whitelisted else matcher.isBlocked(*contents)
+    }
 
-        @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
-        fun isBlocked(blacklist: List<Predicate<String>>, whitelist: List<Predicate<String>>, vararg contents: String): Boolean {
-            // whitelist has the highest priority
-            return if (contents.anyMatches(predicates = whitelist)) {
-                false
-            } else {
-                contents.anyMatches(predicates = blacklist)
-            }
-        }
+    fun isBlocked(forumName: String, uid: Long, vararg contents: String): Boolean {
+        return forumName in blockedForums || isBlocked(uid, *contents)
     }
-}
\ No newline at end of file
+}
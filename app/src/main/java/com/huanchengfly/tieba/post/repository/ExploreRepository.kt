@@ -89,7 +89,8 @@ class ExploreRepository @Inject constructor(
             localDataSource.saveHotThread(tabCode, data)
         }
 
-        return data.mapUiModel(habit.showBothName, blockRepo::isBlocked)
+        val checker = blockRepo.newChecker(uids = data.threadInfo.mapNotNull { it.author?.id })
+        return data.mapUiModel(habit.showBothName, checker::isBlocked)
     }
 
     suspend fun loadPersonalized(page: Int, cached: Boolean): List<ThreadItem> {
@@ -109,10 +110,14 @@ class ExploreRepository @Inject constructor(
             localDataSource.savePersonalized(data, page)
         }
 
+        val checker = blockRepo.newChecker(
+            uids = data.thread_list.mapNotNull { it.author?.id },
+            forumNames = data.thread_list.map { it.forumName }
+        )
         return data.mapUiModel(
             showBothName = habitSettings.snapshot().showBothName,
             blockVideo = blockSettings.snapshot().blockVideo,
-            isBlocked = blockRepo::isBlocked,
+            isBlocked = checker::isBlocked,
             dislikeProvider = this::getCachedDislike
         )
     }
@@ -134,7 +139,8 @@ class ExploreRepository @Inject constructor(
             localDataSource.saveUserLikeFirstPage(uid, data)
         }
         val showBothName = habitSettings.snapshot().showBothName
-        val threads = data.threadInfo.mapUiModel(showBothName, blockRepo::isBlocked)
+        val checker = blockRepo.newChecker(uids = data.threadInfo.mapNotNull { it.threadList?.author?.id })
+        val threads = data.threadInfo.mapUiModel(showBothName, checker::isBlocked)
         return UserLikeThreads(data.requestUnix, data.pageTag, data.hasMore == 1, threads)
     }
 
@@ -147,7 +153,8 @@ class ExploreRepository @Inject constructor(
     suspend fun loadUserLike(pageTag: String, lastRequestUnix: Long): UserLikeThreads {
         val data = networkDataSource.loadMoreUserLikeThread(pageTag, lastRequestUnix)
         val showBothName = habitSettings.snapshot().showBothName
-        val threads = data.threadInfo.mapUiModel(showBothName, isBlocked = blockRepo::isBlocked)
+        val checker = blockRepo.newChecker(uids = data.threadInfo.mapNotNull { it.threadList?.author?.id })
+        val threads = data.threadInfo.mapUiModel(showBothName, isBlocked = checker::isBlocked)
         return UserLikeThreads(data.requestUnix, data.pageTag, data.hasMore == 1, threads)
     }
 
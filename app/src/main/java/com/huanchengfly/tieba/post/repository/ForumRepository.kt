@@ -7,14 +7,19 @@ import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.core.edit
 import androidx.datastore.preferences.core.intPreferencesKey
 import androidx.datastore.preferences.preferencesDataStoreFile
+import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
 import com.huanchengfly.tieba.post.api.models.SignResultBean
 import com.huanchengfly.tieba.post.api.models.protos.ThreadInfo
 import com.huanchengfly.tieba.post.api.models.protos.frsPage.FrsPageResponseData
 import com.huanchengfly.tieba.post.api.models.protos.plainText
+import com.huanchengfly.tieba.post.api.retrofit.exception.NoConnectivityException
 import com.huanchengfly.tieba.post.repository.ExploreRepository.Companion.distinctById
 import com.huanchengfly.tieba.post.repository.ExploreRepository.Companion.mapUiModel
+import com.huanchengfly.tieba.post.repository.source.local.ForumLocalDataSource
+import com.huanchengfly.tieba.post.repository.source.local.ForumLocalDataSource.Companion.PAGE_EXPIRE_MILL
 import com.huanchengfly.tieba.post.repository.source.network.ForumNetworkDataSource
 import com.huanchengfly.tieba.post.repository.user.SettingsRepository
+import com.huanchengfly.tieba.post.ui.models.Like
 import com.huanchengfly.tieba.post.ui.models.ThreadItem
 import com.huanchengfly.tieba.post.ui.models.ThreadItemList
 import com.huanchengfly.tieba.post.ui.models.forum.ForumData
@@ -26,27 +31,37 @@ import com.huanchengfly.tieba.post.ui.models.forum.Rule
 import com.huanchengfly.tieba.post.ui.models.settings.BlockSettings
 import com.huanchengfly.tieba.post.ui.models.settings.ForumSortType
 import com.huanchengfly.tieba.post.ui.models.settings.HabitSettings
+import com.huanchengfly.tieba.post.ui.models.updateLikeStatus
 import com.huanchengfly.tieba.post.utils.StringUtil
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import javax.inject.Inject
 import javax.inject.Singleton
 
-private typealias CacheKey = String
+/**
+ * Max size of the memory cache, in number of threads
+ * */
+private const val MEMORY_CACHE_THREADS = 300
 
 private typealias ForumPageResult  = Triple<ForumData, ThreadItemList, List<ForumManager>?>
 
-private data class ForumCache(
+private data class CacheKey(val forumName: String, val sortType: Int, val goodClassifyId: Int?, val page: Int)
+
+private class ForumCache(
     val forum: ForumData,
     val managers: List<ForumManager>?,
-    val normal: ThreadItemList?,
-    val good: ThreadItemList?
+    val threads: ThreadItemList,
+    val storedAt: Long = System.currentTimeMillis()
 ) {
-    fun getItemsByType(isGood: Boolean): ThreadItemList? = if (isGood) good else normal
+    val isExpired: Boolean
+        get() = System.currentTimeMillis() - storedAt !in 0 until PAGE_EXPIRE_MILL
+
+    fun toResult(): ForumPageResult = ForumPageResult(forum, threads, managers)
 }
 
 @Singleton
@@ -54,7 +69,8 @@ class ForumRepository @Inject constructor(
     @ApplicationContext context: Context,
     settingsRepo: SettingsRepository,
     private val blockRepo: BlockRepository,
-    private val homeRepo: HomeRepository
+    private val homeRepo: HomeRepository,
+    private val localDataSource: ForumLocalDataSource
 ) {
 
     private val networkDataSource = ForumNetworkDataSource
@@ -69,7 +85,13 @@ class ForumRepository @Inject constructor(
         }
     }
 
-    private val cache: LruCache<CacheKey, ForumCache> = LruCache(2)
+    /**
+     * Memory tier of forum pages, sized by thread count. Backed by [ForumLocalDataSource] and
+     * expires the same as it.
+     * */
+    private val cache = object : LruCache<CacheKey, ForumCache>(MEMORY_CACHE_THREADS) {
+        override fun sizeOf(key: CacheKey, value: ForumCache): Int = value.threads.threads.size + 1
+    }
 
     private suspend fun frsPage(
         forumName: String,
@@ -79,38 +101,71 @@ class ForumRepository @Inject constructor(
         goodClassifyId: Int?,
         forceNew: Boolean = false
     ): ForumPageResult {
-        var key: CacheKey? = null
-        var cached: ForumCache? = null
-        val cacheable = if (sortType == -1) (goodClassifyId ?: 0) == 0 else sortType == ForumSortType.BY_REPLY
-
-        // Load first page from lru cache if possible
-        if (page == 1 && cacheable && loadType == 1) {
-            key = forumName
-            cached = cache[key]
-            val typedItemList = cached?.getItemsByType(isGood = goodClassifyId != null)
-            if (!forceNew && typedItemList != null) {
-                return ForumPageResult(cached.forum, typedItemList, cached.managers)
+        val key = CacheKey(forumName, sortType, goodClassifyId, page)
+
+        if (!forceNew) {
+            cache[key]?.let {
+                if (!it.isExpired) return it.toResult() else cache.remove(key)
+            }
+            localDataSource.loadPage(forumName, sortType, goodClassifyId, page)?.let {
+                return cachePage(key, data = it).toResult()
             }
         }
 
-        val data = networkDataSource.frsPage(forumName, page, loadType, sortType, goodClassifyId)
-        val forumData = data.toData()
-        var forumManagers: List<ForumManager>? = null
-        val showBothName = habitSettings.first().showBothName
-        val typedThreads = ThreadItemList(
-            threads = data.thread_list.mapUiModel(blockedSettings.first(), showBothName, blockRepo::isBlocked),
+        val response = try {
+            networkDataSource.frsPage(forumName, page, loadType, sortType, goodClassifyId, forceNew)
+        } catch (e: NoConnectivityException) {
+            // Resume from expired page when offline
+            val cached = localDataSource.loadPage(forumName, sortType, goodClassifyId, page, includeExpired = true)
+            return cached?.let { cachePage(key, data = it).toResult() } ?: throw e
+        }
+        // Following pages are outdated once the first page reloaded
+        if (page == 1) invalidate(forumName, sortType, goodClassifyId)
+        localDataSource.savePage(forumName, sortType, goodClassifyId, page, response.value)
+        // Page was served stale from the response cache, cache the revalidated one for next load
+        AppBackgroundScope.launch {
+            val revalidated = response.awaitRevalidated() ?: return@launch
+            localDataSource.savePage(forumName, sortType, goodClassifyId, page, revalidated)
+            cachePage(key, revalidated)
+        }
+        return cachePage(key, response.value).toResult()
+    }
+
+    private suspend fun cachePage(key: CacheKey, data: FrsPageResponseData): ForumCache {
+        val habit = habitSettings.first()
+        val threads = ThreadItemList(
+            threads = data.thread_list.mapUiModel(blockedSettings.first(), habit.showBothName, blockRepo),
             threadIds = data.thread_id_list,
             hasMore = data.page!!.has_more == 1
         )
+        return ForumCache(data.toData(), data.getManagers(habit), threads).also { cache.put(key, it) }
+    }
+
+    /**
+     * Remove cached pages of [forumName], pages of a single list only when [sortType] is set.
+     * */
+    private suspend fun invalidate(forumName: String, sortType: Int? = null, goodClassifyId: Int? = null) {
+        cache.snapshot().keys.forEach {
+            if (it.forumName == forumName && (sortType == null || it.sortType == sortType && it.goodClassifyId == goodClassifyId)) {
+                cache.remove(it)
+            }
+        }
+        localDataSource.purge(forumName, sortType, goodClassifyId)
+        if (sortType == null) networkDataSource.evictPageCache(forumName)
+    }
 
-        // is result cacheable
-        if (key != null) {
-            forumManagers = data.getManagers(habit = habitSettings.first())
-            val normalThreads = if (sortType != -1) typedThreads else cached?.normal
-            val goodThreads = if (sortType == -1) typedThreads else cached?.good
-            cache.put(key, ForumCache(forumData, forumManagers, normal = normalThreads, good = goodThreads))
+    /**
+     * Sync like status of the thread to cached pages of [forumName].
+     * */
+    suspend fun updateThreadLike(forumName: String, threadId: Long, like: Like) {
+        cache.snapshot().forEach { (key, value) ->
+            if (key.forumName != forumName) return@forEach
+            val newThreads = value.threads.threads.updateLikeStatus(threadId, like) ?: return@forEach
+            val threads = ThreadItemList(newThreads, value.threads.threadIds, value.threads.hasMore)
+            cache.put(key, ForumCache(value.forum, value.managers, threads, value.storedAt))
         }
-        return ForumPageResult(forumData, typedThreads, forumManagers)
+        localDataSource.updateThreadLike(forumName, threadId, like)
+        networkDataSource.evictPageCache(forumName)
     }
 
     suspend fun loadForumInfo(forumName: String, forceNew: Boolean = true): ForumData {
@@ -177,7 +232,7 @@ class ForumRepository @Inject constructor(
             .mapUiModel(
                 showBothName = habitSettings.first().showBothName,
                 blockedSetting = blockedSettings.first(),
-                isBlocked = blockRepo::isBlocked,
+                blockRepo = blockRepo,
             )
     }
 
@@ -208,6 +263,7 @@ class ForumRepository @Inject constructor(
         require(!forum.liked)
         val info = networkDataSource.like(forum.id, forum.name, forum.tbs!!)
 
+        invalidate(forum.name)
         // Notify forum changes to home
         homeRepo.onLikeForum()
         return forum.copy(
@@ -222,12 +278,14 @@ class ForumRepository @Inject constructor(
 
     suspend fun dislikeForum(forum: ForumData) {
         networkDataSource.dislike(forum.id, forum.name, forum.tbs!!)
+        invalidate(forum.name)
         // Notify forum changes to home
         homeRepo.onDislikeForum(forumId = forum.id)
     }
 
     suspend fun forumSignIn(forumId: Long, forumName: String, tbs: String): SignResultBean.UserInfo {
         val userInfo = networkDataSource.forumSignIn(forumId, forumName, tbs)
+        invalidate(forumName)
         homeRepo.onForumSignedIn(forumId)
         return userInfo
     }
@@ -262,13 +320,15 @@ class ForumRepository @Inject constructor(
 private suspend fun List<ThreadInfo>.mapUiModel(
     blockedSetting: BlockSettings,
     showBothName: Boolean,
-    isBlocked: suspend (uid: Long, content: Array<String>) -> Boolean,
+    blockRepo: BlockRepository,
 ): List<ThreadItem> {
     return if (isNotEmpty()) {
+        // Resolve blocking rules of the whole page at once
+        val checker = blockRepo.newChecker(uids = mapNotNull { it.author?.id })
         withContext(Dispatchers.Default) {
             mapNotNull {
                 val notBlocked = !blockedSetting.blockVideo || it.videoInfo == null
-                if (notBlocked) it.mapUiModel(showBothName, isBlocked, threadDislikeMap = null) else null
+                if (notBlocked) it.mapUiModel(showBothName, checker::isBlocked, threadDislikeMap = null) else null
             }
             .distinctById()
         }
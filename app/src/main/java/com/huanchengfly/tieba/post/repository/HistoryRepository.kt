@@ -11,10 +11,13 @@ import com.huanchengfly.tieba.post.models.database.ForumHistory
 import com.huanchengfly.tieba.post.models.database.History
 import com.huanchengfly.tieba.post.models.database.TbLiteDatabase
 import com.huanchengfly.tieba.post.models.database.ThreadHistory
+import com.huanchengfly.tieba.post.models.database.ThreadHistoryFts
 import com.huanchengfly.tieba.post.models.database.UserProfile
 import com.huanchengfly.tieba.post.models.database.dao.ForumHistoryDao
+import com.huanchengfly.tieba.post.models.database.dao.LocalSearchDao
 import com.huanchengfly.tieba.post.models.database.dao.ThreadHistoryDao
 import com.huanchengfly.tieba.post.models.database.dao.UserProfileDao
+import com.huanchengfly.tieba.post.utils.FtsUtil
 import com.huanchengfly.tieba.post.utils.StringUtil
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.NonCancellable
@@ -39,6 +42,8 @@ class HistoryRepository @Inject constructor(
 
     private val userProfileDao: UserProfileDao = dataBase.userProfileDao()
 
+    private val localSearchDao: LocalSearchDao = dataBase.localSearchDao()
+
     private val defaultConfig by unsafeLazy {
         PagingConfig(pageSize = 20, prefetchDistance = 4, maxSize = 80)
     }
@@ -69,10 +74,18 @@ class HistoryRepository @Inject constructor(
         .flowOn(Dispatchers.Default)
     }
 
-    suspend fun saveHistory(history: History) {
+    /**
+     * Save a history, thread history is also indexed for local search.
+     *
+     * @param content plain text of the first post, indexed with thread history
+     * */
+    suspend fun saveHistory(history: History, content: String? = null) {
         withContext(NonCancellable) {
             when (history) {
-                is ThreadHistory -> threadHistoryDao.upsert(history)
+                is ThreadHistory -> dataBase.withTransaction {
+                    threadHistoryDao.upsert(history)
+                    localSearchDao.upsertThread(mapIndex(history, content))
+                }
 
                 is ForumHistory -> forumHistoryDao.upsert(history)
 
@@ -86,7 +99,10 @@ class HistoryRepository @Inject constructor(
     suspend fun deleteHistory(history: History) {
         withContext(NonCancellable) {
             when (history) {
-                is ThreadHistory -> threadHistoryDao.deleteById(threadId = history.id)
+                is ThreadHistory -> dataBase.withTransaction {
+                    threadHistoryDao.deleteById(threadId = history.id)
+                    localSearchDao.deleteThread(threadId = history.id)
+                }
 
                 is ForumHistory -> forumHistoryDao.deleteById(forumId = history.id)
 
@@ -101,7 +117,10 @@ class HistoryRepository @Inject constructor(
         val ids = historyList.fastMap { it.id }
         withContext(NonCancellable) {
             when (historyList.first()) {
-                is ThreadHistory -> threadHistoryDao.deleteByIdList(ids)
+                is ThreadHistory -> dataBase.withTransaction {
+                    threadHistoryDao.deleteByIdList(ids)
+                    localSearchDao.deleteThreadByIdList(ids)
+                }
 
                 is ForumHistory -> forumHistoryDao.deleteByIdList(ids)
 
@@ -116,6 +135,7 @@ class HistoryRepository @Inject constructor(
         withContext(NonCancellable) {
             dataBase.withTransaction {
                 threadHistoryDao.deleteAll()
+                localSearchDao.deleteAllThreads()
                 forumHistoryDao.deleteAll()
                 userProfileDao.deleteAll()
             }
@@ -131,6 +151,22 @@ class UserHistory(
     override val timestamp: Long
 ) : History()
 
+/**
+ * Limit of indexed first post text, it's enough to recall what the thread is about
+ * */
+private const val MAX_INDEXED_CONTENT = 500
+
+private fun mapIndex(history: ThreadHistory, content: String?): ThreadHistoryFts {
+    val rawContent = content?.take(MAX_INDEXED_CONTENT)?.trim().orEmpty()
+    return ThreadHistoryFts(
+        threadId = history.id,
+        title = FtsUtil.segment(history.title),
+        forum = FtsUtil.segment(history.forum.orEmpty()),
+        content = FtsUtil.segment(rawContent),
+        rawContent = rawContent
+    )
+}
+
 private fun mapUiModel(profile: UserProfile): UserHistory = with(profile) {
     val displayName = nickname ?: name
     UserHistory(
@@ -0,0 +1,230 @@
+package com.huanchengfly.tieba.post.repository
+
+import android.util.Log
+import androidx.paging.ExperimentalPagingApi
+import androidx.paging.LoadState
+import androidx.paging.LoadStates
+import androidx.paging.LoadType
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import androidx.paging.PagingState
+import androidx.paging.RemoteMediator
+import androidx.paging.map
+import com.huanchengfly.tieba.post.BuildConfig
+import com.huanchengfly.tieba.post.api.models.MessageListBean
+import com.huanchengfly.tieba.post.api.models.MessageListBean.MessageInfoBean
+import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaNotLoggedInException
+import com.huanchengfly.tieba.post.arch.unsafeLazy
+import com.huanchengfly.tieba.post.models.database.NotificationMessage
+import com.huanchengfly.tieba.post.models.database.Timestamp
+import com.huanchengfly.tieba.post.models.database.dao.NotificationMessageDao
+import com.huanchengfly.tieba.post.models.database.dao.TimestampDao
+import com.huanchengfly.tieba.post.models.database.dao.TimestampDao.Companion.TYPE_AT_ME_NEXT_PAGE
+import com.huanchengfly.tieba.post.models.database.dao.TimestampDao.Companion.TYPE_REPLY_ME_NEXT_PAGE
+import com.huanchengfly.tieba.post.models.database.dao.TransactionRunner
+import com.huanchengfly.tieba.post.repository.source.network.NotificationNetworkDataSource
+import com.huanchengfly.tieba.post.repository.user.SettingsRepository
+import com.huanchengfly.tieba.post.ui.page.main.notifications.list.NotificationsType
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import kotlinx.serialization.json.Json
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Remote page marks the end of pagination, all pages are stored
+ * */
+private const val PAGE_END = 0L
+
+/**
+ * Stop syncing new messages after this many pages, older messages are dropped then
+ * */
+private const val MAX_SYNC_PAGES = 5
+
+private const val TAG = "NotificationRepository"
+
+/**
+ * Notification Repository that manages the inbox of reply and at messages.
+ *
+ * This repository uses the database as the source of truth. Syncing is incremental, new messages
+ * are fetched until the newest stored message is reached, so a refresh usually costs one request.
+ * */
+@Singleton
+class NotificationRepository @Inject constructor(
+    private val localDataSource: NotificationMessageDao,
+    private val timestampDao: TimestampDao,
+    private val transactionRunner: TransactionRunner,
+    private val settingsRepo: SettingsRepository
+) {
+
+    private val networkDataSource = NotificationNetworkDataSource
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    private val pagingConfig by unsafeLazy {
+        PagingConfig(pageSize = 20, prefetchDistance = 5, enablePlaceholders = false)
+    }
+
+    // Empty inbox that surfaces the login error through LoadState
+    private val notLoggedInPagingData by unsafeLazy {
+        val end = LoadState.NotLoading(endOfPaginationReached = true)
+        PagingData.empty<NotificationMessage>(
+            sourceLoadStates = LoadStates(LoadState.Error(TiebaNotLoggedInException()), end, end)
+        )
+    }
+
+    /**
+     * Get current user's inbox, stored messages are rendered before syncing with network.
+     * */
+    @OptIn(ExperimentalCoroutinesApi::class, ExperimentalPagingApi::class)
+    fun getMessages(type: NotificationsType): Flow<PagingData<MessageInfoBean>> = settingsRepo.accountUid
+        .flatMapLatest { uid ->
+            if (uid <= 0) return@flatMapLatest flowOf(notLoggedInPagingData)
+            Pager(
+                config = pagingConfig,
+                remoteMediator = InboxRemoteMediator(uid, type),
+                pagingSourceFactory = { localDataSource.pagingSource(uid, type.ordinal) }
+            ).flow
+        }
+        .map { pagingData -> pagingData.map { json.decodeFromString<MessageInfoBean>(it.data) } }
+        .flowOn(Dispatchers.Default)
+
+    /**
+     * Fetch new messages of current user until the newest stored message is reached.
+     *
+     * @return true if all pages are stored
+     * */
+    suspend fun sync(type: NotificationsType): Boolean {
+        val uid = settingsRepo.accountUid.snapshot()
+        if (uid <= 0) throw TiebaNotLoggedInException()
+        return sync(uid, type)
+    }
+
+    suspend fun sync(uid: Long, type: NotificationsType): Boolean {
+        val start = System.currentTimeMillis()
+        val newest = localDataSource.getNewest(uid, type.ordinal)
+        val fetched = ArrayList<NotificationMessage>()
+        var page = 0
+        var pageSize = 0
+        var hasMore: Boolean
+        var reachedStored: Boolean
+        // Empty inbox needs the first page only
+        do {
+            page++
+            val response = networkDataSource.loadMessages(type, page)
+            val messages = response.mapEntity(uid, type)
+            if (page == 1) pageSize = response.messagesOf(type)?.size ?: 0
+            fetched.addAll(messages)
+            hasMore = response.page?.hasMore == "1"
+            reachedStored = newest != null && messages.any { it.isSameOrOlder(newest) }
+        } while (newest != null && hasMore && !reachedStored && page < MAX_SYNC_PAGES)
+
+        val nextPage = transactionRunner {
+            val nextPageType = type.nextPageType
+            val nextPage = if (reachedStored) {
+                localDataSource.upsertAll(fetched)
+                val previous = timestampDao.get(uid, nextPageType)
+                when {
+                    !hasMore || previous == PAGE_END -> PAGE_END
+                    // New messages moved stored messages backwards, overlapped items are merged
+                    else -> localDataSource.count(uid, type.ordinal) / pageSize + 1L
+                }
+            } else {
+                // Inbox is empty or the gap is too large, drop stored messages
+                localDataSource.deleteByType(uid, type.ordinal)
+                localDataSource.upsertAll(fetched)
+                if (hasMore) page + 1L else PAGE_END
+            }
+            timestampDao.upsert(Timestamp(uid, nextPageType, nextPage))
+            nextPage
+        }
+
+        if (BuildConfig.DEBUG) {
+            val cost = System.currentTimeMillis() - start
+            Log.i(TAG, "onSync: $type, pages: $page, messages: ${fetched.size}, next: $nextPage, cost ${cost}ms.")
+        }
+        return nextPage == PAGE_END
+    }
+
+    /**
+     * Fetch the next remote page of stored messages.
+     *
+     * @return true if all pages are stored
+     * */
+    suspend fun loadMore(uid: Long, type: NotificationsType): Boolean {
+        val nextPageType = type.nextPageType
+        val page = timestampDao.get(uid, nextPageType) ?: return sync(uid, type)
+        if (page == PAGE_END) return true
+
+        val response = networkDataSource.loadMessages(type, page.toInt())
+        val nextPage = if (response.page?.hasMore == "1") page + 1 else PAGE_END
+        transactionRunner {
+            localDataSource.upsertAll(response.mapEntity(uid, type))
+            timestampDao.upsert(Timestamp(uid, nextPageType, nextPage))
+        }
+        return nextPage == PAGE_END
+    }
+
+    private fun MessageListBean.messagesOf(type: NotificationsType): List<MessageInfoBean>? {
+        return if (type == NotificationsType.ReplyMe) replyList else atList
+    }
+
+    private fun MessageListBean.mapEntity(uid: Long, type: NotificationsType): List<NotificationMessage> {
+        val messages = messagesOf(type) ?: return emptyList()
+        return messages.mapNotNull {
+            // Skip malformed messages, they can't be rendered anyway. Keep this in sync with the
+            // required IDs of NotificationsListViewModel, a stored message must never fail mapping
+            if (it.threadId?.toLongOrNull() == null) return@mapNotNull null
+            NotificationMessage(
+                uid = uid,
+                type = type.ordinal,
+                postId = it.postId?.toLongOrNull() ?: return@mapNotNull null,
+                replyerId = it.replyer?.id?.toLongOrNull() ?: return@mapNotNull null,
+                time = it.time?.toLongOrNull() ?: return@mapNotNull null,
+                data = json.encodeToString(it)
+            )
+        }
+    }
+
+    private fun NotificationMessage.isSameOrOlder(other: NotificationMessage): Boolean {
+        return time < other.time || (postId == other.postId && replyerId == other.replyerId)
+    }
+
+    @OptIn(ExperimentalPagingApi::class)
+    private inner class InboxRemoteMediator(
+        private val uid: Long,
+        private val type: NotificationsType
+    ) : RemoteMediator<Int, NotificationMessage>() {
+
+        // Always sync on open, stored messages are rendered meanwhile
+        override suspend fun initialize(): InitializeAction = InitializeAction.LAUNCH_INITIAL_REFRESH
+
+        override suspend fun load(loadType: LoadType, state: PagingState<Int, NotificationMessage>): MediatorResult {
+            return try {
+                val endReached = when (loadType) {
+                    LoadType.REFRESH -> sync(uid, type)
+                    LoadType.PREPEND -> true
+                    LoadType.APPEND -> loadMore(uid, type)
+                }
+                MediatorResult.Success(endOfPaginationReached = endReached)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                MediatorResult.Error(e)
+            }
+        }
+    }
+
+    private val NotificationsType.nextPageType: Int
+        get() = when (this) {
+            NotificationsType.ReplyMe -> TYPE_REPLY_ME_NEXT_PAGE
+            NotificationsType.AtMe -> TYPE_AT_ME_NEXT_PAGE
+        }
+}
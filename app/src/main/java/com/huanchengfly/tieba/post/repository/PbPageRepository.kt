@@ -8,6 +8,7 @@ import androidx.compose.ui.text.buildAnnotatedString
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.text.withAnnotation
 import androidx.compose.ui.text.withStyle
+import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
 import com.huanchengfly.tieba.post.api.models.protos.Page
 import com.huanchengfly.tieba.post.api.models.protos.Post
 import com.huanchengfly.tieba.post.api.models.protos.SubPostList
@@ -19,10 +20,14 @@ import com.huanchengfly.tieba.post.api.models.protos.pbFloor.PbFloorResponseData
 import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponse
 import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponseData
 import com.huanchengfly.tieba.post.api.models.protos.plainText
+import com.huanchengfly.tieba.post.api.retrofit.exception.NoConnectivityException
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
 import com.huanchengfly.tieba.post.arch.wrapImmutable
+import com.huanchengfly.tieba.post.repository.source.local.ThreadLocalDataSource
+import com.huanchengfly.tieba.post.repository.source.network.Revalidating
 import com.huanchengfly.tieba.post.repository.source.network.ThreadNetworkDataSource
 import com.huanchengfly.tieba.post.repository.user.SettingsRepository
+import com.huanchengfly.tieba.post.ui.common.LazyContent
 import com.huanchengfly.tieba.post.ui.common.PbContentRender
 import com.huanchengfly.tieba.post.ui.common.PbContentRender.Companion.TAG_LZ
 import com.huanchengfly.tieba.post.ui.common.PbContentRender.Companion.TAG_USER
@@ -35,12 +40,14 @@ import com.huanchengfly.tieba.post.ui.models.ThreadInfoData
 import com.huanchengfly.tieba.post.ui.models.ThreadItem
 import com.huanchengfly.tieba.post.ui.models.UserData
 import com.huanchengfly.tieba.post.ui.page.thread.ThreadSortType
+import com.huanchengfly.tieba.post.utils.AccountUtil
 import com.huanchengfly.tieba.post.utils.DateTimeUtils
 import com.huanchengfly.tieba.post.utils.StringUtil
 import com.huanchengfly.tieba.post.utils.StringUtil.normalized
 import com.huanchengfly.tieba.post.utils.ThemeUtil
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import okhttp3.internal.toLongOrDefault
 import javax.inject.Inject
@@ -86,6 +93,7 @@ class PbFloorUiResponse(
 @Singleton
 class PbPageRepository @Inject constructor(
     private val blockRepo: BlockRepository,
+    private val localDataSource: ThreadLocalDataSource,
     settingsRepo: SettingsRepository
 ) {
 
@@ -125,48 +133,117 @@ class PbPageRepository @Inject constructor(
         back: Boolean = false,
         from: String = "",
         lastPostId: Long? = null,
+        forceRefresh: Boolean = false,
     ): PbPageUiResponse {
-        val data = networkDataSource.pbPage(
-            threadId,
-            page,
-            postId = postId,
-            seeLz = seeLz,
-            sortType = sortType,
-            back = back,
-            forumId = forumId,
-            from = from,
-            lastPostId = lastPostId
-        )
-        val pageData = data.page ?: throw TiebaException("Null page")
-        val lz = data.thread!!.author!!
+        return pbPageWithRevalidation(
+            threadId, page, postId, forumId, seeLz, sortType, back, from, lastPostId, forceRefresh
+        ).value
+    }
+
+    /**
+     * Same as [pbPage], the page served stale from the response cache is followed by the
+     * revalidated one.
+     * */
+    suspend fun pbPageWithRevalidation(
+        threadId: Long,
+        page: Int = 1,
+        postId: Long = 0,
+        forumId: Long? = null,
+        seeLz: Boolean = false,
+        sortType: Int = 0,
+        back: Boolean = false,
+        from: String = "",
+        lastPostId: Long? = null,
+        forceRefresh: Boolean = false,
+    ): Revalidating<PbPageUiResponse> {
+        val uid = currentUid()
+        val response = try {
+            networkDataSource.pbPage(
+                threadId,
+                page,
+                postId = postId,
+                seeLz = seeLz,
+                sortType = sortType,
+                back = back,
+                forumId = forumId,
+                from = from,
+                lastPostId = lastPostId,
+                forceRefresh = forceRefresh
+            )
+        } catch (e: NoConnectivityException) {
+            // Resume from snapshot when offline
+            if (lastPostId != null) throw e
+            val snapshot = localDataSource.loadPage(uid, threadId, page, postId, seeLz, sortType)
+            return Revalidating.fresh(snapshot?.mapToUiModel(sortType) ?: throw e)
+        }
+        return response.map { data ->
+            // Latest posts are only a part of the page
+            if (lastPostId == null) {
+                AppBackgroundScope.launch {
+                    localDataSource.savePage(uid, threadId, seeLz, sortType, data)
+                }
+            }
+            data.mapToUiModel(sortType)
+        }
+    }
+
+    /**
+     * Load the offline snapshot of a thread page, for rendering before the network response.
+     *
+     * @return snapshot of the page, **null** if not exists
+     * @see ThreadLocalDataSource.loadPage
+     * */
+    suspend fun pbPageSnapshot(
+        threadId: Long,
+        page: Int,
+        postId: Long,
+        seeLz: Boolean,
+        sortType: Int
+    ): PbPageUiResponse? {
+        return localDataSource.loadPage(currentUid(), threadId, page, postId, seeLz, sortType)
+            ?.let {
+                runCatching { it.mapToUiModel(sortType) }.getOrNull()
+            }
+    }
+
+    private suspend fun PbPageResponseData.mapToUiModel(sortType: Int): PbPageUiResponse {
+        val pageData = page ?: throw TiebaException("Null page")
+        val lz = thread!!.author!!
         val nextPagePostId = if (sortType == ThreadSortType.BY_ASC) {
             0
         } else {
-            data.thread.getNextPagePostId(data.post_list, sortType)
+            thread.getNextPagePostId(post_list, sortType)
         }
         val showBothName = habitSettings.first().showBothName
-        val firstPost = data.first_floor_post?.mapToUiModel(lzId = lz.id, blockable = false)
+        // Resolve blocking rules of the whole page at once
+        val checker = blockRepo.newChecker(uids = collectAuthorIds(first_floor_post, post_list))
+        val firstPost = first_floor_post?.mapToUiModel(lzId = lz.id, checker, blockable = false)
 
         return PbPageUiResponse(
-            user = data.user?.takeIf { it.is_login == 1 }?.mapToUiModel(lzId = lz.id, showBothName),
+            user = user?.takeIf { it.is_login == 1 }?.mapToUiModel(lzId = lz.id, showBothName),
             firstPost = firstPost,
-            posts = data.post_list.mapToUiModel(lzId = lz.id),
-            tbs = data.anti!!.tbs,
-            thread = data.thread.mapToUiModel(),
+            posts = post_list.mapToUiModel(lzId = lz.id, checker),
+            tbs = anti!!.tbs,
+            thread = thread.mapToUiModel(),
             page = pageData,
             nextPagePostId = nextPagePostId,
         )
     }
 
+    private suspend fun currentUid(): Long = AccountUtil.getInstance().currentAccount.first()?.uid ?: 0L
+
     suspend fun pbFloor(threadId: Long, postId: Long, forumId: Long, page: Int, subPostId: Long = 0): PbFloorUiResponse {
         val data = networkDataSource.pbFloor(threadId, postId, forumId, page, subPostId)
         val post = data.post ?: throw TiebaException("Null post")
         val pageData = data.page ?: throw TiebaException("Null page data")
         val lzId = data.thread?.author?.id ?: -1L
         val anti = data.anti ?: throw TiebaException("Null anti data")
+        val checker = blockRepo.newChecker(
+            uids = collectAuthorIds(post, emptyList()) + data.subpost_list.mapNotNull { it.author?.id }
+        )
         return PbFloorUiResponse(
-            post = post.mapToUiModel(lzId, blockable = false),
-            subPosts = data.subpost_list.mapToUiModel(lzId = lzId, abstract = false),
+            post = post.mapToUiModel(lzId, checker, blockable = false),
+            subPosts = data.subpost_list.mapToUiModel(lzId = lzId, abstract = false, checker),
             tbs = anti.tbs,
             thread = data.thread!!.mapToUiModel(),
             page = PageData(
@@ -200,15 +277,19 @@ class PbPageRepository @Inject constructor(
             tbs = tbs,
             isSelfThread = delMyThread
         )
+        localDataSource.purge(thread.id)
     }
 
     /**
      * 加载帖子预览
+     *
+     * Same parameters as the first load of ThreadPage, so opening the previewed thread joins the
+     * in-flight request, see [com.huanchengfly.tieba.post.repository.source.network.RequestCoalescer].
      * */
     suspend fun loadPreview(threadId: Long): PbPageResponseData {
         return networkDataSource.pbPageRaw(
             threadId = threadId,
-            page = 1,
+            page = 0,
             postId = 0,
             forumId = null,
             seeLz = false,
@@ -216,7 +297,7 @@ class PbPageRepository @Inject constructor(
             back = false,
             from = "",
             lastPostId = null,
-        )
+        ).value
     }
 
     private suspend fun ThreadInfo.getNextPagePostId(newData: List<Post>, sortType: Int): Long {
@@ -235,21 +316,37 @@ class PbPageRepository @Inject constructor(
         }
     }
 
+    /**
+     * Collect author id of posts and their sub posts, used to resolve blocking rules of a page.
+     * */
+    private fun collectAuthorIds(firstPost: Post?, posts: List<Post>): List<Long> {
+        val uids = ArrayList<Long>(posts.size * 2)
+        (if (firstPost != null) posts + firstPost else posts).forEach { post ->
+            post.author?.let { uids.add(it.id) }
+            post.sub_post_list?.sub_post_list?.forEach { subPost -> subPost.author?.let { uids.add(it.id) } }
+        }
+        return uids
+    }
+
     @WorkerThread
-    private suspend fun SubPostList.mapToUiModel(lzId: Long, abstract: Boolean): SubPostItemData {
+    private suspend fun SubPostList.mapToUiModel(lzId: Long, abstract: Boolean, checker: BlockChecker): SubPostItemData {
         val habit = habitSettings.first()
         val author = author!!.mapToUiModel(lzId = lzId, showBothName = habit.showBothName)
-        val contentRenders = content.buildRenders(imageLoadType = habit.imageLoadType)
+        val imageLoadType = habit.imageLoadType
         val plainText = content.plainText.orEmpty()
         return SubPostItemData(
             author = author,
             id = id,
-            blocked = blockRepo.isBlocked(author.id, plainText),
+            blocked = checker.isBlocked(author.id, plainText),
             time = time.toLong(),
             like = agree?.let { Like(agree = it) } ?: LikeZero,
             plainText = plainText,
-            abstractContent = if (abstract) buildAbstractContent(contentRenders, author) else null,
-            content = if (abstract) null else contentRenders
+            abstractContent = if (abstract) {
+                LazyContent { buildAbstractContent(content.buildRenders(imageLoadType), author) }
+            } else {
+                null
+            },
+            content = if (abstract) null else content.buildRenders(imageLoadType)
         )
     }
 
@@ -258,14 +355,19 @@ class PbPageRepository @Inject constructor(
      *
      * @param lzId user ID of LZ
      * @param abstract build abstract content instead of full PbContent, ``true`` for ThreadPage
+     * @param checker blocking rules of current page
      * */
-    private suspend fun List<SubPostList>.mapToUiModel(lzId: Long, abstract: Boolean): List<SubPostItemData> {
+    private suspend fun List<SubPostList>.mapToUiModel(
+        lzId: Long,
+        abstract: Boolean,
+        checker: BlockChecker
+    ): List<SubPostItemData> {
         if (isEmpty()) return emptyList()
 
         return withContext(Dispatchers.Default) {
             val hideBlocked = blockSettings.first().hideBlocked
             mapNotNull {
-                it.mapToUiModel(lzId, abstract).takeUnless { i -> i.blocked && hideBlocked }
+                it.mapToUiModel(lzId, abstract, checker).takeUnless { i -> i.blocked && hideBlocked }
             }
         }
     }
@@ -274,11 +376,13 @@ class PbPageRepository @Inject constructor(
      * Convert Post to UI Model
      *
      * @param lzId user ID of LZ
+     * @param checker blocking rules of current page
      * */
-    private suspend fun Post.mapToUiModel(lzId: Long, blockable: Boolean): PostData {
+    private suspend fun Post.mapToUiModel(lzId: Long, checker: BlockChecker, blockable: Boolean): PostData {
         val habit = habitSettings.first()
         val plainText = content.plainText.orEmpty()
         val author = author!!.mapToUiModel(lzId, showBothName = habit.showBothName)
+        val imageLoadType = habit.imageLoadType
         return PostData(
             id = this.id,
             author = author,
@@ -288,20 +392,20 @@ class PbPageRepository @Inject constructor(
             },
             time = DateTimeUtils.fixTimestamp(time.toLong()),
             like = agree?.let { Like(agree = it) } ?: LikeZero,
-            blocked = blockable && blockRepo.isBlocked(author.id, plainText),
+            blocked = blockable && checker.isBlocked(author.id, plainText),
             plainText = plainText,
-            contentRenders = this.buildContentRenders(imageLoadType = habit.imageLoadType),
-            subPosts = sub_post_list?.sub_post_list?.mapToUiModel(lzId, abstract = true),
+            contentRenders = LazyContent(weight = List<*>::size) { this.buildContentRenders(imageLoadType) },
+            subPosts = sub_post_list?.sub_post_list?.mapToUiModel(lzId, abstract = true, checker),
             subPostNumber = sub_post_number
         )
     }
 
-    private suspend fun List<Post>.mapToUiModel(lzId: Long): List<PostData> = withContext(Dispatchers.Default) {
+    private suspend fun List<Post>.mapToUiModel(lzId: Long, checker: BlockChecker): List<PostData> = withContext(Dispatchers.Default) {
         val hideBlocked = blockSettings.first().hideBlocked
         mapNotNull {
             // 0楼: 伪装的广告, 1楼: 楼主
             if (it.floor > 1) {
-                it.mapToUiModel(lzId, blockable = true)
+                it.mapToUiModel(lzId, checker, blockable = true)
                     .takeUnless { p -> hideBlocked && p.blocked } // filter out blocked post
             } else {
                 null
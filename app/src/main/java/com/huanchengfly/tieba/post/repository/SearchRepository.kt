@@ -18,13 +18,17 @@ import com.huanchengfly.tieba.post.api.models.SearchThreadBean.UserInfoBean
 import com.huanchengfly.tieba.post.api.models.SearchUserBean.UserBean
 import com.huanchengfly.tieba.post.models.database.SearchHistory
 import com.huanchengfly.tieba.post.models.database.SearchPostHistory
+import com.huanchengfly.tieba.post.models.database.dao.DraftMatch
+import com.huanchengfly.tieba.post.models.database.dao.LocalSearchDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchDao
 import com.huanchengfly.tieba.post.models.database.dao.SearchPostDao
+import com.huanchengfly.tieba.post.models.database.dao.ThreadHistoryMatch
 import com.huanchengfly.tieba.post.repository.source.network.SearchNetworkDataSource
 import com.huanchengfly.tieba.post.repository.user.SettingsRepository
 import com.huanchengfly.tieba.post.ui.common.PbContentRender.Companion.TAG_USER
 import com.huanchengfly.tieba.post.ui.models.Author
 import com.huanchengfly.tieba.post.ui.models.search.SearchForum
+import com.huanchengfly.tieba.post.ui.models.search.SearchLocalItem
 import com.huanchengfly.tieba.post.ui.models.search.SearchMedia
 import com.huanchengfly.tieba.post.ui.models.search.SearchSuggestion
 import com.huanchengfly.tieba.post.ui.models.search.SearchThreadInfo
@@ -32,6 +36,7 @@ import com.huanchengfly.tieba.post.ui.models.search.SearchUser
 import com.huanchengfly.tieba.post.ui.widgets.compose.buildThreadContent
 import com.huanchengfly.tieba.post.utils.DateTimeUtils
 import com.huanchengfly.tieba.post.utils.EmoticonUtil.emoticonString
+import com.huanchengfly.tieba.post.utils.FtsUtil
 import com.huanchengfly.tieba.post.utils.StringUtil
 import com.huanchengfly.tieba.post.utils.ThemeUtil
 import dagger.hilt.android.qualifiers.ApplicationContext
@@ -58,6 +63,7 @@ class SearchRepository @Inject constructor(
     @ApplicationContext private val context: Context,
     private val historyDao: SearchDao,
     private val postHistoryDao: SearchPostDao,
+    private val localSearchDao: LocalSearchDao,
     private val settingsRepo: SettingsRepository
 ) {
 
@@ -114,6 +120,28 @@ class SearchRepository @Inject constructor(
         )
     }
 
+    /**
+     * Search thread history and drafts offline, results are ranked by relevance.
+     * */
+    suspend fun searchLocal(keyword: String): List<SearchLocalItem> {
+        val query = FtsUtil.buildQuery(keyword) ?: return emptyList()
+        val threads = localSearchDao.searchThreadHistory(query, limit = LOCAL_SEARCH_LIMIT)
+        val drafts = localSearchDao.searchDraft(query, limit = LOCAL_SEARCH_LIMIT)
+        return withContext(Dispatchers.Default) {
+            val keywordPatterns = keyword.toKeywordPatterns()
+            // Recent first from database, keeps the order of equally ranked results
+            val rankedThreads = threads.map {
+                FtsUtil.rank(it.matchInfo, THREAD_COLUMN_WEIGHTS) to it.mapUiModel(keywordPatterns)
+            }
+            val rankedDrafts = drafts.map {
+                FtsUtil.rank(it.matchInfo, DRAFT_COLUMN_WEIGHTS) to it.mapUiModel(keywordPatterns)
+            }
+            (rankedThreads + rankedDrafts)
+                .sortedByDescending { (score, _) -> score }
+                .map { (_, item) -> item }
+        }
+    }
+
     suspend fun addHistory(keyword: String) {
         require(keyword.isNotBlank() && keyword.isNotEmpty()) { "Invalid search keyword" }
         historyDao.upsert(SearchHistory(keyword))
@@ -147,6 +175,18 @@ class SearchRepository @Inject constructor(
 
     companion object {
 
+        private const val LOCAL_SEARCH_LIMIT = 50
+
+        private const val SNIPPET_LEADING = 16
+
+        private const val SNIPPET_LENGTH = 120
+
+        // Columns of thread_history_fts: title, forum, content, raw_content
+        private val THREAD_COLUMN_WEIGHTS = floatArrayOf(4f, 2f, 1f, 0f)
+
+        // Columns of draft_fts: thread_id, post_id, subpost_id, content
+        private val DRAFT_COLUMN_WEIGHTS = floatArrayOf(0f, 0f, 0f, 1f)
+
         private suspend inline fun <NetModel, UiModel> mapSearchResult(
             exactMatch: NetModel?,
             fuzzyMatch: List<NetModel>?,
@@ -231,6 +271,43 @@ class SearchRepository @Inject constructor(
             append(content)
         }
 
+        /**
+         * Cut a snippet of the content around the first matched keyword.
+         * */
+        private fun snippetOf(content: String, patterns: List<Pattern>): String {
+            val start = patterns.minOfOrNull { pattern ->
+                pattern.matcher(content).let { if (it.find()) it.start() else Int.MAX_VALUE }
+            }
+            return if (start == null || start == Int.MAX_VALUE || start <= SNIPPET_LEADING) {
+                content.take(SNIPPET_LENGTH)
+            } else {
+                "…" + content.substring(start - SNIPPET_LEADING).take(SNIPPET_LENGTH)
+            }
+        }
+
+        @WorkerThread
+        private fun ThreadHistoryMatch.mapUiModel(keywordPatterns: List<Pattern>) = SearchLocalItem(
+            threadId = history.id,
+            postId = history.pid,
+            title = buildHighlightContent(history.title, keywordPatterns),
+            forumName = history.forum,
+            content = content.takeUnless { it.isEmpty() }?.let {
+                buildHighlightContent(snippetOf(it, keywordPatterns), keywordPatterns)
+            },
+            isDraft = false,
+            isSeeLz = history.isSeeLz
+        )
+
+        @WorkerThread
+        private fun DraftMatch.mapUiModel(keywordPatterns: List<Pattern>) = SearchLocalItem(
+            threadId = draft.threadId,
+            postId = draft.postId,
+            title = title?.let { buildHighlightContent(it, keywordPatterns) },
+            forumName = null,
+            content = buildHighlightContent(snippetOf(draft.content.orEmpty(), keywordPatterns), keywordPatterns),
+            isDraft = true
+        )
+
         private fun String.toKeywordPatterns(): List<Pattern> {
             return if (isNotEmpty() && isNotBlank()) {
                 split(" ").map {
@@ -111,10 +111,13 @@ class UserProfileRepository @Inject constructor(
         scope.async {
             // Force refresh or cache expired, load latest user profile from network
             if (forceRefresh || checkUserCacheExpired(uid)) {
-                val (data: User, anti: Anti?) = networkDataSource.loadUserProfile(uid)
-                val blockDays = anti?.days_tofree?.takeIf { anti.block_stat == 1 } ?: 0
-                userProfileDao.upsert(profile = mapToEntity(data, blockDays))
+                val response = networkDataSource.loadUserProfile(uid, forceRefresh)
+                saveUserProfile(response.value)
                 localDataSource.purgeByUid(uid)
+                // Profile was served stale from the response cache, observers get the revalidated one
+                scope.launch {
+                    response.awaitRevalidated()?.let { saveUserProfile(it) }
+                }
             } else if (recordHistory) {
                 userProfileDao.updateLastVisit(uid, timestamp = System.currentTimeMillis())
             }
@@ -123,6 +126,12 @@ class UserProfileRepository @Inject constructor(
         }.await()
     }
 
+    private suspend fun saveUserProfile(profile: Pair<User, Anti?>) {
+        val (data: User, anti: Anti?) = profile
+        val blockDays = anti?.days_tofree?.takeIf { anti.block_stat == 1 } ?: 0
+        userProfileDao.upsert(profile = mapToEntity(data, blockDays))
+    }
+
     suspend fun requestFollowUser(profile: UserProfile): FollowBean.Info {
         val result = networkDataSource.requestFollowUser(portrait = profile.portrait, tbs = requireTBS())
         userProfileDao.updateFollowState(uid = profile.uid, following = true, fans = profile.fans + 1)
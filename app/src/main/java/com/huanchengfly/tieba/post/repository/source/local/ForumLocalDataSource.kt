@@ -0,0 +1,136 @@
+package com.huanchengfly.tieba.post.repository.source.local
+
+import android.content.Context
+import android.util.Log
+import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
+import com.huanchengfly.tieba.post.api.models.protos.frsPage.FrsPageResponseData
+import com.huanchengfly.tieba.post.api.models.protos.localCache.ThreadDelta
+import com.huanchengfly.tieba.post.ui.models.Like
+import com.huanchengfly.tieba.post.utils.ProtobufCacheStore
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val CACHE_FILE_NAME = "Forum.cache"
+
+/**
+ * Drop expired pages on startup once the cache holds more pages than this
+ * */
+private const val MAX_PAGES = 200
+
+private const val TAG = "ForumLocalDataSource"
+
+/**
+ * Disk cache of forum pages, see [com.huanchengfly.tieba.post.repository.ForumRepository].
+ *
+ * Expired pages are kept until the cache grows beyond [MAX_PAGES], they're still useful when the
+ * network is unavailable.
+ * */
+@Singleton
+class ForumLocalDataSource @Inject constructor(@ApplicationContext context: Context) {
+
+    private val store = ProtobufCacheStore(
+        file = File(context.cacheDir, CACHE_FILE_NAME),
+        compactionScope = AppBackgroundScope
+    )
+
+    init {
+        AppBackgroundScope.launch {
+            runCatching {
+                if (store.keys().size > MAX_PAGES) store.removeExpired()
+            }
+        }
+    }
+
+    /**
+     * @param includeExpired return expired page as well, e.g. network is unavailable
+     *
+     * @return cached page, **null** if not exists or expired
+     * */
+    suspend fun loadPage(
+        forumName: String,
+        sortType: Int,
+        goodClassifyId: Int?,
+        page: Int,
+        includeExpired: Boolean = false
+    ): FrsPageResponseData? = withContext(Dispatchers.IO) {
+        val cacheKey = pageCacheKey(forumName, sortType, goodClassifyId, page)
+        try {
+            store.get(cacheKey, FrsPageResponseData.ADAPTER, FrsPageDelta, includeExpired)
+        } catch (e: Throwable) {
+            Log.e(TAG, "onLoadPage: $cacheKey", e)
+            null
+        }
+    }
+
+    suspend fun savePage(
+        forumName: String,
+        sortType: Int,
+        goodClassifyId: Int?,
+        page: Int,
+        data: FrsPageResponseData
+    ) = withContext(Dispatchers.IO) {
+        val cacheKey = pageCacheKey(forumName, sortType, goodClassifyId, page)
+        runCatching {
+            // Users are merged into threads already
+            store.put(cacheKey, FrsPageResponseData.ADAPTER, data.copy(user_list = emptyList()), PAGE_EXPIRE_MILL)
+        }
+        .isSuccess
+    }
+
+    /**
+     * Patch like status of the thread on all cached pages of [forumName].
+     *
+     * @return number of patched pages
+     * */
+    suspend fun updateThreadLike(forumName: String, threadId: Long, like: Like): Int = withContext(Dispatchers.IO) {
+        val prefix = forumCacheKeyPrefix(forumName)
+        try {
+            val cachedPages = store.keys().filter { it.startsWith(prefix) }
+            store.appendDelta(cachedPages, ThreadDelta.ADAPTER, like.toDelta(threadId))
+        } catch (e: Throwable) {
+            Log.e(TAG, "onUpdateThreadLike", e)
+            purge(forumName)
+            0
+        }
+    }
+
+    /**
+     * Delete cached pages of [forumName]. Pages of a single list only when [sortType] is set.
+     * */
+    suspend fun purge(forumName: String, sortType: Int? = null, goodClassifyId: Int? = null) = withContext(Dispatchers.IO) {
+        val prefix = if (sortType != null) {
+            listCacheKeyPrefix(forumName, sortType, goodClassifyId)
+        } else {
+            forumCacheKeyPrefix(forumName)
+        }
+        runCatching { store.removeIf { it.startsWith(prefix) } }.getOrDefault(0)
+    }
+
+    // Concat forum name and list type: 贴吧名/0/-1/2, 贴吧名/-1/0/1 ...
+    private fun pageCacheKey(forumName: String, sortType: Int, goodClassifyId: Int?, page: Int): String {
+        require(page > 0) { "Illegal page number: $page" }
+        return "${listCacheKeyPrefix(forumName, sortType, goodClassifyId)}$page"
+    }
+
+    private fun listCacheKeyPrefix(forumName: String, sortType: Int, goodClassifyId: Int?): String {
+        return "${forumCacheKeyPrefix(forumName)}$sortType/${goodClassifyId ?: -1}/"
+    }
+
+    private fun forumCacheKeyPrefix(forumName: String): String = "$forumName/"
+
+    companion object {
+        /**
+         * Pages expire after this duration, shared with the memory tier of ForumRepository
+         * */
+        const val PAGE_EXPIRE_MILL = 0x927C0L // 10 minutes
+    }
+}
+
+private val FrsPageDelta = ProtobufCacheStore.Delta<FrsPageResponseData, ThreadDelta>(ThreadDelta.ADAPTER) { data, delta ->
+    data.copy(thread_list = data.thread_list.map { it.applyDelta(delta) })
+}
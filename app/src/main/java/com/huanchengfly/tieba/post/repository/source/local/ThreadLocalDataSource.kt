@@ -0,0 +1,150 @@
+package com.huanchengfly.tieba.post.repository.source.local
+
+import android.util.Log
+import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponseData
+import com.huanchengfly.tieba.post.models.database.ThreadSnapshot
+import com.huanchengfly.tieba.post.models.database.dao.ThreadSnapshotDao
+import com.huanchengfly.tieba.post.models.database.dao.TransactionRunner
+import com.huanchengfly.tieba.post.ui.page.thread.ThreadSortType
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+private const val TAG = "ThreadLocalDataSource"
+
+/**
+ * Total size of all snapshots, least recently read threads are dropped beyond this
+ * */
+private const val MAX_SIZE = 32L * 1024 * 1024 // 32 MiB
+
+/**
+ * Pages larger than this are not saved, a row must fit in the CursorWindow
+ * */
+private const val MAX_PAGE_SIZE = 1024 * 1024 // 1 MiB
+
+/**
+ * Offline snapshots of thread pages, see [com.huanchengfly.tieba.post.repository.PbPageRepository].
+ *
+ * Pages are saved as normalized [PbPageResponseData] by thread, see lz mode, sort type and page
+ * number. Snapshots of hot sorting are never saved as the order changes all the time.
+ * */
+@Singleton
+class ThreadLocalDataSource @Inject constructor(
+    private val snapshotDao: ThreadSnapshotDao,
+    private val transactionRunner: TransactionRunner
+) {
+
+    /**
+     * Load the snapshot of a page, it's resolved by [page] number first, then by [postId].
+     *
+     * @param uid user id of current account, 0 if not logged in
+     * @param page page number, 0 for the first page of [sortType]
+     * @param postId post id to locate the page, 0 if not jumping to a post
+     *
+     * @return snapshot of the page, **null** if not exists
+     * */
+    suspend fun loadPage(
+        uid: Long,
+        threadId: Long,
+        page: Int,
+        postId: Long,
+        seeLz: Boolean,
+        sortType: Int
+    ): PbPageResponseData? = withContext(Dispatchers.IO) {
+        if (sortType == ThreadSortType.BY_HOT) return@withContext null
+        try {
+            val snapshot = when {
+                page > 0 -> snapshotDao.getByPage(uid, threadId, seeLz, sortType, page)
+
+                postId > 0 -> snapshotDao.getByPostId(uid, threadId, seeLz, sortType, postId)
+
+                sortType == ThreadSortType.BY_DESC -> snapshotDao.getLastPage(uid, threadId, seeLz, sortType)
+
+                else -> snapshotDao.getByPage(uid, threadId, seeLz, sortType, page = 1)
+            } ?: return@withContext null
+
+            val data = PbPageResponseData.ADAPTER.decode(snapshot.data)
+            // The last snapshot is not the first page of DESC sorting if new pages were not loaded
+            if (page <= 0 && postId <= 0 && sortType == ThreadSortType.BY_DESC &&
+                snapshot.page != data.page?.total_page) {
+                return@withContext null
+            }
+            snapshotDao.touch(threadId, System.currentTimeMillis())
+            data
+        } catch (e: Throwable) {
+            Log.e(TAG, "onLoadPage: $threadId, page $page, post $postId", e)
+            null
+        }
+    }
+
+    /**
+     * Save a page loaded from network.
+     *
+     * Compares the [ThreadInfo.pids][com.huanchengfly.tieba.post.api.models.protos.ThreadInfo.pids]
+     * with the old snapshot of this page, other pages are dropped if posts were added or removed
+     * as they're likely shifted.
+     *
+     * @param data normalized page data, users are merged into posts already
+     * */
+    suspend fun savePage(
+        uid: Long,
+        threadId: Long,
+        seeLz: Boolean,
+        sortType: Int,
+        data: PbPageResponseData
+    ): Boolean = withContext(Dispatchers.IO) {
+        val page = data.page?.current_page ?: 0
+        if (sortType == ThreadSortType.BY_HOT || page <= 0 || data.post_list.isEmpty()) {
+            return@withContext false
+        }
+
+        try {
+            val encoded = PbPageResponseData.ADAPTER.encode(data.copy(user_list = emptyList()))
+            if (encoded.size > MAX_PAGE_SIZE) return@withContext false
+
+            val pids = data.thread?.pids.orEmpty()
+            val snapshot = ThreadSnapshot(
+                uid = uid,
+                threadId = threadId,
+                seeLz = seeLz,
+                sortType = sortType,
+                page = page,
+                minPostId = data.post_list.minOf { it.id },
+                maxPostId = data.post_list.maxOf { it.id },
+                pids = pids,
+                data = encoded,
+                lastRead = System.currentTimeMillis()
+            )
+            transactionRunner {
+                val old = snapshotDao.getByPage(uid, threadId, seeLz, sortType, page)
+                if (old != null && old.pids != pids) {
+                    snapshotDao.deleteOtherPages(uid, threadId, seeLz, sortType, page)
+                }
+                snapshotDao.upsert(snapshot)
+                snapshotDao.touch(threadId, snapshot.lastRead)
+                trimToSize(MAX_SIZE)
+            }
+            true
+        } catch (e: Throwable) {
+            Log.e(TAG, "onSavePage: $threadId, page $page", e)
+            false
+        }
+    }
+
+    /**
+     * Delete all snapshots of a thread, e.g. thread was deleted.
+     * */
+    suspend fun purge(threadId: Long): Int = withContext(Dispatchers.IO) {
+        runCatching { snapshotDao.deleteByThreadId(threadId) }.getOrDefault(0)
+    }
+
+    /**
+     * Delete least recently read threads until the total size is within [maxSize].
+     * */
+    private suspend fun trimToSize(maxSize: Long) {
+        while (snapshotDao.totalSize() > maxSize) {
+            if (snapshotDao.deleteLeastRecentlyRead() == 0) break
+        }
+    }
+}
@@ -2,60 +2,66 @@ package com.huanchengfly.tieba.post.repository.source.local
 
 import android.content.Context
 import androidx.collection.MutableLongSet
+import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
 import com.huanchengfly.tieba.post.api.models.protos.PostInfoList
-import com.huanchengfly.tieba.post.utils.FileUtil.deleteQuietly
-import com.huanchengfly.tieba.post.utils.FileUtil.isCacheExpired
-import com.huanchengfly.tieba.post.utils.ProtobufCacheUtil.decodeListCache
-import com.huanchengfly.tieba.post.utils.ProtobufCacheUtil.encodeListCache
+import com.huanchengfly.tieba.post.utils.ProtobufCacheStore
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.sync.Mutex
-import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
 import java.io.File
 import javax.inject.Inject
 import javax.inject.Singleton
 
-private const val CACHE_DIR_NAME = "User"
+/**
+ * Legacy cache directory, one file per cache entry
+ * */
+private const val LEGACY_CACHE_DIR_NAME = "User"
+
+private const val CACHE_FILE_NAME = "User.cache"
 
 private const val THREAD_POST_EXPIRE_MILL = 0x36EE80 // 1 hour
 
 @Singleton
 class UserProfileLocalDataSource @Inject constructor(@ApplicationContext context: Context) {
 
-    private val cacheDir = File(context.cacheDir, CACHE_DIR_NAME)
+    private val store = ProtobufCacheStore(
+        file = File(context.cacheDir, CACHE_FILE_NAME),
+        compactionScope = AppBackgroundScope
+    )
 
-    private val mutex = Mutex()
+    init {
+        AppBackgroundScope.launch {
+            File(context.cacheDir, LEGACY_CACHE_DIR_NAME).deleteRecursively()
+        }
+    }
 
     /**
-     * Load user threads or posts from cache file, **null** if not exists or expired.
+     * Load user threads or posts from cache, **null** if not exists or expired.
      *
      * @return list of [PostInfoList] (Thread and Post share the same network model)
      * */
     suspend fun loadUserThreadPost(uid: Long, page: Int, isThread: Boolean): List<PostInfoList>? {
         return withContext(Dispatchers.IO) {
-            val cacheFile = userThreadPostCacheFile(uid, page, isThread)
-            // only first page will expire
-            val postCacheExpireMill = if (page == 1) THREAD_POST_EXPIRE_MILL.toLong() else null
-
-            mutex.withLock {
-                runCatching {
-                    PostInfoList.ADAPTER.decodeListCache(cacheFile, postCacheExpireMill)
-                }
-                .getOrNull()
+            val cacheKey = userThreadPostCacheKey(uid, page, isThread)
+            runCatching {
+                // only first page will expire
+                store.getList(cacheKey, PostInfoList.ADAPTER, includeExpired = page != 1)
             }
+            .getOrNull()
         }
     }
 
     /**
-     * Save user threads or posts to cache file.
+     * Save user threads or posts to cache.
      * */
     suspend fun saveUserThreadPost(uid: Long, page: Int, data: List<PostInfoList>, isThread: Boolean): Boolean {
         return withContext(Dispatchers.IO) {
-            val cacheFile = userThreadPostCacheFile(uid, page, isThread)
-            mutex.withLock {
-                runCatching { PostInfoList.ADAPTER.encodeListCache(cacheFile, data) }.isSuccess
+            val cacheKey = userThreadPostCacheKey(uid, page, isThread)
+            runCatching {
+                store.putList(cacheKey, PostInfoList.ADAPTER, data, THREAD_POST_EXPIRE_MILL.toLong())
             }
+            .isSuccess
         }
     }
 
@@ -63,49 +69,38 @@ class UserProfileLocalDataSource @Inject constructor(@ApplicationContext context
      * Remove all cached post and thread of this user
      * */
     suspend fun purgeByUid(uid: Long): Int = withContext(Dispatchers.IO) {
-        mutex.withLock {
-            deleteWithPrefixSafe(cacheDir, prefix = "${uid}_")
-        }
+        val prefix = "${uid}_"
+        runCatching { store.removeIf { it.startsWith(prefix) } }.getOrDefault(0)
     }
 
     suspend fun purgeUserThreadPost(uid: Long, isThread: Boolean) = withContext(Dispatchers.IO) {
-        mutex.withLock {
-            val prefix = if (isThread) "${uid}_t_" else "${uid}_p_"
-            deleteWithPrefixSafe(cacheDir, prefix)
-        }
+        val prefix = if (isThread) "${uid}_t_" else "${uid}_p_"
+        runCatching { store.removeIf { it.startsWith(prefix) } }.getOrDefault(0)
     }
 
-    private fun userThreadPostCacheFile(uid: Long, page: Int, isThread: Boolean): File {
+    private fun userThreadPostCacheKey(uid: Long, page: Int, isThread: Boolean): String {
         require(uid > 0) { "Invalid user ID: $uid." }
         require(page >= 0) { "Invalid page number: $page" }
         val prefix = if (isThread) "${uid}_t_" else "${uid}_p_"
-        return File(cacheDir, prefix + page)
+        return prefix + page
     }
 
-    private val File.uid: Long
-        get() {
-            val index = name.indexOf('_')
-            return if (index > 0) name.substring(0, index).toLong() else name.toLong()
-        }
+    private val String.uid: Long
+        get() = substringBefore('_').toLong()
 
+    /**
+     * Remove all cached pages of users that have any expired page, then compact the cache.
+     * */
     suspend fun cleanUpExpired(): Int = withContext(Dispatchers.IO) {
-        mutex.withLock {
-            runCatching {
-                val caches = cacheDir.listFiles() ?: return@runCatching 0
-                var deleted = 0
-                val expiredUsers = MutableLongSet()
-                val expireMill = THREAD_POST_EXPIRE_MILL.toLong()
-                caches.forEach {
-                    val uid = it.uid
-                    if (uid in expiredUsers || it.length() <= 0 || it.isCacheExpired(expireMill)) {
-                        expiredUsers.add(uid)
-                        it.deleteQuietly()
-                        deleted++
-                    }
-                }
-                deleted
+        runCatching {
+            val expiredUsers = MutableLongSet()
+            store.keys().forEach {
+                if (store.isExpired(it)) expiredUsers.add(it.uid)
             }
-            .getOrNull() ?: 0
+            if (expiredUsers.isEmpty()) return@runCatching 0
+
+            store.removeIf { it.uid in expiredUsers }.also { store.compact() }
         }
+        .getOrNull() ?: 0
     }
-}
\ No newline at end of file
+}
@@ -20,8 +20,9 @@ import kotlinx.coroutines.withContext
 object ExploreNetworkDataSource {
 
     suspend fun loadHotThread(tabCode: String = HOT_THREAD_TAB_ALL): HotThreadListResponseData {
-        return TiebaApi.getInstance().hotThreadListFlow(tabCode)
-            .firstOrThrow()
+        return RequestCoalescer.run("hotThreadList", tabCode) {
+            TiebaApi.getInstance().hotThreadListFlow(tabCode).firstOrThrow()
+        }
             .run {
                 data_ ?: throw TiebaException(message = this.error?.error_msg)
             }
@@ -9,10 +9,12 @@ import com.huanchengfly.tieba.post.api.models.protos.User
 import com.huanchengfly.tieba.post.api.models.protos.forumRuleDetail.ForumRuleDetailResponseData
 import com.huanchengfly.tieba.post.api.models.protos.frsPage.FrsPageResponseData
 import com.huanchengfly.tieba.post.api.models.protos.threadList.ThreadListResponseData
+import com.huanchengfly.tieba.post.api.retrofit.RetrofitTiebaApi
 import com.huanchengfly.tieba.post.api.retrofit.exception.NoConnectivityException
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaApiException
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
 import com.huanchengfly.tieba.post.api.retrofit.interceptors.ConnectivityInterceptor
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCachePolicy
 import com.huanchengfly.tieba.post.arch.firstOrThrow
 import com.huanchengfly.tieba.post.repository.source.network.ExploreNetworkDataSource.commonResponse
 import kotlinx.coroutines.Dispatchers
@@ -26,12 +28,21 @@ object ForumNetworkDataSource {
         it.forumInfo != null    // 去他妈的跨吧广告帖
     }
 
+    /**
+     * Drop cached pages of [forumName] after a mutation, so the next load won't show outdated data.
+     * */
+    suspend fun evictPageCache(forumName: String) = withContext(Dispatchers.IO) {
+        RetrofitTiebaApi.protobufCache.evict(ProtobufCachePolicy.FRS_PAGE.path, scope = forumName)
+    }
+
     @Throws(NoConnectivityException::class, TiebaException::class)
     suspend fun loadForumDetail(forumId: Long): RecommendForumInfo {
-        return TiebaApi.getInstance()
-            .getForumDetailFlow(forumId)
-            .catch { throw ConnectivityInterceptor.wrapException(it) }
-            .firstOrThrow()
+        return RequestCoalescer.run("forumDetail", forumId) {
+            TiebaApi.getInstance()
+                .getForumDetailFlow(forumId)
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstOrThrow()
+        }
             .run {
                 data_?.forum_info ?: throw TiebaApiException(this.error.commonResponse)
             }
@@ -43,21 +54,27 @@ object ForumNetworkDataSource {
         page: Int,
         loadType: Int,
         sortType: Int,
-        goodClassifyId: Int?
-    ): FrsPageResponseData {
-        val response = TiebaApi.getInstance()
-            .frsPage(forumName, page, loadType, sortType, goodClassifyId)
-            .catch { throw ConnectivityInterceptor.wrapException(it) }
-            .firstOrThrow()
-        if (response.data_?.forum == null) throw TiebaApiException(response.error.commonResponse)
+        goodClassifyId: Int?,
+        forceRefresh: Boolean = false
+    ): Revalidating<FrsPageResponseData> {
+        val response = RequestCoalescer.run("frsPage", forumName, page, loadType, sortType, goodClassifyId, forceRefresh) {
+            TiebaApi.getInstance()
+                .frsPage(forumName, page, loadType, sortType, goodClassifyId, forceRefresh)
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstWithRevalidation()
+        }
 
-        return withContext(Dispatchers.Default) {
-            response.data_.thread_list
-                .filter(threadFilter)
-                .addUsers(response.data_.user_list)
-                .let { new ->
-                    response.data_.copy(thread_list = new)
-                }
+        return response.map {
+            if (it.data_?.forum == null) throw TiebaApiException(it.error.commonResponse)
+
+            withContext(Dispatchers.Default) {
+                it.data_.thread_list
+                    .filter(threadFilter)
+                    .addUsers(it.data_.user_list)
+                    .let { new ->
+                        it.data_.copy(thread_list = new)
+                    }
+            }
         }
     }
 
@@ -70,10 +87,12 @@ object ForumNetworkDataSource {
         threadIds: List<Long>,
     ): ThreadListResponseData {
         val threadId = threadIds.joinToString(separator = ",") { "$it" }
-        val response = TiebaApi.getInstance()
-            .threadList(forumId, forumName, page, sortType, threadId)
-            .catch { throw ConnectivityInterceptor.wrapException(it) }
-            .firstOrThrow()
+        val response = RequestCoalescer.run("threadList", forumId, page, sortType, threadId) {
+            TiebaApi.getInstance()
+                .threadList(forumId, forumName, page, sortType, threadId)
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstOrThrow()
+        }
         if (response.data_?.thread_list == null) throw TiebaApiException(response.error.commonResponse)
 
         return withContext(Dispatchers.Default) {
@@ -88,10 +107,12 @@ object ForumNetworkDataSource {
 
     @Throws(NoConnectivityException::class, TiebaException::class)
     suspend fun loadForumRule(forumId: Long): ForumRuleDetailResponseData {
-        return TiebaApi.getInstance()
-            .forumRuleDetailFlow(forumId)
-            .catch { throw ConnectivityInterceptor.wrapException(it) }
-            .firstOrThrow()
+        return RequestCoalescer.run("forumRule", forumId) {
+            TiebaApi.getInstance()
+                .forumRuleDetailFlow(forumId)
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstOrThrow()
+        }
             .run {
                 data_ ?: throw TiebaApiException(commonResponse = error.commonResponse)
             }
@@ -27,10 +27,12 @@ class HomeNetworkDataSourceImpl @Inject constructor() : HomeNetworkDataSource {
 
     @Throws(NoConnectivityException::class, TiebaException::class)
     override suspend fun getLikedForums(): List<LikeForum> {
-        return TiebaApi.getInstance()
-            .allForumGuideFlow()
-            .catch { throw ConnectivityInterceptor.wrapException(it) }
-            .firstOrThrow()
+        return RequestCoalescer.run("forumGuide") {
+            TiebaApi.getInstance()
+                .allForumGuideFlow()
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstOrThrow()
+        }
             .run {
                 if (errorCode != 0) throw TiebaApiException(CommonResponse(errorCode, errorMsg))
                 this.likeForum
@@ -39,9 +41,11 @@ class HomeNetworkDataSourceImpl @Inject constructor() : HomeNetworkDataSource {
 
     @Throws(NoConnectivityException::class, TiebaException::class)
     override suspend fun fetchNewMessage(): MessageBean {
-        return TiebaApi.getInstance().msgFlow()
-            .catch { throw ConnectivityInterceptor.wrapException(it) }
-            .firstOrThrow()
+        return RequestCoalescer.run("msg") {
+            TiebaApi.getInstance().msgFlow()
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstOrThrow()
+        }
             .run {
                 if (errorCode != "0") throw TiebaApiException(commonResponse = this.getError())
                 this.message ?: throw TiebaException("Null message")
@@ -0,0 +1,30 @@
+package com.huanchengfly.tieba.post.repository.source.network
+
+import com.huanchengfly.tieba.post.api.TiebaApi
+import com.huanchengfly.tieba.post.api.models.MessageListBean
+import com.huanchengfly.tieba.post.api.retrofit.exception.NoConnectivityException
+import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ConnectivityInterceptor
+import com.huanchengfly.tieba.post.arch.firstOrThrow
+import com.huanchengfly.tieba.post.ui.page.main.notifications.list.NotificationsType
+import kotlinx.coroutines.flow.catch
+
+/**
+ * Main entry point for accessing notification messages from the network.
+ */
+object NotificationNetworkDataSource {
+
+    @Throws(NoConnectivityException::class, TiebaException::class)
+    suspend fun loadMessages(type: NotificationsType, page: Int): MessageListBean {
+        require(page >= 1) { "Invalid page number: $page." }
+
+        return RequestCoalescer.run("messageList", type, page) {
+            when (type) {
+                NotificationsType.ReplyMe -> TiebaApi.getInstance().replyMeFlow(page)
+                NotificationsType.AtMe -> TiebaApi.getInstance().atMeFlow(page)
+            }
+                .catch { throw ConnectivityInterceptor.wrapException(it) }
+                .firstOrThrow()
+        }
+    }
+}
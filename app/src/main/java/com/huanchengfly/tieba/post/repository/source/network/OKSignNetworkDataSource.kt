@@ -92,6 +92,11 @@ class OKSignNetworkDataSourceImpl @Inject constructor() : OKSignNetworkDataSourc
                     throw TiebaApiException(CommonResponse(errorCode, errorMsg.orEmpty()))
                 }
             }
-            .userInfo ?: throw TiebaException("User info is null")
+            .let {
+                val userInfo = it.userInfo ?: throw TiebaException("User info is null")
+                // Not signed without an error code, report the message of server
+                if (userInfo.isSignIn != 1) throw TiebaException(it.errorMsg?.ifEmpty { null })
+                userInfo
+            }
     }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.huanchengfly.tieba.post.repository.source.network
+
+import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
+import com.huanchengfly.tieba.post.api.ParamSnapshot
+import com.huanchengfly.tieba.post.arch.SingleFlight
+
+/**
+ * Merges identical in-flight read requests of network data sources, e.g. ClipBoardLinkDetector
+ * previews the thread that ThreadPage is loading, NewMessageWorker and HomePage fetch new messages
+ * at the same time.
+ *
+ * Requests are partitioned by [ParamSnapshot.currentVersion], it changes before a switched account
+ * is published, so a request of the new account never joins the one of the previous account.
+ *
+ * @see com.huanchengfly.tieba.post.ui.page.settings.NetworkMetricsPage
+ * */
+val RequestCoalescer = SingleFlight(AppBackgroundScope) { ParamSnapshot.currentVersion }
@@ -0,0 +1,77 @@
+package com.huanchengfly.tieba.post.repository.source.network
+
+import android.util.Log
+import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
+import com.huanchengfly.tieba.post.api.retrofit.exception.NoConnectivityException
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.launch
+
+/**
+ * Response of a network data source that may be served stale by the protobuf response cache.
+ *
+ * @param value the first response
+ * @see com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCacheInterceptor
+ * */
+class Revalidating<T>(val value: T, private val revalidated: suspend () -> T?) {
+
+    /**
+     * Suspends until the revalidation of [value] finished.
+     *
+     * @return revalidated response, **null** if [value] was fresh or the revalidation failed
+     * */
+    suspend fun awaitRevalidated(): T? = revalidated()
+
+    /**
+     * Transform [value] and the revalidated response, failure of the latter one is treated as a
+     * failed revalidation.
+     * */
+    suspend fun <R> map(transform: suspend (T) -> R): Revalidating<R> {
+        return Revalidating(transform(value)) {
+            try {
+                revalidated()?.let { transform(it) }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.w(TAG, "onRevalidated: Drop invalid response: ${e.message}.")
+                null
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "Revalidating"
+
+        fun <T> fresh(value: T): Revalidating<T> = Revalidating(value) { null }
+    }
+}
+
+/**
+ * Collect the first value like [com.huanchengfly.tieba.post.arch.firstOrThrow], the flow is kept
+ * collecting in [scope] for the revalidated response of a stale one.
+ * */
+@Throws(NoConnectivityException::class)
+suspend fun <T> Flow<T>.firstWithRevalidation(scope: CoroutineScope = AppBackgroundScope): Revalidating<T> {
+    val first = CompletableDeferred<T>()
+    val revalidated = CompletableDeferred<T?>()
+    val job = scope.launch {
+        try {
+            collect { if (!first.complete(it)) revalidated.complete(it) }
+        } catch (e: Throwable) {
+            first.completeExceptionally(e)
+        } finally {
+            first.completeExceptionally(NoConnectivityException())
+            revalidated.complete(null)
+        }
+    }
+
+    val value = try {
+        first.await()
+    } catch (e: CancellationException) {
+        job.cancel()
+        throw e
+    }
+    return Revalidating(value) { revalidated.await() }
+}
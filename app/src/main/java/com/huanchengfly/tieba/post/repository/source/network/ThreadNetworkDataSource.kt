@@ -8,9 +8,11 @@ import com.huanchengfly.tieba.post.api.models.protos.SubPost
 import com.huanchengfly.tieba.post.api.models.protos.User
 import com.huanchengfly.tieba.post.api.models.protos.pbFloor.PbFloorResponseData
 import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponseData
+import com.huanchengfly.tieba.post.api.retrofit.RetrofitTiebaApi
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaApiException
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaUnknownException
+import com.huanchengfly.tieba.post.api.retrofit.interceptors.ProtobufCachePolicy
 import com.huanchengfly.tieba.post.arch.firstOrThrow
 import com.huanchengfly.tieba.post.repository.source.network.ExploreNetworkDataSource.commonResponse
 import com.huanchengfly.tieba.post.ui.page.thread.FROM_STORE
@@ -27,6 +29,13 @@ object ThreadNetworkDataSource {
 
     private val ST_TYPES = listOf(ST_TYPE_MENTION, ST_TYPE_STORE_THREAD)
 
+    /**
+     * Drop cached pages of [threadId] after a mutation, so the next load won't show outdated data.
+     * */
+    suspend fun evictPageCache(threadId: Long) = withContext(Dispatchers.IO) {
+        RetrofitTiebaApi.protobufCache.evict(ProtobufCachePolicy.PB_PAGE.path, scope = threadId.toString())
+    }
+
     private suspend fun requestLike(threadId: Long, postId: Long, like: Boolean, objType: Int) {
         require(threadId > 0) { "Illegal Thread ID $threadId" }
         require(postId > 0) { "Illegal Post ID: $postId" }
@@ -40,6 +49,7 @@ object ThreadNetworkDataSource {
         .let {
             if (it.data == null || it.errorCode != "0" ) throw TiebaException(message = it.errorMsg)
         }
+        evictPageCache(threadId)
     }
 
     suspend fun requestLikePost(threadId: Long, postId: Long, like: Boolean) {
@@ -64,8 +74,11 @@ object ThreadNetworkDataSource {
         back: Boolean = false,
         from: String?,
         lastPostId: Long? = null,
-    ): PbPageResponseData {
-        return TiebaApi.getInstance()
+        forceRefresh: Boolean = false,
+    ): Revalidating<PbPageResponseData> = RequestCoalescer.run(
+        "pbPage", threadId, page, postId, forumId, seeLz, sortType, back, from, lastPostId, forceRefresh
+    ) {
+        TiebaApi.getInstance()
             .pbPageFlow(
                 threadId = threadId,
                 page = page,
@@ -76,11 +89,12 @@ object ThreadNetworkDataSource {
                 forumId = forumId,
                 stType = from?.takeIf { ST_TYPES.contains(it) }.orEmpty(),
                 mark = if (from == FROM_STORE) 1 else 0,
-                lastPostId = lastPostId
+                lastPostId = lastPostId,
+                forceRefresh = forceRefresh
             )
-            .firstOrThrow()
-            .run {
-                data_ ?: throw TiebaApiException(commonResponse = this.error.commonResponse)
+            .firstWithRevalidation()
+            .map {
+                it.data_ ?: throw TiebaApiException(commonResponse = it.error.commonResponse)
             }
     }
 
@@ -94,8 +108,9 @@ object ThreadNetworkDataSource {
         back: Boolean = false,
         from: String?,
         lastPostId: Long? = null,
-    ): PbPageResponseData {
-        val data = pbPageRaw(
+        forceRefresh: Boolean = false,
+    ): Revalidating<PbPageResponseData> {
+        val response = pbPageRaw(
             threadId = threadId,
             page = page,
             postId = postId,
@@ -104,9 +119,13 @@ object ThreadNetworkDataSource {
             sortType = sortType,
             back = back,
             from = from,
-            lastPostId = lastPostId
+            lastPostId = lastPostId,
+            forceRefresh = forceRefresh
         )
+        return response.map { fillMissingData(it) }
+    }
 
+    private suspend fun fillMissingData(data: PbPageResponseData): PbPageResponseData {
         if (data.post_list.isEmpty()) {
             throw TiebaApiException(CommonResponse(errorCode = ERROR_POST_NOMORE))
         }
@@ -156,6 +175,7 @@ object ThreadNetworkDataSource {
             .let {
                 if (it.errorCode != 0) throw TiebaApiException(commonResponse = it)
             }
+        evictPageCache(threadId)
     }
 
     suspend fun deletePost(
@@ -175,15 +195,18 @@ object ThreadNetworkDataSource {
             .let {
                 if (it.errorCode != 0) throw TiebaApiException(commonResponse = it)
             }
+        evictPageCache(threadId)
     }
 
     suspend fun pbFloor(threadId: Long, postId: Long, forumId: Long, page: Int = 1, subPostId: Long): PbFloorResponseData {
         require(threadId > 0) { "Illegal Thread ID $threadId" }
         require(page > 0) { "Illegal Page: $page" }
 
-        return TiebaApi.getInstance()
-            .pbFloorFlow(threadId, postId, forumId, page, subPostId)
-            .firstOrThrow()
+        return RequestCoalescer.run("pbFloor", threadId, postId, forumId, page, subPostId) {
+            TiebaApi.getInstance()
+                .pbFloorFlow(threadId, postId, forumId, page, subPostId)
+                .firstOrThrow()
+        }
             .run {
                 if (data_ == null) throw TiebaApiException(commonResponse = this.error.commonResponse)
                 val forum = data_.forum ?: throw TiebaException("Null forum data")
@@ -45,23 +45,27 @@ object UserProfileNetworkDataSource {
         require(uid > 0) { "Invalid user ID: $uid." }
         require(page >= 1) { "Invalid page number: $page." }
 
-        return TiebaApi.getInstance()
-            .userPostFlow(uid, page, isThread)
-            .firstOrThrow()
+        return RequestCoalescer.run("userPost", uid, page, isThread) {
+            TiebaApi.getInstance()
+                .userPostFlow(uid, page, isThread)
+                .firstOrThrow()
+        }
             .run {
                 data_?.post_list ?: throw TiebaApiException(commonResponse = error.commonResponse)
             }
     }
 
-    suspend fun loadUserProfile(uid: Long): Pair<User, Anti?> {
+    suspend fun loadUserProfile(uid: Long, forceRefresh: Boolean = false): Revalidating<Pair<User, Anti?>> {
         require(uid > 0) { "Invalid user ID: $uid." }
 
-        return TiebaApi.getInstance()
-            .userProfileFlow(uid)
-            .firstOrThrow()
-            .run {
-                if (data_?.user == null) throw TiebaException("Null user data")
-                data_.user to data_.anti_stat
+        return RequestCoalescer.run("userProfile", uid, forceRefresh) {
+            TiebaApi.getInstance()
+                .userProfileFlow(uid, forceRefresh)
+                .firstWithRevalidation()
+        }
+            .map {
+                if (it.data_?.user == null) throw TiebaException("Null user data")
+                it.data_.user to it.data_.anti_stat
             }
     }
 
@@ -0,0 +1,283 @@
+package com.huanchengfly.tieba.post.repository.user
+
+import android.os.SystemClock
+import android.util.Log
+import androidx.collection.LongSet
+import androidx.collection.MutableLongList
+import androidx.collection.mutableLongSetOf
+import com.huanchengfly.tieba.post.api.Error.ERROR_SIGN_ALREADY
+import com.huanchengfly.tieba.post.api.Error.ERROR_SIGN_TOO_FAST
+import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaApiException
+import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
+import com.huanchengfly.tieba.post.api.retrofit.exception.getErrorMessage
+import com.huanchengfly.tieba.post.models.database.SignProgress
+import com.huanchengfly.tieba.post.models.database.dao.SignProgressDao
+import com.huanchengfly.tieba.post.repository.source.network.OKSignNetworkDataSource
+import com.huanchengfly.tieba.post.repository.user.OKSignRepository.ProgressListener
+import com.huanchengfly.tieba.post.repository.user.OKSignRepositoryImp.Companion.ForumSignParam
+import com.huanchengfly.tieba.post.utils.TokenBucket
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.net.SocketTimeoutException
+import kotlin.math.ceil
+import kotlin.random.Random
+
+/**
+ * Signs forums with bounded concurrency, requests are throttled by a [TokenBucket].
+ *
+ * Results are handed to a single collector through a bounded channel, workers suspend when
+ * the collector falls behind. Each result is checkpointed into [SignProgressDao] so a killed
+ * run can be resumed, see [loadCheckpoint].
+ *
+ * @param config concurrency and rate of signing
+ * @param clock monotonic clock in milliseconds
+ * */
+class OKSignEngine(
+    private val networkDataSource: OKSignNetworkDataSource,
+    private val progressDao: SignProgressDao,
+    private val config: Config,
+    private val clock: () -> Long = SystemClock::elapsedRealtime,
+    private val random: Random = Random.Default
+) {
+
+    /**
+     * @param concurrency max in-flight sign requests
+     * @param permitsPerSecond request rate shared by all workers
+     * @param burst max requests can be sent at once
+     * @param jitterMillis random delay added to the interval of requests, zero to disable. Once
+     *   enabled, each request is scheduled one interval of [permitsPerSecond] plus a jitter after
+     *   the previous one, instead of the token bucket
+     * @param maxAttempts max attempts of a forum on retryable errors
+     * */
+    class Config(
+        val concurrency: Int,
+        val permitsPerSecond: Double,
+        val burst: Int,
+        val jitterMillis: Long = 0,
+        val maxAttempts: Int = 3
+    ) {
+        companion object {
+            // One request every 2s as before, concurrency only overlaps slow responses
+            val Default = Config(concurrency = 3, permitsPerSecond = 0.5, burst = 1)
+
+            // One by one, 3.5s ~ 8s apart
+            val Slow = Config(concurrency = 1, permitsPerSecond = 1 / 3.5, burst = 1, jitterMillis = 4500)
+        }
+    }
+
+    class Result(val succeed: LongSet, val metrics: OKSignMetrics)
+
+    private class ForumResult(
+        val forum: ForumSignParam,
+        val signed: Boolean,
+        val signBonusPoint: Int?,
+        val error: String?,
+        val latency: Long,
+        val attempts: Int
+    )
+
+    private val rateLimiter = TokenBucket(config.permitsPerSecond, config.burst, clock)
+
+    private val scheduleLock = Mutex()
+
+    /**
+     * Earliest time of the next request when jitter is enabled
+     * */
+    private var nextRequestAt = Long.MIN_VALUE
+
+    /**
+     * @return ID of forums signed or failed in an unfinished run of [signDay]
+     * */
+    suspend fun loadCheckpoint(uid: Long, signDay: Long): LongSet {
+        progressDao.deleteBefore(time = signDay)
+        val checkpoint = mutableLongSetOf()
+        progressDao.getProgress(uid, since = signDay).forEach { checkpoint.add(it.forumId) }
+        return checkpoint
+    }
+
+    /**
+     * Sign [forums] and checkpoint the results.
+     *
+     * Non-Tieba errors abort the run after retries, e.g. network unavailable.
+     *
+     * @param initialProgress progress of the first forum, reported to [listener]
+     * @param signDay start time of the signing day
+     * */
+    suspend fun sign(
+        uid: Long,
+        signDay: Long,
+        forums: List<ForumSignParam>,
+        tbs: String,
+        initialProgress: Int,
+        listener: ProgressListener?
+    ): Result = coroutineScope {
+        val start = clock()
+        val metrics = OKSignMetrics.Recorder(total = forums.size)
+        val succeed = mutableLongSetOf()
+        if (forums.isEmpty()) return@coroutineScope Result(succeed, metrics.build(duration = 0))
+
+        val pending = Channel<ForumSignParam>(Channel.UNLIMITED)
+        forums.forEach { pending.trySend(it) }
+        pending.close()
+
+        val results = Channel<ForumResult>(capacity = config.concurrency)
+        val workers = List(config.concurrency.coerceAtMost(forums.size)) {
+            launch {
+                for (forum in pending) results.send(signForum(forum, tbs))
+            }
+        }
+        launch {
+            workers.joinAll()
+            results.close()
+        }
+
+        var progress = initialProgress
+        for (result in results) {
+            val forumName = result.forum.name
+            val forumId = result.forum.forumId
+            if (result.signed) {
+                succeed.add(forumId)
+                listener?.onSigned(progress, forumName, result.signBonusPoint)
+            } else {
+                Log.w(TAG, "onSign: Sign $forumName failed: ${result.error}")
+                listener?.onFailed(progress, forumName, result.error.orEmpty())
+            }
+            progress++
+            val state = if (result.signed) SignProgress.STATE_SIGNED else SignProgress.STATE_FAILED
+            progressDao.upsert(SignProgress(uid, forumId, state, time = signDay))
+            metrics.record(result.signed, result.latency, retries = result.attempts - 1)
+        }
+        Result(succeed, metrics.build(duration = clock() - start))
+    }
+
+    private suspend fun signForum(forum: ForumSignParam, tbs: String): ForumResult {
+        var attempt = 1
+        while (true) {
+            awaitTurn()
+
+            val start = clock()
+            try {
+                val result = networkDataSource.requestSign(forum.forumId, forum.name, tbs)
+                return ForumResult(forum, true, result.signBonusPoint, null, clock() - start, attempt)
+            } catch (e: Throwable) {
+                val latency = clock() - start
+                if (e is TiebaApiException && e.code == ERROR_SIGN_ALREADY) {
+                    return ForumResult(forum, true, null, null, latency, attempt)
+                }
+                if (!e.isRetryable() || attempt >= config.maxAttempts) {
+                    if (e is TiebaException) {
+                        return ForumResult(forum, false, null, e.getErrorMessage(), latency, attempt)
+                    }
+                    throw e
+                }
+                val backoff = backoffMillis(e, attempt)
+                Log.w(TAG, "onSignForum: Retry ${forum.name} in ${backoff}ms: ${e.getErrorMessage()}")
+                delay(backoff)
+                attempt++
+            }
+        }
+    }
+
+    /**
+     * Suspends until the next request could be sent.
+     * */
+    private suspend fun awaitTurn() {
+        if (config.jitterMillis <= 0) return rateLimiter.acquire()
+
+        // Jitter on top of the interval, the minimum gap is kept whatever the jitter is
+        scheduleLock.withLock {
+            val wait = nextRequestAt - clock()
+            if (wait > 0) delay(wait)
+            val interval = (1000 / config.permitsPerSecond).toLong()
+            nextRequestAt = clock() + interval + random.nextLong(config.jitterMillis + 1)
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter, between half and full of the exponential delay.
+     * */
+    private fun backoffMillis(e: Throwable, attempt: Int): Long {
+        val base = if (e is TiebaApiException && e.code == ERROR_SIGN_TOO_FAST) TOO_FAST_BACKOFF else BASE_BACKOFF
+        val exponential = base shl (attempt - 1)
+        return exponential / 2 + random.nextLong(exponential / 2 + 1)
+    }
+
+    companion object {
+        private const val TAG = "OKSignEngine"
+
+        private const val BASE_BACKOFF = 1000L
+
+        private const val TOO_FAST_BACKOFF = 4000L
+
+        private fun Throwable.isRetryable(): Boolean = when (this) {
+            is TiebaApiException -> code == ERROR_SIGN_TOO_FAST
+
+            is SocketTimeoutException -> true
+
+            else -> false
+        }
+    }
+}
+
+/**
+ * Metrics of a signing run.
+ *
+ * @param total number of forums to sign
+ * @param retries number of retried requests
+ * @param duration duration of the run in milliseconds
+ * */
+class OKSignMetrics private constructor(
+    val total: Int,
+    val succeed: Int,
+    val failed: Int,
+    val retries: Int,
+    val duration: Long,
+    private val sortedLatencies: LongArray
+) {
+    /**
+     * Signed forums per second
+     * */
+    val throughput: Float
+        get() = if (duration > 0) (succeed + failed) * 1000f / duration else 0f
+
+    /**
+     * @param percentile 0 ~ 100
+     *
+     * @return latency of the final request to a forum at [percentile], in milliseconds
+     * */
+    fun latency(percentile: Int): Long {
+        require(percentile in 0..100)
+        if (sortedLatencies.isEmpty()) return 0
+        val rank = ceil(percentile / 100.0 * sortedLatencies.size).toInt().coerceIn(1, sortedLatencies.size)
+        return sortedLatencies[rank - 1]
+    }
+
+    override fun toString(): String {
+        return "OKSignMetrics(succeed=$succeed/$total, failed=$failed, retries=$retries, " +
+                "duration=${duration}ms, throughput=${"%.2f".format(throughput)}/s, " +
+                "p50=${latency(50)}ms, p90=${latency(90)}ms, p99=${latency(99)}ms)"
+    }
+
+    internal class Recorder(private val total: Int) {
+        private var succeed = 0
+        private var failed = 0
+        private var retries = 0
+        private val latencies = MutableLongList(total)
+
+        fun record(signed: Boolean, latency: Long, retries: Int) {
+            if (signed) succeed++ else failed++
+            this.retries += retries
+            latencies.add(latency)
+        }
+
+        fun build(duration: Long): OKSignMetrics {
+            val sorted = LongArray(latencies.size) { latencies[it] }.apply { sort() }
+            return OKSignMetrics(total, succeed, failed, retries, duration, sorted)
+        }
+    }
+}
@@ -2,16 +2,15 @@ package com.huanchengfly.tieba.post.repository.user
 
 import android.content.Context
 import android.util.Log
-import androidx.collection.LongSet
 import androidx.collection.mutableLongSetOf
 import androidx.work.WorkInfo
 import com.huanchengfly.tieba.post.api.models.ForumGuideBean
 import com.huanchengfly.tieba.post.api.models.MSignBean
-import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
-import com.huanchengfly.tieba.post.api.retrofit.exception.getErrorMessage
 import com.huanchengfly.tieba.post.arch.shareInBackground
 import com.huanchengfly.tieba.post.di.ApplicationScope
 import com.huanchengfly.tieba.post.models.database.Account
+import com.huanchengfly.tieba.post.models.database.SignProgress
+import com.huanchengfly.tieba.post.models.database.dao.SignProgressDao
 import com.huanchengfly.tieba.post.repository.HomeRepository
 import com.huanchengfly.tieba.post.repository.source.network.HomeNetworkDataSource
 import com.huanchengfly.tieba.post.repository.source.network.OKSignNetworkDataSource
@@ -25,14 +24,12 @@ import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.currentCoroutineContext
-import kotlinx.coroutines.delay
 import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.flow.SharedFlow
 import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.distinctUntilChanged
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.launch
-import java.util.concurrent.ThreadLocalRandom
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.abs
@@ -66,6 +63,7 @@ class OKSignRepositoryImp @Inject constructor(
     private val settingsRepo: SettingsRepository,
     private val networkDataSource: OKSignNetworkDataSource,
     private val homeDataSource: HomeNetworkDataSource,
+    private val progressDao: SignProgressDao,
 ): OKSignRepository {
 
     // Lazy init for instrumented test
@@ -94,7 +92,13 @@ class OKSignRepositoryImp @Inject constructor(
     /**
      * 官方一键签到（实验性）
      * */
-    suspend fun officialSign(forums: List<ForumSignParam>, tbs: String, listener: ProgressListener?): List<MSignBean.Info>? {
+    suspend fun officialSign(
+        uid: Long,
+        signDay: Long,
+        forums: List<ForumSignParam>,
+        tbs: String,
+        listener: ProgressListener?
+    ): List<MSignBean.Info>? {
         if (forums.isEmpty()) return emptyList()
 
         val mSignInfo = try {
@@ -105,57 +109,19 @@ class OKSignRepositoryImp @Inject constructor(
             return null
         }
 
-        val mSignFailed = mutableListOf<ForumSignParam>()
         var forumName: String
         mSignInfo.forEachIndexed { i, info ->
             forumName = info.forumName
             if (info.signed == "1") {
                 listener?.onSigned(i, forumName, null)
+                progressDao.upsert(SignProgress(uid, info.forumId, SignProgress.STATE_SIGNED, time = signDay))
             } else {
-                mSignFailed.add(forums.first { forum -> forum.forumId == info.forumId })
                 listener?.onFailed(i, forumName, info.error.usermsg)
             }
-            delay(200)
         }
         return mSignInfo
     }
 
-    /**
-     * 普通签到
-     *
-     * @return 签到成功吧 ID 列表
-     * */
-    suspend fun normalSign(
-        forums: List<ForumSignParam>,
-        tbs: String,
-        slowMode: Boolean,
-        initialProgress: Int,
-        listener: ProgressListener?
-    ): LongSet {
-        val succeed = mutableLongSetOf()
-        var progress = initialProgress
-
-        forums.forEach { (forumName, forumId) ->
-            try {
-                val result = networkDataSource.requestSign(forumId, forumName, tbs)
-                if (result.isSignIn == 1) {
-                    listener?.onSigned(progress, forumName, result.signBonusPoint)
-                    succeed.add(forumId)
-                }
-            } catch (e: TiebaException) {
-                val message = e.getErrorMessage()
-                Log.w(TAG, "onNormalSign: Sign $forumName failed: $message")
-                listener?.onFailed(progress, forumName, message)
-            } finally {
-                progress++
-            }
-            if (progress < forums.size) {
-                delay(getSignDelay(slowMode))
-            }
-        }
-        return succeed
-    }
-
     private suspend fun signInternal(account: Account, signConfig: SignConfig, listener: ProgressListener?) {
         val start = System.currentTimeMillis()
         val forumListBean = networkDataSource.getForumList()
@@ -163,6 +129,14 @@ class OKSignRepositoryImp @Inject constructor(
         val mSignMinLevel = forumListBean.level.toInt()
         val mSignStepNum = forumListBean.msignStepNum.toInt()
         val useMSign = signConfig.okSignOfficial
+        val signDay = DateTimeUtils.todayTimeMill()
+        val engine = OKSignEngine(
+            networkDataSource = networkDataSource,
+            progressDao = progressDao,
+            config = if (signConfig.autoSignSlow) OKSignEngine.Config.Slow else OKSignEngine.Config.Default
+        )
+        // Forums signed or failed in an unfinished run, e.g. worker killed by system
+        val checkpoint = engine.loadCheckpoint(account.uid, signDay)
 
         // Normal Sign
         val forums = mutableListOf<ForumSignParam>()
@@ -171,7 +145,7 @@ class OKSignRepositoryImp @Inject constructor(
 
         // Split liked forums into NormalSign and MSign
         forumRecommendList.forEach {
-            if (it.isSign != 1) {
+            if (it.isSign != 1 && it.forumId !in checkpoint) {
                 val canUseMSign = useMSign && it.levelId >= mSignMinLevel && mSignForums.size < mSignStepNum
                 if (canUseMSign) {
                     mSignForums.add(ForumSignParam(forum = it))
@@ -182,10 +156,11 @@ class OKSignRepositoryImp @Inject constructor(
         }
         val forumCount = forumRecommendList.size
         val totalCount = forums.size + mSignForums.size
-        Log.i(TAG, "onSignInternal: Signing $totalCount/$forumCount forums.")
+        Log.i(TAG, "onSignInternal: Signing $totalCount/$forumCount forums, resumed: ${checkpoint.size}.")
 
         // All forums are signed, return now
         if (totalCount == 0) {
+            progressDao.deleteAllByUid(account.uid)
             listener?.onFinish(succeed = 0)
             notifyForumSignDataChanged()
             return
@@ -195,7 +170,7 @@ class OKSignRepositoryImp @Inject constructor(
         listener?.onInit(total = totalCount, userName = account.name)
         val succeed = mutableLongSetOf()
         // Try Official OkSign
-        val resultList = officialSign(mSignForums, tbs = account.tbs, listener = listener)
+        val resultList = officialSign(account.uid, signDay, mSignForums, tbs = account.tbs, listener = listener)
         // Failed, retry all mSignForums with normal sign
         if (resultList == null) {
             forums.addAll(mSignForums)
@@ -217,21 +192,24 @@ class OKSignRepositoryImp @Inject constructor(
             currentCoroutineContext().ensureActive()
 
             // Sign forums with signFlow now
-            val succeedForumIds = normalSign(
+            val result = engine.sign(
+                uid = account.uid,
+                signDay = signDay,
                 forums = forums.toList(),
                 tbs = account.tbs,
                 initialProgress = succeed.size,
-                slowMode = signConfig.autoSignSlow,
                 listener = listener
             )
-            if (succeedForumIds.isNotEmpty()) {
-                succeed += succeedForumIds
+            if (result.succeed.isNotEmpty()) {
+                succeed += result.succeed
             }
             val duration = (System.currentTimeMillis() - start) / 1000
             val succeedCount = succeed.size
-            Log.w(TAG, "onSignInternal: Done, $succeedCount/$totalCount signed, cost: ${duration}s")
+            Log.w(TAG, "onSignInternal: Done, $succeedCount/$totalCount signed, cost: ${duration}s, ${result.metrics}")
             listener?.onFinish(succeed = succeedCount)
         }
+        // Run completed, checkpoints are no longer needed
+        progressDao.deleteAllByUid(account.uid)
 
         if (succeed.isNotEmpty()) {
             notifyForumSignDataChanged()
@@ -292,13 +270,5 @@ class OKSignRepositoryImp @Inject constructor(
         private const val TAG = "OKSignRepository"
 
         private const val MAX_COMPOUNDING_ERROR_TIME = 10 * 60 * 1000 // 10 minutes
-
-        private fun getSignDelay(slowMode: Boolean): Long {
-            return if (slowMode) {
-                ThreadLocalRandom.current().nextInt(3500, 8000).toLong()
-            } else {
-                2000
-            }
-        }
     }
 }
@@ -0,0 +1,231 @@
+package com.huanchengfly.tieba.post.theme.colorscheme
+
+import android.util.Log
+import androidx.annotation.WorkerThread
+import androidx.collection.LruCache
+import androidx.compose.material3.ColorScheme
+import androidx.compose.ui.graphics.Color
+import com.google.android.material.color.utilities.DynamicColor
+import com.google.android.material.color.utilities.Hct
+import com.google.android.material.color.utilities.MaterialDynamicColors
+import com.google.android.material.color.utilities.Variant
+import com.huanchengfly.tieba.post.App
+import com.huanchengfly.tieba.post.theme.DynamicSchemes
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Cache of ColorSchemes generated from seed colors.
+ *
+ * Generating a full scheme resolves every color role against the contrast curves, which takes
+ * milliseconds and is repeated by every preview in AppThemePage. Resolved schemes are kept in memory
+ * by [Key], schemes in use are also [persist]ed to disk so cold start skips the generation.
+ * */
+object ColorSchemeCache {
+
+    private const val TAG = "ColorSchemeCache"
+
+    private const val FILE_NAME = "color_scheme_cache"
+
+    private const val VERSION = 1
+
+    /**
+     * Enough for light and dark schemes of every variant in AppThemePage
+     * */
+    private const val MAX_SIZE = 24
+
+    private const val MAX_PERSISTED = 4
+
+    data class Key(
+        val seed: Int,
+        val variant: Variant,
+        val dark: Boolean,
+        val contrastLevel: Double
+    )
+
+    private class Entry(val argb: IntArray, val colorScheme: ColorScheme)
+
+    private val cache = LruCache<Key, Entry>(MAX_SIZE)
+
+    private val file: File by lazy { File(App.INSTANCE.cacheDir, FILE_NAME) }
+
+    /**
+     * Persisted schemes in resolved ARGB, loaded once on first lookup
+     * */
+    private val persisted: MutableMap<Key, IntArray> by lazy { read(file) }
+
+    /**
+     * Color roles of [ColorScheme] in persisted order, append new roles to the end and bump
+     * [VERSION] on changes.
+     * */
+    private val ROLES: Array<(MaterialDynamicColors) -> DynamicColor> = arrayOf(
+        MaterialDynamicColors::primary,
+        MaterialDynamicColors::onPrimary,
+        MaterialDynamicColors::primaryContainer,
+        MaterialDynamicColors::onPrimaryContainer,
+        MaterialDynamicColors::inversePrimary,
+        MaterialDynamicColors::secondary,
+        MaterialDynamicColors::onSecondary,
+        MaterialDynamicColors::secondaryContainer,
+        MaterialDynamicColors::onSecondaryContainer,
+        MaterialDynamicColors::tertiary,
+        MaterialDynamicColors::onTertiary,
+        MaterialDynamicColors::tertiary, // tertiaryContainer
+        MaterialDynamicColors::onTertiaryContainer,
+        MaterialDynamicColors::background,
+        MaterialDynamicColors::onBackground,
+        MaterialDynamicColors::surface,
+        MaterialDynamicColors::onSurface,
+        MaterialDynamicColors::surfaceVariant,
+        MaterialDynamicColors::onSurfaceVariant,
+        MaterialDynamicColors::surfaceTint,
+        MaterialDynamicColors::inverseSurface,
+        MaterialDynamicColors::inverseOnSurface,
+        MaterialDynamicColors::error,
+        MaterialDynamicColors::onError,
+        MaterialDynamicColors::errorContainer,
+        MaterialDynamicColors::onErrorContainer,
+        MaterialDynamicColors::outline,
+        MaterialDynamicColors::outlineVariant,
+        MaterialDynamicColors::surfaceBright,
+        MaterialDynamicColors::surfaceDim,
+        MaterialDynamicColors::surfaceContainer,
+        MaterialDynamicColors::surfaceContainerHigh,
+        MaterialDynamicColors::surfaceContainerHighest,
+        MaterialDynamicColors::surfaceContainerLow,
+        MaterialDynamicColors::surfaceContainerLowest,
+    )
+
+    @Suppress("NOTHING_TO_INLINE")
+    private inline fun IntArray.color(role: Int): Color = Color(this[role])
+
+    private fun IntArray.toColorScheme(): ColorScheme {
+        var i = 0
+        return ColorScheme(
+            primary = color(i++),
+            onPrimary = color(i++),
+            primaryContainer = color(i++),
+            onPrimaryContainer = color(i++),
+            inversePrimary = color(i++),
+            secondary = color(i++),
+            onSecondary = color(i++),
+            secondaryContainer = color(i++),
+            onSecondaryContainer = color(i++),
+            tertiary = color(i++),
+            onTertiary = color(i++),
+            tertiaryContainer = color(i++),
+            onTertiaryContainer = color(i++),
+            background = color(i++),
+            onBackground = color(i++),
+            surface = color(i++),
+            onSurface = color(i++),
+            surfaceVariant = color(i++),
+            onSurfaceVariant = color(i++),
+            surfaceTint = color(i++),
+            inverseSurface = color(i++),
+            inverseOnSurface = color(i++),
+            error = color(i++),
+            onError = color(i++),
+            errorContainer = color(i++),
+            onErrorContainer = color(i++),
+            outline = color(i++),
+            outlineVariant = color(i++),
+            scrim = Color.Black,
+            surfaceBright = color(i++),
+            surfaceDim = color(i++),
+            surfaceContainer = color(i++),
+            surfaceContainerHigh = color(i++),
+            surfaceContainerHighest = color(i++),
+            surfaceContainerLow = color(i++),
+            surfaceContainerLowest = color(i),
+        )
+    }
+
+    private fun resolve(key: Key): IntArray {
+        val scheme = DynamicSchemes.from(Hct.fromInt(key.seed), key.variant, key.dark, key.contrastLevel)
+        val dynamicColors = MaterialDynamicColors()
+        return IntArray(ROLES.size) { ROLES[it](dynamicColors).getArgb(scheme) }
+    }
+
+    /**
+     * @return cached ColorScheme of [key], generated on cache miss
+     * */
+    operator fun get(key: Key): ColorScheme {
+        cache[key]?.let { return it.colorScheme }
+        val argb = synchronized(persisted) { persisted[key] } ?: resolve(key)
+        val entry = Entry(argb, argb.toColorScheme())
+        cache.put(key, entry)
+        return entry.colorScheme
+    }
+
+    /**
+     * Persist the [colorSchemes] in use, schemes not generated by this cache are ignored.
+     * */
+    @WorkerThread
+    fun persist(vararg colorSchemes: ColorScheme) {
+        val snapshot = cache.snapshot()
+        val entries = colorSchemes.mapNotNull { colorScheme ->
+            snapshot.entries.firstOrNull { it.value.colorScheme === colorScheme }
+        }
+        if (entries.isEmpty()) return
+
+        synchronized(persisted) {
+            if (entries.all { it.key in persisted }) return
+            // Keep the latest ones
+            val retained = persisted.keys
+                .filterNot { key -> entries.any { it.key == key } }
+                .takeLast((MAX_PERSISTED - entries.size).coerceAtLeast(0))
+            persisted.keys.retainAll(retained.toSet())
+            entries.forEach { persisted[it.key] = it.value.argb }
+            try {
+                write(file, persisted)
+            } catch (e: IOException) {
+                Log.w(TAG, "onPersist: ${e.message}")
+            }
+        }
+    }
+
+    private fun read(file: File): MutableMap<Key, IntArray> {
+        val schemes = LinkedHashMap<Key, IntArray>()
+        if (!file.exists()) return schemes
+        try {
+            DataInputStream(BufferedInputStream(FileInputStream(file))).use {
+                if (it.readInt() != VERSION || it.readInt() != ROLES.size) return schemes
+                repeat(it.readInt()) { _ ->
+                    val key = Key(
+                        seed = it.readInt(),
+                        variant = Variant.entries[it.readByte().toInt()],
+                        dark = it.readBoolean(),
+                        contrastLevel = it.readDouble()
+                    )
+                    schemes[key] = IntArray(ROLES.size) { _ -> it.readInt() }
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(TAG, "onRead: ${e.message}")
+            schemes.clear()
+        }
+        return schemes
+    }
+
+    private fun write(file: File, schemes: Map<Key, IntArray>) {
+        DataOutputStream(BufferedOutputStream(FileOutputStream(file))).use {
+            it.writeInt(VERSION)
+            it.writeInt(ROLES.size)
+            it.writeInt(schemes.size)
+            schemes.forEach { (key, argb) ->
+                it.writeInt(key.seed)
+                it.writeByte(key.variant.ordinal)
+                it.writeBoolean(key.dark)
+                it.writeDouble(key.contrastLevel)
+                argb.forEach(it::writeInt)
+            }
+        }
+    }
+}
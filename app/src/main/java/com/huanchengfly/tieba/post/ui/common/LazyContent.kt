@@ -0,0 +1,56 @@
+package com.huanchengfly.tieba.post.ui.common
+
+import androidx.collection.LruCache
+import androidx.compose.runtime.Stable
+import java.lang.ref.WeakReference
+
+/**
+ * Content built on first access, e.g. [PbContentRender] of a post.
+ *
+ * Built contents are kept in a bounded LRU cache shared by all instances, so contents of
+ * off-screen items are released eventually. Evicted content is reused as long as it's still
+ * referenced elsewhere, e.g. remembered by a visible item, otherwise it's rebuilt on next access.
+ *
+ * @param weight weight of the built content in the cache, e.g. number of renders
+ * @param builder builds the content, could be called on any thread
+ * */
+@Stable
+class LazyContent<T : Any>(
+    private val weight: (T) -> Int = { 1 },
+    private val builder: () -> T,
+) {
+
+    @Volatile
+    private var built: WeakReference<T>? = null
+
+    val value: T
+        get() {
+            @Suppress("UNCHECKED_CAST")
+            (cache[this] as T?)?.let { return it }
+
+            val content = built?.get() ?: builder().also { built = WeakReference(it) }
+            cache.put(this, content)
+            return content
+        }
+
+    /**
+     * Build the content in advance if not built yet.
+     * */
+    fun prefetch() {
+        value
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun weigh(content: Any): Int = weight(content as T).coerceAtLeast(1)
+
+    companion object {
+        /**
+         * Total weight of cached contents, about renders of a few pages
+         * */
+        private const val MAX_WEIGHT = 2048
+
+        private val cache = object : LruCache<LazyContent<*>, Any>(MAX_WEIGHT) {
+            override fun sizeOf(key: LazyContent<*>, value: Any): Int = key.weigh(value)
+        }
+    }
+}
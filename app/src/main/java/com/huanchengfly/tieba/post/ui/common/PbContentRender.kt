@@ -160,6 +160,7 @@ value class TextContentRender(val value: AnnotatedString) : PbContentRender {
                 .fillMaxWidth(singleMediaFraction)
                 .aspectRatio(ratio = dimensions?.run { width * 1f / height } ?: 1.0f),
             imageUrl = picUrl,
+            picId = picId.ifEmpty { null },
             photoViewDataProvider = { photoViewData },
         )
     }
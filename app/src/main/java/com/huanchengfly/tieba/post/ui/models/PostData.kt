@@ -5,14 +5,15 @@ import androidx.compose.runtime.Immutable
 import com.huanchengfly.tieba.post.R
 import com.huanchengfly.tieba.post.api.models.protos.Post
 import com.huanchengfly.tieba.post.api.models.protos.User
+import com.huanchengfly.tieba.post.ui.common.LazyContent
 import com.huanchengfly.tieba.post.ui.common.PbContentRender
 import com.huanchengfly.tieba.post.utils.DateTimeUtils.getRelativeTimeString
 
 /**
  * Represents [Post] in UI
  *
- * This class caches PbContentRenders to avoid compiling regex patterns or build highlighted
- * content during the compose.
+ * PbContentRenders are built lazily on first composition or prefetch, floors never scrolled to
+ * won't compile regex patterns or build highlighted content.
  *
  * @param id [Post.id]
  * @param author remapped [Post.author]
@@ -22,7 +23,7 @@ import com.huanchengfly.tieba.post.utils.DateTimeUtils.getRelativeTimeString
  * @param like remapped [Post.agree]
  * @param blocked whether [author] blocked or [Post.content] contains blocked keyword
  * @param plainText string text of [Post.content]
- * @param contentRenders Composable [PbContentRender] built from [Post.content]
+ * @param contentRenders Composable [PbContentRender] lazily built from [Post.content]
  * @param subPosts      replies from [Post.sub_post_list]
  * @param subPostNumber total number of replies
  * */
@@ -36,7 +37,7 @@ import com.huanchengfly.tieba.post.utils.DateTimeUtils.getRelativeTimeString
     val like: Like,
     val blocked: Boolean,
     val plainText: String,
-    val contentRenders: List<PbContentRender>,
+    val contentRenders: LazyContent<List<PbContentRender>>,
     val subPosts: List<SubPostItemData>?,
     val subPostNumber: Int
 ) {
@@ -74,7 +75,7 @@ import com.huanchengfly.tieba.post.utils.DateTimeUtils.getRelativeTimeString
         like: Like = this.like,
         blocked: Boolean = this.blocked,
         plainText: String = this.plainText,
-        contentRenders: List<PbContentRender> = this.contentRenders,
+        contentRenders: LazyContent<List<PbContentRender>> = this.contentRenders,
         subPosts: List<SubPostItemData>? = this.subPosts,
         subPostNumber: Int = this.subPostNumber
     ) = PostData(
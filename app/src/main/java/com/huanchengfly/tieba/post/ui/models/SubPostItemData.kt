@@ -3,6 +3,7 @@ package com.huanchengfly.tieba.post.ui.models
 import androidx.compose.runtime.Immutable
 import androidx.compose.ui.text.AnnotatedString
 import com.huanchengfly.tieba.post.api.models.protos.SubPostList
+import com.huanchengfly.tieba.post.ui.common.LazyContent
 import com.huanchengfly.tieba.post.ui.common.PbContentRender
 
 /**
@@ -17,7 +18,7 @@ import com.huanchengfly.tieba.post.ui.common.PbContentRender
  * @param time [SubPostList.time]
  * @param like remapped [SubPostList.agree]
  * @param plainText string text of [SubPostList.content]
- * @param abstractContent formatted content without media, for ThreadPage
+ * @param abstractContent lazily formatted content without media, for ThreadPage
  * @param content full content with media, for SubPostsPage
  * */
 @Immutable
@@ -28,7 +29,7 @@ import com.huanchengfly.tieba.post.ui.common.PbContentRender
     val time: Long,
     val like: Like,
     val plainText: String,
-    val abstractContent: AnnotatedString? = null,
+    val abstractContent: LazyContent<AnnotatedString>? = null,
     val content: List<PbContentRender>? = null
 ) {
 
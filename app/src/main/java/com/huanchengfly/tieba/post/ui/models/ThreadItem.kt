@@ -2,11 +2,14 @@ package com.huanchengfly.tieba.post.ui.models
 
 import androidx.compose.runtime.Immutable
 import androidx.compose.ui.text.AnnotatedString
+import androidx.compose.ui.util.fastMap
 import com.huanchengfly.tieba.post.api.models.protos.Media
 import com.huanchengfly.tieba.post.api.models.protos.OriginThreadInfo
 import com.huanchengfly.tieba.post.api.models.protos.VideoInfo
 import com.huanchengfly.tieba.post.arch.ImmutableHolder
 import com.huanchengfly.tieba.post.ui.models.explore.Dislike
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
 
 /**
  * Ui Model of ThreadInfo
@@ -69,4 +72,51 @@ import com.huanchengfly.tieba.post.ui.models.explore.Dislike
         simpleForum = simpleForum,
         dislikeResource = dislikeResource,
     )
-}
\ No newline at end of file
+}
+
+/**
+ * Update Like status of target [ThreadItem] in this list
+ *
+ * @param threadId id of target [ThreadItem]
+ * @param liked new like status
+ * @param loading is requesting like status update
+ *
+ * @return new thread list with like status updated
+ * */
+suspend fun List<ThreadItem>.updateLikeStatus(
+    threadId: Long,
+    liked: Boolean,
+    loading: Boolean
+): List<ThreadItem> = withContext(Dispatchers.Default) {
+    fastMap {
+        if (it.id != threadId) return@fastMap it
+
+        it.copy(like = it.like.updateLikeStatus(liked).setLoading(loading))
+    }
+}
+
+/**
+ * Update Like status of target [ThreadItem] in this list
+ *
+ * @param threadId id of target [ThreadItem]
+ * @param like new like status
+ *
+ * @return new thread list with like status updated or **null** if no status changes
+ * */
+suspend fun List<ThreadItem>.updateLikeStatus(threadId: Long, like: Like) = if (this.isNotEmpty()) {
+    withContext(Dispatchers.Default) {
+        var changed = false
+        fastMap {
+            if (it.id == threadId) {
+                // Unchanged, return null
+                if (it.liked == like.liked && it.like.count == like.count) return@withContext null
+                changed = true
+                it.copy(like = like)
+            } else {
+                it
+            }
+        }.takeIf { changed }
+    }
+} else {
+    null
+}
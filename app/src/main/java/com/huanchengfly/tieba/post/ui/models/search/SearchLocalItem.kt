@@ -0,0 +1,28 @@
+package com.huanchengfly.tieba.post.ui.models.search
+
+import androidx.compose.runtime.Immutable
+import androidx.compose.ui.text.AnnotatedString
+
+/**
+ * UI Model of a thread history or draft matched by local search
+ *
+ * @param threadId thread ID
+ * @param postId post to jump, last visible post of history or replied post of draft
+ * @param title highlighted thread title, null if the thread of draft is not in history
+ * @param forumName forum name of thread history
+ * @param content highlighted snippet of the first post or draft
+ * @param isDraft is draft or thread history
+ * @param isSeeLz see lz mode of thread history
+ * */
+@Immutable
+class SearchLocalItem(
+    val threadId: Long,
+    val postId: Long,
+    val title: AnnotatedString?,
+    val forumName: String?,
+    val content: AnnotatedString?,
+    val isDraft: Boolean,
+    val isSeeLz: Boolean = false,
+) {
+    val lazyListItemKey: String = if (isDraft) "Draft_${threadId}_$postId" else "Thread_$threadId"
+}
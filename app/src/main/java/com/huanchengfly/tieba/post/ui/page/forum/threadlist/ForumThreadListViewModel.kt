@@ -15,8 +15,8 @@ import com.huanchengfly.tieba.post.repository.user.SettingsRepository
 import com.huanchengfly.tieba.post.ui.models.Like
 import com.huanchengfly.tieba.post.ui.models.ThreadItem
 import com.huanchengfly.tieba.post.ui.models.settings.ForumSortType
+import com.huanchengfly.tieba.post.ui.models.updateLikeStatus
 import com.huanchengfly.tieba.post.ui.page.forum.threadlist.ForumThreadListViewModel.Companion.ForumVMFactory
-import com.huanchengfly.tieba.post.ui.page.main.explore.concern.ConcernViewModel.Companion.updateLikeStatus
 import com.huanchengfly.tieba.post.ui.page.main.explore.concern.ConcernViewModel.Companion.updateLikeStatusUiStateCommon
 import dagger.assisted.Assisted
 import dagger.assisted.AssistedFactory
@@ -158,13 +158,17 @@ class ForumThreadListViewModel @AssistedInject constructor(
     }
 
     fun onThreadLikeClicked(thread: ThreadItem) = launchInVM {
-        updateLikeStatusUiStateCommon(
+        val succeed = updateLikeStatusUiStateCommon(
             thread = thread,
             onRequestLikeThread = threadRepo::requestLikeThread,
             onEvent = ::emitGlobalEventSuspend
         ) { threadId, liked, loading ->
             _uiState.update { it.copy(threads = it.threads.updateLikeStatus(threadId, liked, loading)) }
         }
+        if (succeed) {
+            val like = currentState.threads.firstOrNull { it.id == thread.id }?.like ?: return@launchInVM
+            forumRepo.updateThreadLike(forumName, thread.id, like)
+        }
     }
 
     /**
@@ -177,6 +181,7 @@ class ForumThreadListViewModel @AssistedInject constructor(
         val newThreads = currentState.threads.updateLikeStatus(threadId, like)
         if (newThreads != null) {
             _uiState.update { it.copy(threads = newThreads) }
+            forumRepo.updateThreadLike(forumName, threadId, like)
         }
     }
 
@@ -2,7 +2,6 @@ package com.huanchengfly.tieba.post.ui.page.main.explore.concern
 
 import androidx.compose.runtime.Immutable
 import androidx.compose.runtime.Stable
-import androidx.compose.ui.util.fastMap
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaNotLoggedInException
 import com.huanchengfly.tieba.post.arch.BaseStateViewModel
 import com.huanchengfly.tieba.post.arch.CommonUiEvent
@@ -13,6 +12,7 @@ import com.huanchengfly.tieba.post.repository.ExploreRepository
 import com.huanchengfly.tieba.post.repository.ExploreRepository.Companion.distinctById
 import com.huanchengfly.tieba.post.ui.models.Like
 import com.huanchengfly.tieba.post.ui.models.ThreadItem
+import com.huanchengfly.tieba.post.ui.models.updateLikeStatus
 import com.huanchengfly.tieba.post.ui.page.main.explore.ExplorePageItem
 import com.huanchengfly.tieba.post.ui.page.thread.ThreadLikeUiEvent
 import com.huanchengfly.tieba.post.ui.widgets.compose.video.util.set
@@ -133,53 +133,6 @@ class ConcernViewModel @Inject constructor(
     companion object {
         private const val TAG = "ConcernViewModel"
 
-        /**
-         * Update Like status of target [ThreadItem] in this list
-         *
-         * @param threadId id of target [ThreadItem]
-         * @param liked new like status
-         * @param loading is requesting like status update
-         *
-         * @return new thread list with like status updated
-         * */
-        suspend fun List<ThreadItem>.updateLikeStatus(
-            threadId: Long,
-            liked: Boolean,
-            loading: Boolean
-        ): List<ThreadItem> = withContext(Dispatchers.Default) {
-            fastMap {
-                if (it.id != threadId) return@fastMap it
-
-                it.copy(like = it.like.updateLikeStatus(liked).setLoading(loading))
-            }
-        }
-
-        /**
-         * Update Like status of target [ThreadItem] in this list
-         *
-         * @param threadId id of target [ThreadItem]
-         * @param like new like status
-         *
-         * @return new thread list with like status updated or **null** if no status changes
-         * */
-        suspend fun List<ThreadItem>.updateLikeStatus(threadId: Long, like: Like) = if (this.isNotEmpty()) {
-            withContext(Dispatchers.Default) {
-                var changed = false
-                fastMap {
-                    if (it.id == threadId) {
-                        // Unchanged, return null
-                        if (it.liked == like.liked && it.like.count == like.count) return@withContext null
-                        changed = true
-                        it.copy(like = like)
-                    } else {
-                        it
-                    }
-                }.takeIf { changed }
-            }
-        } else {
-            null
-        }
-
         suspend fun updateLikeStatusUiStateCommon(
             thread: ThreadItem,
             onRequestLikeThread: suspend (ThreadItem) -> Unit,
@@ -10,11 +10,11 @@ import androidx.compose.foundation.layout.fillMaxSize
 import androidx.compose.foundation.layout.fillMaxWidth
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.lazy.LazyListState
-import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.lazy.rememberLazyListState
 import androidx.compose.material3.MaterialTheme
 import androidx.compose.material3.Text
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.remember
 import androidx.compose.ui.Modifier
@@ -25,18 +25,24 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.hilt.lifecycle.viewmodel.compose.hiltViewModel
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import androidx.paging.LoadState
+import androidx.paging.compose.LazyPagingItems
+import androidx.paging.compose.collectAsLazyPagingItems
+import androidx.paging.compose.itemKey
 import com.huanchengfly.tieba.post.PaddingNone
 import com.huanchengfly.tieba.post.R
 import com.huanchengfly.tieba.post.api.Error
 import com.huanchengfly.tieba.post.api.retrofit.exception.getErrorCode
+import com.huanchengfly.tieba.post.api.retrofit.exception.getErrorMessage
 import com.huanchengfly.tieba.post.navigateDebounced
+import com.huanchengfly.tieba.post.toastShort
+import com.huanchengfly.tieba.post.ui.models.message.MessageItemData
 import com.huanchengfly.tieba.post.ui.page.Destination
 import com.huanchengfly.tieba.post.ui.page.LocalNavController
 import com.huanchengfly.tieba.post.ui.page.main.notifications.list.NotificationsListViewModel.Companion.NotificationsListVmFactory
 import com.huanchengfly.tieba.post.ui.widgets.compose.BlockTip
 import com.huanchengfly.tieba.post.ui.widgets.compose.BlockableContent
 import com.huanchengfly.tieba.post.ui.widgets.compose.EmoticonText
-import com.huanchengfly.tieba.post.ui.widgets.compose.LazyLoad
 import com.huanchengfly.tieba.post.ui.widgets.compose.PullToRefreshBox
 import com.huanchengfly.tieba.post.ui.widgets.compose.SwipeUpLazyLoadColumn
 import com.huanchengfly.tieba.post.ui.widgets.compose.UserHeader
@@ -58,23 +64,24 @@ fun NotificationsListPage(
         it.create(type)
     }
 ) {
-    LazyLoad(loaded = viewModel.initialized) {
-        viewModel.send(NotificationsListUiIntent.Refresh)
-        viewModel.initialized = true
-    }
-
-    val uiState by viewModel.uiState.collectAsStateWithLifecycle()
-    val error = uiState.error
+    val context = LocalContext.current
+    val messages = viewModel.messages.collectAsLazyPagingItems()
+    val isEmpty = messages.itemCount == 0
+    val refreshState = messages.loadState.refresh
+    val error = (refreshState as? LoadState.Error)?.error
+    val appendError = (messages.loadState.append as? LoadState.Error)?.error
 
-    val onRefresh: () -> Unit = {
-        viewModel.send(NotificationsListUiIntent.Refresh)
+    // Stored messages stay visible, show sync errors as toast
+    LaunchedEffect(error, appendError) {
+        val e = appendError ?: error?.takeIf { !isEmpty } ?: return@LaunchedEffect
+        context.toastShort(e.getErrorMessage())
     }
 
     StateScreen(
-        isLoading = uiState.isRefreshing,
-        isEmpty = uiState.data.isEmpty(),
-        error = error,
-        onReload = onRefresh.takeIf { error?.getErrorCode() != Error.ERROR_NOT_LOGGED_IN },
+        isLoading = refreshState is LoadState.Loading && isEmpty,
+        isEmpty = isEmpty,
+        error = error?.takeIf { isEmpty },
+        onReload = messages::refresh.takeIf { error?.getErrorCode() != Error.ERROR_NOT_LOGGED_IN },
         screenPadding = contentPadding,
     ) {
         val hideBlocked by viewModel.hideBlocked.collectAsStateWithLifecycle()
@@ -85,13 +92,7 @@ fun NotificationsListPage(
             listState = listState,
             hideBlocked = hideBlocked,
             contentPadding = contentPadding,
-            uiState = uiState,
-            onRefresh = onRefresh,
-            onLoadMore = {
-                if (uiState.hasMore && uiState.data.isNotEmpty()) {
-                    viewModel.send(NotificationsListUiIntent.LoadMore(uiState.currentPage + 1))
-                }
-            }
+            messages = messages
         )
     }
 }
@@ -103,17 +104,15 @@ private fun NotificationsListContent(
     listState: LazyListState = rememberLazyListState(),
     hideBlocked: Boolean = false,
     contentPadding: PaddingValues = PaddingNone,
-    uiState: NotificationsListUiState,
-    onRefresh: () -> Unit,
-    onLoadMore: () -> Unit,
+    messages: LazyPagingItems<MessageItemData>,
 ) {
     val navigator = LocalNavController.current
     val context = LocalContext.current
-    val isLoadingMore = uiState.isLoadingMore
+    val loadState = messages.loadState
 
     PullToRefreshBox(
-        isRefreshing = uiState.isRefreshing,
-        onRefresh = onRefresh,
+        isRefreshing = loadState.refresh is LoadState.Loading,
+        onRefresh = messages::refresh,
         modifier = Modifier.fillMaxSize(),
         contentPadding = contentPadding,
     ) {
@@ -125,11 +124,12 @@ private fun NotificationsListContent(
             modifier = modifier.fillMaxSize(),
             state = listState,
             contentPadding = contentPadding,
-            isLoading = isLoadingMore,
-            onLazyLoad = onLoadMore.takeIf { uiState.hasMore },
+            isLoading = loadState.append is LoadState.Loading,
+            onLazyLoad = null, // Appended by Paging
             bottomIndicator = defaultBottomIndicator,
         ) {
-            items(items = uiState.data, key = { it.lazyListItemKey }) { info ->
+            items(count = messages.itemCount, key = messages.itemKey { it.lazyListItemKey }) { index ->
+                val info = messages[index] ?: return@items
                 BlockableContent(
                     blocked = info.isBlocked,
                     blockedTip = blockedTip,
@@ -317,7 +317,7 @@ class ReplyViewModel @Inject constructor(
     fun deleteDraft() {
         userDraft = null
         AppBackgroundScope.launch {
-            draftDao.deleteByIds(threadId, postId ?: 0, subPostId ?: 0)
+            draftDao.delete(threadId, postId ?: 0, subPostId ?: 0)
         }
     }
 
@@ -87,6 +87,7 @@ import com.huanchengfly.tieba.post.ui.page.ProvideNavigator
 import com.huanchengfly.tieba.post.ui.page.main.rememberTopAppBarScrollBehaviors
 import com.huanchengfly.tieba.post.ui.page.search.forum.SearchForumItem
 import com.huanchengfly.tieba.post.ui.page.search.forum.SearchForumPage
+import com.huanchengfly.tieba.post.ui.page.search.local.SearchLocalPage
 import com.huanchengfly.tieba.post.ui.page.search.thread.SearchThreadPage
 import com.huanchengfly.tieba.post.ui.page.search.thread.SearchThreadSortType
 import com.huanchengfly.tieba.post.ui.page.search.user.SearchUserPage
@@ -107,7 +108,8 @@ import kotlin.math.abs
 private enum class SearchPages(val titleRes: Int) {
     Forum(titleRes = R.string.title_search_forum),
     Thread(titleRes = R.string.title_search_thread),
-    User(titleRes = R.string.title_search_user)
+    User(titleRes = R.string.title_search_user),
+    Local(titleRes = R.string.title_search_local)
 }
 
 @Composable
@@ -168,6 +170,8 @@ fun SearchPage(
                     }
 
                     SearchPages.User -> SearchUserPage(modifier, keyword, contentPadding, listState)
+
+                    SearchPages.Local -> SearchLocalPage(modifier, keyword, contentPadding, listState)
                 }
             }
         }
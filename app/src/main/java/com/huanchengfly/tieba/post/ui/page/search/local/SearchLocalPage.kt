@@ -0,0 +1,116 @@
+package com.huanchengfly.tieba.post.ui.page.search.local
+
+import androidx.compose.foundation.clickable
+import androidx.compose.foundation.layout.Arrangement
+import androidx.compose.foundation.layout.Column
+import androidx.compose.foundation.layout.PaddingValues
+import androidx.compose.foundation.layout.fillMaxSize
+import androidx.compose.foundation.layout.fillMaxWidth
+import androidx.compose.foundation.layout.padding
+import androidx.compose.foundation.lazy.LazyListState
+import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.lazy.rememberLazyListState
+import androidx.compose.material3.MaterialTheme
+import androidx.compose.material3.Text
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
+import androidx.compose.runtime.getValue
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.res.stringResource
+import androidx.compose.ui.text.style.TextOverflow
+import androidx.compose.ui.unit.dp
+import androidx.hilt.lifecycle.viewmodel.compose.hiltViewModel
+import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import com.huanchengfly.tieba.post.R
+import com.huanchengfly.tieba.post.arch.collectCommonUiEventWithLifecycle
+import com.huanchengfly.tieba.post.navigateDebounced
+import com.huanchengfly.tieba.post.ui.models.search.SearchLocalItem
+import com.huanchengfly.tieba.post.ui.page.Destination
+import com.huanchengfly.tieba.post.ui.page.LocalNavController
+import com.huanchengfly.tieba.post.ui.page.thread.ThreadFrom
+import com.huanchengfly.tieba.post.ui.widgets.compose.Chip
+import com.huanchengfly.tieba.post.ui.widgets.compose.MyLazyColumn
+import com.huanchengfly.tieba.post.ui.widgets.compose.states.StateScreen
+
+@Composable
+fun SearchLocalPage(
+    modifier: Modifier = Modifier,
+    keyword: String,
+    contentPadding: PaddingValues,
+    listState: LazyListState = rememberLazyListState(),
+    viewModel: SearchLocalViewModel = hiltViewModel(),
+) {
+
+    LaunchedEffect(keyword) {
+        viewModel.onKeywordChanged(keyword)
+    }
+
+    viewModel.uiEvent.collectCommonUiEventWithLifecycle()
+
+    val uiState by viewModel.uiState.collectAsStateWithLifecycle()
+
+    StateScreen(
+        isEmpty = uiState.isEmpty,
+        isLoading = uiState.isRefreshing,
+        error = uiState.error,
+        onReload = viewModel::onRefresh,
+        screenPadding = contentPadding,
+    ) {
+        val navigator = LocalNavController.current
+
+        val onItemClickedListener: (SearchLocalItem) -> Unit = { item ->
+            val route = if (item.isDraft) {
+                Destination.Thread(threadId = item.threadId, postId = item.postId)
+            } else {
+                Destination.Thread(item.threadId, postId = item.postId, seeLz = item.isSeeLz, from = ThreadFrom.History)
+            }
+            navigator.navigateDebounced(route)
+        }
+
+        // Local search is fast enough, no PullToRefreshBox here
+        MyLazyColumn(
+            modifier = modifier.fillMaxSize(),
+            state = listState,
+            contentPadding = contentPadding,
+        ) {
+            items(uiState.fuzzyMatch, key = { it.lazyListItemKey }) {
+                LocalResultItem(item = it, onClick = onItemClickedListener)
+            }
+        }
+    }
+}
+
+@Composable
+private fun LocalResultItem(item: SearchLocalItem, onClick: (SearchLocalItem) -> Unit) {
+    Column(
+        modifier = Modifier
+            .fillMaxWidth()
+            .clickable { onClick(item) }
+            .padding(horizontal = 16.dp, vertical = 12.dp),
+        verticalArrangement = Arrangement.spacedBy(8.dp)
+    ) {
+        val label = if (item.isDraft) stringResource(R.string.title_draft) else item.forumName
+        if (!label.isNullOrEmpty()) {
+            Chip(text = label, invertColor = item.isDraft)
+        }
+
+        if (item.title != null) {
+            Text(
+                text = item.title,
+                maxLines = 2,
+                overflow = TextOverflow.Ellipsis,
+                style = MaterialTheme.typography.titleMedium
+            )
+        }
+
+        if (item.content != null) {
+            Text(
+                text = item.content,
+                color = MaterialTheme.colorScheme.onSurfaceVariant,
+                maxLines = 3,
+                overflow = TextOverflow.Ellipsis,
+                style = MaterialTheme.typography.bodyMedium,
+            )
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.huanchengfly.tieba.post.ui.page.search.local
+
+import androidx.compose.runtime.Stable
+import com.huanchengfly.tieba.post.repository.SearchRepository
+import com.huanchengfly.tieba.post.repository.SearchResult
+import com.huanchengfly.tieba.post.ui.models.search.SearchLocalItem
+import com.huanchengfly.tieba.post.ui.page.search.SearchBaseViewModel
+import dagger.hilt.android.lifecycle.HiltViewModel
+import javax.inject.Inject
+
+@Stable
+@HiltViewModel
+class SearchLocalViewModel @Inject constructor(
+    private val searchRepo: SearchRepository
+) : SearchBaseViewModel<SearchLocalItem>() {
+
+    override suspend fun search(keyword: String): SearchResult<SearchLocalItem> {
+        return SearchResult(exactMatch = null, fuzzyMatch = searchRepo.searchLocal(keyword))
+    }
+}
@@ -7,6 +7,7 @@ import android.webkit.WebView
 import androidx.activity.compose.BackHandler
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.outlined.Analytics
+import androidx.compose.material.icons.outlined.NetworkCheck
 import androidx.compose.material.icons.rounded.DeleteForever
 import androidx.compose.material3.Icon
 import androidx.compose.material3.ListItemShapes
@@ -74,6 +75,14 @@ fun MoreSettingsPage(navigator: NavController) {
                 },
                 leadingIcon = Icons.Outlined.Analytics,
             )
+
+            preference(
+                title = R.string.title_settings_network_metrics,
+                onClick = {
+                    navigator.navigate(route = SettingsDestination.NetworkMetrics)
+                },
+                leadingIcon = Icons.Outlined.NetworkCheck,
+            )
         }
 
         group(title = R.string.settings_group_cache) {
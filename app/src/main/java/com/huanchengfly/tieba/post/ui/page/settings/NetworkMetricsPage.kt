@@ -0,0 +1,155 @@
+package com.huanchengfly.tieba.post.ui.page.settings
+
+import androidx.compose.foundation.layout.Column
+import androidx.compose.foundation.layout.fillMaxSize
+import androidx.compose.foundation.layout.fillMaxWidth
+import androidx.compose.foundation.layout.padding
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.items
+import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.rounded.DeleteSweep
+import androidx.compose.material3.Icon
+import androidx.compose.material3.IconButton
+import androidx.compose.material3.MaterialTheme
+import androidx.compose.material3.Text
+import androidx.compose.material3.TopAppBarDefaults
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.produceState
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.input.nestedscroll.nestedScroll
+import androidx.compose.ui.unit.dp
+import com.huanchengfly.tieba.post.R
+import com.huanchengfly.tieba.post.api.retrofit.NetworkMetrics
+import com.huanchengfly.tieba.post.api.retrofit.NetworkMetrics.EndpointSnapshot
+import com.huanchengfly.tieba.post.api.retrofit.RetrofitTiebaApi
+import com.huanchengfly.tieba.post.api.retrofit.cache.ProtobufHttpCache
+import com.huanchengfly.tieba.post.arch.SingleFlight
+import com.huanchengfly.tieba.post.repository.source.network.RequestCoalescer
+import com.huanchengfly.tieba.post.ui.widgets.compose.BackNavigationIcon
+import com.huanchengfly.tieba.post.ui.widgets.compose.CenterAlignedTopAppBar
+import com.huanchengfly.tieba.post.ui.widgets.compose.MyScaffold
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.withContext
+
+private const val REFRESH_INTERVAL = 1000L
+
+/**
+ * Debug page shows per endpoint network timings recorded by [NetworkMetrics], counters of
+ * the protobuf response cache and duplicate requests merged by [RequestCoalescer].
+ * */
+@Composable
+fun NetworkMetricsPage(onBack: () -> Unit) {
+    val scrollBehavior = TopAppBarDefaults.pinnedScrollBehavior()
+
+    val endpoints by produceState(initialValue = NetworkMetrics.snapshot()) {
+        while (true) {
+            delay(REFRESH_INTERVAL)
+            value = NetworkMetrics.snapshot()
+        }
+    }
+
+    // Stats of the disk cache are read from its segment file
+    val cacheStats by produceState<ProtobufHttpCache.Stats?>(initialValue = null) {
+        while (true) {
+            value = withContext(Dispatchers.IO) { RetrofitTiebaApi.protobufCache.stats() }
+            delay(REFRESH_INTERVAL)
+        }
+    }
+
+    val coalescerStats by produceState(initialValue = RequestCoalescer.stats()) {
+        while (true) {
+            delay(REFRESH_INTERVAL)
+            value = RequestCoalescer.stats()
+        }
+    }
+
+    MyScaffold(
+        topBar = {
+            CenterAlignedTopAppBar(
+                titleRes = R.string.title_settings_network_metrics,
+                navigationIcon = { BackNavigationIcon(onBackPressed = onBack) },
+                actions = {
+                    IconButton(
+                        onClick = {
+                            NetworkMetrics.reset()
+                            RequestCoalescer.reset()
+                        }
+                    ) {
+                        Icon(imageVector = Icons.Rounded.DeleteSweep, contentDescription = null)
+                    }
+                },
+                scrollBehavior = scrollBehavior
+            )
+        },
+    ) { paddingValues ->
+        LazyColumn(
+            modifier = Modifier
+                .fillMaxSize()
+                .nestedScroll(scrollBehavior.nestedScrollConnection),
+            contentPadding = paddingValues,
+        ) {
+            cacheStats?.let { stats ->
+                item(key = "ProtobufCache") {
+                    CacheStatsItem(modifier = Modifier.padding(16.dp), stats = stats)
+                }
+            }
+
+            item(key = "RequestCoalescer") {
+                CoalescerStatsItem(modifier = Modifier.padding(16.dp), stats = coalescerStats)
+            }
+
+            items(items = endpoints, key = { it.endpoint }) {
+                EndpointItem(modifier = Modifier.padding(16.dp), endpoint = it)
+            }
+        }
+    }
+}
+
+@Composable
+private fun EndpointItem(modifier: Modifier = Modifier, endpoint: EndpointSnapshot) {
+    Column(modifier = modifier.fillMaxWidth()) {
+        Text(text = endpoint.endpoint, style = MaterialTheme.typography.titleMedium)
+        Text(
+            text = "Calls: ${endpoint.calls}, Failures: ${endpoint.failures}, Connections: ${endpoint.connections}",
+            style = MaterialTheme.typography.bodyMedium,
+        )
+        Text(
+            text = NetworkMetrics.Phase.entries.joinToString(separator = "\n") {
+                "${it.name}: avg ${endpoint.averages[it]}ms, max ${endpoint.max[it]}ms"
+            },
+            style = MaterialTheme.typography.bodySmall,
+        )
+    }
+}
+
+@Composable
+private fun CacheStatsItem(modifier: Modifier = Modifier, stats: ProtobufHttpCache.Stats) {
+    Column(modifier = modifier.fillMaxWidth()) {
+        Text(text = "Protobuf cache", style = MaterialTheme.typography.titleMedium)
+        Text(
+            text = "Hits: ${stats.hits}, Stale: ${stats.staleHits}, Misses: ${stats.misses}",
+            style = MaterialTheme.typography.bodyMedium,
+        )
+        Text(
+            text = "Entries: ${stats.count}, Size: ${stats.size / 1024}KiB",
+            style = MaterialTheme.typography.bodySmall,
+        )
+    }
+}
+
+@Composable
+private fun CoalescerStatsItem(modifier: Modifier = Modifier, stats: List<SingleFlight.Stats>) {
+    Column(modifier = modifier.fillMaxWidth()) {
+        Text(text = "Merged requests", style = MaterialTheme.typography.titleMedium)
+        Text(
+            text = "Calls: ${stats.sumOf { it.calls }}, Saved: ${stats.sumOf { it.saved }}",
+            style = MaterialTheme.typography.bodyMedium,
+        )
+        Text(
+            text = stats.joinToString(separator = "\n") { "${it.endpoint}: ${it.saved}/${it.calls}" },
+            style = MaterialTheme.typography.bodySmall,
+        )
+    }
+}
@@ -57,6 +57,9 @@ sealed interface SettingsDestination {
 
     @Serializable
     object WorkInfo: SettingsDestination
+
+    @Serializable
+    object NetworkMetrics: SettingsDestination
 }
 
 fun NavGraphBuilder.settingsGraph(navController: NavController, settingsRepo: SettingsRepository) {
@@ -125,4 +128,8 @@ fun NavGraphBuilder.settingsGraph(navController: NavController, settingsRepo: Se
     composable<SettingsDestination.WorkInfo> {
         WorkInfoPage(onBack = navController::navigateUp)
     }
+
+    composable<SettingsDestination.NetworkMetrics> {
+        NetworkMetricsPage(onBack = navController::navigateUp)
+    }
 }
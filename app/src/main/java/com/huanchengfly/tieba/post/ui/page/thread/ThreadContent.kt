@@ -1,5 +1,6 @@
 package com.huanchengfly.tieba.post.ui.page.thread
 
+import android.os.SystemClock
 import androidx.compose.foundation.clickable
 import androidx.compose.foundation.layout.Arrangement
 import androidx.compose.foundation.layout.Column
@@ -31,10 +32,13 @@ import androidx.compose.material3.TextButton
 import androidx.compose.material3.TopAppBarScrollBehavior
 import androidx.compose.material3.VerticalDivider
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.DisposableEffect
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.NonRestartableComposable
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.remember
 import androidx.compose.runtime.rememberCoroutineScope
+import androidx.compose.runtime.snapshotFlow
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.platform.LocalContext
@@ -46,12 +50,22 @@ import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
 import androidx.compose.ui.util.fastForEach
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import androidx.media3.common.util.UnstableApi
+import com.bumptech.glide.Glide
+import com.bumptech.glide.load.model.GlideUrl
 import com.huanchengfly.tieba.post.MacrobenchmarkConstant.testColumn
 import com.huanchengfly.tieba.post.PaddingNone
 import com.huanchengfly.tieba.post.R
+import com.huanchengfly.tieba.post.components.VideoPrefetcher
+import com.huanchengfly.tieba.post.components.glide.ImagePrefetcher
+import com.huanchengfly.tieba.post.components.glide.TbGlideUrl
+import com.huanchengfly.tieba.post.components.glide.ThumbnailUrl
 import com.huanchengfly.tieba.post.navigateDebounced
 import com.huanchengfly.tieba.post.theme.TiebaLiteTheme
+import com.huanchengfly.tieba.post.ui.common.PbContentRender
 import com.huanchengfly.tieba.post.ui.common.PbContentText
+import com.huanchengfly.tieba.post.ui.common.PicContentRender
+import com.huanchengfly.tieba.post.ui.common.VideoContentRender
 import com.huanchengfly.tieba.post.ui.common.theme.compose.clickableNoIndication
 import com.huanchengfly.tieba.post.ui.models.PostData
 import com.huanchengfly.tieba.post.ui.models.SubPostItemData
@@ -76,7 +90,12 @@ import com.huanchengfly.tieba.post.ui.widgets.compose.states.DefaultEmptyScreen
 import com.huanchengfly.tieba.post.ui.widgets.compose.states.StateScreenScope
 import com.huanchengfly.tieba.post.ui.widgets.compose.stickyHeaderBackground
 import com.huanchengfly.tieba.post.utils.TiebaUtil
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.flow.collectLatest
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import kotlin.math.abs
 
 sealed class Type(val key: String) {
     object FirstPost: Type("FirstPost")
@@ -95,6 +114,142 @@ private fun LazyListState.firstVisiblePostOffset(): Int {
     return postItem?.offset ?: 0
 }
 
+/**
+ * Number of posts below the viewport to build content ahead of scrolling
+ * */
+private const val PREFETCH_POSTS = 5
+
+/**
+ * Build lazy content of posts below the viewport in background, see [PostData.contentRenders].
+ * */
+@Composable
+private fun PostContentPrefetcher(lazyListState: LazyListState, posts: ThreadPostList) {
+    LaunchedEffect(lazyListState, posts) {
+        snapshotFlow {
+            lazyListState.layoutInfo.visibleItemsInfo.lastOrNull { it.contentType === Type.Post }?.key
+        }
+        .collectLatest { lastVisibleKey ->
+            val lastVisible = (lastVisibleKey as? Long)?.let(posts::indexOfId) ?: -1
+            val end = minOf(lastVisible + PREFETCH_POSTS, posts.lastIndex)
+            withContext(Dispatchers.Default) {
+                for (i in lastVisible + 1..end) {
+                    ensureActive()
+                    val post = posts[i]
+                    post.contentRenders.prefetch()
+                    post.subPosts?.fastForEach { it.abstractContent?.prefetch() }
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Min and max number of floors to prefetch images, grows with scrolling speed
+ * */
+private const val PREFETCH_IMAGE_FLOORS_MIN = 2
+private const val PREFETCH_IMAGE_FLOORS_MAX = 8
+
+/**
+ * Prefetch window covers floors scrolled through in this duration at current speed
+ * */
+private const val PREFETCH_IMAGE_LOOKAHEAD_MILLIS = 1500L
+
+private fun List<PbContentRender>.pictures(): List<GlideUrl> = mapNotNull {
+    if (it is PicContentRender && it.picUrl.isNotBlank()) {
+        if (it.picId.isNotEmpty()) ThumbnailUrl(it.picUrl, it.picId) else TbGlideUrl(it.picUrl)
+    } else {
+        null
+    }
+}
+
+/**
+ * Prefetch images of floors ahead of scrolling direction, see [ImagePrefetcher].
+ * */
+@Composable
+private fun PostImagePrefetcher(lazyListState: LazyListState, posts: ThreadPostList) {
+    val context = LocalContext.current
+    val prefetcher = remember(context) { ImagePrefetcher(Glide.with(context)) }
+    DisposableEffect(prefetcher) {
+        onDispose { prefetcher.clear() }
+    }
+
+    LaunchedEffect(lazyListState, posts) {
+        var lastFirstVisible = -1
+        var lastTime = 0L
+        var floorsPerSecond = 0f
+
+        snapshotFlow {
+            val visiblePosts = lazyListState.layoutInfo.visibleItemsInfo.filter { it.contentType === Type.Post }
+            val first = (visiblePosts.firstOrNull()?.key as? Long)?.let(posts::indexOfId) ?: -1
+            val last = (visiblePosts.lastOrNull()?.key as? Long)?.let(posts::indexOfId) ?: -1
+            first to last
+        }
+        .collectLatest { (first, last) ->
+            if (first == -1 || last == -1) return@collectLatest
+            val now = SystemClock.uptimeMillis()
+            val scrolled = if (lastFirstVisible == -1) 0 else first - lastFirstVisible
+            if (lastTime > 0 && now > lastTime) {
+                // Smooth out the velocity, drops as the list settles
+                floorsPerSecond = floorsPerSecond / 2 + scrolled * 1000f / (now - lastTime) / 2
+            }
+            lastFirstVisible = first
+            lastTime = now
+
+            val floors = (PREFETCH_IMAGE_FLOORS_MIN + abs(floorsPerSecond) * PREFETCH_IMAGE_LOOKAHEAD_MILLIS / 1000)
+                .toInt()
+                .coerceAtMost(PREFETCH_IMAGE_FLOORS_MAX)
+            val window = if (floorsPerSecond < 0) {
+                maxOf(first - floors, 0) until first
+            } else {
+                last + 1..minOf(last + floors, posts.lastIndex)
+            }
+            val (windowPictures, visiblePictures) = withContext(Dispatchers.Default) {
+                window.flatMap { posts[it].contentRenders.value.pictures() } to
+                    (first..last).flatMap { posts[it].contentRenders.value.pictures() }
+            }
+            prefetcher.update(window = windowPictures, visible = visiblePictures)
+        }
+    }
+}
+
+private fun List<PbContentRender>.videos(): List<String> = mapNotNull {
+    (it as? VideoContentRender)?.videoUrl?.takeIf(String::isNotBlank)
+}
+
+/**
+ * Prefetch videos in the viewport on unmetered network, see [VideoPrefetcher].
+ * */
+@androidx.annotation.OptIn(UnstableApi::class)
+@Composable
+private fun PostVideoPrefetcher(lazyListState: LazyListState, posts: ThreadPostList, firstPost: PostData?) {
+    val context = LocalContext.current
+    val coroutineScope = rememberCoroutineScope()
+    val prefetcher = remember(context) { VideoPrefetcher(context, coroutineScope) }
+    DisposableEffect(prefetcher) {
+        onDispose { prefetcher.clear() }
+    }
+
+    LaunchedEffect(lazyListState, posts, firstPost) {
+        snapshotFlow {
+            lazyListState.layoutInfo.visibleItemsInfo.mapNotNull {
+                when (it.contentType) {
+                    Type.FirstPost -> firstPost
+
+                    Type.Post -> (it.key as? Long)?.let(posts::indexOfId)?.takeIf { i -> i != -1 }?.let(posts::get)
+
+                    else -> null
+                }
+            }
+        }
+        .collectLatest { visiblePosts ->
+            val videos = withContext(Dispatchers.Default) {
+                visiblePosts.flatMap { it.contentRenders.value.videos() }
+            }
+            prefetcher.update(videos)
+        }
+    }
+}
+
 @Composable
 fun StateScreenScope.ThreadContent(
     modifier: Modifier = Modifier,
@@ -116,6 +271,10 @@ fun StateScreenScope.ThreadContent(
         state.data.isNotEmpty() && state.sortType == ThreadSortType.BY_ASC
     }
 
+    PostContentPrefetcher(lazyListState, posts = state.data)
+    PostImagePrefetcher(lazyListState, posts = state.data)
+    PostVideoPrefetcher(lazyListState, posts = state.data, firstPost = state.firstPost)
+
     // Container {
         SwipeUpLazyLoadColumn(
             modifier = modifier
@@ -500,7 +659,9 @@ fun PostCard(
                             )
                         }
 
-                        post.contentRenders.fastForEach { it.Render() }
+                        // Hold the content while visible, so it's never rebuilt once evicted
+                        val contentRenders = remember(post.contentRenders) { post.contentRenders.value }
+                        contentRenders.fastForEach { it.Render() }
                     }
 
                     if (post.subPosts == null || post.subPostNumber <= 0 || immersiveMode) return@Card
@@ -585,8 +746,9 @@ private fun SubPostItem(
         shape = MaterialTheme.shapes.extraSmall,
         onClick = { onOpenSubPosts(subPost.id) }
     ) {
+        val abstractContent = subPost.abstractContent!!
         PbContentText(
-            text = subPost.abstractContent!!,
+            text = remember(abstractContent) { abstractContent.value },
             modifier = modifier,
             overflow = TextOverflow.Ellipsis,
             maxLines = 4,
@@ -95,7 +95,6 @@ import androidx.compose.ui.tooling.preview.Preview
 import androidx.compose.ui.unit.Dp
 import androidx.compose.ui.unit.dp
 import androidx.compose.ui.unit.sp
-import androidx.compose.ui.util.fastFirstOrNull
 import androidx.compose.ui.util.trace
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
 import androidx.navigation.NavController
@@ -225,7 +224,7 @@ private fun LazyListState.middleVisiblePost(uiState: ThreadUiState): PostData? =
     }
     // item key is Post ID
     val postId = postItem.key as Long
-    return uiState.data.fastFirstOrNull { p -> p.id == postId } ?: uiState.firstPost
+    return uiState.data.getById(postId) ?: uiState.firstPost
 }
 
 @Composable
@@ -368,7 +367,7 @@ fun ThreadPage(
     )
 
     val onRefreshClicked: () -> Unit = {
-        viewModel.requestLoad(0, postId)
+        viewModel.requestLoad(0, postId, forceRefresh = true)
     }
 
     state.thread?.let { thread ->
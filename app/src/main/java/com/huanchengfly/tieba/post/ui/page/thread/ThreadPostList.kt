@@ -0,0 +1,113 @@
+package com.huanchengfly.tieba.post.ui.page.thread
+
+import androidx.compose.runtime.Immutable
+import com.huanchengfly.tieba.post.ui.models.PostData
+import kotlinx.collections.immutable.PersistentList
+import kotlinx.collections.immutable.PersistentMap
+import kotlinx.collections.immutable.persistentHashMapOf
+import kotlinx.collections.immutable.persistentListOf
+
+/**
+ * Persistent list of posts in a thread, indexed by post ID.
+ *
+ * Posts are kept in two persistent vectors, prepended posts are stored reversed in [head], so
+ * both append and prepend are amortized O(1) with structural sharing. Post updates and lookups by
+ * ID are O(log n). Removal rebuilds the list, it's rare.
+ *
+ * Posts already in this list are ignored when appending or prepending.
+ * */
+@Immutable
+class ThreadPostList private constructor(
+    private val head: PersistentList<PostData>,
+    private val tail: PersistentList<PostData>,
+    // Post ID to position, tail[p] for p >= 0, head[-p - 1] for p < 0
+    private val positions: PersistentMap<Long, Int>
+) : AbstractList<PostData>(), RandomAccess {
+
+    override val size: Int
+        get() = head.size + tail.size
+
+    override fun get(index: Int): PostData {
+        return if (index < head.size) head[head.size - 1 - index] else tail[index - head.size]
+    }
+
+    /**
+     * @return index of the post, -1 if not exists
+     * */
+    fun indexOfId(postId: Long): Int = positions[postId]?.let { it + head.size } ?: -1
+
+    fun getById(postId: Long): PostData? = positions[postId]?.let { if (it >= 0) tail[it] else head[-it - 1] }
+
+    fun containsId(postId: Long): Boolean = positions.containsKey(postId)
+
+    fun append(posts: List<PostData>): ThreadPostList {
+        if (posts.isEmpty()) return this
+        val newTail = tail.builder()
+        val newPositions = positions.builder()
+        posts.forEach {
+            if (!newPositions.containsKey(it.id)) {
+                newPositions[it.id] = newTail.size
+                newTail.add(it)
+            }
+        }
+        return ThreadPostList(head, newTail.build(), newPositions.build())
+    }
+
+    /**
+     * @param posts posts in display order
+     * */
+    fun prepend(posts: List<PostData>): ThreadPostList {
+        if (posts.isEmpty()) return this
+        val newHead = head.builder()
+        val newPositions = positions.builder()
+        for (i in posts.indices.reversed()) {
+            val post = posts[i]
+            if (!newPositions.containsKey(post.id)) {
+                newHead.add(post)
+                newPositions[post.id] = -newHead.size
+            }
+        }
+        return ThreadPostList(newHead.build(), tail, newPositions.build())
+    }
+
+    /**
+     * Replace the post with same ID, ignored if not exists.
+     * */
+    fun replace(post: PostData): ThreadPostList = update(post.id) { post }
+
+    inline fun update(postId: Long, transform: (PostData) -> PostData): ThreadPostList {
+        val post = getById(postId) ?: return this
+        return set(transform(post))
+    }
+
+    @PublishedApi
+    internal fun set(post: PostData): ThreadPostList {
+        val position = positions[post.id] ?: return this
+        return if (position >= 0) {
+            ThreadPostList(head, tail.set(position, post), positions)
+        } else {
+            ThreadPostList(head.set(-position - 1, post), tail, positions)
+        }
+    }
+
+    fun remove(postId: Long): ThreadPostList {
+        if (!containsId(postId)) return this
+        return of(filter { it.id != postId })
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (other === this) return true
+        // Fast path, unchanged vectors
+        if (other is ThreadPostList && other.head === head && other.tail === tail) return true
+        return super.equals(other)
+    }
+
+    override fun hashCode(): Int = super.hashCode()
+
+    companion object {
+
+        val Empty = ThreadPostList(persistentListOf(), persistentListOf(), persistentHashMapOf())
+
+        fun of(posts: List<PostData>): ThreadPostList = Empty.append(posts)
+    }
+}
@@ -20,7 +20,7 @@ data class ThreadUiState(
     val firstPost: PostData? = null,
     val thread: ThreadInfoData? = null,
     val tbs: String? = null,
-    val data: List<PostData> = emptyList(),
+    val data: ThreadPostList = ThreadPostList.Empty,
     val latestPosts: List<PostData>? = null,
     val pageData: PageData = PageData()
 ) : UiState {
@@ -9,8 +9,6 @@ import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.setValue
 import androidx.compose.ui.res.stringResource
-import androidx.compose.ui.util.fastFilter
-import androidx.compose.ui.util.fastMap
 import androidx.lifecycle.SavedStateHandle
 import androidx.lifecycle.viewModelScope
 import androidx.navigation.NavController
@@ -160,36 +158,69 @@ class ThreadViewModel @Inject constructor(
         }
     }
 
-    fun requestLoad(page: Int = 1, postId: Long, scrollToReply: Boolean = true) {
+    /**
+     * @param forceRefresh skip the local response cache, e.g. refresh requested by user
+     * */
+    fun requestLoad(page: Int = 1, postId: Long, scrollToReply: Boolean = true, forceRefresh: Boolean = false) {
         if (isRefreshing) return // Check refreshing
 
         val oldState = _uiState.updateAndGet { it.copy(isRefreshing = true, error = null) }
         launchInVM {
             val sortType = oldState.sortType
-            val fromType = from.takeIf { it == FROM_STORE }.orEmpty()
-            val response = threadRepo
-                .pbPage(threadId, page, postId, forumId, oldState.seeLz, sortType, from = fromType)
-            val pageData = response.page.let {
-                it.mapToUiModel(
-                    previous = it.current_page,
-                    nextPagePostId = response.nextPagePostId,
-                    hasPrevious = if (sortType != ThreadSortType.BY_DESC) {
-                        it.has_prev != 0 // Bug: Server returns wrong has_prev when FROM_STORE with seeLz enabled
-                    } else {
-                        // Check has previous manually if sort by DESC
-                        it.total_page > 1 && it.current_page < it.total_page
-                    }
-                )
+            // Render the offline snapshot first, then reconcile with network
+            val snapshot = if (forceRefresh) null else {
+                threadRepo.pbPageSnapshot(threadId, page, postId, oldState.seeLz, sortType)
             }
-            _uiState.update {
-                it.updateStateFrom(response).copy(pageData = pageData)
+            if (snapshot != null) {
+                // Block loading more until reconciled, snapshot posts will be replaced
+                _uiState.update { it.updatePageFrom(snapshot, sortType).copy(isLoadingMore = true) }
+                if (scrollToReply) {
+                    sendUiEvent(ThreadUiEvent.LoadSuccess(page, postId))
+                }
             }
-            if (scrollToReply) {
+
+            val fromType = from.takeIf { it == FROM_STORE }.orEmpty()
+            val response = threadRepo.pbPageWithRevalidation(
+                threadId, page, postId, forumId, oldState.seeLz, sortType, from = fromType, forceRefresh = forceRefresh
+            )
+            // First post of the snapshot is outdated, take the one from network
+            val loaded = _uiState.updateAndGet {
+                it.updatePageFrom(response.value, sortType, keepFirstPost = snapshot == null)
+            }
+            if (scrollToReply && snapshot == null) {
                 sendUiEvent(ThreadUiEvent.LoadSuccess(page, postId))
             }
+
+            // Page was served stale from the response cache, reconcile with the revalidated one
+            val revalidated = response.awaitRevalidated() ?: return@launchInVM
+            _uiState.update {
+                // Skip if the page has been reloaded or grown since
+                val unchanged = it.data === loaded.data && !it.isRefreshing && !it.isLoadingMore
+                if (unchanged) it.updatePageFrom(revalidated, sortType, keepFirstPost = false) else it
+            }
         }
     }
 
+    private fun ThreadUiState.updatePageFrom(
+        response: PbPageUiResponse,
+        sortType: Int,
+        keepFirstPost: Boolean = true
+    ): ThreadUiState {
+        val pageData = response.page.let {
+            it.mapToUiModel(
+                previous = it.current_page,
+                nextPagePostId = response.nextPagePostId,
+                hasPrevious = if (sortType != ThreadSortType.BY_DESC) {
+                    it.has_prev != 0 // Bug: Server returns wrong has_prev when FROM_STORE with seeLz enabled
+                } else {
+                    // Check has previous manually if sort by DESC
+                    it.total_page > 1 && it.current_page < it.total_page
+                }
+            )
+        }
+        return updateStateFrom(response, keepFirstPost).copy(pageData = pageData)
+    }
+
     fun requestLoadFirstPage() {
         if (isRefreshing) return // Check refreshing
 
@@ -252,7 +283,7 @@ class ThreadViewModel @Inject constructor(
             val postId = state.data.first().id
             val response = threadRepo
                 .pbPage(threadId, page, postId, forumId, state.seeLz, sortType, back = true)
-            val newData = concatNewPostList(old = state.data, new = response.posts, asc = false)
+            val newData = state.data.prepend(response.posts)
             val pageData = response.page.mapToUiModel(
                 previous = response.page.current_page,
                 current = state.pageData.current,
@@ -263,9 +294,7 @@ class ThreadViewModel @Inject constructor(
                 it.copy(isLoadingMore = false, thread = response.thread, data = newData, pageData = pageData)
             }
             // Scroll to previous floor
-            val previousIndex = withContext(Dispatchers.Default) {
-                newData.indexOfFirst { p -> p.floor == state.data[0].floor }
-            }
+            val previousIndex = newData.indexOfId(state.data[0].id)
             // Check no visible post(covered by BottomBar) || empty new data
             if (offset > 0 && previousIndex > 0) {
                 emitUiEvent(ThreadUiEvent.LoadPreviousSuccess(previousIndex, -offset))
@@ -282,7 +311,7 @@ class ThreadViewModel @Inject constructor(
             val nextPage = state.pageData.nextPage(sortType)
             val response = threadRepo
                 .pbPage(threadId, nextPage, state.pageData.nextPagePostId, forumId, state.seeLz, sortType)
-            val newData = concatNewPostList(old = state.data, new = response.posts)
+            val newData = state.data.append(response.posts)
             val pageData = response.page.mapToUiModel(
                 previous = state.pageData.previous,
                 nextPagePostId = response.nextPagePostId,
@@ -310,9 +339,10 @@ class ThreadViewModel @Inject constructor(
             forumId = forumId,
             seeLz = state.seeLz,
             sortType = state.sortType,
-            lastPostId = curLatestPostId
+            lastPostId = curLatestPostId,
+            forceRefresh = true
         )
-        val data = concatNewPostList(state.data, response.posts)
+        val data = state.data.append(response.posts)
         val pageData = response.page.mapToUiModel(
             previous = state.pageData.previous,
             nextPagePostId = response.nextPagePostId,
@@ -338,33 +368,27 @@ class ThreadViewModel @Inject constructor(
                 state.data.lastOrNull()?.floor ?: 1  // ASC  -> last
             }
 
-            val response = threadRepo.pbPage(threadId, page = 0, postId = newPostId, forumId = forumId)
+            val response = threadRepo.pbPage(threadId, page = 0, postId = newPostId, forumId = forumId, forceRefresh = true)
             val hasNewPost: Boolean
             val newState = withContext(Dispatchers.Default) {
                 val postData = response.posts
-                val oldPostData = state.data
-                val oldPostIds = oldPostData.mapTo(HashSet()) { it.id }
-                hasNewPost = postData.any { !oldPostIds.contains(it.id) }
                 val firstLatestPost = postData.first()
                 val isContinuous = firstLatestPost.floor == curLatestPostFloor + 1
                 val continuous = isContinuous || response.page.current_page == state.pageData.current
 
-                val replacePostIndexes = oldPostData.mapIndexedNotNull { index, old ->
-                    val replaceItemIndex = postData.indexOfFirst { it.id == old.id }
-                    if (replaceItemIndex != -1) index to replaceItemIndex else null
-                }
-                val newPost = oldPostData.mapIndexed { index, oldItem ->
-                    val replaceIndex = replacePostIndexes.firstOrNull { it.first == index }
-                    if (replaceIndex != null) postData[replaceIndex.second] else oldItem
-                }
-                val addPosts = postData.filter { old ->
-                    !newPost.any { new -> new.id == old.id }
+                // Replace loaded posts, collect new posts
+                var newPost = state.data
+                val addPosts = postData.filter { post ->
+                    val loaded = newPost.containsId(post.id)
+                    if (loaded) newPost = newPost.replace(post)
+                    !loaded
                 }
+                hasNewPost = addPosts.isNotEmpty()
                 ensureActive()
 
                 when {
                     hasNewPost && continuous -> state.copy(
-                        data = if (isDesc) addPosts.reversed() + newPost else newPost + addPosts,
+                        data = if (isDesc) newPost.prepend(addPosts.asReversed()) else newPost.append(addPosts),
                         latestPosts = null
                     )
 
@@ -523,7 +547,7 @@ class ThreadViewModel @Inject constructor(
         .onFailure { e -> sendUiEvent(ThreadUiEvent.DeletePostFailed(message = e.getErrorMessage())) }
         .onSuccess {
             // Remove this post from data list
-            _uiState.update { it.copy(data = it.data.fastFilter { p -> p.id != post.id }) }
+            _uiState.update { it.copy(data = it.data.remove(post.id)) }
             sendUiEvent(ThreadUiEvent.DeletePostSuccess)
         }
     }
@@ -571,7 +595,7 @@ class ThreadViewModel @Inject constructor(
             pid = lastVisiblePost?.takeIf { it.id > 0 && it.floor > 5 }?.id ?: 0, // 大于 5 楼
             timestamp = historyTimeStamp,
         )
-        historyRepo.saveHistory(history)
+        historyRepo.saveHistory(history, content = state.firstPost?.plainText)
     }
 
     fun onShareThread() = TiebaUtil.shareThread(context, currentState.thread?.title?: "", threadId)
@@ -641,19 +665,27 @@ class ThreadViewModel @Inject constructor(
         )
     }
 
-    private fun ThreadUiState.updateStateFrom(response: PbPageUiResponse): ThreadUiState {
+    /**
+     * @param keepFirstPost use old firstPost if possible, false if the old one came from an outdated
+     * response, e.g. the offline snapshot
+     * */
+    private fun ThreadUiState.updateStateFrom(response: PbPageUiResponse, keepFirstPost: Boolean = true): ThreadUiState {
         if (response.user == null) {
             hideReply = true
         }
 
-        val firstPost = this.firstPost ?: response.firstPost // use old firstPost if possible
+        val firstPost = if (keepFirstPost) {
+            this.firstPost ?: response.firstPost
+        } else {
+            response.firstPost ?: this.firstPost
+        }
         return this.copy(
             isRefreshing = false,
             isLoadingMore = false,
             isLoadingLatestReply = false,
             error = null,
             user = response.user,
-            data = response.posts,
+            data = ThreadPostList.of(response.posts),
             firstPost = firstPost,
             tbs = response.tbs,
             thread = response.thread.copy(firstPostId = firstPost?.id ?: firstPostId),
@@ -715,22 +747,8 @@ class ThreadViewModel @Inject constructor(
             }
 
         private fun ThreadUiState.updateLikedPost(postId: Long, liked: Boolean, loading: Boolean) = copy(
-            data = this.data.fastMap { post ->
-                if (post.id == postId) post.updateLikesCount(liked, loading) else post
-            }
+            data = this.data.update(postId) { post -> post.updateLikesCount(liked, loading) }
         )
-
-        private suspend fun concatNewPostList(
-            old: List<PostData>,
-            new: List<PostData>,
-            asc: Boolean = true
-        ): List<PostData> = withContext(Dispatchers.Default) {
-            val postIds = old.mapTo(HashSet()) { it.id }
-            new.filterNot { postIds.contains(it.id) } // filter out old post
-                .let { new ->
-                    if (asc) old + new else new + old
-                }
-        }
     }
 }
 
@@ -79,6 +79,7 @@ import com.huanchengfly.tieba.post.ui.utils.getPhotoViewData
 import com.huanchengfly.tieba.post.ui.widgets.compose.video.VideoThumbnail
 import com.huanchengfly.tieba.post.utils.DateTimeUtils
 import com.huanchengfly.tieba.post.utils.EmoticonUtil.emoticonString
+import com.huanchengfly.tieba.post.utils.ImageUtil
 import com.huanchengfly.tieba.post.utils.ThemeUtil
 import com.huanchengfly.tieba.post.utils.TiebaUtil
 import kotlinx.collections.immutable.persistentListOf
@@ -402,6 +403,9 @@ fun ThreadMedia(
                                     imageUrl = medias[index].getPicUrl(habitSettings.imageLoadType),
                                     dimensions = IntSize(width = medias[index].width, height = medias[index].height),
                                     contentScale = ContentScale.Crop,
+                                    picId = remember(medias[index]) {
+                                        medias[index].originPic.takeIf { it.isNotEmpty() }?.let(ImageUtil::getPicId)
+                                    },
                                     photoViewDataProvider = {
                                         getPhotoViewData(
                                             medias = medias.toImmutableList(),
@@ -35,6 +35,7 @@ import androidx.compose.ui.Modifier
 import androidx.compose.ui.graphics.graphicsLayer
 import androidx.compose.ui.input.pointer.pointerInput
 import androidx.compose.ui.layout.ContentScale
+import androidx.compose.ui.layout.onSizeChanged
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.res.painterResource
 import androidx.compose.ui.res.stringResource
@@ -42,16 +43,20 @@ import androidx.compose.ui.unit.IntSize
 import androidx.compose.ui.unit.dp
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
 import com.bumptech.glide.Glide
+import com.bumptech.glide.Priority
 import com.bumptech.glide.integration.compose.GlideImage
 import com.bumptech.glide.integration.compose.Placeholder
 import com.bumptech.glide.integration.compose.placeholder
 import com.bumptech.glide.load.model.GlideUrl
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy
 import com.huanchengfly.tieba.post.LocalHabitSettings
 import com.huanchengfly.tieba.post.LocalUISettings
 import com.huanchengfly.tieba.post.R
 import com.huanchengfly.tieba.post.aspectRatio
 import com.huanchengfly.tieba.post.components.NetworkObserver
 import com.huanchengfly.tieba.post.components.glide.TbGlideUrl
+import com.huanchengfly.tieba.post.components.glide.ThumbnailUrl
+import com.huanchengfly.tieba.post.components.glide.ThumbnailUrl.Companion.thumbnail
 import com.huanchengfly.tieba.post.models.PhotoViewData
 import com.huanchengfly.tieba.post.theme.LocalExtendedColorScheme
 import com.huanchengfly.tieba.post.toastShort
@@ -60,6 +65,7 @@ import com.huanchengfly.tieba.post.ui.common.theme.compose.clickableNoIndication
 import com.huanchengfly.tieba.post.ui.page.photoview.PhotoViewActivity
 import com.huanchengfly.tieba.post.utils.GlideUtil
 import com.huanchengfly.tieba.post.utils.ImageUtil
+import kotlin.math.max
 
 val CircularLoadingPlaceholder: Placeholder = placeholder {
     Box(
@@ -110,6 +116,15 @@ private fun shouldLoadImage(): Boolean {
     }
 }
 
+/**
+ * Thumbnails of fitting images must fit the bucket, cropped ones must cover it.
+ * */
+private fun ContentScale.downsampleStrategy(): DownsampleStrategy = when (this) {
+    ContentScale.Fit, ContentScale.Inside -> DownsampleStrategy.CENTER_INSIDE
+
+    else -> DownsampleStrategy.CENTER_OUTSIDE
+}
+
 @NonRestartableComposable
 @Composable
 fun ErrorImage(modifier: Modifier = Modifier, tip: String) {
@@ -183,6 +198,7 @@ fun NetworkImage(
     dimensions: IntSize? = null,
     contentDescription: String? = null,
     contentScale: ContentScale = ContentScale.Crop,
+    picId: String? = null,
     photoViewDataProvider: (() -> PhotoViewData?)? = null,
 ) {
     val context = LocalContext.current
@@ -191,7 +207,14 @@ fun NetworkImage(
     var isLongPressing by remember { mutableStateOf(false) }
 
     val model = remember {
-        if (imageUrl.isNotEmpty() && imageUrl.isNotBlank()) TbGlideUrl(imageUrl) else null
+        when {
+            imageUrl.isEmpty() || imageUrl.isBlank() -> null
+
+            // Load downsampled thumbnail shared with other pages
+            !picId.isNullOrEmpty() -> ThumbnailUrl(imageUrl, picId)
+
+            else -> TbGlideUrl(imageUrl)
+        }
     }
 
     if (model == null) {
@@ -230,18 +253,37 @@ fun NetworkImage(
         // Note: 用户报告 'Glide 网络恢复时自动重试' 会在一加系统中失效.
         // 添加 placeholderRetry 让用户手动重试加载图片
         var retryCount by remember { mutableIntStateOf(0) }
+        // Size of this image, the thumbnail is loaded once it's measured
+        var thumbnailSize by remember { mutableIntStateOf(0) }
         key(model, retryCount) {
-            GlideImage(
-                model = model,
-                contentDescription = contentDescription,
-                modifier = Modifier.matchParentSize(),
-                contentScale = contentScale,
-                colorFilter = if (darkenImage) GlideUtil.DarkFilter else null,
-                loading = CircularLoadingPlaceholder,
-                failure = placeholderRetry { retryCount++ },
-                // transition = CrossFade
-            ) {
-                if (shouldLoadImage || retryCount > 0) it else it.onlyRetrieveFromCache(true)
+            val image: @Composable (Modifier, thumbnailSize: Int) -> Unit = { imageModifier, thumbnailSize ->
+                GlideImage(
+                    model = model,
+                    contentDescription = contentDescription,
+                    modifier = imageModifier,
+                    contentScale = contentScale,
+                    colorFilter = if (darkenImage) GlideUtil.DarkFilter else null,
+                    loading = CircularLoadingPlaceholder,
+                    failure = placeholderRetry { retryCount++ },
+                    // transition = CrossFade
+                ) {
+                    // On-screen loads go before prefetches, see ImagePrefetcher
+                    var request = it.priority(Priority.HIGH)
+                    if (thumbnailSize > 0) request = request.thumbnail(thumbnailSize, contentScale.downsampleStrategy())
+                    if (shouldLoadImage || retryCount > 0) request else request.onlyRetrieveFromCache(true)
+                }
+            }
+
+            if (model is ThumbnailUrl) {
+                Box(
+                    modifier = Modifier
+                        .matchParentSize()
+                        .onSizeChanged { thumbnailSize = max(it.width, it.height) }
+                ) {
+                    if (thumbnailSize > 0) image(Modifier.fillMaxSize(), thumbnailSize)
+                }
+            } else {
+                image(Modifier.matchParentSize(), 0)
             }
         }
     }
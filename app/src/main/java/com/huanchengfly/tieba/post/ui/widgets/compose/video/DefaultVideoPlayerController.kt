@@ -4,6 +4,8 @@ import android.annotation.SuppressLint
 import android.content.ContentResolver
 import android.content.Context
 import android.net.Uri
+import android.os.SystemClock
+import android.util.Log
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.State
 import androidx.compose.runtime.collectAsState
@@ -17,15 +19,18 @@ import androidx.media3.datasource.DefaultDataSource
 import androidx.media3.exoplayer.ExoPlayer
 import androidx.media3.exoplayer.source.MediaSource
 import androidx.media3.exoplayer.source.ProgressiveMediaSource
+import com.huanchengfly.tieba.post.App
 import com.huanchengfly.tieba.post.R
 import com.huanchengfly.tieba.post.components.MediaCache
 import com.huanchengfly.tieba.post.toastShort
 import com.huanchengfly.tieba.post.ui.widgets.compose.video.util.FlowDebouncer
 import com.huanchengfly.tieba.post.ui.widgets.compose.video.util.set
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
 import kotlinx.coroutines.cancel
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
@@ -72,6 +77,16 @@ internal class DefaultVideoPlayerController(
 
     private var autoHideControllerJob: Job? = null
 
+    /**
+     * Uptime when network video prepared, 0 once its first frame rendered
+     * */
+    private var preparedTime = 0L
+
+    /**
+     * Whether the start of network video is cached when prepared, see [MediaCache.metrics]
+     * */
+    private var startCached: Deferred<Boolean>? = null
+
     private val playerListener = object : Player.Listener {
 
         override fun onPlaybackStateChanged(playbackState: Int) {
@@ -80,6 +95,14 @@ internal class DefaultVideoPlayerController(
             }
             if (playbackState == Player.STATE_ENDED) {
                 showControls(autoHide = false)
+                onPlaybackEnded()
+            }
+        }
+
+        override fun onRenderedFirstFrame() {
+            if (preparedTime > 0) {
+                onFirstFrameRendered(SystemClock.uptimeMillis() - preparedTime)
+                preparedTime = 0
             }
         }
 
@@ -249,6 +272,12 @@ internal class DefaultVideoPlayerController(
             }
         }
 
+        (source as? VideoPlayerSource.Network)?.let {
+            val url = it.url
+            // Cache lookup may hit the disk, keep it off the main thread
+            startCached = coroutineScope.async(Dispatchers.IO) { MediaCache.isStartCached(context, url) }
+            preparedTime = SystemClock.uptimeMillis()
+        }
         exoPlayer.setMediaSource(createVideoSource())
         previewExoPlayer.setMediaSource(createVideoSource())
 
@@ -256,6 +285,25 @@ internal class DefaultVideoPlayerController(
         previewExoPlayer.prepare()
     }
 
+    @androidx.annotation.OptIn(androidx.media3.common.util.UnstableApi::class)
+    private fun onFirstFrameRendered(elapsedMillis: Long) {
+        val startCached = startCached ?: return
+        coroutineScope.launch {
+            val cached = startCached.await()
+            MediaCache.metrics.onFirstFrame(elapsedMillis, cached)
+            Log.i(TAG, "onFirstFrameRendered: ${elapsedMillis}ms, startCached: $cached, ${MediaCache.metrics}")
+        }
+    }
+
+    @androidx.annotation.OptIn(androidx.media3.common.util.UnstableApi::class)
+    private fun onPlaybackEnded() {
+        val url = (source as? VideoPlayerSource.Network)?.url ?: return
+        // Fully watched, evict it first
+        App.AppBackgroundScope.launch {
+            MediaCache.markWatched(context, url)
+        }
+    }
+
     fun previewSeekTo(position: Long) {
         // position is very accurate. Thumbnail doesn't have to be.
         // Roll to the nearest "even" integer.
@@ -292,6 +340,8 @@ internal class DefaultVideoPlayerController(
     }
 
     companion object {
+        private const val TAG = "VideoPlayerController"
+
         private fun Lazy<ExoPlayer>.release() {
             if (isInitialized()) {
                 value.release()
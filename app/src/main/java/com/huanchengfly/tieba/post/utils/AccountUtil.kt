@@ -8,6 +8,9 @@ import androidx.compose.runtime.staticCompositionLocalOf
 import androidx.work.WorkRequest
 import com.huanchengfly.tieba.post.App
 import com.huanchengfly.tieba.post.R
+import com.huanchengfly.tieba.post.api.ParamSnapshot
+import com.huanchengfly.tieba.post.api.models.protos.Anti
+import com.huanchengfly.tieba.post.api.models.protos.User
 import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaNotLoggedInException
 import com.huanchengfly.tieba.post.arch.shareInBackground
 import com.huanchengfly.tieba.post.components.ShortcutInitializer
@@ -31,6 +34,7 @@ import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.flow.flatMapMerge
 import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.onEach
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
 
@@ -109,6 +113,8 @@ class AccountUtil private constructor(context: Context) {
         .flatMapMerge { uid ->
             if (uid != -1L) accountDao.observeById(uid) else flowOf(null)
         }
+        // Rebuild request parameters before the switched account is visible to collectors
+        .onEach { ParamSnapshot.invalidate(account = it) }
         .shareInBackground(SharingStarted.Eagerly)
 
     val allAccounts: SharedFlow<List<Account>> = accountDao.observeAll()
@@ -181,9 +187,22 @@ class AccountUtil private constructor(context: Context) {
             Log.i(TAG, "onRefreshCurrent: Cache of ${account.uid} expired for ${duration / 1000}s")
         }
 
-        val (user, anti) = networkDataSource.loadUserProfile(uid = account.uid)
+        val response = networkDataSource.loadUserProfile(uid = account.uid, forceRefresh = force)
+        val updated = account.updateProfile(response.value)
+        accountDao.upsert(account = updated)
+        // Profile was served stale from the response cache, save the revalidated one
+        scope.launch {
+            val revalidated = response.awaitRevalidated() ?: return@launch
+            val latest = accountDao.getById(account.uid) ?: return@launch
+            accountDao.upsert(account = latest.updateProfile(revalidated))
+        }
+        return updated
+    }
+
+    private fun Account.updateProfile(profile: Pair<User, Anti?>): Account {
+        val (user, anti) = profile
         val birthday = user.birthday_info
-        val updated = account.copy(
+        return copy(
             nickname = user.nameShow,
             portrait = user.portrait,
             intro = user.intro,
@@ -192,17 +211,15 @@ class AccountUtil private constructor(context: Context) {
             posts = user.post_num.getShortNumString(),
             threads = user.thread_num.getShortNumString(),
             concerned = user.concern_num.getShortNumString(),
-            tbAge = user.tb_age.toFloatOrNull() ?: account.tbAge,
-            age = birthday?.age?: account.age,
+            tbAge = user.tb_age.toFloatOrNull() ?: tbAge,
+            age = birthday?.age ?: age,
             birthdayShow = birthday?.birthday_show_status == 1,
-            birthdayTime = birthday?.birthday_time ?: account.birthdayTime,
+            birthdayTime = birthday?.birthday_time ?: birthdayTime,
             constellation = birthday?.constellation,
             tiebaUid = user.tieba_uid,
             lastUpdate = System.currentTimeMillis(),
             blockDays = anti?.days_tofree?.takeIf { anti.block_stat == 1 } ?: 0,
         )
-        accountDao.upsert(account = updated)
-        return updated
     }
 
     fun saveNewAccount(context: Context, account: Account) = scope.launch(Dispatchers.Main) {
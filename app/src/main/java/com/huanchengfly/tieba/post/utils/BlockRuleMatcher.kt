@@ -0,0 +1,233 @@
+package com.huanchengfly.tieba.post.utils
+
+import androidx.annotation.VisibleForTesting
+import com.huanchengfly.tieba.post.models.database.dao.TypedKeyword
+import java.util.regex.PatternSyntaxException
+
+/**
+ * Compiled snapshot of keyword blocking rules.
+ *
+ * All literal keywords of both lists are compiled into one case-folded Aho-Corasick automaton,
+ * regex rules of each list are merged into a single alternation. Checking a content string costs
+ * one scan regardless of how many rules there are.
+ *
+ * Instances are immutable and safe to share between threads.
+ *
+ * @see BlockRuleMatcher.compile
+ * */
+class BlockRuleMatcher private constructor(
+    private val literals: LiteralAutomaton?,
+    private val whiteRegex: List<Regex>,
+    private val blackRegex: List<Regex>,
+) {
+
+    val isEmpty: Boolean
+        get() = literals == null && whiteRegex.isEmpty() && blackRegex.isEmpty()
+
+    /**
+     * @return true if any of [contents] matches the blacklist and none of them matches the
+     * whitelist. Note that whitelist has the highest priority.
+     * */
+    fun isBlocked(vararg contents: String): Boolean {
+        if (isEmpty) return false
+
+        var blocked = false
+        for (content in contents) {
+            when (match(content)) {
+                MATCH_WHITE -> return false
+
+                MATCH_BLACK -> blocked = true
+            }
+        }
+        return blocked
+    }
+
+    /**
+     * Evaluates whitelist and blacklist against [content] in one pass.
+     *
+     * @return [MATCH_WHITE] if whitelisted, [MATCH_BLACK] if blacklisted only, otherwise [MATCH_NONE]
+     * */
+    fun match(content: String): Int {
+        if (content.isEmpty()) return MATCH_NONE
+
+        var mask = literals?.scan(content) ?: MATCH_NONE
+        if (mask and MATCH_WHITE != 0) return MATCH_WHITE
+
+        if (whiteRegex.any { it.containsMatchIn(content) }) return MATCH_WHITE
+
+        if (mask and MATCH_BLACK == 0 && blackRegex.any { it.containsMatchIn(content) }) {
+            mask = MATCH_BLACK
+        }
+        return mask
+    }
+
+    /**
+     * Case-insensitive Aho-Corasick automaton, children of each state are stored as sorted
+     * [CharArray] so lookups are a binary search without boxing.
+     * */
+    private class LiteralAutomaton(
+        private val childChars: Array<CharArray>,
+        private val childStates: Array<IntArray>,
+        private val fail: IntArray,
+        private val output: IntArray,
+    ) {
+
+        private fun next(state: Int, c: Char): Int {
+            var s = state
+            while (true) {
+                val i = childChars[s].binarySearch(c)
+                if (i >= 0) return childStates[s][i]
+                if (s == ROOT) return ROOT
+                s = fail[s]
+            }
+        }
+
+        /**
+         * @return matched rule mask of [content], returns early once whitelist matched
+         * */
+        fun scan(content: String): Int {
+            var mask = output[ROOT]
+            var state = ROOT
+            for (c in content) {
+                state = next(state, foldCase(c))
+                mask = mask or output[state]
+                if (mask and MATCH_WHITE != 0) return mask
+            }
+            return mask
+        }
+    }
+
+    private class TrieBuilder {
+        val children = ArrayList<HashMap<Char, Int>>().apply { add(HashMap()) }
+        val output = ArrayList<Int>().apply { add(MATCH_NONE) }
+
+        fun add(keyword: String, flag: Int) {
+            var state = ROOT
+            for (c in keyword) {
+                val folded = foldCase(c)
+                state = children[state].getOrPut(folded) {
+                    children.add(HashMap())
+                    output.add(MATCH_NONE)
+                    children.lastIndex
+                }
+            }
+            output[state] = output[state] or flag
+        }
+
+        fun build(): LiteralAutomaton {
+            val size = children.size
+            val childChars = arrayOfNulls<CharArray>(size)
+            val childStates = arrayOfNulls<IntArray>(size)
+            for (state in 0 until size) {
+                val sorted = children[state].entries.sortedBy { it.key }
+                childChars[state] = CharArray(sorted.size) { sorted[it].key }
+                childStates[state] = IntArray(sorted.size) { sorted[it].value }
+            }
+
+            val fail = IntArray(size)
+            val output = output.toIntArray()
+            // Breadth-first so failure state of parent is always resolved first
+            val queue = ArrayDeque<Int>()
+            children[ROOT].values.forEach { queue.addLast(it) }
+            while (queue.isNotEmpty()) {
+                val state = queue.removeFirst()
+                for ((c, child) in children[state]) {
+                    var f = fail[state]
+                    var target = ROOT
+                    while (true) {
+                        val i = childChars[f]!!.binarySearch(c)
+                        if (i >= 0 && childStates[f]!![i] != child) {
+                            target = childStates[f]!![i]
+                            break
+                        }
+                        if (f == ROOT) break
+                        f = fail[f]
+                    }
+                    fail[child] = target
+                    output[child] = output[child] or output[target]
+                    queue.addLast(child)
+                }
+            }
+
+            @Suppress("UNCHECKED_CAST")
+            return LiteralAutomaton(
+                childChars = childChars as Array<CharArray>,
+                childStates = childStates as Array<IntArray>,
+                fail = fail,
+                output = output
+            )
+        }
+    }
+
+    companion object {
+        private const val ROOT = 0
+
+        const val MATCH_NONE = 0
+        const val MATCH_BLACK = 1
+        const val MATCH_WHITE = 1 shl 1
+
+        /**
+         * Matches syntax that can not be merged into an alternation safely: numbered back references
+         * (group index changes), named groups and their references (names must be unique), quotes
+         * (an unterminated `\Q` swallows the rest) and the comments flag.
+         * */
+        private val UNMERGEABLE = """\\[1-9]|\\k<|\\Q|\(\?<[a-zA-Z]|\(\?[a-zA-Z]*x""".toRegex()
+
+        val EMPTY = BlockRuleMatcher(literals = null, whiteRegex = emptyList(), blackRegex = emptyList())
+
+        // Same folding as String.contains(ignoreCase = true)
+        private fun foldCase(c: Char): Char = c.uppercaseChar().lowercaseChar()
+
+        @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
+        fun mergeRegex(patterns: List<String>): List<Regex> {
+            // Compile separately first, so an invalid rule is reported instead of being balanced
+            // out by its neighbours in the alternation
+            val separate = patterns.map { it.toRegex() }
+            if (separate.size <= 1) return separate
+
+            val (standalone, mergeable) = separate.partition { UNMERGEABLE.containsMatchIn(it.pattern) }
+            if (mergeable.size <= 1) return separate
+
+            val merged = try {
+                mergeable.joinToString(separator = "|") { "(?:${it.pattern})" }.toRegex()
+            } catch (_: PatternSyntaxException) {
+                return separate
+            }
+            return standalone + merged
+        }
+
+        /**
+         * Compiles keyword rules into a [BlockRuleMatcher].
+         *
+         * @throws PatternSyntaxException if any regex rule is invalid
+         * */
+        fun compile(blacklist: List<TypedKeyword>, whitelist: List<TypedKeyword>): BlockRuleMatcher {
+            if (blacklist.isEmpty() && whitelist.isEmpty()) return EMPTY
+
+            var builder: TrieBuilder? = null
+            val blackPatterns = mutableListOf<String>()
+            val whitePatterns = mutableListOf<String>()
+
+            blacklist.forEach {
+                if (it.isRegex) {
+                    blackPatterns.add(it.keyword)
+                } else {
+                    builder = (builder ?: TrieBuilder()).apply { add(it.keyword, MATCH_BLACK) }
+                }
+            }
+            whitelist.forEach {
+                if (it.isRegex) {
+                    whitePatterns.add(it.keyword)
+                } else {
+                    builder = (builder ?: TrieBuilder()).apply { add(it.keyword, MATCH_WHITE) }
+                }
+            }
+
+            return BlockRuleMatcher(
+                literals = builder?.build(),
+                whiteRegex = mergeRegex(whitePatterns),
+                blackRegex = mergeRegex(blackPatterns)
+            )
+        }
+    }
+}
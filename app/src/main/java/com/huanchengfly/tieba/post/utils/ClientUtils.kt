@@ -2,6 +2,7 @@ package com.huanchengfly.tieba.post.utils
 
 import android.util.Log
 import com.huanchengfly.tieba.post.App.Companion.AppBackgroundScope
+import com.huanchengfly.tieba.post.api.ParamSnapshot
 import com.huanchengfly.tieba.post.api.TiebaApi
 import com.huanchengfly.tieba.post.repository.user.Settings
 import com.huanchengfly.tieba.post.ui.models.settings.ClientConfig
@@ -33,12 +34,14 @@ object ClientUtils {
         sampleId = config.sampleId
         baiduId = config.baiduId
         activeTimestamp = config.activeTimestamp
+        ParamSnapshot.invalidate()
         sync()
     }
 
     fun saveBaiduId(id: String?) {
         if (id.isNullOrEmpty() || id.isBlank() || id == baiduId) return
         baiduId = id
+        ParamSnapshot.invalidate()
         clientConfigSettings!!.save {
             it.copy(baiduId = id)
         }
@@ -46,6 +49,7 @@ object ClientUtils {
 
     fun refreshActiveTimestamp() {
         activeTimestamp = System.currentTimeMillis()
+        ParamSnapshot.invalidate()
         clientConfigSettings?.save {
             it.copy(activeTimestamp = activeTimestamp)
         }
@@ -66,6 +70,7 @@ object ClientUtils {
         }
         clientId = client.clientId
         sampleId = wlConfig.sampleId
+        ParamSnapshot.invalidate()
 
         clientConfigSettings!!.save {
             it.copy(clientId = client.clientId, sampleId = wlConfig.sampleId)
@@ -3,6 +3,7 @@ package com.huanchengfly.tieba.post.utils
 import android.app.Application
 import android.content.Context
 import android.graphics.Bitmap
+import android.util.Log
 import androidx.compose.foundation.layout.Box
 import androidx.compose.foundation.layout.fillMaxSize
 import androidx.compose.foundation.layout.size
@@ -28,22 +29,17 @@ import com.bumptech.glide.integration.compose.placeholder
 import com.bumptech.glide.load.engine.DiskCacheStrategy
 import com.huanchengfly.tieba.post.App
 import com.huanchengfly.tieba.post.R
-import com.huanchengfly.tieba.post.arch.ControlledRunner
 import com.huanchengfly.tieba.post.fromJson
 import com.huanchengfly.tieba.post.models.EmoticonCache
 import com.huanchengfly.tieba.post.pxToDp
 import com.huanchengfly.tieba.post.pxToSp
 import com.huanchengfly.tieba.post.theme.RedA700
-import com.huanchengfly.tieba.post.toJson
 import com.huanchengfly.tieba.post.ui.common.PbContentRender
 import kotlinx.coroutines.CoroutineName
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
-import kotlinx.coroutines.delay
-import kotlinx.coroutines.ensureActive
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.withContext
 import java.io.File
 import java.lang.ref.WeakReference
 import java.util.concurrent.ConcurrentHashMap
@@ -61,10 +57,14 @@ object EmoticonManager {
     private const val EMOTICON_ID_PREFIX2 = "shoubai_emoji"
 
     private const val EMOTICON_ASSET_NAME = "emoticon"
-    private val DEFAULT_EMOTICON_MAPPING: Map<String, String> by lazy {
-        val jsonStr = FileUtil.readAssetFile(App.INSTANCE, "emoticon.json")
-        val newMap: HashMap<String, String> = jsonStr!!.fromJson()
-        return@lazy newMap
+
+    private const val INLINE_EMOTICON_PREFIX = "Emoticon#"
+
+    /**
+     * ID of emoticons bundled in assets
+     * */
+    private val ASSET_EMOTICON_IDS: Set<String> by lazy {
+        getContext().assets.list(EMOTICON_ASSET_NAME).orEmpty().mapTo(HashSet()) { it.removeSuffix(".webp") }
     }
 
     /**
@@ -75,36 +75,60 @@ object EmoticonManager {
             File(externalCacheDir ?: cacheDir, EMOTICON_ASSET_NAME)
         }
 
-    private lateinit var contextRef: WeakReference<Context>
-    private val emoticonIds: MutableSet<String> = hashSetOf()
+    private var contextRef: WeakReference<Context> = WeakReference(null)
+
+    /**
+     * Inline contents of each size in sp
+     * */
+    private val inlineTextCache = ConcurrentHashMap<Int, EmoticonInlineContent>()
+
+    @Volatile
+    private var registry: EmoticonRegistry? = null
+
+    private val scope = CoroutineScope(Dispatchers.IO + CoroutineName(TAG) + SupervisorJob())
+
+    /**
+     * Inline contents of all emoticons and icons in one size.
+     *
+     * Emoticon contents are created on the first lookup of `Emoticon#id` and reused afterwards,
+     * [entries] only contains the created ones.
+     * */
+    private class EmoticonInlineContent(private val sizePx: Int, sizeSp: Int) :
+        AbstractMap<String, InlineTextContent>() {
+
+        private val placeholder = Placeholder(sizeSp.sp, sizeSp.sp, PlaceholderVerticalAlign.TextCenter)
+
+        private val icons = getIconInlineContent(sizePx)
 
-    private val inlineTextCache = HashMap<Int, WeakReference<Map<String, InlineTextContent>>>()
+        private val emoticons = ConcurrentHashMap<String, InlineTextContent>()
 
-    private val emoticonMapping: MutableMap<String, String> = ConcurrentHashMap()
+        override val entries: Set<Map.Entry<String, InlineTextContent>>
+            get() = icons.entries + emoticons.entries
 
-    private val scope = CoroutineScope(Dispatchers.Main + CoroutineName(TAG) + SupervisorJob())
+        override fun isEmpty(): Boolean = false
 
-    private val cacheUpdateRunner = ControlledRunner<Unit>()
+        override fun containsKey(key: String): Boolean = get(key) != null
+
+        override fun get(key: String): InlineTextContent? {
+            icons[key]?.let { return it }
+            emoticons[key]?.let { return it }
+            if (!key.startsWith(INLINE_EMOTICON_PREFIX)) return null
+
+            val id = key.substring(INLINE_EMOTICON_PREFIX.length)
+            if (!isEmoticonId(id)) return null
+            val content = InlineTextContent(placeholder = placeholder) {
+                Box(modifier = Modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
+                    EmoticonInlineImage(Modifier.size(sizePx.pxToDp().dp), id)
+                }
+            }
+            return emoticons.putIfAbsent(key, content) ?: content
+        }
+    }
 
     fun getEmoticonInlineContent(sizePx: Int, emoticonScale: Float): Map<String, InlineTextContent> {
         val size = (sizePx * emoticonScale).pxToSp()
-        val cached = inlineTextCache[size]?.get()
-        if (cached == null) {
-            val placeholder = Placeholder(size.sp, size.sp, PlaceholderVerticalAlign.TextCenter)
-            return emoticonIds.associate { id ->
-                "Emoticon#$id" to InlineTextContent(
-                    placeholder = placeholder,
-                    children = {
-                        Box(modifier = Modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
-                            EmoticonInlineImage(Modifier.size(sizePx.pxToDp().dp), id)
-                        }
-                    }
-                )
-            }
-            .plus(map = getIconInlineContent(sizePx))
-            .apply { inlineTextCache[size] = WeakReference(this) }
-        } else {
-            return cached
+        return inlineTextCache[size] ?: EmoticonInlineContent(sizePx, size).let {
+            inlineTextCache.putIfAbsent(size, it) ?: it
         }
     }
 
@@ -157,67 +181,47 @@ object EmoticonManager {
 
     fun init(context: Application) = scope.launch {
         contextRef = WeakReference(context)
-        val emoticonCache = getEmoticonDataCache()
-        val firstInit = emoticonCache.mapping.isEmpty()
-        if (emoticonCache.ids.isEmpty()) {
-            for (i in 1..50) {
-                emoticonIds.add("$EMOTICON_ID_PREFIX$i")
-            }
-            for (i in 61..101) {
-                emoticonIds.add("$EMOTICON_ID_PREFIX$i")
-            }
-            for (i in 125..137) {
-                emoticonIds.add("$EMOTICON_ID_PREFIX$i")
-            }
-        } else {
-            emoticonIds.addAll(emoticonCache.ids)
-        }
-        if (emoticonCache.mapping.isEmpty()) {
-            emoticonMapping.putAll(DEFAULT_EMOTICON_MAPPING)
-        } else {
-            emoticonMapping.putAll(emoticonCache.mapping)
-        }
-
-        if (firstInit) {
-            updateCache()
-        }
+        registry = EmoticonRegistry.open(EMOTICON_CACHE_DIR, defaults = ::getDefaultEmoticons)
     }
 
-    private fun updateCache() {
-        scope.launch {
-            inlineTextCache.clear()
-            cacheUpdateRunner.cancelPreviousThenRun {
-                // Limit update rate to 1/min to avoid unnecessary disk writes
-                delay(60000L)
-                val emoticonJson = EmoticonCache(emoticonIds, emoticonMapping).toJson()
-                val emoticonDataCacheFile = File(EMOTICON_CACHE_DIR, "emoticon_data_cache")
-                ensureActive()
-                withContext(Dispatchers.IO) {
-                    FileUtil.writeFile(emoticonDataCacheFile, emoticonJson, false)
-                }
-            }
+    private fun getContext(): Context = contextRef.get() ?: App.INSTANCE
+
+    /**
+     * Bundled emoticons, and the ones cached by older versions in JSON. Parsed only once when
+     * creating the registry.
+     * */
+    private fun getDefaultEmoticons(): Map<String, String> {
+        val jsonStr = FileUtil.readAssetFile(getContext(), "emoticon.json")
+        val mapping: HashMap<String, String> = jsonStr!!.fromJson()
+        val legacyCache = File(EMOTICON_CACHE_DIR, "emoticon_data_cache")
+        if (legacyCache.exists()) {
+            runCatching { legacyCache.fromJson<EmoticonCache>() }
+                .onFailure { Log.w(TAG, "onMigrate: Unable to read legacy cache: ${it.message}") }
+                .getOrNull()
+                ?.mapping
+                ?.forEach { (name, id) -> mapping.putIfAbsent(name, id) }
+            legacyCache.delete()
         }
+        return mapping
     }
 
-    private fun getContext(): Context = contextRef.get() ?: App.INSTANCE
-
-    private suspend fun getEmoticonDataCache(): EmoticonCache = withContext(Dispatchers.IO) {
-        runCatching {
-            File(EMOTICON_CACHE_DIR, "emoticon_data_cache").takeIf { it.exists() }
-                ?.fromJson<EmoticonCache>()
-        }.getOrNull() ?: EmoticonCache()
+    private fun isEmoticonId(id: String): Boolean {
+        return id.startsWith(EMOTICON_ID_PREFIX) || id.startsWith(EMOTICON_ID_PREFIX2)
     }
 
     fun getAllEmoticon(): List<Emoticon> {
-        return emoticonMapping.mapNotNull { (name, id) ->
-            if (name.isEmpty()) null else Emoticon(id = id, name = name)
+        val registry = registry ?: return emptyList()
+        val emoticons = ArrayList<Emoticon>(registry.size)
+        registry.forEach { name, id ->
+            if (name.isNotEmpty()) emoticons.add(Emoticon(id = id, name = name))
         }
+        return emoticons
     }
 
-    fun getEmoticonIdByName(name: String): String? = emoticonMapping[name]
+    fun getEmoticonIdByName(name: String): String? = registry?.get(name)
 
     private fun getEmoticonUri(id: String): String {
-        return if (DEFAULT_EMOTICON_MAPPING.containsValue(id)) {
+        return if (id in ASSET_EMOTICON_IDS) {
             "file:///android_asset/$EMOTICON_ASSET_NAME/$id.webp"
         } else {
             "http://static.tieba.baidu.com/tb/editor/images/client/$id.png"
@@ -239,27 +243,14 @@ object EmoticonManager {
     }
 
     fun registerEmoticon(id: String, name: String) {
-        if (!(id.startsWith(EMOTICON_ID_PREFIX) || id.startsWith(EMOTICON_ID_PREFIX2))) {
-            return
-        }
+        if (!isEmoticonId(id)) return
 
         val realId = if (id == EMOTICON_ID_PREFIX) "image_emoticon1" else id
-        var changed = false
-        if (!emoticonIds.contains(realId)) {
-            emoticonIds.add(realId)
-            changed = true
-        }
-        if (!emoticonMapping.containsKey(name)) {
-            emoticonMapping[name] = realId
-            changed = true
-        }
-        if (changed) {
-            updateCache()
-        }
+        registry?.register(name, realId)
     }
 
     fun clear() {
         inlineTextCache.clear()
         contextRef.clear()
     }
-}
\ No newline at end of file
+}
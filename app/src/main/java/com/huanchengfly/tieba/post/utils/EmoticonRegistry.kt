@@ -0,0 +1,286 @@
+package com.huanchengfly.tieba.post.utils
+
+import android.util.Log
+import androidx.annotation.WorkerThread
+import com.huanchengfly.tieba.post.utils.FileUtil.ensureParents
+import java.io.BufferedOutputStream
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Persistent registry of emoticon names and IDs.
+ *
+ * Entries are kept in a sorted string table mapped into memory, lookups binary search the table
+ * without decoding it on load. Emoticons registered later are appended to a journal and kept in
+ * memory, the journal is merged into a new table on [open] once it grows over [COMPACT_THRESHOLD].
+ *
+ * Table layout: `| MAGIC: Int | VERSION: Int | count: Int | offsets: Int[count] | entries |`,
+ * each entry is `| nameLength: Short | name | idLength: Short | id |` in UTF-8, sorted by name bytes.
+ *
+ * Journal layout: records of `| name | id |` written by [DataOutputStream.writeUTF].
+ *
+ * Reads never lock, [register] only locks to append the journal.
+ * */
+class EmoticonRegistry private constructor(
+    private val journalFile: File,
+    private val table: ByteBuffer,
+    private val journal: ConcurrentHashMap<String, String>,
+) {
+    private val count: Int = table.getInt(COUNT_OFFSET)
+
+    val size: Int
+        get() = count + journal.size
+
+    /**
+     * @return ID of the emoticon [name], **null** if not registered
+     * */
+    operator fun get(name: String): String? = journal[name] ?: find(name.encodeToByteArray())
+
+    /**
+     * Register a new emoticon, existing name is never overwritten.
+     *
+     * @return true if the emoticon is newly registered
+     * */
+    fun register(name: String, id: String): Boolean {
+        if (find(name.encodeToByteArray()) != null || journal.putIfAbsent(name, id) != null) return false
+        try {
+            synchronized(journal) {
+                journalFile.ensureParents()
+                DataOutputStream(BufferedOutputStream(FileOutputStream(journalFile, true))).use {
+                    it.writeUTF(name)
+                    it.writeUTF(id)
+                }
+            }
+        } catch (e: IOException) {
+            // Still usable in memory, registered again after restart
+            Log.w(TAG, "onRegister: Unable to append journal: ${e.message}")
+        }
+        return true
+    }
+
+    fun forEach(action: (name: String, id: String) -> Unit) {
+        for (i in 0 until count) {
+            val offset = entryOffset(i)
+            action(readString(offset), readString(offset + 2 + table.getShort(offset)))
+        }
+        journal.forEach { (name, id) -> action(name, id) }
+    }
+
+    private fun entryOffset(index: Int): Int = table.getInt(HEADER_SIZE + index * 4)
+
+    private fun readString(offset: Int): String {
+        val length = table.getShort(offset).toInt()
+        val bytes = ByteArray(length)
+        for (i in 0 until length) bytes[i] = table.get(offset + 2 + i)
+        return bytes.decodeToString()
+    }
+
+    private fun find(name: ByteArray): String? {
+        var low = 0
+        var high = count - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val offset = entryOffset(mid)
+            val cmp = compareName(offset, name)
+            when {
+                cmp < 0 -> low = mid + 1
+                cmp > 0 -> high = mid - 1
+                else -> return readString(offset + 2 + table.getShort(offset))
+            }
+        }
+        return null
+    }
+
+    /**
+     * Compare name of the entry at [offset] with [name] by unsigned bytes
+     * */
+    private fun compareName(offset: Int, name: ByteArray): Int {
+        val length = table.getShort(offset).toInt()
+        val minLength = minOf(length, name.size)
+        for (i in 0 until minLength) {
+            val cmp = (table.get(offset + 2 + i).toInt() and 0xFF) - (name[i].toInt() and 0xFF)
+            if (cmp != 0) return cmp
+        }
+        return length - name.size
+    }
+
+    companion object {
+        private const val TAG = "EmoticonRegistry"
+
+        private const val MAGIC = 0x454D4F54 // EMOT
+
+        private const val VERSION = 1
+
+        private const val COUNT_OFFSET = 8
+
+        private const val HEADER_SIZE = 12
+
+        const val COMPACT_THRESHOLD = 64
+
+        private val UNSIGNED_BYTES = Comparator<ByteArray> { a, b ->
+            val minLength = minOf(a.size, b.size)
+            for (i in 0 until minLength) {
+                val cmp = (a[i].toInt() and 0xFF) - (b[i].toInt() and 0xFF)
+                if (cmp != 0) return@Comparator cmp
+            }
+            a.size - b.size
+        }
+
+        /**
+         * Open the registry in [dir], the table is created with [defaults] if absent or corrupted.
+         *
+         * @param defaults initial emoticons, only invoked on creating the table
+         * */
+        @WorkerThread
+        fun open(dir: File, defaults: () -> Map<String, String>): EmoticonRegistry {
+            val tableFile = File(dir, "emoticon_table")
+            val journalFile = File(dir, "emoticon_journal")
+            val journal = readJournal(journalFile)
+
+            val loaded = runCatching { mapTable(tableFile) }
+                .onFailure { Log.w(TAG, "onOpen: Unable to load table: ${it.message}") }
+                .getOrNull()
+
+            val table = if (loaded == null || journal.size >= COMPACT_THRESHOLD) {
+                val entries = HashMap<String, String>()
+                if (loaded == null) {
+                    entries.putAll(defaults())
+                } else {
+                    EmoticonRegistry(journalFile, loaded, ConcurrentHashMap()).forEach { name, id ->
+                        entries[name] = id
+                    }
+                }
+                journal.forEach { (name, id) -> entries.putIfAbsent(name, id) }
+                try {
+                    writeTable(tableFile, entries)
+                    journalFile.delete()
+                    journal.clear()
+                    mapTable(tableFile) ?: throw IOException("Table not found")
+                } catch (e: IOException) {
+                    Log.e(TAG, "onOpen: Unable to write table: ${e.message}")
+                    // Serve the entries from memory, rebuilt on next open
+                    journal.putAll(entries)
+                    emptyTable()
+                }
+            } else {
+                loaded
+            }
+            return EmoticonRegistry(journalFile, table, journal)
+        }
+
+        private fun mapTable(file: File): ByteBuffer? {
+            if (!file.exists()) return null
+            return RandomAccessFile(file, "r").use { raf ->
+                val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw IOException("Invalid header")
+                }
+                val count = buffer.getInt(COUNT_OFFSET)
+                if (count < 0 || HEADER_SIZE + count * 4L > buffer.capacity()) {
+                    throw IOException("Invalid size $count")
+                }
+                val entriesStart = HEADER_SIZE + count * 4
+                for (i in 0 until count) {
+                    val offset = buffer.getInt(HEADER_SIZE + i * 4)
+                    if (offset < entriesStart || !buffer.isValidEntry(offset)) {
+                        throw IOException("Invalid entry $i at $offset")
+                    }
+                }
+                buffer
+            }
+        }
+
+        /**
+         * @return true if both strings of the entry at [offset] are within this table
+         * */
+        private fun ByteBuffer.isValidEntry(offset: Int): Boolean {
+            if (offset + 2L > capacity()) return false
+            val nameLength = getShort(offset)
+            val idOffset = offset + 2L + nameLength
+            if (nameLength < 0 || idOffset + 2 > capacity()) return false
+            val idLength = getShort(idOffset.toInt())
+            return idLength >= 0 && idOffset + 2 + idLength <= capacity()
+        }
+
+        private fun emptyTable(): ByteBuffer = ByteBuffer.allocate(HEADER_SIZE).apply {
+            putInt(MAGIC)
+            putInt(VERSION)
+            putInt(0)
+        }
+
+        /**
+         * Write [entries] into a new table, the old table is replaced atomically.
+         * */
+        private fun writeTable(file: File, entries: Map<String, String>) {
+            val sorted = entries
+                .filterValues { it.isNotEmpty() }
+                .map { (name, id) -> name.encodeToByteArray() to id.encodeToByteArray() }
+                .sortedWith { a, b -> UNSIGNED_BYTES.compare(a.first, b.first) }
+
+            val count = sorted.size
+            var offset = HEADER_SIZE + count * 4
+            val buffer = ByteBuffer.allocate(offset + sorted.sumOf { 4 + it.first.size + it.second.size })
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count)
+            sorted.forEach { (name, id) ->
+                buffer.putInt(offset)
+                offset += 4 + name.size + id.size
+            }
+            sorted.forEach { (name, id) ->
+                buffer.putShort(name.size.toShort()).put(name)
+                buffer.putShort(id.size.toShort()).put(id)
+            }
+            buffer.flip()
+
+            file.ensureParents()
+            val tmp = File(file.path + ".tmp")
+            FileOutputStream(tmp).use {
+                it.channel.write(buffer)
+                it.fd.sync()
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete()
+                throw IOException("Unable to replace ${file.name}")
+            }
+        }
+
+        /**
+         * Read journal records, a torn record at the end is truncated so records registered later
+         * are appended right after the last valid one.
+         * */
+        private fun readJournal(file: File): ConcurrentHashMap<String, String> {
+            val journal = ConcurrentHashMap<String, String>()
+            if (!file.exists()) return journal
+            try {
+                val bytes = file.readBytes()
+                val input = ByteArrayInputStream(bytes)
+                var validLength = 0
+                try {
+                    val dataInput = DataInputStream(input)
+                    while (validLength < bytes.size) {
+                        val name = dataInput.readUTF()
+                        val id = dataInput.readUTF()
+                        journal.putIfAbsent(name, id)
+                        validLength = bytes.size - input.available()
+                    }
+                } catch (e: IOException) {
+                    // EOFException of a torn record, UTFDataFormatException of a corrupted one
+                    Log.w(TAG, "onReadJournal: Invalid record at $validLength: ${e.message}")
+                }
+                if (validLength < bytes.size) {
+                    RandomAccessFile(file, "rw").use { it.setLength(validLength.toLong()) }
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "onReadJournal: ${e.message}")
+            }
+            return journal
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.huanchengfly.tieba.post.utils
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Helpers of the full-text search tables.
+ *
+ * FTS tables use the default `simple` tokenizer, it's available on every device but only splits
+ * ASCII words. Other letters (CJK) are segmented into single character tokens before indexing, a
+ * keyword is then queried as a phrase of its characters.
+ * */
+object FtsUtil {
+
+    private fun Char.isAsciiLetterOrDigit(): Boolean = this < '\u0080' && isLetterOrDigit()
+
+    /**
+     * Segment the text for indexing. ASCII words are kept in lower case, other letters are
+     * separated by space and everything else is dropped.
+     * */
+    fun segment(text: String): String {
+        val builder = StringBuilder(text.length * 2)
+        var separated = true
+        for (c in text) {
+            when {
+                c.isAsciiLetterOrDigit() -> {
+                    builder.append(c.lowercaseChar())
+                    separated = false
+                }
+
+                c.isLetterOrDigit() -> {
+                    if (!separated) builder.append(' ')
+                    builder.append(c).append(' ')
+                    separated = true
+                }
+
+                !separated -> {
+                    builder.append(' ')
+                    separated = true
+                }
+            }
+        }
+        if (builder.lastOrNull() == ' ') builder.setLength(builder.length - 1)
+        return builder.toString()
+    }
+
+    /**
+     * Build the MATCH query of search keyword, all terms separated by space must match.
+     *
+     * @return query string, null if there is nothing to search
+     * */
+    fun buildQuery(keyword: String): String? {
+        val terms = keyword.split(' ', '　').mapNotNull { term ->
+            val tokens = segment(term)
+            when {
+                tokens.isEmpty() -> null
+
+                ' ' in tokens -> "\"$tokens\"" // Phrase of segmented characters
+
+                tokens[0].isAsciiLetterOrDigit() -> "$tokens*" // Prefix of a word
+
+                else -> tokens
+            }
+        }
+        return if (terms.isEmpty()) null else terms.joinToString(separator = " ")
+    }
+
+    /**
+     * Rank a matched row with the result of `matchinfo(table, 'pcx')`.
+     *
+     * Hits of a rare phrase score higher than a common one, then scaled by the column weight.
+     *
+     * @param matchInfo matchinfo blob, array of native unsigned integers
+     * @param weights weight of every column of the FTS table, in declaration order
+     * */
+    fun rank(matchInfo: ByteArray, weights: FloatArray): Float {
+        val info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer()
+        val phraseCount = info[0]
+        val columnCount = info[1]
+        var score = 0f
+        for (phrase in 0 until phraseCount) {
+            for (column in 0 until columnCount) {
+                val offset = 2 + (phrase * columnCount + column) * 3
+                val hitsInRow = info[offset]
+                val hitsInAllRows = info[offset + 1]
+                if (hitsInRow > 0) {
+                    score += hitsInRow.toFloat() / hitsInAllRows * weights.getOrElse(column) { 0f }
+                }
+            }
+        }
+        return score
+    }
+}
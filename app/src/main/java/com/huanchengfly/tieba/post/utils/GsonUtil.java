@@ -3,16 +3,12 @@ package com.huanchengfly.tieba.post.utils;
 import com.google.gson.Gson;
 
 public class GsonUtil {
-    private static volatile Gson gson;
+    /**
+     * Gson is thread-safe and caches its type adapters, share one instance without locking.
+     */
+    private static final Gson gson = new Gson();
 
-    public static synchronized Gson getGson() {
-        if (gson == null) {
-            synchronized (GsonUtil.class) {
-                if (gson == null) {
-                    gson = new Gson();
-                }
-            }
-        }
+    public static Gson getGson() {
         return gson;
     }
 }
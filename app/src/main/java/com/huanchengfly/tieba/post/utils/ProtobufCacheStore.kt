@@ -0,0 +1,564 @@
+package com.huanchengfly.tieba.post.utils
+
+import android.util.Log
+import androidx.annotation.WorkerThread
+import androidx.collection.MutableIntList
+import com.huanchengfly.tieba.post.utils.FileUtil.ensureParents
+import com.squareup.wire.ProtoAdapter
+import com.squareup.wire.ProtoReader
+import com.squareup.wire.ReverseProtoWriter
+import com.squareup.wire.internal.ProtocolException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.launch
+import okio.Buffer
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.zip.CRC32
+
+/**
+ * Log-structured cache of Wire messages, every entry of a namespace lives in one segment file.
+ *
+ * Segment layout: [MAGIC], followed by records of
+ * `| length: Int | crc32: Int | type: Byte | expireAt: Long | keyLength: Short | key | payload |`,
+ * where length and crc32 cover everything after the crc32 field.
+ *
+ * Records are only appended. An in-memory index maps each key to the offset of its latest
+ * [RECORD_PUT] and the [RECORD_DELTA]s appended after it, records are read through a memory mapped
+ * view of the segment. Dead records are dropped by [compact], which runs on [compactionScope] once
+ * enough garbage has piled up.
+ *
+ * Expiry only marks an entry stale, it is still readable with `includeExpired` until removed
+ * explicitly, e.g. by [removeExpired].
+ *
+ * The index is kept in access order for [trimToSize]. It's rebuilt in record order on open and
+ * [compact] writes records in access order, so the order roughly survives restarts.
+ *
+ * @param file segment file of this namespace
+ * @param compactionScope scope to run background compaction, **null** to compact manually
+ * @param clock time source of record expiry
+ * */
+class ProtobufCacheStore(
+    private val file: File,
+    private val compactionScope: CoroutineScope? = null,
+    private val clock: () -> Long = System::currentTimeMillis,
+) : Closeable {
+
+    /**
+     * Applies a delta record of type [D] on the cached value [T].
+     *
+     * @param adapter adapter of the delta message
+     * @param reduce returns the patched value
+     * */
+    class Delta<T, D>(val adapter: ProtoAdapter<D>, val reduce: (T, D) -> T) {
+
+        internal fun apply(value: T, payload: ByteArray): T = reduce(value, adapter.decode(payload))
+    }
+
+    private class Entry(val offset: Int, val expireAt: Long, var bytes: Int) {
+        val deltas = MutableIntList(0)
+    }
+
+    /**
+     * Least recently used first
+     * */
+    private val index = LinkedHashMap<String, Entry>(16, 0.75f, /* accessOrder = */ true)
+
+    private var channel: FileChannel? = null
+
+    private var mapped: MappedByteBuffer? = null
+
+    /**
+     * End of the last valid record
+     * */
+    private var size: Int = 0
+
+    /**
+     * Bytes of overwritten and removed records
+     * */
+    private var garbage: Int = 0
+
+    private val compactScheduled = AtomicBoolean(false)
+
+    /**
+     * Decode [T] of [key], **null** if not exists or expired.
+     *
+     * @param delta applies delta records appended by [appendDelta]
+     * @param includeExpired return expired value too
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun <T> get(
+        key: String,
+        adapter: ProtoAdapter<T>,
+        delta: Delta<T, *>? = null,
+        includeExpired: Boolean = false
+    ): T? {
+        val entry = getEntry(key, includeExpired) ?: return null
+        return decodeOrRemove(key) {
+            var value = adapter.decode(readPayload(entry.offset))
+            if (delta != null && entry.deltas.isNotEmpty()) {
+                entry.deltas.forEach { value = delta.apply(value, readPayload(it)) }
+                // Fold long delta chains back into one record
+                if (entry.deltas.size >= FOLD_THRESHOLD) {
+                    append(key, RECORD_PUT, entry.expireAt, adapter.encode(value))
+                }
+            }
+            value
+        }
+    }
+
+    /**
+     * Decode list of [T] of [key] saved by [putList], **null** if not exists or expired.
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun <T> getList(key: String, adapter: ProtoAdapter<T>, includeExpired: Boolean = false): List<T>? {
+        val entry = getEntry(key, includeExpired) ?: return null
+        return decodeOrRemove(key) {
+            val result = mutableListOf<T>()
+            val reader = ProtoReader(Buffer().write(readPayload(entry.offset)))
+            reader.forEachTag { tag ->
+                if (tag == PROTO_CODEC_TAG) {
+                    result.add(adapter.decode(reader))
+                } else {
+                    throw ProtocolException("Decode failed: Unknown Tag: $tag")
+                }
+            }
+            result
+        }
+    }
+
+    /**
+     * @param expireAfter expire time in millis from now, **null** to never expire
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun <T> put(key: String, adapter: ProtoAdapter<T>, value: T, expireAfter: Long? = null) {
+        append(key, RECORD_PUT, expireAt(expireAfter), adapter.encode(value))
+    }
+
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun <T> putList(key: String, adapter: ProtoAdapter<T>, value: List<T>, expireAfter: Long? = null) {
+        val writer = ReverseProtoWriter()
+        adapter.asRepeated().encodeWithTag(writer, PROTO_CODEC_TAG, value)
+        val payload = Buffer().also { writer.writeTo(it) }.readByteArray()
+        append(key, RECORD_PUT, expireAt(expireAfter), payload)
+    }
+
+    /**
+     * Append [delta] to every key in [keys], expiry of the keys are kept.
+     *
+     * @return number of patched keys
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun <D> appendDelta(keys: Collection<String>, adapter: ProtoAdapter<D>, delta: D): Int {
+        open()
+        val payload = adapter.encode(delta)
+        val records = Buffer()
+        val targets = keys.mapNotNull { key ->
+            val entry = index[key] ?: return@mapNotNull null
+            val record = encodeRecord(RECORD_DELTA, entry.expireAt, key.encodeToByteArray(), payload)
+            val offset = size + records.size.toInt()
+            records.write(record)
+            entry.deltas.add(offset)
+            entry.bytes += record.size
+            entry
+        }
+        if (targets.isEmpty()) return 0
+
+        write(records.readByteArray())
+        return targets.size
+    }
+
+    fun <D> appendDelta(key: String, adapter: ProtoAdapter<D>, delta: D): Boolean {
+        return appendDelta(listOf(key), adapter, delta) > 0
+    }
+
+    @Synchronized
+    fun contains(key: String): Boolean {
+        open()
+        return index.containsKey(key)
+    }
+
+    /**
+     * @return true if [key] not exists or expired
+     * */
+    @Synchronized
+    fun isExpired(key: String): Boolean {
+        open()
+        return (index[key]?.expireAt ?: return true) <= clock()
+    }
+
+    @Synchronized
+    fun keys(): Set<String> {
+        open()
+        return index.keys.toSet()
+    }
+
+    /**
+     * @return bytes of live records
+     * */
+    @Synchronized
+    fun liveSize(): Int {
+        open()
+        return size - garbage - MAGIC.size
+    }
+
+    @Throws(IOException::class)
+    @WorkerThread
+    fun remove(key: String): Boolean = removeAll(listOf(key)) > 0
+
+    /**
+     * Remove all entries matching [predicate].
+     *
+     * @return number of removed entries
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun removeIf(predicate: (key: String) -> Boolean): Int {
+        open()
+        return removeAll(index.keys.filter(predicate))
+    }
+
+    /**
+     * Remove least recently used entries until [liveSize] is no more than [maxSize].
+     *
+     * @return number of removed entries
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun trimToSize(maxSize: Int): Int {
+        var live = liveSize()
+        val evicted = ArrayList<String>()
+        for ((key, entry) in index) {
+            if (live <= maxSize) break
+            evicted.add(key)
+            live -= entry.bytes
+        }
+        return removeAll(evicted)
+    }
+
+    /**
+     * Remove expired entries, their records are dropped on next compaction.
+     *
+     * @return number of removed entries
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun removeExpired(): Int {
+        open()
+        val now = clock()
+        return removeAll(index.filterValues { it.expireAt <= now }.keys)
+    }
+
+    @Synchronized
+    private fun removeAll(keys: Collection<String>): Int {
+        open()
+        val records = Buffer()
+        val removed = keys.filter { it in index }
+        removed.forEach {
+            records.write(encodeRecord(RECORD_REMOVE, Long.MAX_VALUE, it.encodeToByteArray(), EMPTY_PAYLOAD))
+        }
+        if (removed.isEmpty()) return 0
+
+        val start = size
+        write(records.readByteArray())
+        removed.forEach { garbage += index.remove(it)!!.bytes }
+        garbage += size - start
+        scheduleCompaction()
+        return removed.size
+    }
+
+    /**
+     * Rewrite the segment with live records only, then sync it to disk once. Expired entries are
+     * live until removed.
+     * */
+    @Throws(IOException::class)
+    @WorkerThread
+    @Synchronized
+    fun compact() {
+        open()
+        val start = System.currentTimeMillis()
+        val oldSize = size
+        val buffer = mapped(size)
+        val compacted = File(file.path + ".compact")
+        RandomAccessFile(compacted, "rw").use { raf ->
+            raf.setLength(0)
+            val out = raf.channel
+            var position = out.writeFully(ByteBuffer.wrap(MAGIC), 0L)
+            index.forEach { (_, entry) ->
+                position += out.writeFully(buffer.record(entry.offset), position)
+                entry.deltas.forEach { position += out.writeFully(buffer.record(it), position) }
+            }
+            out.force(false)
+        }
+
+        closeChannel()
+        if (!compacted.renameTo(file)) {
+            compacted.delete()
+            throw IOException("Unable to replace ${file.name}")
+        }
+        open()
+        Log.i(TAG, "onCompact: ${file.name} $oldSize -> $size bytes, cost ${System.currentTimeMillis() - start}ms")
+    }
+
+    @Synchronized
+    override fun close() = closeChannel()
+
+    private fun expireAt(expireAfter: Long?): Long {
+        return if (expireAfter != null) clock() + expireAfter else Long.MAX_VALUE
+    }
+
+    private fun getEntry(key: String, includeExpired: Boolean): Entry? {
+        open()
+        val entry = index[key] ?: return null
+        return entry.takeIf { includeExpired || it.expireAt > clock() }
+    }
+
+    private inline fun <R> decodeOrRemove(key: String, decode: () -> R): R {
+        try {
+            return decode()
+        } catch (e: Throwable) {
+            Log.e(TAG, "onDecode: Unable to decode $key of ${file.name}: ${e.message}.")
+            // possible corruption, remove it
+            runCatching { remove(key) }
+            throw e
+        }
+    }
+
+    private fun scheduleCompaction() {
+        if (garbage < COMPACT_MIN_GARBAGE || garbage * 2 < size) return
+        val scope = compactionScope ?: return
+        if (compactScheduled.compareAndSet(false, true)) {
+            scope.launch {
+                try {
+                    compact()
+                } catch (e: IOException) {
+                    Log.e(TAG, "onCompact: Failed to compact ${file.name}: ${e.message}.")
+                } finally {
+                    compactScheduled.set(false)
+                }
+            }
+        }
+    }
+
+    private fun append(key: String, type: Byte, expireAt: Long, payload: ByteArray) {
+        open()
+        val offset = size
+        write(encodeRecord(type, expireAt, key.encodeToByteArray(), payload))
+        val old = index.put(key, Entry(offset, expireAt, bytes = size - offset))
+        if (old != null) {
+            garbage += old.bytes
+            scheduleCompaction()
+        }
+    }
+
+    private fun write(bytes: ByteArray) {
+        val channel = open()
+        try {
+            size += channel.writeFully(ByteBuffer.wrap(bytes), size.toLong()).toInt()
+        } catch (e: IOException) {
+            // Drop the index, a partial record is truncated on next open
+            closeChannel()
+            throw e
+        }
+    }
+
+    private fun open(): FileChannel {
+        channel?.let { return it }
+
+        file.ensureParents()
+        val channel = RandomAccessFile(file, "rw").channel
+        this.channel = channel
+        index.clear()
+        garbage = 0
+        try {
+            load(channel)
+        } catch (e: IOException) {
+            Log.e(TAG, "onOpen: Unable to load ${file.name}: ${e.message}.")
+            reset(channel)
+        }
+        return channel
+    }
+
+    /**
+     * Scan records and build the index, a torn or corrupted tail is truncated.
+     * */
+    private fun load(channel: FileChannel) {
+        val fileSize = channel.size()
+        if (fileSize < MAGIC.size || fileSize > Int.MAX_VALUE) return reset(channel)
+
+        val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize)
+        mapped = buffer
+        if (MAGIC.indices.any { buffer.get(it) != MAGIC[it] }) return reset(channel)
+
+        val crc = CRC32()
+        var scratch = ByteArray(0)
+        var offset = MAGIC.size
+        while (offset + RECORD_HEADER <= fileSize) {
+            val length = buffer.getInt(offset)
+            if (length < RECORD_BODY_HEADER || offset + RECORD_HEADER + length > fileSize) break
+
+            if (scratch.size < length) scratch = ByteArray(length)
+            buffer.duplicate().apply { position(offset + RECORD_HEADER) }.get(scratch, 0, length)
+            crc.reset()
+            crc.update(scratch, 0, length)
+            if (crc.value.toInt() != buffer.getInt(offset + 4)) break
+
+            val keyLength = buffer.getShort(offset + KEY_LENGTH_OFFSET).toInt()
+            if (keyLength < 0 || RECORD_BODY_HEADER + keyLength > length) break
+            val key = scratch.decodeToString(RECORD_BODY_HEADER, RECORD_BODY_HEADER + keyLength)
+            val recordSize = RECORD_HEADER + length
+            when (buffer.get(offset + TYPE_OFFSET)) {
+                RECORD_PUT -> {
+                    val expireAt = buffer.getLong(offset + EXPIRE_OFFSET)
+                    index.put(key, Entry(offset, expireAt, recordSize))?.let { garbage += it.bytes }
+                }
+
+                RECORD_DELTA -> {
+                    val entry = index[key]
+                    if (entry != null) {
+                        entry.deltas.add(offset)
+                        entry.bytes += recordSize
+                    } else {
+                        garbage += recordSize
+                    }
+                }
+
+                RECORD_REMOVE -> garbage += recordSize + (index.remove(key)?.bytes ?: 0)
+
+                else -> break
+            }
+            offset += recordSize
+        }
+
+        size = offset
+        if (offset < fileSize) {
+            Log.w(TAG, "onLoad: Truncate ${file.name} at $offset, ${fileSize - offset} bytes dropped")
+            channel.truncate(offset.toLong())
+            mapped = null
+        }
+    }
+
+    private fun reset(channel: FileChannel) {
+        index.clear()
+        garbage = 0
+        mapped = null
+        channel.truncate(0)
+        size = channel.writeFully(ByteBuffer.wrap(MAGIC), 0L).toInt()
+    }
+
+    private fun closeChannel() {
+        mapped = null
+        channel?.close()
+        channel = null
+        index.clear()
+    }
+
+    /**
+     * @return memory mapped view of the segment, covers at least [end] bytes
+     * */
+    private fun mapped(end: Int): MappedByteBuffer {
+        val current = mapped
+        if (current != null && current.capacity() >= end) return current
+
+        return open().map(FileChannel.MapMode.READ_ONLY, 0, size.toLong()).also { mapped = it }
+    }
+
+    private fun recordSize(offset: Int): Int = RECORD_HEADER + mapped(offset + RECORD_HEADER).getInt(offset)
+
+    private fun readPayload(offset: Int): ByteArray {
+        val end = offset + recordSize(offset)
+        val buffer = mapped(end)
+        val payloadOffset = offset + RECORD_HEADER + RECORD_BODY_HEADER + buffer.getShort(offset + KEY_LENGTH_OFFSET)
+        val payload = ByteArray(end - payloadOffset)
+        buffer.duplicate().apply { position(payloadOffset) }.get(payload)
+        return payload
+    }
+
+    private fun MappedByteBuffer.record(offset: Int): ByteBuffer {
+        val end = offset + recordSize(offset)
+        return duplicate().apply {
+            position(offset)
+            limit(end)
+        }
+    }
+
+    companion object {
+        private const val TAG = "ProtobufCacheStore"
+
+        private val MAGIC = byteArrayOf('T'.code.toByte(), 'B'.code.toByte(), 'C'.code.toByte(), 1)
+
+        private const val PROTO_CODEC_TAG: Int = 114514
+
+        private const val RECORD_PUT: Byte = 1
+        private const val RECORD_DELTA: Byte = 2
+        private const val RECORD_REMOVE: Byte = 3
+
+        /**
+         * Size of length and crc32
+         * */
+        private const val RECORD_HEADER = 8
+
+        /**
+         * Size of type, expireAt and keyLength
+         * */
+        private const val RECORD_BODY_HEADER = 1 + 8 + 2
+
+        private const val TYPE_OFFSET = RECORD_HEADER
+        private const val EXPIRE_OFFSET = TYPE_OFFSET + 1
+        private const val KEY_LENGTH_OFFSET = EXPIRE_OFFSET + 8
+
+        /**
+         * Compact once garbage exceeds this and half of the segment
+         * */
+        private const val COMPACT_MIN_GARBAGE = 256 * 1024
+
+        /**
+         * Max deltas of one entry before folding them on read
+         * */
+        private const val FOLD_THRESHOLD = 8
+
+        private val EMPTY_PAYLOAD = ByteArray(0)
+
+        private fun encodeRecord(type: Byte, expireAt: Long, key: ByteArray, payload: ByteArray): ByteArray {
+            require(key.size <= Short.MAX_VALUE) { "Key too long: ${key.size}" }
+            val length = RECORD_BODY_HEADER + key.size + payload.size
+            val record = ByteBuffer.allocate(RECORD_HEADER + length)
+                .putInt(length)
+                .putInt(0) // crc32 placeholder
+                .put(type)
+                .putLong(expireAt)
+                .putShort(key.size.toShort())
+                .put(key)
+                .put(payload)
+            val crc = CRC32().apply { update(record.array(), RECORD_HEADER, length) }
+            record.putInt(4, crc.value.toInt())
+            return record.array()
+        }
+
+        private fun FileChannel.writeFully(source: ByteBuffer, position: Long): Long {
+            var written = 0L
+            while (source.hasRemaining()) {
+                written += write(source, position + written)
+            }
+            return written
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.huanchengfly.tieba.post.theme.DefaultColors
 import com.huanchengfly.tieba.post.theme.DefaultDarkColors
 import com.huanchengfly.tieba.post.theme.ExtendedColorScheme
 import com.huanchengfly.tieba.post.theme.colorscheme.BlueColorScheme
+import com.huanchengfly.tieba.post.theme.colorscheme.ColorSchemeCache
 import com.huanchengfly.tieba.post.theme.colorscheme.GreenColorScheme
 import com.huanchengfly.tieba.post.theme.colorscheme.OrangeColorScheme
 import com.huanchengfly.tieba.post.theme.colorscheme.PinkColorScheme
@@ -174,6 +175,8 @@ object ThemeUtil {
                 Theme.PINK -> PinkColorScheme
                 Theme.PURPLE -> PurpleColorScheme
             }
+            // Skip generating dynamic schemes on next cold start
+            .also { colors -> ColorSchemeCache.persist(colors.lightColor, colors.darkColor) }
         }
     }
 
@@ -0,0 +1,47 @@
+package com.huanchengfly.tieba.post.utils
+
+import android.os.SystemClock
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Suspending token bucket rate limiter.
+ *
+ * @param permitsPerSecond rate of token refill
+ * @param capacity max tokens can be saved, i.e. max burst
+ * @param clock monotonic clock in milliseconds
+ * */
+class TokenBucket(
+    private val permitsPerSecond: Double,
+    private val capacity: Int = 1,
+    private val clock: () -> Long = SystemClock::elapsedRealtime
+) {
+    init {
+        require(permitsPerSecond > 0 && capacity > 0)
+    }
+
+    private val lock = Mutex()
+
+    private var tokens = capacity.toDouble()
+
+    private var lastRefill = clock()
+
+    /**
+     * Suspends until a token is available, tokens are granted in order of arrival.
+     * */
+    suspend fun acquire() = lock.withLock {
+        refill()
+        if (tokens < 1.0) {
+            delay(((1.0 - tokens) * 1000 / permitsPerSecond).toLong().coerceAtLeast(1L))
+            refill()
+        }
+        tokens = (tokens - 1.0).coerceAtLeast(0.0)
+    }
+
+    private fun refill() {
+        val now = clock()
+        tokens = (tokens + (now - lastRefill) * permitsPerSecond / 1000).coerceAtMost(capacity.toDouble())
+        lastRefill = now
+    }
+}
@@ -29,6 +29,7 @@ import com.huanchengfly.tieba.post.R
 import com.huanchengfly.tieba.post.api.retrofit.exception.getErrorCode
 import com.huanchengfly.tieba.post.api.retrofit.exception.getErrorMessage
 import com.huanchengfly.tieba.post.repository.HomeRepository
+import com.huanchengfly.tieba.post.repository.NotificationRepository
 import com.huanchengfly.tieba.post.ui.page.TB_LITE_DOMAIN
 import com.huanchengfly.tieba.post.ui.page.main.notifications.list.NotificationsType
 import com.huanchengfly.tieba.post.utils.NotificationUtils
@@ -44,7 +45,8 @@ import java.util.concurrent.TimeUnit
 class NewMessageWorker @AssistedInject constructor(
     @Assisted val context: Context,
     @Assisted params: WorkerParameters,
-    private val homeRepository: HomeRepository
+    private val homeRepository: HomeRepository,
+    private val notificationRepository: NotificationRepository
 ) : CoroutineWorker(context, params) {
 
     init {
@@ -61,6 +63,8 @@ class NewMessageWorker @AssistedInject constructor(
                 updateNotification(NotificationsType.AtMe, newMsgCount = newMessage.atMe)
             }
         }
+        if (newMessage.replyMe > 0) prefetchMessages(NotificationsType.ReplyMe)
+        if (newMessage.atMe > 0) prefetchMessages(NotificationsType.AtMe)
         Result.success(
             workDataOf(KEY_NEW_MESSAGE_COUNT to newMessage.replyMe + newMessage.atMe)
         )
@@ -72,6 +76,20 @@ class NewMessageWorker @AssistedInject constructor(
         Result.failure()
     }
 
+    /**
+     * Sync new messages into the inbox, so the notifications page renders them from disk.
+     * Failure is ignored, the inbox syncs again when opened.
+     * */
+    private suspend fun prefetchMessages(type: NotificationsType) {
+        try {
+            notificationRepository.sync(type)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Throwable) {
+            Log.w(TAG, "onPrefetchMessages: $type, error: ${e.getErrorMessage()}")
+        }
+    }
+
     private fun setupNotification() {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return
 
@@ -0,0 +1,74 @@
+package com.huanchengfly.tieba.post.api.retrofit.cache
+
+import android.util.Log
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+private const val PATH = "/c/f/pb/page"
+
+private const val EXPIRE_MILL = 60_000L
+
+class ProtobufHttpCacheTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private val body = ByteArray(1024) { it.toByte() }
+
+    private fun newCache(maxSize: Long) = ProtobufHttpCache(
+        file = File(tempFolder.root, "test.cache"),
+        maxSize = maxSize,
+        compactionScope = null,
+        clock = { 0L }
+    )
+
+    @Before
+    fun setUp() {
+        mockkStatic(Log::class)
+        every { Log.i(any(), any()) } returns 0
+        every { Log.w(any<String>(), any<String>()) } returns 0
+        every { Log.e(any(), any()) } returns 0
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(Log::class)
+    }
+
+    @Test
+    fun `Cache over capacity should keep the newest entries`() {
+        val cache = newCache(maxSize = 10L * 1200)
+        repeat(20) { i -> assertTrue(cache.put(PATH, "$i#page", EXPIRE_MILL, null, body)) }
+
+        val stats = cache.stats()
+        assertTrue(stats.size <= 10L * 1200)
+        assertTrue("Expected fresh entries to be kept", stats.count >= 9)
+        (0 until 20 - stats.count).forEach { i -> assertNull(cache.get(PATH, "$i#page")) }
+        (20 - stats.count until 20).forEach { i -> assertNotNull(cache.get(PATH, "$i#page")) }
+    }
+
+    @Test
+    fun `Evict should only drop entries of the scope`() {
+        val cache = newCache(maxSize = Long.MAX_VALUE)
+        cache.put(PATH, "1#page1", EXPIRE_MILL, null, body)
+        cache.put(PATH, "1#page2", EXPIRE_MILL, null, body)
+        cache.put(PATH, "12#page1", EXPIRE_MILL, null, body)
+
+        cache.evict(PATH, scope = "1")
+        assertNull(cache.get(PATH, "1#page1"))
+        assertNull(cache.get(PATH, "1#page2"))
+        assertEquals(1, cache.stats().count)
+        assertNotNull(cache.get(PATH, "12#page1"))
+    }
+}
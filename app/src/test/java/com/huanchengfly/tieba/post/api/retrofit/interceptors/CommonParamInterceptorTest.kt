@@ -0,0 +1,125 @@
+package com.huanchengfly.tieba.post.api.retrofit.interceptors
+
+import com.huanchengfly.tieba.post.api.Header
+import com.huanchengfly.tieba.post.api.Param
+import com.huanchengfly.tieba.post.api.ParamSnapshot
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.mockkObject
+import io.mockk.slot
+import io.mockk.unmockkObject
+import okhttp3.FormBody
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.Interceptor
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+
+private const val URL = "https://tiebac.baidu.com/c/f/pb/page"
+
+class CommonParamInterceptorTest {
+
+    private var snapshot = mockk<ParamSnapshot>()
+
+    private var evaluations = 0
+
+    private var timestamp = 0
+
+    private val interceptor = CommonParamInterceptor(
+        Param.BDUSS to { evaluations++; "abc~DEF-123" },
+        "kw" to { evaluations++; "贴吧 Lite & 测试" },
+        "z" to { evaluations++; "=+/ 😡" },
+        "absent" to { evaluations++; null },
+        Param.TIMESTAMP to { "${timestamp++}" },
+    )
+
+    @Before
+    fun setUp() {
+        mockkObject(ParamSnapshot)
+        every { ParamSnapshot.current() } answers { snapshot }
+    }
+
+    @After
+    fun tearDown() {
+        unmockkObject(ParamSnapshot)
+    }
+
+    private fun intercept(request: Request): Request {
+        val captured = slot<Request>()
+        val chain = mockk<Interceptor.Chain> {
+            every { request() } returns request
+            every { proceed(capture(captured)) } returns mockk(relaxed = true)
+        }
+        interceptor.intercept(chain)
+        return captured.captured
+    }
+
+    private fun emptyPost() = Request.Builder().url(URL).post(ByteArray(0).toRequestBody()).build()
+
+    @Test
+    fun `Parameters should be evaluated once per snapshot`() {
+        val timestamps = List(3) { (intercept(emptyPost()).body as FormBody).valueOf(Param.TIMESTAMP) }
+        assertEquals(4, evaluations)
+        assertEquals(listOf("0", "1", "2"), timestamps)
+
+        // Invalidated, e.g. account switched
+        snapshot = mockk()
+        intercept(emptyPost())
+        assertEquals(8, evaluations)
+    }
+
+    @Test
+    fun `Form body should be equivalent to plain encoding`() {
+        val body = FormBody.Builder().add("kw", "own").add("a", "b c").build()
+        intercept(Request.Builder().url(URL).post(body).build()) // Cache encoded values
+        val actual = intercept(Request.Builder().url(URL).post(body).build()).body as FormBody
+
+        val expected = FormBody.Builder()
+            .add("kw", "own")
+            .add("a", "b c")
+            .add(Param.BDUSS, "abc~DEF-123")
+            .add("z", "=+/ 😡")
+            .add(Param.TIMESTAMP, "1")
+            .build()
+        assertEquals(expected.size, actual.size)
+        repeat(expected.size) {
+            assertEquals(expected.encodedName(it), actual.encodedName(it))
+            assertEquals(expected.encodedValue(it), actual.encodedValue(it))
+        }
+    }
+
+    @Test
+    fun `Query should be equivalent to plain encoding`() {
+        val url = "$URL?kw=own".toHttpUrl()
+        intercept(Request.Builder().url(url).build()) // Cache encoded values
+        val actual = intercept(Request.Builder().url(url).build()).url
+
+        val expected = url.newBuilder()
+            .addQueryParameter(Param.BDUSS, "abc~DEF-123")
+            .addQueryParameter("z", "=+/ 😡")
+            .addQueryParameter(Param.TIMESTAMP, "1")
+            .build()
+        assertEquals(expected.encodedQuery, actual.encodedQuery)
+    }
+
+    @Test
+    fun `Excluded parameters should not be added`() {
+        val request = emptyPost().newBuilder()
+            .header(Header.NO_COMMON_PARAMS, "z,${Param.TIMESTAMP}")
+            .build()
+        val actual = intercept(request)
+        val body = actual.body as FormBody
+
+        assertEquals(listOf(Param.BDUSS, "kw"), List(body.size) { body.name(it) })
+        assertNull(actual.header(Header.NO_COMMON_PARAMS))
+        assertEquals(0, timestamp)
+    }
+
+    private fun FormBody.valueOf(key: String): String? {
+        return (0 until size).firstOrNull { name(it) == key }?.let { value(it) }
+    }
+}
@@ -0,0 +1,131 @@
+package com.huanchengfly.tieba.post.api.retrofit.interceptors
+
+import com.google.gson.JsonParser
+import com.huanchengfly.tieba.post.api.models.CommonResponse
+import com.huanchengfly.tieba.post.api.models.MessageListBean
+import com.huanchengfly.tieba.post.benchmark.microBenchmark
+import com.huanchengfly.tieba.post.utils.GsonUtil
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.addJsonObject
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import kotlinx.serialization.json.putJsonArray
+import kotlinx.serialization.json.putJsonObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+/**
+ * Same configuration as the JSON APIs
+ * */
+private val json = Json {
+    isLenient = true
+    ignoreUnknownKeys = true
+    coerceInputValues = true
+}
+
+/**
+ * Reply list response of a full page, error code comes after data like the real one
+ * */
+private fun replyMeResponse(messages: Int): String = buildJsonObject {
+    putJsonArray("reply_list") {
+        repeat(messages) {
+            addJsonObject {
+                put("is_floor", "1")
+                put("title", "回复 #$it 的帖子标题")
+                put("content", "回复内容 reply content #$it ".repeat(6))
+                put("quote_content", "引用内容 quote content #$it ".repeat(4))
+                putJsonObject("replyer") {
+                    put("id", "${1000 + it}")
+                    put("name", "replyer_$it")
+                    put("name_show", "回复者 $it")
+                    put("portrait", "tb.1.portrait.$it")
+                    put("is_friend", "0")
+                    put("is_fans", "1")
+                }
+                putJsonObject("quote_user") {
+                    put("id", "1")
+                    put("name", "me")
+                    put("name_show", "我")
+                    put("portrait", "tb.1.portrait")
+                }
+                put("thread_id", "${9000000000L + it}")
+                put("post_id", "${150000000000L + it}")
+                put("time", "1760000000")
+                put("fname", "贴吧")
+                put("quote_pid", "${150000000000L - it}")
+                put("thread_type", "0")
+                put("unread", "1")
+            }
+        }
+    }
+    put("at_list", "")
+    putJsonObject("page") {
+        put("current_page", "1")
+        put("has_more", "1")
+        put("has_prev", "0")
+    }
+    putJsonObject("message") {
+        put("replyme", "0")
+        put("atme", "0")
+        put("fans", "0")
+    }
+    put("error_code", "0")
+    put("time", 1760000000)
+}.toString()
+
+class FailureResponseInterceptorTest {
+
+    private fun readError(body: String) = FailureResponseInterceptor.readError(body.reader())
+
+    @Test
+    fun `Error code and message should be read with alternate names`() {
+        val error = readError("""{"data":{"list":[1,2]},"error_code":"110003","error_msg":"未知错误"}""")
+        assertEquals(110003, error?.errorCode)
+        assertEquals("未知错误", error?.errorMsg)
+
+        assertEquals(CommonResponse(4, "贴子已被删除"), readError("""{"errmsg":"贴子已被删除","errno":4}"""))
+        // MSign
+        assertEquals(
+            CommonResponse(340006, "签到失败"),
+            readError("""{"error":{"errno":340006,"errmsg":"签到失败","usermsg":""},"no":340006}""")
+        )
+    }
+
+    @Test
+    fun `Succeed response should not be read as error`() {
+        assertNull(readError(replyMeResponse(messages = 20)))
+        assertNull(readError("""{"error_code":0,"error_msg":"success"}"""))
+        assertNull(readError("""{"data":[],"error_code":null}"""))
+        // Response without error code
+        assertNull(readError("""{"data":[]}"""))
+    }
+
+    @Test
+    fun `Empty message list should be decoded`() {
+        val bean = json.decodeFromString<MessageListBean>(replyMeResponse(messages = 20))
+        assertEquals(20, bean.replyList?.size)
+        assertEquals(emptyList<MessageListBean.MessageInfoBean>(), bean.atList)
+        assertEquals("1", bean.page?.hasMore)
+        assertEquals("回复者 0", bean.replyList?.first()?.replyer?.nameShow)
+    }
+
+    /**
+     * Streaming error sniffing and kotlinx decoding against the Gson implementations.
+     * */
+    @Test
+    fun benchmarkReplyMeResponse() = microBenchmark("FailureResponseInterceptor replyMe") {
+        val body = replyMeResponse(messages = 20)
+        val gson = GsonUtil.getGson()
+
+        measure("error sniff (reflective CommonResponse)") {
+            gson.fromJson(body.reader(), CommonResponse::class.java).errorCode
+        }
+        measure("error sniff (streaming)") { readError(body)?.errorCode }
+        // JsonDeserializer adapters of the old bean built a tree of the whole reply list
+        measure("decode (Gson tree)") {
+            JsonParser.parseString(body).asJsonObject.getAsJsonArray("reply_list").size()
+        }
+        measure("decode (kotlinx)") { json.decodeFromString<MessageListBean>(body).replyList!!.size }
+    }
+}
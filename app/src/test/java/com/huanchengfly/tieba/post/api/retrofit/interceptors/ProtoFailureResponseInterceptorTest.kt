@@ -0,0 +1,91 @@
+package com.huanchengfly.tieba.post.api.retrofit.interceptors
+
+import com.huanchengfly.tieba.post.api.models.protos.Error
+import com.huanchengfly.tieba.post.api.models.protos.PbContent
+import com.huanchengfly.tieba.post.api.models.protos.Post
+import com.huanchengfly.tieba.post.api.models.protos.ProtoCommonResponse
+import com.huanchengfly.tieba.post.api.models.protos.ThreadInfo
+import com.huanchengfly.tieba.post.api.models.protos.User
+import com.huanchengfly.tieba.post.api.models.protos.frsPage.FrsPageResponse
+import com.huanchengfly.tieba.post.api.models.protos.frsPage.FrsPageResponseData
+import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponse
+import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponseData
+import com.huanchengfly.tieba.post.benchmark.microBenchmark
+import okio.Buffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+private val author = User(id = 1L, name = "author", nameShow = "作者", portrait = "tb.1.portrait")
+
+private val content = List(10) { PbContent(type = 0, text = "楼层内容 content of the post #$it ".repeat(8)) }
+
+private fun pbPageData(posts: Int) = PbPageResponseData(
+    post_list = List(posts) { Post(id = it + 1L, floor = it + 1, content = content, author = author) },
+    thread = ThreadInfo(id = 1L, title = "Thread", author = author)
+)
+
+private fun frsPageData(threads: Int) = FrsPageResponseData(
+    thread_list = List(threads) { ThreadInfo(id = it + 1L, title = "Thread #$it ".repeat(4), author = author) }
+)
+
+class ProtoFailureResponseInterceptorTest {
+
+    private val readError = ProtoFailureResponseInterceptor::readError
+
+    @Test
+    fun `Error should be found in front of data`() {
+        val bytes = PbPageResponse(error = Error(error_code = 4, error_msg = "Deleted"), data_ = pbPageData(30)).encode()
+
+        val error = readError(Buffer().write(bytes))
+        assertEquals(4, error?.error_code)
+        assertEquals("Deleted", error?.error_msg)
+    }
+
+    @Test
+    fun `Error should be found after data`() {
+        // Concatenated messages are merged, the error field comes after data
+        val bytes = PbPageResponse(data_ = pbPageData(30)).encode() + PbPageResponse(error = Error(error_code = 1)).encode()
+
+        assertEquals(1, readError(Buffer().write(bytes))?.error_code)
+    }
+
+    @Test
+    fun `Response without error should return null`() {
+        val bytes = FrsPageResponse(data_ = frsPageData(30)).encode()
+
+        assertNull(readError(Buffer().write(bytes)))
+    }
+
+    @Test
+    fun `Peeked body should be decoded intact`() {
+        val response = PbPageResponse(error = Error(error_code = 0), data_ = pbPageData(30))
+        val source = Buffer().write(response.encode())
+
+        readError(source.peek())
+        assertEquals(response, PbPageResponse.ADAPTER.decode(source))
+    }
+
+    /**
+     * Tag scan against decoding the whole common response.
+     * */
+    @Test
+    fun benchmarkErrorScan() = microBenchmark("ProtoFailureResponseInterceptor") {
+        val payloads = mapOf(
+            "pbPage" to PbPageResponse(error = Error(error_code = 0), data_ = pbPageData(30)).encode(),
+            "frsPage" to FrsPageResponse(error = Error(error_code = 0), data_ = frsPageData(90)).encode(),
+            // Worst case for the scan: error field comes last
+            "pbPage (error last)" to PbPageResponse(data_ = pbPageData(30)).encode() +
+                    PbPageResponse(error = Error(error_code = 0)).encode()
+        )
+
+        payloads.forEach { (name, bytes) ->
+            // Exclude copying the payload into buffer
+            val buffer = { Buffer().write(bytes) }
+            measure("$name (${bytes.size / 1024} KiB) full decode", setup = buffer) {
+                ProtoCommonResponse.ADAPTER.decode(it).error?.error_code
+            }
+            measure("$name (${bytes.size / 1024} KiB) tag scan", setup = buffer) { readError(it)?.error_code }
+        }
+    }
+}
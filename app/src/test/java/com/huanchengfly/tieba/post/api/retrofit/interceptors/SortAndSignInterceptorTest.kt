@@ -0,0 +1,209 @@
+package com.huanchengfly.tieba.post.api.retrofit.interceptors
+
+import com.huanchengfly.tieba.post.api.Param
+import com.huanchengfly.tieba.post.api.containsEncodedName
+import com.huanchengfly.tieba.post.api.fileName
+import com.huanchengfly.tieba.post.api.name
+import com.huanchengfly.tieba.post.api.newBuilder
+import com.huanchengfly.tieba.post.api.readString
+import com.huanchengfly.tieba.post.api.retrofit.body.MyMultipartBody
+import com.huanchengfly.tieba.post.api.sortedEncodedRaw
+import com.huanchengfly.tieba.post.api.sortedRaw
+import com.huanchengfly.tieba.post.benchmark.microBenchmark
+import com.huanchengfly.tieba.post.toMD5
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.slot
+import okhttp3.FormBody
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.RequestBody
+import okhttp3.RequestBody.Companion.toRequestBody
+import okio.Buffer
+import okio.BufferedSink
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+
+private const val APP_SECRET = "tiebaclient!!!"
+
+private val testParams = listOf(
+    "BDUSS" to "abc~DEF-123",
+    Param.CLIENT_VERSION to "12.41.7.1",
+    "_client_id" to "wappc_1700000000000_123",
+    "kw" to "贴吧 Lite & 测试",
+    "ka" to "open",
+    "k" to "",
+    "a_b" to "=+/ ",
+    "z" to "😡",
+)
+
+class SortAndSignInterceptorTest {
+
+    private val interceptor = SortAndSignInterceptor(APP_SECRET)
+
+    private fun buildFormBody(params: List<Pair<String, String>>) = FormBody.Builder()
+        .apply { params.forEach { (name, value) -> add(name, value) } }
+        .build()
+
+    private fun buildMultipartBody(params: List<Pair<String, String>>, files: Int = 2) =
+        MyMultipartBody.Builder("--------7da3d81520810*")
+            .setType(MyMultipartBody.FORM)
+            .apply {
+                repeat(files) {
+                    val data = ByteArray(4096) { b -> b.toByte() }.toRequestBody()
+                    addFormDataPart("data$it", "file${files - it}", data)
+                }
+                params.forEach { (name, value) -> addFormDataPart(name, value) }
+            }
+            .build()
+
+    private fun RequestBody.readBytes(): ByteArray = Buffer().also { writeTo(it) }.readByteArray()
+
+    // Reference: signing implementation before the streaming signer
+    private fun legacySignFormBody(body: FormBody): FormBody {
+        val sortedEncodedRaw = body.sortedEncodedRaw()
+        return FormBody.Builder().apply {
+            sortedEncodedRaw.split('&').forEach {
+                val (name, value) = it.split('=')
+                addEncoded(name, value)
+            }
+            addEncoded(Param.SIGN, (body.sortedRaw(false) + APP_SECRET).toMD5())
+        }.build()
+    }
+
+    // Reference: signing implementation before the streaming signer
+    private fun legacySignMultipartBody(body: MyMultipartBody): MyMultipartBody {
+        val builder = body.newBuilder()
+        val fileParts = mutableListOf<MyMultipartBody.Part>()
+        body.parts.forEach {
+            if (it.fileName() != null) {
+                fileParts.add(it)
+            }
+        }
+        body.parts.filterNot { it in fileParts }.sortedBy { it.name() }
+            .forEach { builder.addPart(it) }
+        val newBody = builder.build()
+        val sortedRaw = newBody.parts.filter { it.fileName() == null }
+            .joinToString("") { "${it.name()}=${it.readString()}" }
+        builder.addFormDataPart(Param.SIGN, (sortedRaw + APP_SECRET).toMD5())
+        if (fileParts.isNotEmpty()) fileParts.sortedBy { it.fileName() }
+            .forEach { builder.addPart(it) }
+        return builder.build()
+    }
+
+    @Test
+    fun `Form body should be equivalent to legacy implementation`() {
+        val body = buildFormBody(testParams)
+        val expected = legacySignFormBody(body)
+        val actual = interceptor.signFormBody(body)
+
+        assertEquals(expected.size, actual.size)
+        repeat(expected.size) {
+            assertEquals(expected.encodedName(it), actual.encodedName(it))
+            assertEquals(expected.encodedValue(it), actual.encodedValue(it))
+        }
+        assertEquals(String(expected.readBytes()), String(actual.readBytes()))
+    }
+
+    @Test
+    fun `Multipart body should be equivalent to legacy implementation`() {
+        val body = buildMultipartBody(testParams)
+        val expected = legacySignMultipartBody(body)
+        val actual = interceptor.signMultipartBody(body)
+
+        assertEquals(expected.size, actual.size)
+        assertEquals(expected.readBytes().toList(), actual.readBytes().toList())
+    }
+
+    @Test
+    fun `Query sign should be equivalent to legacy implementation`() {
+        val url = "http://c.tieba.baidu.com/c/f/forum/like".toHttpUrl().newBuilder().apply {
+            // Legacy implementation splits decoded query on '&', exclude such values
+            testParams.filterNot { it.second.contains('&') }
+                .forEach { (name, value) -> addQueryParameter(name, value) }
+        }.build()
+        val expectedSign = (url.query!!.split('&').sorted().joinToString("") + APP_SECRET).toMD5()
+
+        val captured = slot<Request>()
+        val chain = mockk<Interceptor.Chain> {
+            every { request() } returns Request.Builder().url(url).build()
+            every { proceed(capture(captured)) } returns mockk(relaxed = true)
+        }
+        interceptor.intercept(chain)
+
+        assertEquals(expectedSign, captured.captured.url.queryParameter(Param.SIGN))
+        assertEquals(interceptor.signQuery(url), expectedSign)
+    }
+
+    @Test
+    fun `Query sign should cover decoded values containing '&'`() {
+        val url = "http://c.tieba.baidu.com/c/f/forum/like".toHttpUrl().newBuilder().apply {
+            testParams.forEach { (name, value) -> addQueryParameter(name, value) }
+        }.build()
+        // Every decoded pair is signed as a whole, the legacy implementation split "kw" on '&'
+        val expectedSign = (testParams.map { (name, value) -> "$name=$value" }.sorted().joinToString("") + APP_SECRET).toMD5()
+
+        assertEquals(expectedSign, interceptor.signQuery(url))
+        // Same as signing these parameters in a form body
+        assertEquals(expectedSign, interceptor.signFormBody(buildFormBody(testParams)).value(testParams.size))
+    }
+
+    @Test
+    fun `Signed body should not be signed again`() {
+        val signed = interceptor.signFormBody(buildFormBody(testParams))
+        assertTrue(signed.containsEncodedName(Param.SIGN))
+
+        val captured = slot<Request>()
+        val request = Request.Builder().url("https://tiebac.baidu.com/c/f/pb/page").post(signed).build()
+        val chain = mockk<Interceptor.Chain> {
+            every { request() } returns request
+            every { proceed(capture(captured)) } returns mockk(relaxed = true)
+        }
+        interceptor.intercept(chain)
+        assertTrue(captured.captured.body === signed)
+    }
+
+    @Test
+    fun `Failed sign should not affect the next one`() {
+        val brokenData = object : RequestBody() {
+            override fun contentType(): MediaType? = null
+
+            override fun writeTo(sink: BufferedSink) {
+                sink.writeUtf8("partial")
+                throw IOException("Broken body")
+            }
+        }
+        val brokenBody = MyMultipartBody.Builder()
+            .setType(MyMultipartBody.FORM)
+            .addFormDataPart("data", "partial")
+            .addFormDataPart("data", null, brokenData)
+            .build()
+        assertThrows(IOException::class.java) { interceptor.signMultipartBody(brokenBody) }
+
+        val body = buildFormBody(testParams)
+        assertEquals(
+            legacySignFormBody(body).encodedValue(testParams.size),
+            interceptor.signFormBody(body).encodedValue(testParams.size)
+        )
+    }
+
+    /**
+     * Streaming signer against the legacy implementation.
+     * */
+    @Test
+    fun benchmarkSign() = microBenchmark("SortAndSignInterceptor", warmup = 2_000, iterations = 10_000) {
+        val params = testParams + List(30) { "param_$it" to "value_${it * 31}" }
+        val formBody = buildFormBody(params)
+        val multipartBody = buildMultipartBody(params, files = 1)
+
+        measure("form legacy") { legacySignFormBody(formBody) }
+        measure("form streaming") { interceptor.signFormBody(formBody) }
+        measure("multipart legacy") { legacySignMultipartBody(multipartBody) }
+        measure("multipart streaming") { interceptor.signMultipartBody(multipartBody) }
+    }
+}
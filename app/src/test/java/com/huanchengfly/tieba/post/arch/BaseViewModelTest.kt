@@ -0,0 +1,116 @@
+package com.huanchengfly.tieba.post.arch
+
+import android.util.Log
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.onSubscription
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.resetMain
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.test.setMain
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+private data class CounterState(val count: Int = 0) : UiState
+
+private class Add(val value: Int) : UiIntent
+
+private class AddChange(val value: Int) : PartialChange<CounterState> {
+    override fun reduce(oldState: CounterState) = oldState.copy(count = oldState.count + value)
+}
+
+private class CounterViewModel : BaseViewModel<Add, AddChange, CounterState, UiEvent>() {
+
+    val subscribed = CompletableDeferred<Unit>()
+
+    override fun createInitialState() = CounterState()
+
+    override fun createPartialChangeProducer() = object : PartialChangeProducer<Add, AddChange, CounterState> {
+        override fun toPartialChangeFlow(intentFlow: Flow<Add>): Flow<AddChange> {
+            return (intentFlow as SharedFlow<Add>)
+                .onSubscription { subscribed.complete(Unit) }
+                .map { AddChange(it.value) }
+        }
+    }
+}
+
+private class RecordingInstrumentation : ViewModelInstrumentation {
+    val reduceStarted = AtomicInteger()
+    val reduceEnded = AtomicInteger()
+    val reduceNanos = AtomicLong()
+    val emitted = AtomicInteger()
+    val dropped = AtomicInteger()
+    var tagName: String? = null
+
+    override fun onReduceStart(tag: ViewModelInstrumentation.Tag) {
+        tagName = tag.name
+        reduceStarted.incrementAndGet()
+    }
+
+    override fun onReduceEnd(tag: ViewModelInstrumentation.Tag, durationNanos: Long) {
+        reduceEnded.incrementAndGet()
+        reduceNanos.addAndGet(durationNanos)
+    }
+
+    override fun onStateEmitted(tag: ViewModelInstrumentation.Tag) {
+        emitted.incrementAndGet()
+    }
+
+    override fun onStateDropped(tag: ViewModelInstrumentation.Tag) {
+        dropped.incrementAndGet()
+    }
+}
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class BaseViewModelTest {
+
+    private val instrumentation = RecordingInstrumentation()
+
+    @Before
+    fun setUp() {
+        Dispatchers.setMain(UnconfinedTestDispatcher())
+        mockkStatic(Log::class)
+        every { Log.d(any<String>(), any<String>()) } returns 0
+        ViewModelInstrumentation.current = instrumentation
+    }
+
+    @After
+    fun tearDown() {
+        ViewModelInstrumentation.current = TraceInstrumentation
+        unmockkStatic(Log::class)
+        Dispatchers.resetMain()
+    }
+
+    @Test
+    fun `Pipeline should be reported to instrumentation`() = runTest {
+        val viewModel = CounterViewModel()
+        viewModel.uiState
+        viewModel.subscribed.await()
+
+        viewModel.send(Add(1))
+        viewModel.send(Add(0)) // Dropped by distinctUntilChanged
+        viewModel.send(Add(2))
+        viewModel.uiState.first { it.count == 3 }
+
+        assertEquals("CounterViewModel", instrumentation.tagName)
+        assertEquals(3, instrumentation.reduceStarted.get())
+        assertEquals(3, instrumentation.reduceEnded.get())
+        assertTrue(instrumentation.reduceNanos.get() >= 0)
+        // Initial state and two changed states
+        assertEquals(3, instrumentation.emitted.get())
+        assertEquals(1, instrumentation.dropped.get())
+    }
+}
@@ -0,0 +1,121 @@
+package com.huanchengfly.tieba.post.arch
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+
+class SingleFlightTest {
+
+    @Test
+    fun `Identical calls should be merged into one`() = runTest {
+        val singleFlight = SingleFlight(backgroundScope)
+        var executions = 0
+        val results = List(5) {
+            async {
+                singleFlight.run("pbPage", 1L, 2) {
+                    executions++
+                    delay(100)
+                    "page"
+                }
+            }
+        }.awaitAll()
+
+        assertEquals(1, executions)
+        assertTrue(results.all { it == "page" })
+        val stats = singleFlight.stats().single()
+        assertEquals(5, stats.calls)
+        assertEquals(4, stats.saved)
+    }
+
+    @Test
+    fun `Calls with different params should not be merged`() = runTest {
+        val singleFlight = SingleFlight(backgroundScope)
+        val results = List(3) { page ->
+            async {
+                singleFlight.run("pbPage", 1L, page) {
+                    delay(100)
+                    page
+                }
+            }
+        }.awaitAll()
+
+        assertEquals(listOf(0, 1, 2), results)
+        assertEquals(0, singleFlight.stats().single().saved)
+    }
+
+    @Test
+    fun `Calls of different accounts should not be merged`() = runTest {
+        var account = 1L
+        val singleFlight = SingleFlight(backgroundScope) { account }
+        var executions = 0
+        val block: suspend () -> Long = {
+            val uid = account
+            executions++
+            delay(100)
+            uid
+        }
+
+        val first = async { singleFlight.run("forumGuide", block = block) }
+        delay(10)
+        account = 2L // Switched while the first call is in flight
+        val second = async { singleFlight.run("forumGuide", block = block) }
+
+        assertEquals(listOf(1L, 2L), awaitAll(first, second))
+        assertEquals(2, executions)
+        assertEquals(0, singleFlight.stats().single().saved)
+    }
+
+    @Test
+    fun `Exception should be delivered to every caller`() = runTest {
+        val singleFlight = SingleFlight(backgroundScope)
+        val failures = List(3) {
+            async {
+                runCatching {
+                    singleFlight.run<Unit>("msg") {
+                        delay(100)
+                        throw IOException("Timeout")
+                    }
+                }
+            }
+        }.awaitAll()
+
+        assertTrue(failures.all { it.exceptionOrNull() is IOException })
+        // Completed calls are not joined
+        assertEquals(1, singleFlight.run("msg") { 1 })
+    }
+
+    @Test
+    fun `Shared call should only be cancelled after all callers cancelled`() = runTest {
+        val singleFlight = SingleFlight(backgroundScope)
+        val started = CompletableDeferred<Unit>()
+        var completed = false
+        val block: suspend () -> Unit = {
+            started.complete(Unit)
+            delay(1000)
+            completed = true
+        }
+
+        val first = async { singleFlight.run("forumDetail", 1L, block = block) }
+        val second = async { singleFlight.run("forumDetail", 1L, block = block) }
+        started.await()
+        first.cancel()
+        second.await()
+        assertTrue(completed)
+
+        completed = false
+        val third = async { singleFlight.run("forumDetail", 2L, block = block) }
+        val fourth = async { singleFlight.run("forumDetail", 2L, block = block) }
+        delay(100)
+        third.cancel()
+        fourth.cancel()
+        delay(2000)
+        assertFalse(completed)
+    }
+}
@@ -0,0 +1,98 @@
+package com.huanchengfly.tieba.post.benchmark
+
+import org.junit.Assume.assumeTrue
+import java.lang.management.ManagementFactory
+import java.util.Locale
+import com.sun.management.ThreadMXBean as SunThreadMXBean
+
+/**
+ * Shared harness of the JVM microbenchmarks.
+ *
+ * Benchmarks are skipped unless unit tests run with `-Pbenchmark`. Results are reported only, never
+ * asserted: wall-clock time of a shared machine says nothing about correctness.
+ *
+ * ```
+ * @Test
+ * fun benchmarkFoo() = microBenchmark("Foo") {
+ *     measure("legacy") { legacyFoo() }
+ *     measure("new") { foo() }
+ * }
+ * ```
+ * */
+object MicroBenchmark {
+    const val PROPERTY_ENABLED = "tieba.benchmark"
+
+    val isEnabled: Boolean
+        get() = System.getProperty(PROPERTY_ENABLED).toBoolean()
+
+    private val threadBean = ManagementFactory.getThreadMXBean() as? SunThreadMXBean
+
+    /**
+     * Keeps results of measured blocks alive
+     * */
+    @Volatile
+    private var blackhole: Int = 0
+
+    /**
+     * @param nanosPerOp average nanoseconds per operation
+     * @param bytesPerOp average allocated bytes per operation, -1 if not supported by the JVM
+     * */
+    class Result(val name: String, val nanosPerOp: Double, val bytesPerOp: Long)
+
+    class Suite(val warmup: Int, val iterations: Int) {
+        val results = mutableListOf<Result>()
+
+        /**
+         * Measure [block] as one operation.
+         * */
+        fun measure(name: String, block: () -> Any?) = measure(name, setup = {}) { block() }
+
+        /**
+         * Measure [block] as one operation, time and allocation of [setup] are excluded.
+         * */
+        fun <T> measure(name: String, setup: () -> T, block: (T) -> Any?) {
+            var sink = 0
+            repeat(warmup) { sink += block(setup()).hashCode() }
+
+            val threadId = Thread.currentThread().id
+            var elapsed = 0L
+            var allocated = 0L
+            repeat(iterations) {
+                val input = setup()
+                val allocatedStart = threadBean?.getThreadAllocatedBytes(threadId) ?: 0L
+                val start = System.nanoTime()
+                sink += block(input).hashCode()
+                elapsed += System.nanoTime() - start
+                allocated += (threadBean?.getThreadAllocatedBytes(threadId) ?: 0L) - allocatedStart
+            }
+            blackhole += sink
+
+            val bytesPerOp = if (threadBean != null) allocated / iterations else -1L
+            results += Result(name, nanosPerOp = elapsed.toDouble() / iterations, bytesPerOp = bytesPerOp)
+        }
+    }
+
+    fun report(suite: String, results: List<Result>) {
+        println("Benchmark: $suite")
+        results.forEach {
+            println(String.format(Locale.ROOT, "  %-48s %14.1f ns/op %10d B/op", it.name, it.nanosPerOp, it.bytesPerOp))
+        }
+    }
+}
+
+/**
+ * Run a benchmark suite with the shared harness, skipped unless benchmarks are enabled.
+ *
+ * @param warmup warm up iterations of each measurement
+ * @param iterations measured iterations of each measurement
+ * */
+fun microBenchmark(
+    suite: String,
+    warmup: Int = 50,
+    iterations: Int = 200,
+    body: MicroBenchmark.Suite.() -> Unit,
+) {
+    assumeTrue("Benchmarks are disabled, run with -Pbenchmark", MicroBenchmark.isEnabled)
+    val results = MicroBenchmark.Suite(warmup, iterations).apply(body).results
+    MicroBenchmark.report(suite, results)
+}
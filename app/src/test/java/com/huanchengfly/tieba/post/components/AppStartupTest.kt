@@ -0,0 +1,66 @@
+package com.huanchengfly.tieba.post.components
+
+import androidx.tracing.Trace
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import kotlinx.coroutines.CoroutineExceptionHandler
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.runTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+
+class AppStartupTest {
+
+    @Before
+    fun setUp() {
+        mockkStatic(Trace::class)
+        every { Trace.beginAsyncSection(any(), any()) } returns Unit
+        every { Trace.endAsyncSection(any(), any()) } returns Unit
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(Trace::class)
+    }
+
+    @Test
+    fun `Tasks should run after dependencies and in parallel otherwise`() = runTest {
+        val startup = AppStartup(backgroundScope)
+        val finished = mutableListOf<String>()
+
+        startup.task("A") { delay(100); finished.add("A") }
+        startup.task("B") { delay(50); finished.add("B") }
+        startup.task("C", "A", "B") { finished.add("C") }
+
+        startup.await("C")
+        assertEquals(listOf("B", "A", "C"), finished)
+        // A and B started together
+        assertEquals(100L, testScheduler.currentTime)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun `Undeclared dependency should be rejected`() = runTest {
+        AppStartup(backgroundScope).task("A", "B") { }
+    }
+
+    @Test
+    fun `Awaiting undeclared task should return immediately`() = runTest {
+        AppStartup(backgroundScope).await("A")
+    }
+
+    @Test(expected = IOException::class)
+    fun `Blocking await of a failed task should rethrow`() {
+        val scope = CoroutineScope(Dispatchers.Unconfined + SupervisorJob() + CoroutineExceptionHandler { _, _ -> })
+        val startup = AppStartup(scope)
+        startup.task("A") { throw IOException("Broken config") }
+        // Completed already, must not be mistaken for a success
+        startup.awaitBlocking("A")
+    }
+}
@@ -0,0 +1,43 @@
+package com.huanchengfly.tieba.post.components
+
+import okio.Buffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import kotlin.random.Random
+
+class ImageUploaderTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    @Test
+    fun calculateInSampleSize() {
+        assertEquals(1, ImageUploader.calculateInSampleSize(800, 600, 1080))
+        assertEquals(1, ImageUploader.calculateInSampleSize(2000, 1500, 1080))
+        assertEquals(2, ImageUploader.calculateInSampleSize(1500, 2160, 1080))
+        assertEquals(2, ImageUploader.calculateInSampleSize(4000, 3000, 1080))
+        assertEquals(4, ImageUploader.calculateInSampleSize(3000, 8000, 1080))
+    }
+
+    @Test
+    fun fileChunkBody_streamsSlices() {
+        val bytes = Random(0).nextBytes(2500)
+        val file = tempFolder.newFile("image").apply { writeBytes(bytes) }
+        val chunkSize = 1024L
+
+        val uploaded = Buffer()
+        var offset = 0L
+        while (offset < bytes.size) {
+            val body = FileChunkBody(file, offset, minOf(chunkSize, bytes.size - offset))
+            val chunk = Buffer()
+            body.writeTo(chunk)
+            assertEquals(body.contentLength(), chunk.size)
+            uploaded.writeAll(chunk)
+            offset += chunkSize
+        }
+        assertArrayEquals(bytes, uploaded.readByteArray())
+    }
+}
@@ -0,0 +1,71 @@
+package com.huanchengfly.tieba.post.components
+
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheSpan
+import androidx.media3.datasource.cache.ContentMetadataMutations
+import androidx.media3.datasource.cache.DefaultContentMetadata
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class WatchedAwareCacheEvictorTest {
+
+    private val evictor = WatchedAwareCacheEvictor(maxBytes = 300)
+
+    private val cache = mockk<Cache>()
+
+    private val removed = mutableListOf<String>()
+
+    private val watchedMetadata = DefaultContentMetadata.EMPTY.copyWithMutationsApplied(
+        ContentMetadataMutations().set(WatchedAwareCacheEvictor.METADATA_WATCHED, 1L)
+    )
+
+    private fun span(key: String, lastTouch: Long) = CacheSpan(key, 0, 100, lastTouch, null)
+
+    @Before
+    fun setUp() {
+        every { cache.getContentMetadata(any()) } returns DefaultContentMetadata.EMPTY
+        every { cache.getContentMetadata("persisted") } returns watchedMetadata
+        every { cache.removeSpan(any()) } answers {
+            val span = firstArg<CacheSpan>()
+            removed.add(span.key)
+            evictor.onSpanRemoved(cache, span)
+        }
+    }
+
+    @Test
+    fun evictLeastRecentlyUsed() {
+        evictor.onSpanAdded(cache, span("a", 1000))
+        evictor.onSpanAdded(cache, span("b", 2000))
+        evictor.onSpanAdded(cache, span("c", 3000))
+        evictor.onSpanAdded(cache, span("d", 4000))
+
+        assertEquals(listOf("a"), removed)
+        assertEquals(300, evictor.currentSize)
+    }
+
+    @Test
+    fun evictWatchedFirst() {
+        val now = WatchedAwareCacheEvictor.WATCHED_AGE
+        evictor.onSpanAdded(cache, span("a", now + 1000))
+        evictor.onSpanAdded(cache, span("b", now + 2000))
+        evictor.onSpanAdded(cache, span("c", now + 3000))
+        evictor.markWatched("c")
+        evictor.onSpanAdded(cache, span("d", now + 4000))
+
+        assertEquals(listOf("c"), removed)
+    }
+
+    @Test
+    fun loadWatchedFromMetadata() {
+        val now = WatchedAwareCacheEvictor.WATCHED_AGE
+        evictor.onSpanAdded(cache, span("a", now + 1000))
+        evictor.onSpanAdded(cache, span("persisted", now + 2000))
+        evictor.onSpanAdded(cache, span("c", now + 3000))
+        evictor.onStartFile(cache, "d", 0, 100)
+
+        assertEquals(listOf("persisted"), removed)
+    }
+}
@@ -0,0 +1,35 @@
+package com.huanchengfly.tieba.post.components.glide
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+
+class ThumbnailUrlTest {
+
+    @Test
+    fun cacheKey_sharedByPicIdAndVariant() {
+        val picId = "b6c8a201a18b87d668bfc906410828381e30fd7a"
+        val srcPic = ThumbnailUrl("http://tiebapic.baidu.com/forum/w%3D580/sign=b9a/$picId.jpg?tbpicau=1", picId)
+        val resigned = ThumbnailUrl("http://tiebapic.baidu.com/forum/w%3D580/sign=c0d/$picId.jpg?tbpicau=2", picId)
+        assertEquals("forum/w=580", srcPic.variant)
+        assertEquals(srcPic.cacheKey, resigned.cacheKey)
+        assertEquals(srcPic, resigned)
+
+        // Smaller variant must not be served as source of the origin one
+        val bigPic = ThumbnailUrl("http://tiebapic.baidu.com/forum/pic/item/$picId.jpg?tbpicau=2", picId)
+        assertEquals("forum/pic/item", bigPic.variant)
+        assertNotEquals(srcPic.cacheKey, bigPic.cacheKey)
+
+        val other = ThumbnailUrl("http://tiebapic.baidu.com/forum/pic/item/7010e.jpg", "7010e")
+        assertNotEquals(bigPic.cacheKey, other.cacheKey)
+    }
+
+    @Test
+    fun bucketOf() {
+        assertEquals(360, ThumbnailUrl.bucketOf(1))
+        assertEquals(360, ThumbnailUrl.bucketOf(360))
+        assertEquals(540, ThumbnailUrl.bucketOf(361))
+        assertEquals(1080, ThumbnailUrl.bucketOf(1000))
+        assertEquals(1440, ThumbnailUrl.bucketOf(4000))
+    }
+}
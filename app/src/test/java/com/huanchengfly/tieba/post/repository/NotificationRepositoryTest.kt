@@ -0,0 +1,220 @@
+package com.huanchengfly.tieba.post.repository
+
+import android.util.Log
+import androidx.paging.PagingSource
+import com.huanchengfly.tieba.post.api.models.MessageListBean
+import com.huanchengfly.tieba.post.api.models.MessageListBean.MessageInfoBean
+import com.huanchengfly.tieba.post.api.models.MessageListBean.PageInfoBean
+import com.huanchengfly.tieba.post.api.models.MessageListBean.ReplyerInfoBean
+import com.huanchengfly.tieba.post.models.database.NotificationMessage
+import com.huanchengfly.tieba.post.models.database.Timestamp
+import com.huanchengfly.tieba.post.models.database.dao.NotificationMessageDao
+import com.huanchengfly.tieba.post.models.database.dao.TimestampDao
+import com.huanchengfly.tieba.post.models.database.dao.TimestampDao.Companion.TYPE_REPLY_ME_NEXT_PAGE
+import com.huanchengfly.tieba.post.models.database.dao.TransactionRunnerDao
+import com.huanchengfly.tieba.post.repository.source.network.NotificationNetworkDataSource
+import com.huanchengfly.tieba.post.repository.user.SettingsRepository
+import com.huanchengfly.tieba.post.ui.page.main.notifications.list.NotificationsType
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.mockkObject
+import io.mockk.mockkStatic
+import io.mockk.unmockkObject
+import io.mockk.unmockkStatic
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.test.runTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+private const val UID = 1L
+
+private const val PAGE_SIZE = 20
+
+private val TYPE = NotificationsType.ReplyMe
+
+/**
+ * Message list page of the given message times, newest first. Post ID equals to the time.
+ * */
+private fun pageOf(times: List<Long>, hasMore: Boolean) = MessageListBean(
+    replyList = times.map {
+        MessageInfoBean(
+            replyer = ReplyerInfoBean(id = "1000"),
+            threadId = "1",
+            postId = it.toString(),
+            time = it.toString()
+        )
+    },
+    page = PageInfoBean(hasMore = if (hasMore) "1" else "0")
+)
+
+class NotificationRepositoryTest {
+
+    private val messageDao = FakeNotificationMessageDao()
+
+    private val timestampDao = FakeTimestampDao()
+
+    private val repository = NotificationRepository(
+        localDataSource = messageDao,
+        timestampDao = timestampDao,
+        transactionRunner = TransactionRunnerDao,
+        settingsRepo = mockk<SettingsRepository>(relaxed = true)
+    )
+
+    private fun mockResponse(page: Int, response: MessageListBean) {
+        coEvery { NotificationNetworkDataSource.loadMessages(TYPE, page) } returns response
+    }
+
+    private suspend fun nextPage(): Long? = timestampDao.get(UID, TYPE_REPLY_ME_NEXT_PAGE)
+
+    @Before
+    fun setUp() {
+        mockkStatic(Log::class)
+        every { Log.i(any<String>(), any<String>()) } returns 0
+        mockkObject(NotificationNetworkDataSource)
+    }
+
+    @After
+    fun tearDown() {
+        unmockkObject(NotificationNetworkDataSource)
+        unmockkStatic(Log::class)
+    }
+
+    @Test
+    fun `Sync of empty inbox should store the first page only`() = runTest {
+        mockResponse(page = 1, pageOf(times = (200L downTo 181L).toList(), hasMore = true))
+
+        assertFalse(repository.sync(UID, TYPE))
+        assertEquals(PAGE_SIZE, messageDao.messages.size)
+        assertEquals(2L, nextPage())
+        coVerify(exactly = 1) { NotificationNetworkDataSource.loadMessages(TYPE, any()) }
+    }
+
+    @Test
+    fun `Incremental sync should stop at the newest stored message`() = runTest {
+        mockResponse(page = 1, pageOf(times = (200L downTo 181L).toList(), hasMore = true))
+        repository.sync(UID, TYPE)
+
+        // 3 new messages, stored messages are moved backwards
+        mockResponse(page = 1, pageOf(times = (203L downTo 184L).toList(), hasMore = true))
+        assertFalse(repository.sync(UID, TYPE))
+
+        assertEquals(PAGE_SIZE + 3, messageDao.messages.size)
+        assertEquals(203L, messageDao.getNewest(UID, TYPE.ordinal)?.time)
+        // Stored messages overflow into page 2, which will be merged on load more
+        assertEquals(2L, nextPage())
+        coVerify(exactly = 2) { NotificationNetworkDataSource.loadMessages(TYPE, 1) }
+        coVerify(exactly = 0) { NotificationNetworkDataSource.loadMessages(TYPE, 2) }
+    }
+
+    @Test
+    fun `Sync should replace the inbox when gap is too large`() = runTest {
+        mockResponse(page = 1, pageOf(times = (20L downTo 1L).toList(), hasMore = false))
+        assertTrue(repository.sync(UID, TYPE))
+
+        for (page in 1..10) {
+            val newest = 1000L - (page - 1) * PAGE_SIZE
+            mockResponse(page, pageOf(times = (newest downTo newest - PAGE_SIZE + 1).toList(), hasMore = true))
+        }
+        assertFalse(repository.sync(UID, TYPE))
+
+        // Stopped after 5 pages, stale messages are dropped
+        assertEquals(5 * PAGE_SIZE, messageDao.messages.size)
+        assertTrue(messageDao.messages.none { it.time <= 20L })
+        assertEquals(6L, nextPage())
+        coVerify(exactly = 0) { NotificationNetworkDataSource.loadMessages(TYPE, 6) }
+    }
+
+    @Test
+    fun `Malformed messages should not be stored`() = runTest {
+        val valid = MessageInfoBean(replyer = ReplyerInfoBean(id = "1000"), threadId = "1", postId = "1", time = "1")
+        val response = MessageListBean(
+            replyList = listOf(
+                valid,
+                valid.copy(threadId = "deleted", postId = "2"),
+                valid.copy(postId = null),
+                valid.copy(replyer = ReplyerInfoBean(id = ""), postId = "3"),
+                valid.copy(time = "", postId = "4"),
+            ),
+            page = PageInfoBean(hasMore = "0")
+        )
+        mockResponse(page = 1, response)
+
+        assertTrue(repository.sync(UID, TYPE))
+        assertEquals(listOf(1L), messageDao.messages.map { it.postId })
+    }
+
+    @Test
+    fun `Load more should append stored messages until the end`() = runTest {
+        mockResponse(page = 1, pageOf(times = (200L downTo 181L).toList(), hasMore = true))
+        mockResponse(page = 2, pageOf(times = (180L downTo 171L).toList(), hasMore = false))
+        repository.sync(UID, TYPE)
+
+        assertTrue(repository.loadMore(UID, TYPE))
+        assertEquals(PAGE_SIZE + 10, messageDao.messages.size)
+        assertEquals(0L, nextPage())
+
+        // All pages are stored, no more requests
+        assertTrue(repository.loadMore(UID, TYPE))
+        coVerify(exactly = 1) { NotificationNetworkDataSource.loadMessages(TYPE, 2) }
+    }
+}
+
+private class FakeNotificationMessageDao : NotificationMessageDao {
+
+    val messages = ArrayList<NotificationMessage>()
+
+    private fun NotificationMessage.matches(uid: Long, type: Int) = this.uid == uid && this.type == type
+
+    override suspend fun upsertAll(messages: List<NotificationMessage>) {
+        messages.forEach { message ->
+            this.messages.removeAll {
+                it.matches(message.uid, message.type) && it.postId == message.postId && it.replyerId == message.replyerId
+            }
+            this.messages.add(message)
+        }
+    }
+
+    override fun pagingSource(uid: Long, type: Int): PagingSource<Int, NotificationMessage> {
+        throw UnsupportedOperationException()
+    }
+
+    override suspend fun getNewest(uid: Long, type: Int): NotificationMessage? {
+        return messages
+            .filter { it.matches(uid, type) }
+            .maxWithOrNull(compareBy<NotificationMessage> { it.time }.thenBy { it.postId })
+    }
+
+    override suspend fun count(uid: Long, type: Int): Int = messages.count { it.matches(uid, type) }
+
+    override suspend fun deleteByType(uid: Long, type: Int): Int {
+        val size = messages.size
+        messages.removeAll { it.matches(uid, type) }
+        return size - messages.size
+    }
+}
+
+private class FakeTimestampDao : TimestampDao {
+
+    private val timestamps = HashMap<Pair<Long, Int>, Long>()
+
+    override suspend fun upsert(timestamp: Timestamp) {
+        timestamps[timestamp.uid to timestamp.type] = timestamp.time
+    }
+
+    override suspend fun delete(uid: Long, type: Int): Int = if (timestamps.remove(uid to type) != null) 1 else 0
+
+    override suspend fun update(uid: Long, type: Int, time: Long) {
+        timestamps.computeIfPresent(uid to type) { _, _ -> time }
+    }
+
+    override suspend fun get(uid: Long, type: Int): Long? = timestamps[uid to type]
+
+    override fun observe(uid: Long, type: Int): Flow<Long?> = flowOf(timestamps[uid to type])
+}
@@ -0,0 +1,165 @@
+package com.huanchengfly.tieba.post.repository.source.local
+
+import android.util.Log
+import com.huanchengfly.tieba.post.api.models.protos.Page
+import com.huanchengfly.tieba.post.api.models.protos.Post
+import com.huanchengfly.tieba.post.api.models.protos.ThreadInfo
+import com.huanchengfly.tieba.post.api.models.protos.pbPage.PbPageResponseData
+import com.huanchengfly.tieba.post.models.database.ThreadSnapshot
+import com.huanchengfly.tieba.post.models.database.dao.ThreadSnapshotDao
+import com.huanchengfly.tieba.post.models.database.dao.TransactionRunnerDao
+import com.huanchengfly.tieba.post.ui.page.thread.ThreadSortType
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import kotlinx.coroutines.test.runTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+
+private const val UID = 1L
+
+private const val THREAD_ID = 10L
+
+private fun pageOf(page: Int, totalPage: Int, postIds: List<Long>, pids: String = postIds.joinToString(",")) =
+    PbPageResponseData(
+        page = Page(current_page = page, total_page = totalPage),
+        post_list = postIds.map { Post(id = it) },
+        thread = ThreadInfo(id = THREAD_ID, pids = pids)
+    )
+
+class ThreadLocalDataSourceTest {
+
+    private val snapshotDao = FakeThreadSnapshotDao()
+
+    private val dataSource = ThreadLocalDataSource(snapshotDao, TransactionRunnerDao)
+
+    @Before
+    fun setUp() {
+        mockkStatic(Log::class)
+        every { Log.e(any<String>(), any<String>(), any()) } returns 0
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(Log::class)
+    }
+
+    private suspend fun save(data: PbPageResponseData, sortType: Int = ThreadSortType.BY_ASC): Boolean {
+        return dataSource.savePage(UID, THREAD_ID, seeLz = false, sortType, data)
+    }
+
+    private suspend fun load(page: Int, postId: Long = 0, sortType: Int = ThreadSortType.BY_ASC, uid: Long = UID) =
+        dataSource.loadPage(uid, THREAD_ID, page, postId, seeLz = false, sortType)
+
+    @Test
+    fun `Saved page should be resolved by page number or post id`() = runTest {
+        save(pageOf(page = 1, totalPage = 2, postIds = listOf(101, 102, 103)))
+        save(pageOf(page = 2, totalPage = 2, postIds = listOf(201, 202)))
+
+        assertEquals(1, load(page = 0)?.page?.current_page)
+        assertEquals(2, load(page = 2)?.page?.current_page)
+        assertEquals(2, load(page = 0, postId = 202)?.page?.current_page)
+        assertNull(load(page = 3))
+        assertNull(load(page = 0, postId = 300))
+        // Snapshots of other account
+        assertNull(load(page = 1, uid = 2L))
+    }
+
+    @Test
+    fun `First page of DESC sorting should be the last page`() = runTest {
+        val sortType = ThreadSortType.BY_DESC
+        save(pageOf(page = 2, totalPage = 3, postIds = listOf(202, 201)), sortType)
+        assertNull(load(page = 0, sortType = sortType))
+
+        save(pageOf(page = 3, totalPage = 3, postIds = listOf(302, 301)), sortType)
+        assertEquals(3, load(page = 0, sortType = sortType)?.page?.current_page)
+    }
+
+    @Test
+    fun `Other pages should be dropped when pids changed`() = runTest {
+        save(pageOf(page = 1, totalPage = 2, postIds = listOf(101, 102)))
+        save(pageOf(page = 2, totalPage = 2, postIds = listOf(201, 202)))
+
+        // Same posts, other pages are still valid
+        save(pageOf(page = 1, totalPage = 2, postIds = listOf(101, 102)))
+        assertEquals(2, snapshotDao.snapshots.size)
+
+        // Post 102 was deleted
+        save(pageOf(page = 1, totalPage = 2, postIds = listOf(101, 103)))
+        assertEquals(1, snapshotDao.snapshots.size)
+        assertEquals(listOf(101L, 103L), load(page = 1)?.post_list?.map { it.id })
+    }
+
+    @Test
+    fun `Empty pages and hot sorting should not be saved`() = runTest {
+        assertFalse(save(pageOf(page = 1, totalPage = 1, postIds = emptyList())))
+        assertFalse(save(pageOf(page = 1, totalPage = 1, postIds = listOf(101)), ThreadSortType.BY_HOT))
+        assertEquals(0, snapshotDao.snapshots.size)
+    }
+}
+
+private class FakeThreadSnapshotDao : ThreadSnapshotDao {
+
+    val snapshots = ArrayList<ThreadSnapshot>()
+
+    private fun ThreadSnapshot.matches(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int): Boolean {
+        return this.uid == uid && this.threadId == threadId && this.seeLz == seeLz && this.sortType == sortType
+    }
+
+    private fun ThreadSnapshot.copy(lastRead: Long) = ThreadSnapshot(
+        uid, threadId, seeLz, sortType, page, minPostId, maxPostId, pids, data, lastRead
+    )
+
+    override suspend fun upsert(snapshot: ThreadSnapshot) {
+        snapshots.removeAll {
+            it.matches(snapshot.uid, snapshot.threadId, snapshot.seeLz, snapshot.sortType) && it.page == snapshot.page
+        }
+        snapshots.add(snapshot)
+    }
+
+    override suspend fun getByPage(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int, page: Int): ThreadSnapshot? {
+        return snapshots.firstOrNull { it.matches(uid, threadId, seeLz, sortType) && it.page == page }
+    }
+
+    override suspend fun getByPostId(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int, postId: Long): ThreadSnapshot? {
+        return snapshots
+            .filter { it.matches(uid, threadId, seeLz, sortType) && postId in it.minPostId..it.maxPostId }
+            .maxByOrNull { it.lastRead }
+    }
+
+    override suspend fun getLastPage(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int): ThreadSnapshot? {
+        return snapshots.filter { it.matches(uid, threadId, seeLz, sortType) }.maxByOrNull { it.page }
+    }
+
+    override suspend fun touch(threadId: Long, time: Long) {
+        snapshots.replaceAll { if (it.threadId == threadId) it.copy(lastRead = time) else it }
+    }
+
+    override suspend fun deleteOtherPages(uid: Long, threadId: Long, seeLz: Boolean, sortType: Int, page: Int): Int {
+        val size = snapshots.size
+        snapshots.removeAll { it.matches(uid, threadId, seeLz, sortType) && it.page != page }
+        return size - snapshots.size
+    }
+
+    override suspend fun deleteByThreadId(threadId: Long): Int {
+        val size = snapshots.size
+        snapshots.removeAll { it.threadId == threadId }
+        return size - snapshots.size
+    }
+
+    override suspend fun deleteAll() = snapshots.clear()
+
+    override suspend fun totalSize(): Long = snapshots.sumOf { it.data.size.toLong() }
+
+    override suspend fun deleteLeastRecentlyRead(): Int {
+        val threadId = snapshots
+            .groupBy { it.threadId }
+            .minByOrNull { (_, pages) -> pages.maxOf { it.lastRead } }
+            ?.key ?: return 0
+        return deleteByThreadId(threadId)
+    }
+}
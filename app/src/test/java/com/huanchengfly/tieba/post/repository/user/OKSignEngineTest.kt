@@ -0,0 +1,246 @@
+package com.huanchengfly.tieba.post.repository.user
+
+import android.util.Log
+import com.huanchengfly.tieba.post.api.Error.ERROR_SIGN_TOO_FAST
+import com.huanchengfly.tieba.post.api.models.CommonResponse
+import com.huanchengfly.tieba.post.api.models.ForumRecommend.LikeForum
+import com.huanchengfly.tieba.post.api.models.GetForumListBean
+import com.huanchengfly.tieba.post.api.models.MSignBean.Info
+import com.huanchengfly.tieba.post.api.models.SignResultBean.UserInfo
+import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaApiException
+import com.huanchengfly.tieba.post.api.retrofit.exception.TiebaException
+import com.huanchengfly.tieba.post.models.database.SignProgress
+import com.huanchengfly.tieba.post.models.database.dao.SignProgressDao
+import com.huanchengfly.tieba.post.repository.source.network.OKSignNetworkDataSource
+import com.huanchengfly.tieba.post.repository.user.OKSignRepositoryImp.Companion.ForumSignParam
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.runTest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import kotlin.random.Random
+
+private const val UID = 1L
+
+private const val SIGN_DAY = 1_000L
+
+private const val REQUEST_LATENCY = 200L
+
+private val forums = List(50) { ForumSignParam(name = "forum$it", forumId = it + 1L, signed = false) }
+
+class OKSignEngineTest {
+
+    private val networkDataSource = FakeOKSignNetworkDataSource()
+
+    private val progressDao = FakeSignProgressDao()
+
+    private fun TestScope.newEngine(config: OKSignEngine.Config) = OKSignEngine(
+        networkDataSource = networkDataSource,
+        progressDao = progressDao,
+        config = config,
+        clock = { testScheduler.currentTime },
+        random = Random(0)
+    )
+
+    @Before
+    fun setUp() {
+        mockkStatic(Log::class)
+        every { Log.w(any<String>(), any<String>()) } returns 0
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(Log::class)
+    }
+
+    @Test
+    fun `All forums should be signed with bounded concurrency`() = runTest {
+        val config = OKSignEngine.Config(concurrency = 4, permitsPerSecond = 100.0, burst = 4)
+        val result = newEngine(config).sign(UID, SIGN_DAY, forums, tbs = "", initialProgress = 0, listener = null)
+
+        assertEquals(forums.size, result.succeed.size)
+        assertEquals(config.concurrency, networkDataSource.maxInFlight)
+        assertEquals(forums.size, progressDao.progress.values.count { it.state == SignProgress.STATE_SIGNED })
+
+        val metrics = result.metrics
+        assertEquals(forums.size, metrics.succeed)
+        assertEquals(0, metrics.failed)
+        assertEquals(REQUEST_LATENCY, metrics.latency(50))
+        assertEquals(REQUEST_LATENCY, metrics.latency(99))
+        assertTrue(metrics.throughput > 1f)
+    }
+
+    @Test
+    fun `Requests should be throttled by rate limiter`() = runTest {
+        val config = OKSignEngine.Config(concurrency = 8, permitsPerSecond = 2.0, burst = 1)
+        val signForums = forums.take(11)
+        newEngine(config).sign(UID, SIGN_DAY, signForums, tbs = "", initialProgress = 0, listener = null)
+
+        // First request is granted immediately, then one per 500ms
+        assertEquals(5_000 + REQUEST_LATENCY, testScheduler.currentTime)
+    }
+
+    @Test
+    fun `Slow config should space requests 3500ms to 8000ms apart`() = runTest {
+        networkDataSource.clock = { testScheduler.currentTime }
+        val signForums = forums.take(20)
+        newEngine(OKSignEngine.Config.Slow).sign(UID, SIGN_DAY, signForums, tbs = "", initialProgress = 0, listener = null)
+
+        val gaps = networkDataSource.sentAt.zipWithNext { previous, next -> next - previous }
+        assertEquals(signForums.size - 1, gaps.size)
+        gaps.forEach { assertTrue("Gap ${it}ms out of range", it in 3_500L..8_000L) }
+        // Jitter is applied
+        assertTrue(gaps.distinct().size > 1)
+    }
+
+    @Test
+    fun `Retryable errors should be retried`() = runTest {
+        val config = OKSignEngine.Config(concurrency = 2, permitsPerSecond = 100.0, burst = 2, maxAttempts = 3)
+        networkDataSource.errors["forum1"] = ArrayDeque(List(2) { tooFastError() })
+        networkDataSource.errors["forum2"] = ArrayDeque(List(3) { tooFastError() })
+        networkDataSource.errors["forum3"] = ArrayDeque(listOf(TiebaApiException(CommonResponse(340006, "closed"))))
+        val listener = FailedForumListener()
+
+        val result = newEngine(config).sign(UID, SIGN_DAY, forums, tbs = "", initialProgress = 0, listener)
+
+        assertEquals(setOf("forum2", "forum3"), listener.failed)
+        assertEquals(forums.size - 2, result.succeed.size)
+        assertEquals(2 + 2, result.metrics.retries)
+        assertEquals(SignProgress.STATE_FAILED, progressDao.progress[forums[3].forumId]!!.state)
+    }
+
+    @Test
+    fun `Unsigned result should be reported as failed with server message`() = runTest {
+        val config = OKSignEngine.Config(concurrency = 1, permitsPerSecond = 100.0, burst = 1)
+        networkDataSource.errors["forum4"] = ArrayDeque(listOf(TiebaException("not signed")))
+        val listener = FailedForumListener()
+
+        val result = newEngine(config).sign(UID, SIGN_DAY, forums, tbs = "", initialProgress = 0, listener)
+
+        assertEquals(mapOf("forum4" to "not signed"), listener.errors)
+        assertEquals(forums.size - 1, result.succeed.size)
+        assertEquals(SignProgress.STATE_FAILED, progressDao.progress[forums[4].forumId]!!.state)
+    }
+
+    @Test
+    fun `Aborted run should be resumed from checkpoint`() = runTest {
+        val config = OKSignEngine.Config(concurrency = 1, permitsPerSecond = 100.0, burst = 1)
+        networkDataSource.errors["forum20"] = ArrayDeque(listOf(IOException("Network unavailable")))
+
+        val error = runCatching {
+            newEngine(config).sign(UID, SIGN_DAY, forums, tbs = "", initialProgress = 0, listener = null)
+        }
+        .exceptionOrNull()
+        assertTrue(error is IOException)
+
+        val engine = newEngine(config)
+        val checkpoint = engine.loadCheckpoint(UID, SIGN_DAY)
+        assertEquals(20, checkpoint.size)
+
+        networkDataSource.signed.clear()
+        val remaining = forums.filterNot { checkpoint.contains(it.forumId) }
+        engine.sign(UID, SIGN_DAY, remaining, tbs = "", initialProgress = checkpoint.size, listener = null)
+        assertEquals(forums.size - 20, networkDataSource.signed.size)
+        assertTrue(engine.loadCheckpoint(UID, signDay = SIGN_DAY + 1).isEmpty())
+    }
+
+    private fun tooFastError() = TiebaApiException(CommonResponse(ERROR_SIGN_TOO_FAST, "too fast"))
+}
+
+private class FakeOKSignNetworkDataSource : OKSignNetworkDataSource {
+
+    /**
+     * Errors to throw in order on signing the forum
+     * */
+    val errors = HashMap<String, ArrayDeque<Throwable>>()
+
+    val signed = mutableListOf<String>()
+
+    /**
+     * Start time of every sign request
+     * */
+    val sentAt = mutableListOf<Long>()
+
+    var clock: () -> Long = { 0L }
+
+    var maxInFlight = 0
+        private set
+
+    private var inFlight = 0
+
+    override suspend fun getForumList(): GetForumListBean = throw NotImplementedError()
+
+    override suspend fun getForumRecommendList(): List<LikeForum> = throw NotImplementedError()
+
+    override suspend fun requestOfficialSign(forums: List<ForumSignParam>, tbs: String): List<Info> {
+        throw NotImplementedError()
+    }
+
+    override suspend fun requestSign(forumId: Long, forumName: String, tbs: String): UserInfo {
+        sentAt.add(clock())
+        inFlight++
+        maxInFlight = maxOf(maxInFlight, inFlight)
+        try {
+            delay(REQUEST_LATENCY)
+            errors[forumName]?.removeFirstOrNull()?.let { throw it }
+            signed.add(forumName)
+            return UserInfo(isSignIn = 1, signBonusPoint = 8)
+        } finally {
+            inFlight--
+        }
+    }
+}
+
+private class FakeSignProgressDao : SignProgressDao {
+
+    val progress = LinkedHashMap<Long, SignProgress>()
+
+    override suspend fun upsert(progress: SignProgress) {
+        this.progress[progress.forumId] = progress
+    }
+
+    override suspend fun getProgress(uid: Long, since: Long): List<SignProgress> {
+        return progress.values.filter { it.uid == uid && it.time >= since }
+    }
+
+    override suspend fun deleteAllByUid(uid: Long): Int {
+        val size = progress.size
+        progress.values.removeAll { it.uid == uid }
+        return size - progress.size
+    }
+
+    override suspend fun deleteBefore(time: Long): Int {
+        val size = progress.size
+        progress.values.removeAll { it.time < time }
+        return size - progress.size
+    }
+}
+
+private class FailedForumListener : OKSignRepository.ProgressListener {
+    val failed = HashSet<String>()
+
+    /**
+     * Error message of every failed forum
+     * */
+    val errors = HashMap<String, String>()
+
+    override fun onInit(total: Int, userName: String) = Unit
+
+    override fun onSigned(progress: Int, forum: String, signBonusPoint: Int?) = Unit
+
+    override fun onFailed(progress: Int, forum: String, error: String) {
+        failed.add(forum)
+        errors[forum] = error
+    }
+
+    override fun onMSignFailed(e: Throwable) = Unit
+
+    override fun onFinish(succeed: Int) = Unit
+}
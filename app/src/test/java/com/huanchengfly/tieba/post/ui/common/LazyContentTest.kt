@@ -0,0 +1,35 @@
+package com.huanchengfly.tieba.post.ui.common
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class LazyContentTest {
+
+    /**
+     * Push earlier contents out of the shared cache
+     * */
+    private fun evict() = repeat(4096) { LazyContent { Any() }.value }
+
+    @Test
+    fun `Content should be built once on access`() {
+        var builds = 0
+        val content = LazyContent { builds++; Any() }
+        content.prefetch()
+        val value = content.value
+
+        assertSame(value, content.value)
+        assertEquals(1, builds)
+    }
+
+    @Test
+    fun `Evicted content should not be rebuilt while referenced`() {
+        var builds = 0
+        val content = LazyContent { builds++; Any() }
+        val visible = content.value // Remembered by a visible item
+
+        evict()
+        assertSame(visible, content.value)
+        assertEquals(1, builds)
+    }
+}
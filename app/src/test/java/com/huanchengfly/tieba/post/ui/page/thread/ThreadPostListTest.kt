@@ -0,0 +1,146 @@
+package com.huanchengfly.tieba.post.ui.page.thread
+
+import com.huanchengfly.tieba.post.benchmark.microBenchmark
+import com.huanchengfly.tieba.post.ui.common.LazyContent
+import com.huanchengfly.tieba.post.ui.models.Like
+import com.huanchengfly.tieba.post.ui.models.PostData
+import com.huanchengfly.tieba.post.ui.models.UserData
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+private const val PAGE_SIZE = 30
+
+private const val THREAD_FLOORS = 5_000
+
+private val author = UserData(
+    id = 1L,
+    name = "name",
+    nameShow = "nameShow",
+    showBothName = false,
+    avatarUrl = "",
+    portrait = "",
+    ip = "",
+    levelId = 1,
+    bawuType = null,
+    isLz = false
+)
+
+private fun post(floor: Int) = PostData(
+    id = floor * 10L,
+    author = author,
+    floor = floor,
+    title = null,
+    time = 0L,
+    like = Like(liked = false, count = 0),
+    blocked = false,
+    plainText = "Floor $floor",
+    contentRenders = LazyContent { emptyList() },
+    subPosts = null,
+    subPostNumber = 0
+)
+
+private fun page(first: Int, size: Int = PAGE_SIZE) = List(size) { post(first + it) }
+
+class ThreadPostListTest {
+
+    private val List<PostData>.floors: List<Int>
+        get() = map { it.floor }
+
+    @Test
+    fun `Append and prepend should keep display order`() {
+        val list = ThreadPostList.of(page(first = 31))
+            .append(page(first = 61))
+            .prepend(page(first = 1))
+
+        assertEquals((1..90).toList(), list.floors)
+        repeat(list.size) { i ->
+            assertEquals(i, list.indexOfId(list[i].id))
+        }
+        assertEquals(-1, list.indexOfId(post(91).id))
+    }
+
+    @Test
+    fun `Loaded posts should be ignored`() {
+        val list = ThreadPostList.of(page(first = 1, size = 10))
+            .append(page(first = 6, size = 10))
+            .prepend(page(first = 1, size = 3))
+
+        assertEquals((1..15).toList(), list.floors)
+        assertSame(list, list.append(emptyList()))
+    }
+
+    @Test
+    fun `Update should replace target post only`() {
+        val list = ThreadPostList.of(page(first = 11, size = 10)).prepend(page(first = 1, size = 10))
+        val headPost = post(5)
+        val tailPost = post(15)
+
+        val updated = list
+            .update(headPost.id) { it.updateLikesCount(liked = true, loading = false) }
+            .update(tailPost.id) { it.updateLikesCount(liked = true, loading = false) }
+            .update(postId = -1L) { throw AssertionError("Unknown post updated") }
+
+        assertEquals(list.floors, updated.floors)
+        assertEquals(listOf(5, 15), updated.filter { it.like.liked }.floors)
+        assertTrue(updated.getById(tailPost.id)!!.like.liked)
+        assertSame(list[0], updated[0])
+    }
+
+    @Test
+    fun `Remove should reindex posts`() {
+        val list = ThreadPostList.of(page(first = 6, size = 5)).prepend(page(first = 1, size = 5))
+        val removed = list.remove(post(3).id)
+
+        assertEquals((1..10).filter { it != 3 }, removed.floors)
+        assertNull(removed.getById(post(3).id))
+        assertEquals(2, removed.indexOfId(post(4).id))
+    }
+
+    @Test
+    fun `Scrolling a large thread should match list rebuilding`() {
+        val pages = largeThreadPages()
+        val expected = scrollLegacy(pages).map { it.id to it.like.liked }
+        assertEquals(THREAD_FLOORS - THREAD_FLOORS % PAGE_SIZE, expected.size)
+        assertEquals(expected, scrollPersistent(pages).map { it.id to it.like.liked })
+    }
+
+    /**
+     * Scroll through a synthetic [THREAD_FLOORS] floors thread, one page appended per load-more
+     * with a post liked on every page. Compared against the list rebuilding implementation.
+     * */
+    @Test
+    fun benchmarkScrollingLargeThread() = microBenchmark(
+        suite = "ThreadPostList, $THREAD_FLOORS floors/op",
+        warmup = 5,
+        iterations = 20
+    ) {
+        val pages = largeThreadPages()
+        measure("legacy") { scrollLegacy(pages) }
+        measure("persistent") { scrollPersistent(pages) }
+    }
+
+    private fun largeThreadPages() = List(THREAD_FLOORS / PAGE_SIZE) { page(first = it * PAGE_SIZE + 1) }
+
+    private fun scrollLegacy(pages: List<List<PostData>>): List<PostData> {
+        var data: List<PostData> = emptyList()
+        pages.forEach { newPage ->
+            val postIds = data.mapTo(HashSet()) { it.id }
+            data = data + newPage.filterNot { postIds.contains(it.id) }
+            val likeId = newPage[PAGE_SIZE / 2].id
+            data = data.map { if (it.id == likeId) it.updateLikesCount(true, false) else it }
+        }
+        return data
+    }
+
+    private fun scrollPersistent(pages: List<List<PostData>>): List<PostData> {
+        var data = ThreadPostList.Empty
+        pages.forEach { newPage ->
+            data = data.append(newPage)
+            data = data.update(newPage[PAGE_SIZE / 2].id) { it.updateLikesCount(true, false) }
+        }
+        return data
+    }
+}
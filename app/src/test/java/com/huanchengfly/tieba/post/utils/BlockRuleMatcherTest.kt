@@ -0,0 +1,163 @@
+package com.huanchengfly.tieba.post.utils
+
+import com.huanchengfly.tieba.post.benchmark.microBenchmark
+import com.huanchengfly.tieba.post.models.database.dao.TypedKeyword
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.regex.PatternSyntaxException
+import kotlin.random.Random
+
+private val testContents = listOf(
+    "",
+    "楼主好人一生平安",
+    "This thread is SPAM, report it",
+    "abc,芔 abc,,,芔",
+    "İstanbul ǅungla ß",
+    "#A⏎#B whitelisted",
+)
+
+class BlockRuleMatcherTest {
+
+    private fun literal(keyword: String) = TypedKeyword(keyword, isRegex = false)
+
+    private fun regex(pattern: String) = TypedKeyword(pattern, isRegex = true)
+
+    // Reference implementation, same as the Predicate based matching
+    private fun naiveMatches(rules: List<TypedKeyword>, content: String): Boolean {
+        if (content.isEmpty()) return false
+        return rules.any {
+            if (it.isRegex) it.keyword.toRegex().containsMatchIn(content) else content.contains(it.keyword, ignoreCase = true)
+        }
+    }
+
+    private fun naiveBlocked(black: List<TypedKeyword>, white: List<TypedKeyword>, vararg contents: String): Boolean {
+        return if (contents.any { naiveMatches(white, it) }) false else contents.any { naiveMatches(black, it) }
+    }
+
+    @Test
+    fun `Empty rules should never block`() {
+        val matcher = BlockRuleMatcher.compile(emptyList(), emptyList())
+        assertTrue(matcher.isEmpty)
+        testContents.forEach { assertFalse(matcher.isBlocked(it)) }
+    }
+
+    @Test
+    fun `Literal keywords should match case insensitive`() {
+        val matcher = BlockRuleMatcher.compile(blacklist = listOf(literal("spam"), literal("好人")), whitelist = emptyList())
+
+        assertTrue(matcher.isBlocked("This thread is SPAM"))
+        assertTrue(matcher.isBlocked("楼主好人一生平安"))
+        assertFalse(matcher.isBlocked("sp am"))
+        assertFalse(matcher.isBlocked(""))
+    }
+
+    @Test
+    fun `Overlapping keywords should be found through failure links`() {
+        val matcher = BlockRuleMatcher.compile(
+            blacklist = listOf(literal("he"), literal("she"), literal("hers"), literal("his")),
+            whitelist = emptyList()
+        )
+
+        assertEquals(BlockRuleMatcher.MATCH_BLACK, matcher.match("ushers"))
+        assertEquals(BlockRuleMatcher.MATCH_BLACK, matcher.match("ahishe"))
+        assertEquals(BlockRuleMatcher.MATCH_NONE, matcher.match("hxsx"))
+    }
+
+    @Test
+    fun `Whitelist should have the highest priority`() {
+        val matcher = BlockRuleMatcher.compile(
+            blacklist = listOf(literal("spam"), regex("a{3}")),
+            whitelist = listOf(literal("report"), regex("^keep"))
+        )
+
+        assertEquals(BlockRuleMatcher.MATCH_WHITE, matcher.match("SPAM, report it"))
+        assertEquals(BlockRuleMatcher.MATCH_WHITE, matcher.match("keep aaa"))
+        assertEquals(BlockRuleMatcher.MATCH_BLACK, matcher.match("spam"))
+        assertEquals(BlockRuleMatcher.MATCH_BLACK, matcher.match("baaab"))
+
+        // Whitelist matched in any content
+        assertFalse(matcher.isBlocked("spam", "report"))
+        assertTrue(matcher.isBlocked("nothing", "spam"))
+    }
+
+    @Test
+    fun `Merged regex should keep back references`() {
+        val merged = BlockRuleMatcher.mergeRegex(listOf("(\\w)\\1", "abc,{1,3}芔", "␤A␤B␤"))
+        assertEquals(2, merged.size)
+
+        val matcher = BlockRuleMatcher.compile(blacklist = listOf(regex("(\\w)\\1"), regex("x(y)z")), whitelist = emptyList())
+        assertTrue(matcher.isBlocked("hello"))
+        assertTrue(matcher.isBlocked("-xyz-"))
+        assertFalse(matcher.isBlocked("abcde"))
+    }
+
+    @Test
+    fun `Compiled matcher should be equivalent to predicates`() {
+        val random = Random(42)
+        val alphabet = "abcABC好人ßİ "
+        val randomText = { len: Int -> String(CharArray(len) { alphabet[random.nextInt(alphabet.length)] }) }
+
+        repeat(50) {
+            val black = List(random.nextInt(1, 8)) { literal(randomText(random.nextInt(1, 4))) } + regex("a{2,}b")
+            val white = List(random.nextInt(0, 3)) { literal(randomText(random.nextInt(2, 5))) }
+            val matcher = BlockRuleMatcher.compile(black, white)
+
+            repeat(20) {
+                val contents = Array(random.nextInt(1, 3)) { randomText(random.nextInt(0, 24)) }
+                assertEquals(
+                    "black=$black, white=$white, contents=${contents.contentToString()}",
+                    naiveBlocked(black, white, *contents),
+                    matcher.isBlocked(*contents)
+                )
+            }
+        }
+        testContents.forEach {
+            val black = listOf(literal("ǅ"), literal("SS"), literal("i̇stanbul"))
+            assertEquals(naiveBlocked(black, emptyList(), it), BlockRuleMatcher.compile(black, emptyList()).isBlocked(it))
+        }
+    }
+
+    @Test
+    fun `Unmergeable regex should be compiled separately`() {
+        val named = listOf("(?<word>\\w)\\k<word>", "(?<word>[0-9]{3})")
+        // Named groups are never merged, names of the alternation must be unique
+        assertEquals(2, BlockRuleMatcher.mergeRegex(named).size)
+        // Unterminated quote swallows the rest of an alternation
+        assertEquals(2, BlockRuleMatcher.mergeRegex(listOf("\\Qa.b", "c+")).size)
+
+        val matcher = BlockRuleMatcher.compile(
+            blacklist = listOf(regex("\\Qa.b"), regex("(?x) c d # comment"), regex("(?<=@)me")),
+            whitelist = named.map { regex(it) }
+        )
+        assertTrue(matcher.isBlocked("xa.by"))
+        assertFalse(matcher.isBlocked("axb"))
+        assertTrue(matcher.isBlocked("cd"))
+        assertTrue(matcher.isBlocked("@me"))
+        assertFalse(matcher.isBlocked("@me 123"))
+        assertFalse(matcher.isBlocked("c d"))
+    }
+
+    @Test(expected = PatternSyntaxException::class)
+    fun `Invalid regex should still be reported`() {
+        // Balanced once merged as "(?:(b)|(?:c))"
+        BlockRuleMatcher.compile(blacklist = listOf(regex("(b"), regex("c)")), whitelist = emptyList())
+    }
+
+    /**
+     * Match cost of the compiled matcher should stay flat as the rule count grows.
+     * */
+    @Test
+    fun benchmarkMatchWithGrowingRuleCount() = microBenchmark("BlockRuleMatcher, 200 contents/op") {
+        val random = Random(0)
+        val randomWord = { String(CharArray(random.nextInt(4, 12)) { 'a' + random.nextInt(26) }) }
+        val contents = List(200) { List(random.nextInt(20, 80)) { randomWord() }.joinToString(" ") }
+
+        listOf(10, 100, 1_000, 10_000).forEach { ruleCount ->
+            val rules = List(ruleCount) { literal(randomWord() + randomWord()) }
+            val matcher = BlockRuleMatcher.compile(blacklist = rules, whitelist = listOf(literal("0")))
+            measure("$ruleCount rules") { contents.sumOf { matcher.match(it) } }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.huanchengfly.tieba.post.utils
+
+import android.util.Log
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.nio.ByteBuffer
+
+private val DEFAULTS = mapOf(
+    "呵呵" to "image_emoticon1",
+    "哈哈" to "image_emoticon2",
+    "吐舌" to "image_emoticon3",
+    "a" to "image_emoticon4",
+    "" to "image_emoticon5",
+)
+
+class EmoticonRegistryTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private lateinit var dir: File
+
+    private var defaultsLoaded = 0
+
+    private fun open() = EmoticonRegistry.open(dir) {
+        defaultsLoaded++
+        DEFAULTS
+    }
+
+    @Before
+    fun setUp() {
+        mockkStatic(Log::class)
+        every { Log.w(any<String>(), any<String>()) } returns 0
+        every { Log.e(any(), any()) } returns 0
+        dir = tempFolder.newFolder("emoticon")
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(Log::class)
+    }
+
+    @Test
+    fun `Defaults should be loaded only on creating the table`() {
+        open()
+        val registry = open()
+
+        assertEquals(1, defaultsLoaded)
+        DEFAULTS.forEach { (name, id) -> assertEquals(id, registry[name]) }
+        assertNull(registry["不存在"])
+        assertEquals(DEFAULTS.size, registry.size)
+    }
+
+    @Test
+    fun `Registered emoticons should survive reopen`() {
+        val registry = open()
+        assertTrue(registry.register("新表情", "shoubai_emoji_1"))
+        assertFalse(registry.register("新表情", "shoubai_emoji_2"))
+        assertFalse(registry.register("呵呵", "shoubai_emoji_3"))
+
+        val reopened = open()
+        assertEquals("shoubai_emoji_1", reopened["新表情"])
+        assertEquals("image_emoticon1", reopened["呵呵"])
+
+        val all = HashMap<String, String>()
+        reopened.forEach { name, id -> all[name] = id }
+        assertEquals(DEFAULTS + ("新表情" to "shoubai_emoji_1"), all)
+    }
+
+    @Test
+    fun `Journal should be merged into table`() {
+        val registry = open()
+        repeat(EmoticonRegistry.COMPACT_THRESHOLD) { registry.register("name$it", "image_emoticon${100 + it}") }
+
+        val compacted = open()
+        assertFalse(File(dir, "emoticon_journal").exists())
+        assertEquals(DEFAULTS.size + EmoticonRegistry.COMPACT_THRESHOLD, compacted.size)
+        assertEquals("image_emoticon120", compacted["name20"])
+    }
+
+    @Test
+    fun `Torn journal record should be ignored`() {
+        open().register("新表情", "shoubai_emoji_1")
+        File(dir, "emoticon_journal").appendBytes(byteArrayOf(0, 10, 'x'.code.toByte()))
+
+        val registry = open()
+        assertEquals("shoubai_emoji_1", registry["新表情"])
+        assertEquals(DEFAULTS.size + 1, registry.size)
+    }
+
+    @Test
+    fun `Emoticons registered after a torn record should survive reopen`() {
+        open().register("新表情", "shoubai_emoji_1")
+        File(dir, "emoticon_journal").appendBytes(byteArrayOf(0, 10, 'x'.code.toByte()))
+        open().register("另一个", "shoubai_emoji_2")
+
+        val registry = open()
+        assertEquals("shoubai_emoji_1", registry["新表情"])
+        assertEquals("shoubai_emoji_2", registry["另一个"])
+        assertEquals(DEFAULTS.size + 2, registry.size)
+    }
+
+    @Test
+    fun `Table with invalid entry offset should be rebuilt`() {
+        open()
+        val table = File(dir, "emoticon_table")
+        val bytes = table.readBytes()
+        // Point the first entry beyond the end of table
+        ByteBuffer.wrap(bytes).putInt(12, bytes.size)
+        table.writeBytes(bytes)
+
+        val registry = open()
+        assertEquals(2, defaultsLoaded)
+        DEFAULTS.forEach { (name, id) -> assertEquals(id, registry[name]) }
+    }
+
+    @Test
+    fun `Corrupted table should be rebuilt`() {
+        open()
+        File(dir, "emoticon_table").writeBytes(ByteArray(4))
+
+        val registry = open()
+        assertEquals(2, defaultsLoaded)
+        assertEquals("image_emoticon2", registry["哈哈"])
+    }
+}
@@ -0,0 +1,60 @@
+package com.huanchengfly.tieba.post.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Build a `matchinfo(table, 'pcx')` blob, [hits] is hits in this row and all rows of every phrase and column.
+ * */
+private fun matchInfoOf(phrases: Int, columns: Int, vararg hits: Pair<Int, Int>): ByteArray {
+    require(hits.size == phrases * columns)
+    val buffer = ByteBuffer.allocate((2 + hits.size * 3) * Int.SIZE_BYTES).order(ByteOrder.nativeOrder())
+    buffer.putInt(phrases).putInt(columns)
+    hits.forEach { (hitsInRow, hitsInAllRows) ->
+        buffer.putInt(hitsInRow).putInt(hitsInAllRows).putInt(if (hitsInRow > 0) 1 else 0)
+    }
+    return buffer.array()
+}
+
+class FtsUtilTest {
+
+    @Test
+    fun `CJK letters should be segmented into single tokens`() {
+        assertEquals("今 天 吃 什 么", FtsUtil.segment("今天吃什么"))
+        assertEquals("kotlin 协 程 flow", FtsUtil.segment("Kotlin协程Flow"))
+        assertEquals("a b 贴 吧 2024", FtsUtil.segment("  A, B!【贴吧】#2024 "))
+        assertEquals("", FtsUtil.segment("~!@#￥%……"))
+    }
+
+    @Test
+    fun `Keyword should be queried as phrase or prefix`() {
+        assertEquals("\"吃 什 么\"", FtsUtil.buildQuery("吃什么"))
+        assertEquals("kot* \"协 程\"", FtsUtil.buildQuery("Kot 协程"))
+        assertEquals("贴", FtsUtil.buildQuery("　贴　"))
+        // Operators and quotes of FTS query syntax are dropped
+        assertEquals("a* or* b*", FtsUtil.buildQuery("\"a OR b\""))
+        assertNull(FtsUtil.buildQuery(" *- "))
+    }
+
+    @Test
+    fun `Title hits should rank higher than content hits`() {
+        val weights = floatArrayOf(4f, 1f)
+        val titleHit = FtsUtil.rank(matchInfoOf(phrases = 1, columns = 2, 1 to 10, 0 to 10), weights)
+        val contentHit = FtsUtil.rank(matchInfoOf(phrases = 1, columns = 2, 0 to 10, 1 to 10), weights)
+        val bothHit = FtsUtil.rank(matchInfoOf(phrases = 1, columns = 2, 1 to 10, 1 to 10), weights)
+        assertTrue(titleHit > contentHit)
+        assertTrue(bothHit > titleHit)
+    }
+
+    @Test
+    fun `Hits of rare phrase should rank higher`() {
+        val weights = floatArrayOf(1f)
+        val rare = FtsUtil.rank(matchInfoOf(phrases = 2, columns = 1, 1 to 2, 1 to 100), weights)
+        val common = FtsUtil.rank(matchInfoOf(phrases = 2, columns = 1, 1 to 100, 1 to 100), weights)
+        assertTrue(rare > common)
+    }
+}
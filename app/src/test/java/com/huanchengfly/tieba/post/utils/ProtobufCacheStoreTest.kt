@@ -0,0 +1,192 @@
+package com.huanchengfly.tieba.post.utils
+
+import android.util.Log
+import com.huanchengfly.tieba.post.api.models.protos.Agree
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+
+private const val EXPIRE_MILL = 1000L
+
+class ProtobufCacheStoreTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private lateinit var file: File
+
+    private var now = 0L
+
+    private val sumDelta = ProtobufCacheStore.Delta<Agree, Agree>(Agree.ADAPTER) { value, delta ->
+        value.copy(agreeNum = value.agreeNum + delta.agreeNum)
+    }
+
+    private fun newStore() = ProtobufCacheStore(file, compactionScope = null, clock = { now })
+
+    @Before
+    fun setUp() {
+        mockkStatic(Log::class)
+        every { Log.i(any(), any()) } returns 0
+        every { Log.w(any<String>(), any<String>()) } returns 0
+        every { Log.e(any(), any()) } returns 0
+        file = File(tempFolder.root, "test.cache")
+    }
+
+    @After
+    fun tearDown() {
+        unmockkStatic(Log::class)
+    }
+
+    @Test
+    fun `Put and get should survive reopen`() {
+        newStore().use {
+            it.put("a", Agree.ADAPTER, Agree(agreeNum = 1))
+            it.put("b", Agree.ADAPTER, Agree(agreeNum = 2))
+            it.put("a", Agree.ADAPTER, Agree(agreeNum = 3))
+            it.putList("list", Agree.ADAPTER, listOf(Agree(agreeNum = 4), Agree(agreeNum = 5)))
+        }
+
+        newStore().use {
+            assertEquals(3L, it.get("a", Agree.ADAPTER)?.agreeNum)
+            assertEquals(2L, it.get("b", Agree.ADAPTER)?.agreeNum)
+            assertEquals(listOf(4L, 5L), it.getList("list", Agree.ADAPTER)?.map(Agree::agreeNum))
+            assertNull(it.get("c", Agree.ADAPTER))
+        }
+    }
+
+    @Test
+    fun `Expired entry should only be returned on request`() {
+        newStore().use {
+            it.put("a", Agree.ADAPTER, Agree(agreeNum = 1), expireAfter = EXPIRE_MILL)
+            it.put("b", Agree.ADAPTER, Agree(agreeNum = 2))
+            now += EXPIRE_MILL
+
+            assertTrue(it.isExpired("a"))
+            assertFalse(it.isExpired("b"))
+            assertNull(it.get("a", Agree.ADAPTER))
+            assertEquals(1L, it.get("a", Agree.ADAPTER, includeExpired = true)?.agreeNum)
+
+            assertEquals(1, it.removeExpired())
+            assertEquals(setOf("b"), it.keys())
+        }
+    }
+
+    @Test
+    fun `Delta should be applied in order and keep expiry`() {
+        newStore().use {
+            it.put("a", Agree.ADAPTER, Agree(agreeNum = 1), expireAfter = EXPIRE_MILL)
+            repeat(20) { _ -> it.appendDelta("a", Agree.ADAPTER, Agree(agreeNum = 1)) }
+            assertFalse(it.appendDelta("missing", Agree.ADAPTER, Agree(agreeNum = 1)))
+
+            assertEquals(1L, it.get("a", Agree.ADAPTER)?.agreeNum) // Delta ignored
+            assertEquals(21L, it.get("a", Agree.ADAPTER, sumDelta)?.agreeNum)
+        }
+
+        newStore().use {
+            // Folded on previous read
+            assertEquals(21L, it.get("a", Agree.ADAPTER)?.agreeNum)
+            it.appendDelta("a", Agree.ADAPTER, Agree(agreeNum = 1))
+            assertEquals(22L, it.get("a", Agree.ADAPTER, sumDelta)?.agreeNum)
+
+            now += EXPIRE_MILL
+            assertTrue(it.isExpired("a"))
+        }
+    }
+
+    @Test
+    fun `Removed entries should stay removed after reopen`() {
+        newStore().use {
+            repeat(10) { i -> it.put("k_$i", Agree.ADAPTER, Agree(agreeNum = i.toLong())) }
+            assertEquals(5, it.removeIf { key -> key.substringAfter('_').toInt() % 2 == 0 })
+            assertTrue(it.remove("k_1"))
+            assertFalse(it.remove("k_1"))
+        }
+
+        newStore().use {
+            assertEquals(setOf("k_3", "k_5", "k_7", "k_9"), it.keys())
+        }
+    }
+
+    @Test
+    fun `Trim should drop least recently used entries`() {
+        newStore().use {
+            repeat(10) { i -> it.put("k_$i", Agree.ADAPTER, Agree(agreeNum = i + 1L)) }
+            val entrySize = it.liveSize() / 10
+            it.get("k_0", Agree.ADAPTER) // Recently used
+
+            assertEquals(6, it.trimToSize(maxSize = entrySize * 4))
+            assertEquals(setOf("k_0", "k_7", "k_8", "k_9"), it.keys())
+            assertTrue(it.liveSize() <= entrySize * 4)
+        }
+    }
+
+    @Test
+    fun `Compaction should drop dead records only`() {
+        newStore().use {
+            repeat(100) { i -> it.put("k_${i % 10}", Agree.ADAPTER, Agree(agreeNum = i.toLong())) }
+            it.put("expired", Agree.ADAPTER, Agree(agreeNum = 1), expireAfter = EXPIRE_MILL)
+            it.appendDelta("k_0", Agree.ADAPTER, Agree(agreeNum = 1000))
+            now += EXPIRE_MILL
+
+            val sizeBefore = file.length()
+            val liveSize = it.liveSize()
+            it.compact()
+            assertTrue(file.length() < sizeBefore)
+            // Everything but the magic header is live
+            assertEquals(liveSize, it.liveSize())
+            assertEquals(file.length() - 4, liveSize.toLong())
+
+            // Expired entries are read stale until removed explicitly
+            assertEquals(1L, it.get("expired", Agree.ADAPTER, includeExpired = true)?.agreeNum)
+            repeat(10) { i -> assertEquals(90L + i, it.get("k_$i", Agree.ADAPTER)?.agreeNum) }
+            assertEquals(1090L, it.get("k_0", Agree.ADAPTER, sumDelta)?.agreeNum)
+
+            it.removeExpired()
+            it.compact()
+            assertFalse(it.contains("expired"))
+            assertEquals(10, it.keys().size)
+        }
+    }
+
+    @Test
+    fun `Torn tail should be truncated`() {
+        newStore().use {
+            it.put("a", Agree.ADAPTER, Agree(agreeNum = 1))
+            it.put("b", Agree.ADAPTER, Agree(agreeNum = 2))
+        }
+        // Simulate crash while appending
+        val validSize = file.length()
+        RandomAccessFile(file, "rw").use { it.setLength(validSize - 3) }
+
+        newStore().use {
+            assertEquals(1L, it.get("a", Agree.ADAPTER)?.agreeNum)
+            assertNull(it.get("b", Agree.ADAPTER))
+            it.put("c", Agree.ADAPTER, Agree(agreeNum = 3))
+        }
+
+        newStore().use {
+            assertEquals(setOf("a", "c"), it.keys())
+        }
+    }
+
+    @Test
+    fun `Unknown segment should be reset`() {
+        file.writeText("Not a cache segment")
+        newStore().use {
+            assertTrue(it.keys().isEmpty())
+            it.put("a", Agree.ADAPTER, Agree(agreeNum = 1))
+            assertEquals(1L, it.get("a", Agree.ADAPTER)?.agreeNum)
+        }
+    }
+}
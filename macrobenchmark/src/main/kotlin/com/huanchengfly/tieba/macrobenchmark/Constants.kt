@@ -10,3 +10,17 @@ const val TAG_COLUMN = "column"
 
 const val TRACE_THREAD = "ThreadTrace"
 const val TRACE_FEED_CARD = "FeedCardTrace"
+
+const val TRACE_HTTP_DNS = "HttpDns"
+const val TRACE_HTTP_CONNECT = "HttpConnect"
+const val TRACE_HTTP_TLS = "HttpTls"
+const val TRACE_HTTP_TTFB = "HttpTtfb"
+const val TRACE_HTTP_BODY = "HttpBody"
+
+const val TRACE_STARTUP_CONFIG = "StartupConfig"
+const val TRACE_STARTUP_EMOTICON = "StartupEmoticon"
+
+// Suffixed with ViewModel name, match with "$TRACE_VM_REDUCE:%"
+const val TRACE_VM_REDUCE = "VmReduce"
+const val TRACE_VM_STATE = "VmState"
+const val TRACE_VM_DROPPED = "VmDropped"
@@ -14,6 +14,9 @@ import androidx.test.uiautomator.textAsString
 import androidx.test.uiautomator.uiAutomator
 import com.huanchengfly.tieba.macrobenchmark.TARGET_PACKAGE
 import com.huanchengfly.tieba.macrobenchmark.TRACE_FEED_CARD
+import com.huanchengfly.tieba.macrobenchmark.TRACE_VM_DROPPED
+import com.huanchengfly.tieba.macrobenchmark.TRACE_VM_REDUCE
+import com.huanchengfly.tieba.macrobenchmark.TRACE_VM_STATE
 import com.huanchengfly.tieba.macrobenchmark.startActivityAndSetup
 import org.junit.Rule
 import org.junit.Test
@@ -42,6 +45,10 @@ class HotPageFrameTimingBenchmark {
                 // and measure how long they took and how many times they recomposed.
                 // WARNING: This metric only shows results when running with composition tracing, otherwise it won't be visible in the outputs.
                 TraceSectionMetric("%FeedCard (%", TraceSectionMetric.Mode.Sum),
+                // MVI pipeline of all ViewModels, see ThreadPageFrameTimingBenchmark
+                TraceSectionMetric("$TRACE_VM_REDUCE:%", TraceSectionMetric.Mode.Sum),
+                TraceSectionMetric("$TRACE_VM_STATE:%", TraceSectionMetric.Mode.Sum),
+                TraceSectionMetric("$TRACE_VM_DROPPED:%", TraceSectionMetric.Mode.Sum),
             ),
             // Try switching to different compilation modes to see the effect
             // it has on frame timing metrics.
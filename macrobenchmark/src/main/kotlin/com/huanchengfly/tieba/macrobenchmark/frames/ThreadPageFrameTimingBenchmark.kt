@@ -17,6 +17,9 @@ import com.huanchengfly.tieba.macrobenchmark.DEFAULT_ITERATIONS
 import com.huanchengfly.tieba.macrobenchmark.TAG_COLUMN
 import com.huanchengfly.tieba.macrobenchmark.TARGET_PACKAGE
 import com.huanchengfly.tieba.macrobenchmark.TRACE_THREAD
+import com.huanchengfly.tieba.macrobenchmark.TRACE_VM_DROPPED
+import com.huanchengfly.tieba.macrobenchmark.TRACE_VM_REDUCE
+import com.huanchengfly.tieba.macrobenchmark.TRACE_VM_STATE
 import com.huanchengfly.tieba.macrobenchmark.startActivityAndSetup
 import org.junit.Rule
 import org.junit.Test
@@ -39,6 +42,11 @@ class ThreadPageFrameTimingBenchmark {
             metrics = listOf(
                 FrameTimingMetric(),
                 TraceSectionMetric(TRACE_THREAD, TraceSectionMetric.Mode.Sum),
+                // MVI pipeline of all ViewModels, count of TRACE_VM_DROPPED is the number of
+                // reduced states dropped by distinctUntilChanged.
+                TraceSectionMetric("$TRACE_VM_REDUCE:%", TraceSectionMetric.Mode.Sum),
+                TraceSectionMetric("$TRACE_VM_STATE:%", TraceSectionMetric.Mode.Sum),
+                TraceSectionMetric("$TRACE_VM_DROPPED:%", TraceSectionMetric.Mode.Sum),
             ),
             compilationMode = CompilationMode.Partial(
                 baselineProfileMode = BaselineProfileMode.Disable,
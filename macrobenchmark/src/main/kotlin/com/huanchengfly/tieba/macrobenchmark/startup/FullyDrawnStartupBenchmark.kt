@@ -18,8 +18,10 @@ package com.huanchengfly.tieba.macrobenchmark.startup
 
 import androidx.benchmark.macro.BaselineProfileMode
 import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.ExperimentalMetricApi
 import androidx.benchmark.macro.StartupMode
 import androidx.benchmark.macro.StartupTimingMetric
+import androidx.benchmark.macro.TraceSectionMetric
 import androidx.benchmark.macro.junit4.MacrobenchmarkRule
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.filters.LargeTest
@@ -27,6 +29,13 @@ import androidx.test.uiautomator.textAsString
 import androidx.test.uiautomator.uiAutomator
 import com.huanchengfly.tieba.macrobenchmark.DEFAULT_ITERATIONS
 import com.huanchengfly.tieba.macrobenchmark.TARGET_PACKAGE
+import com.huanchengfly.tieba.macrobenchmark.TRACE_HTTP_BODY
+import com.huanchengfly.tieba.macrobenchmark.TRACE_HTTP_CONNECT
+import com.huanchengfly.tieba.macrobenchmark.TRACE_HTTP_DNS
+import com.huanchengfly.tieba.macrobenchmark.TRACE_HTTP_TLS
+import com.huanchengfly.tieba.macrobenchmark.TRACE_HTTP_TTFB
+import com.huanchengfly.tieba.macrobenchmark.TRACE_STARTUP_CONFIG
+import com.huanchengfly.tieba.macrobenchmark.TRACE_STARTUP_EMOTICON
 import com.huanchengfly.tieba.macrobenchmark.startActivityAndSetup
 import org.junit.Rule
 import org.junit.Test
@@ -56,9 +65,22 @@ class FullyDrawnStartupBenchmark {
     @Test
     fun startupFullCompilation() = startup(CompilationMode.Full())
 
+    @OptIn(ExperimentalMetricApi::class)
     private fun startup(compilationMode: CompilationMode) = benchmarkRule.measureRepeated(
         packageName = TARGET_PACKAGE,
-        metrics = listOf(StartupTimingMetric()),
+        metrics = listOf(
+            StartupTimingMetric(),
+            // Network phases of every call, Mode.Sum also reports how many times it occurred.
+            // Count of TRACE_HTTP_CONNECT is the number of sockets opened during startup.
+            TraceSectionMetric(TRACE_HTTP_DNS, TraceSectionMetric.Mode.Sum),
+            TraceSectionMetric(TRACE_HTTP_CONNECT, TraceSectionMetric.Mode.Sum),
+            TraceSectionMetric(TRACE_HTTP_TLS, TraceSectionMetric.Mode.Sum),
+            TraceSectionMetric(TRACE_HTTP_TTFB, TraceSectionMetric.Mode.Sum),
+            TraceSectionMetric(TRACE_HTTP_BODY, TraceSectionMetric.Mode.Sum),
+            // Startup initializers running in background
+            TraceSectionMetric(TRACE_STARTUP_CONFIG, TraceSectionMetric.Mode.First),
+            TraceSectionMetric(TRACE_STARTUP_EMOTICON, TraceSectionMetric.Mode.First),
+        ),
         compilationMode = compilationMode,
         startupMode = StartupMode.COLD,
         iterations = DEFAULT_ITERATIONS,
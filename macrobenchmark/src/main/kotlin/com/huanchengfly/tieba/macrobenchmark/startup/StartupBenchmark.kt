@@ -18,13 +18,17 @@ package com.huanchengfly.tieba.macrobenchmark.startup
 
 import androidx.benchmark.macro.BaselineProfileMode
 import androidx.benchmark.macro.CompilationMode
+import androidx.benchmark.macro.ExperimentalMetricApi
 import androidx.benchmark.macro.StartupMode
 import androidx.benchmark.macro.StartupTimingMetric
+import androidx.benchmark.macro.TraceSectionMetric
 import androidx.benchmark.macro.junit4.MacrobenchmarkRule
 import androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner
 import androidx.test.uiautomator.uiAutomator
 import com.huanchengfly.tieba.macrobenchmark.DEFAULT_ITERATIONS
 import com.huanchengfly.tieba.macrobenchmark.TARGET_PACKAGE
+import com.huanchengfly.tieba.macrobenchmark.TRACE_STARTUP_CONFIG
+import com.huanchengfly.tieba.macrobenchmark.TRACE_STARTUP_EMOTICON
 import com.huanchengfly.tieba.macrobenchmark.startActivityAndSetup
 import org.junit.Rule
 import org.junit.Test
@@ -78,9 +82,14 @@ abstract class AbstractStartupBenchmark(private val startupMode: StartupMode) {
     @Test
     fun startupFullCompilation() = startup(CompilationMode.Full())
 
+    @OptIn(ExperimentalMetricApi::class)
     private fun startup(compilationMode: CompilationMode) = benchmarkRule.measureRepeated(
         packageName = TARGET_PACKAGE,
-        metrics = listOf(StartupTimingMetric()),
+        metrics = listOf(
+            StartupTimingMetric(),
+            TraceSectionMetric(TRACE_STARTUP_CONFIG, TraceSectionMetric.Mode.First),
+            TraceSectionMetric(TRACE_STARTUP_EMOTICON, TraceSectionMetric.Mode.First),
+        ),
         compilationMode = compilationMode,
         iterations = DEFAULT_ITERATIONS,
         startupMode = startupMode,
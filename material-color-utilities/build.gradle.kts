@@ -42,8 +42,17 @@ android {
             excludes += listOf("/META-INF/AL2.0", "/META-INF/LGPL2.1")
         }
     }
+
+    testOptions {
+        unitTests.all {
+            // Microbenchmarks of unit tests are skipped unless enabled with -Pbenchmark
+            it.systemProperty("tieba.benchmark", providers.gradleProperty("benchmark").isPresent)
+        }
+    }
 }
 
 dependencies {
     api(libs.androidx.annotation)
+
+    testImplementation(libs.junit)
 }
@@ -19,8 +19,7 @@ package com.google.android.material.color.utilities;
 import static androidx.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 
 import androidx.annotation.RestrictTo;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * A convenience class for retrieving colors that are constant in hue and chroma, but vary in tone.
@@ -29,7 +28,9 @@ import java.util.Map;
  */
 @RestrictTo(LIBRARY_GROUP)
 public final class TonalPalette {
-    Map<Integer, Integer> cache;
+    // 0Ranko0p changes: Cache integer tones in a primitive table instead of boxed HashMap, 0 for
+    // tones not resolved yet (resolved colors are always opaque).
+    final int[] cache;
     Hct keyColor;
     double hue;
     double chroma;
@@ -67,7 +68,7 @@ public final class TonalPalette {
     }
 
     private TonalPalette(double hue, double chroma, Hct keyColor) {
-        cache = new HashMap<>();
+        cache = new int[101];
         this.hue = hue;
         this.chroma = chroma;
         this.keyColor = keyColor;
@@ -80,10 +81,13 @@ public final class TonalPalette {
      * @return ARGB representation of a color with that tone.
      */
     public int tone(int tone) {
-        Integer color = cache.get(tone);
-        if (color == null) {
+        if (tone < 0 || tone > 100) {
+            return Hct.from(this.hue, this.chroma, tone).toInt();
+        }
+        int color = cache[tone];
+        if (color == 0) {
             color = Hct.from(this.hue, this.chroma, tone).toInt();
-            cache.put(tone, color);
+            cache[tone] = color;
         }
         return color;
     }
@@ -113,14 +117,16 @@ public final class TonalPalette {
         private final double hue;
         private final double requestedChroma;
 
-        // Cache that maps tone to max chroma to avoid duplicated HCT calculation.
-        private final Map<Integer, Double> chromaCache = new HashMap<>();
+        // Cache that maps tone to max chroma to avoid duplicated HCT calculation, NaN for tones not
+        // calculated yet.
+        private final double[] chromaCache = new double[101];
         private static final double MAX_CHROMA_VALUE = 200.0;
 
         /** Key color is a color that represents the hue and chroma of a tonal palette */
         public KeyColor(double hue, double requestedChroma) {
             this.hue = hue;
             this.requestedChroma = requestedChroma;
+            Arrays.fill(chromaCache, Double.NaN);
         }
 
         /**
@@ -174,13 +180,12 @@ public final class TonalPalette {
 
         // Find the maximum chroma for a given tone
         private double maxChroma(int tone) {
-            if (chromaCache.get(tone) == null) {
-                Double newChroma = Hct.from(hue, MAX_CHROMA_VALUE, tone).getChroma();
-                if (newChroma != null) {
-                    chromaCache.put(tone, newChroma);
-                }
+            double chroma = chromaCache[tone];
+            if (Double.isNaN(chroma)) {
+                chroma = Hct.from(hue, MAX_CHROMA_VALUE, tone).getChroma();
+                chromaCache[tone] = chroma;
             }
-            return chromaCache.get(tone);
+            return chroma;
         }
     }
 }
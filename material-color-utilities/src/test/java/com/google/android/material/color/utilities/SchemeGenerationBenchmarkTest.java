@@ -0,0 +1,73 @@
+package com.google.android.material.color.utilities;
+
+import static org.junit.Assert.assertNotEquals;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Plain JVM benchmark of full scheme generation, prints the average time of resolving every
+ * {@link MaterialDynamicColors} role of a fresh scheme. Skipped unless enabled with -Pbenchmark.
+ */
+public class SchemeGenerationBenchmarkTest {
+
+    private static final int[] SEEDS = {
+        0xFF4477DD, 0xFFE91E63, 0xFF4CAF50, 0xFFFF9800, 0xFF9C27B0, 0xFF000000, 0xFFFFFFFF
+    };
+
+    private static final int WARMUP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 100;
+
+    private static List<DynamicColor> allRoles(MaterialDynamicColors colors) throws Exception {
+        List<DynamicColor> roles = new ArrayList<>();
+        for (Method method : MaterialDynamicColors.class.getMethods()) {
+            if (method.getReturnType() == DynamicColor.class && method.getParameterCount() == 0) {
+                roles.add((DynamicColor) method.invoke(colors));
+            }
+        }
+        return roles;
+    }
+
+    private static long generate(List<DynamicColor> roles, int seed, boolean isDark) {
+        DynamicScheme scheme = new SchemeContent(Hct.fromInt(seed), isDark, 0.0);
+        long sum = 0;
+        for (DynamicColor role : roles) {
+            sum += role.getArgb(scheme);
+        }
+        return sum;
+    }
+
+    @Test
+    public void benchmarkFullScheme() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("tieba.benchmark"));
+        List<DynamicColor> roles = allRoles(new MaterialDynamicColors());
+        long blackhole = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            for (int seed : SEEDS) {
+                blackhole += generate(roles, seed, (i & 1) == 0);
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int seed : SEEDS) {
+                blackhole += generate(roles, seed, (i & 1) == 0);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int schemes = ITERATIONS * SEEDS.length;
+        System.out.printf(
+                Locale.ROOT,
+                "Full scheme (%d roles): %.1f us/op over %d schemes%n",
+                roles.size(),
+                elapsed / 1000.0 / schemes,
+                schemes);
+        assertNotEquals(0, blackhole);
+    }
+}
@@ -0,0 +1,26 @@
+package com.google.android.material.color.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TonalPaletteTest {
+
+    private static final int[] SEEDS = {
+        0xFF4477DD, 0xFFE91E63, 0xFF4CAF50, 0xFFFF9800, 0xFF9C27B0, 0xFF000000, 0xFFFFFFFF
+    };
+
+    @Test
+    public void toneTableMatchesHct() {
+        for (int seed : SEEDS) {
+            Hct hct = Hct.fromInt(seed);
+            TonalPalette palette = TonalPalette.fromHueAndChroma(hct.getHue(), hct.getChroma());
+            for (int tone = 0; tone <= 100; tone++) {
+                int expected = Hct.from(hct.getHue(), hct.getChroma(), tone).toInt();
+                assertEquals(expected, palette.tone(tone));
+                // Served from the table
+                assertEquals(expected, palette.tone(tone));
+            }
+        }
+    }
+}